@@ -0,0 +1,50 @@
+package first.second.third.ecosystem.benchmark;
+
+import first.second.third.ecosystem.util.Calculations;
+import first.second.third.ecosystem.util.SimulationRandom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
+
+// Расчёт смертей и рождений для малых и больших популяций
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CalculationsBenchmark {
+
+    // Ниже и выше POPULATION_CALCULATIONS_BORDER
+    @Param({"100", "100000"})
+    private double population;
+
+    private final Calculations calculations = new Calculations();
+    private RandomGenerator random;
+
+    @Setup
+    public void setUp() {
+        random = SimulationRandom.create(42);
+    }
+
+    @Benchmark
+    public long deaths() {
+        return calculations.calculateDeaths(population, 0.6, random);
+    }
+
+    @Benchmark
+    public long births() {
+        return calculations.calculateBirth(population, 0.9, random);
+    }
+}
@@ -0,0 +1,94 @@
+package first.second.third.ecosystem.benchmark;
+
+import first.second.third.ecosystem.entity.parameters.CreatureStatistics;
+import first.second.third.ecosystem.entity.parameters.WorldConditions;
+import first.second.third.ecosystem.population.PopulationStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Факторы вымирания и рождаемости всех видов мира: из кеша хранилища по эпохе условий и полный пересчёт
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FactorBenchmark {
+
+    @Param({"1000", "100000"})
+    private int species;
+
+    private PopulationStore store;
+    private WorldConditions worldConditions;
+    private boolean warmer;
+
+    @Setup
+    public void setUp() {
+        store = new PopulationStore();
+        WorldGenerator.fill(store, species, 42);
+        worldConditions = WorldGenerator.conditions(new WorldConditions());
+    }
+
+    // Поштучный доступ движка: при неизменных условиях факторы берутся из кеша
+    @Benchmark
+    public double storeFactors() {
+        return storeFactorsPass();
+    }
+
+    // Условия меняются перед каждым проходом, поэтому каждый вид пересчитывается
+    @Benchmark
+    public double storeFactorsChangingConditions() {
+        changeConditions();
+        return storeFactorsPass();
+    }
+
+    // Пересчёт всех видов ядром; при неизменных условиях проход ничего не считает
+    @Benchmark
+    public double refreshFactors() {
+        store.refreshFactors(worldConditions);
+        return store.getExtinctionFactor(0, worldConditions);
+    }
+
+    @Benchmark
+    public double refreshFactorsChangingConditions() {
+        changeConditions();
+        store.refreshFactors(worldConditions);
+        return store.getExtinctionFactor(0, worldConditions);
+    }
+
+    // Расчёт одного вида без кеша: базовая линия для поштучной стоимости
+    @Benchmark
+    public double extinctionFactorUncached() {
+        return CreatureStatistics.calculateExtinctionFactor(worldConditions, 15, 100, 70);
+    }
+
+    @Benchmark
+    public double birthFactorUncached() {
+        return CreatureStatistics.calculateBirthFactor(worldConditions, 15, 100, 70);
+    }
+
+    private double storeFactorsPass() {
+        double sum = 0;
+        for (int id = 0; id < species; id++) {
+            sum += store.getExtinctionFactor(id, worldConditions) + store.getBirthFactor(id, worldConditions);
+        }
+        return sum;
+    }
+
+    // Температура переключается между двумя соседними значениями, и эпоха условий меняется на каждом проходе
+    private void changeConditions() {
+        warmer = !warmer;
+        worldConditions.setTemperature(WorldGenerator.TEMPERATURE + (warmer ? 1 : 0));
+    }
+}
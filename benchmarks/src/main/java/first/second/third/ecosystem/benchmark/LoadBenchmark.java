@@ -0,0 +1,66 @@
+package first.second.third.ecosystem.benchmark;
+
+import first.second.third.ecosystem.entity.parameters.WorldConditions;
+import first.second.third.ecosystem.fileprocessor.EcoSystemFileProcessor;
+import first.second.third.ecosystem.population.WorldSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Загрузка сгенерированного мира в пустое хранилище из текста и двоичного снимка
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LoadBenchmark {
+
+    @Param({"1000", "100000"})
+    private int species;
+
+    @Param({"text", "binary"})
+    private String format;
+
+    private EcoSystemFileProcessor processor;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        processor = EcoSystemFileProcessor.getInstance();
+        file = WorldGenerator.writeWorldFile(species, 42);
+        if (format.equals("binary")) {
+            Path snapshot = Files.createTempFile("ecosystem-load-", ".ecos");
+            snapshot.toFile().deleteOnExit();
+            processor.loadFromFile(file.toString());
+            processor.saveWorld(WorldSnapshot.capture(processor.getStore(), WorldConditions.getInstance()),
+                    snapshot.toString());
+            file = snapshot;
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void clear() {
+        processor.getStore().clear();
+    }
+
+    @Benchmark
+    public int load() {
+        processor.loadWorld(file.toString());
+        return processor.getStore().size();
+    }
+}
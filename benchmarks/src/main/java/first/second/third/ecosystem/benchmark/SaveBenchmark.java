@@ -0,0 +1,55 @@
+package first.second.third.ecosystem.benchmark;
+
+import first.second.third.ecosystem.entity.parameters.WorldConditions;
+import first.second.third.ecosystem.fileprocessor.EcoSystemFileProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Сохранение сгенерированного мира в текстовый файл и двоичный снимок
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SaveBenchmark {
+
+    @Param({"1000", "100000"})
+    private int species;
+
+    @Param({"text", "binary"})
+    private String format;
+
+    private EcoSystemFileProcessor processor;
+    private WorldConditions worldConditions;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        processor = EcoSystemFileProcessor.getInstance();
+        WorldGenerator.fill(processor.getStore(), species, 42);
+        worldConditions = WorldGenerator.conditions(new WorldConditions());
+        file = Files.createTempFile("ecosystem-save-", format.equals("binary") ? ".ecos" : ".txt");
+        file.toFile().deleteOnExit();
+    }
+
+    @Benchmark
+    public void save() {
+        processor.saveWorld(worldConditions, file.toString());
+    }
+}
@@ -0,0 +1,79 @@
+package first.second.third.ecosystem.benchmark;
+
+import first.second.third.ecosystem.engine.SimulationEngine;
+import first.second.third.ecosystem.entity.parameters.Category;
+import first.second.third.ecosystem.entity.parameters.WorldConditions;
+import first.second.third.ecosystem.event.EventLevel;
+import first.second.third.ecosystem.event.EventPipeline;
+import first.second.third.ecosystem.fileprocessor.EcoSystemFileProcessor;
+import first.second.third.ecosystem.population.PopulationStore;
+import first.second.third.ecosystem.util.SimulationRandom;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Блок лет симуляции от одного и того же исходного мира на мирах разного размера
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TickBenchmark {
+
+    private static final int YEARS = 10;
+
+    @Param({"10", "1000", "100000"})
+    private int species;
+
+    private PopulationStore store;
+    private SimulationEngine engine;
+    private long[] initial;
+    private long[] initialTotals;
+    private long[] spare;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        EcoSystemFileProcessor processor = EcoSystemFileProcessor.getInstance();
+        store = processor.getStore();
+        WorldGenerator.fill(store, species, 42);
+        initial = store.getCounts().clone();
+        initialTotals = new long[Category.values().length];
+        for (Category category : Category.values()) {
+            initialTotals[category.ordinal()] = store.total(category);
+        }
+        spare = new long[initial.length];
+        engine = new SimulationEngine(processor, WorldGenerator.conditions(new WorldConditions()),
+                new EventPipeline(store, EventLevel.OFF), SimulationRandom.create(42));
+    }
+
+    // Каждый вызов начинается с исходных численностей, иначе вымирание или рост
+    // за итерацию меняют измеряемую работу от вызова к вызову
+    @Setup(Level.Invocation)
+    public void restore() {
+        // Подмена через swapCounts восстанавливает и итоги категорий, которые движок ведёт инкрементально
+        System.arraycopy(initial, 0, spare, 0, initial.length);
+        spare = store.swapCounts(spare, initialTotals);
+    }
+
+    // Вызов на уровне Invocation дорог для одного короткого года, поэтому замеряется блок лет
+    @Benchmark
+    @OperationsPerInvocation(YEARS)
+    public void year() {
+        for (int i = 0; i < YEARS; i++) {
+            engine.advanceYear();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package first.second.third.ecosystem.benchmark;
+
+import first.second.third.ecosystem.entity.parameters.Category;
+import first.second.third.ecosystem.entity.parameters.WorldConditions;
+import first.second.third.ecosystem.fileprocessor.EcoSystemFileProcessor;
+import first.second.third.ecosystem.population.PopulationStore;
+import first.second.third.ecosystem.util.SimulationRandom;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.random.RandomGenerator;
+
+// Генерация миров заданного размера для бенчмарков
+final class WorldGenerator {
+
+    static final int TEMPERATURE = 25;
+    static final int WATER = 150;
+    static final int HUMIDITY = 60;
+
+    private WorldGenerator() {
+    }
+
+    static WorldConditions conditions(WorldConditions worldConditions) {
+        worldConditions.setYear(0);
+        worldConditions.setTemperature(TEMPERATURE);
+        worldConditions.setAccessibleWater(WATER);
+        worldConditions.setHumidityPercentage(HUMIDITY);
+        return worldConditions;
+    }
+
+    /**
+     * Заполняет хранилище видами всех категорий поровну. Комфортные параметры
+     * близки к условиям мира, а популяции велики, чтобы мир не вымирал
+     * за время одной итерации измерения.
+     */
+    static void fill(PopulationStore store, int species, long seed) {
+        RandomGenerator random = SimulationRandom.create(seed);
+        Category[] categories = Category.values();
+        store.clear();
+        for (int i = 0; i < species; i++) {
+            store.add(categories[i % categories.length], "S" + i,
+                    random.nextLong(100_000_000L, 1_000_000_000L),
+                    TEMPERATURE + random.nextInt(-5, 6),
+                    random.nextInt(50, WATER + 1),
+                    HUMIDITY + random.nextInt(-5, 6));
+        }
+    }
+
+    // Текстовый файл мира, сохранённый штатным методом процессора
+    static Path writeWorldFile(int species, long seed) throws IOException {
+        EcoSystemFileProcessor processor = EcoSystemFileProcessor.getInstance();
+        fill(processor.getStore(), species, seed);
+        Path file = Files.createTempFile("ecosystem-" + species + "-", ".txt");
+        file.toFile().deleteOnExit();
+        processor.saveToFile(conditions(new WorldConditions()), file.toString());
+        return file;
+    }
+}
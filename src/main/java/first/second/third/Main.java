@@ -1,12 +1,29 @@
 package first.second.third;
 
+import first.second.third.ecosystem.engine.BatchSimulation;
+import first.second.third.ecosystem.util.CommandLineOptions;
 import first.second.third.ecosystem.util.SimulationConsole;
 
 //TIP To <b>Run</b> code, press <shortcut actionId="Run"/> or
 // click the <icon src="AllIcons.Actions.Execute"/> icon in the gutter.
 public class Main {
     public static void main(String[] args) throws InterruptedException {
+        if (args.length > 0) {
+            // Пакетный режим без консоли
+            CommandLineOptions options;
+            try {
+                options = CommandLineOptions.parse(args);
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+                System.out.println(CommandLineOptions.USAGE);
+                return;
+            }
+            if (!new BatchSimulation(options).run()) {
+                System.exit(1); // Ненулевой код для скриптов: прогон не состоялся
+            }
+            return;
+        }
         SimulationConsole simulationConsole = new SimulationConsole();
         simulationConsole.start();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,415 @@
+package first.second.third.ecosystem.api;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import first.second.third.ecosystem.engine.SimulationRunner;
+import first.second.third.ecosystem.engine.TickScheduler;
+import first.second.third.ecosystem.entity.parameters.Category;
+import first.second.third.ecosystem.exception.UnknownCategoryException;
+import first.second.third.ecosystem.population.PopulationHistory;
+import first.second.third.ecosystem.population.WorldSnapshot;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Встроенный HTTP/JSON API управления и запросов, только на локальном адресе.
+ * Каждый запрос обслуживается своим виртуальным потоком, поэтому медленные
+ * клиенты не занимают потоки платформы. Запросы чтения берут последний
+ * опубликованный снимок мира и не захватывают монитор хранилища, так что
+ * опрос множеством клиентов не замедляет расчёт; JSON численностей строится
+ * один раз на снимок и отдаётся всем клиентам.
+ * <pre>
+ * GET  /api/status                          состояние, год и итоги категорий
+ * GET  /api/population[?category=C]         условия и численности видов
+ * GET  /api/history?species=S[&amp;category=C][&amp;from=Y][&amp;to=Y][&amp;step=N]
+ * POST /api/start, /api/stop                фоновый прогон
+ * POST /api/pause, /api/resume              пауза и продолжение прогона
+ * POST /api/step[?years=N]                  расчёт N лет (на паузе или при остановленном прогоне)
+ * POST /api/speed?rate=R                    частота прогона, лет в секунду (max - без ограничения)
+ * POST /api/conditions?temperature=T&amp;water=W&amp;humidity=H
+ * POST /api/species?category=C&amp;name=S&amp;count=N[&amp;temperature=T&amp;water=W&amp;humidity=H]
+ * POST /api/save?path=P                     сохранение (формат по расширению)
+ * </pre>
+ * Параметры передаются в строке запроса или телом application/x-www-form-urlencoded.
+ */
+public class ApiServer implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ApiServer.class);
+
+    public static final int DEFAULT_PORT = 8080;
+    // Очередь ожидающих соединений: рассчитана на сотни опрашивающих клиентов
+    private static final int BACKLOG = 1024;
+    // Наибольшее количество точек истории в ответе по умолчанию
+    private static final int DEFAULT_HISTORY_POINTS = 1000;
+
+    private final SimulationRunner runner;
+    private final PopulationHistory history;
+    private HttpServer server;
+    private ExecutorService executor;
+    @Getter
+    private int port;
+    // JSON численностей последнего снимка
+    private final AtomicReference<CachedBody> population = new AtomicReference<>();
+
+    public ApiServer(SimulationRunner runner) {
+        this.runner = runner;
+        this.history = runner.getHistory();
+    }
+
+    public synchronized boolean isStarted() {
+        return server != null;
+    }
+
+    public synchronized void start(int port) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("API server is already running on port " + this.port);
+        }
+        HttpServer created = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        created.createContext("/api/status", exchange -> handle(exchange, "GET", this::status));
+        created.createContext("/api/population", exchange -> handle(exchange, "GET", this::population));
+        created.createContext("/api/history", exchange -> handle(exchange, "GET", this::history));
+        created.createContext("/api/start", exchange -> handle(exchange, "POST", this::start));
+        created.createContext("/api/stop", exchange -> handle(exchange, "POST", this::stop));
+        created.createContext("/api/pause", exchange -> handle(exchange, "POST", this::pause));
+        created.createContext("/api/resume", exchange -> handle(exchange, "POST", this::resume));
+        created.createContext("/api/step", exchange -> handle(exchange, "POST", this::step));
+        created.createContext("/api/speed", exchange -> handle(exchange, "POST", this::speed));
+        created.createContext("/api/conditions", exchange -> handle(exchange, "POST", this::conditions));
+        created.createContext("/api/species", exchange -> handle(exchange, "POST", this::species));
+        created.createContext("/api/save", exchange -> handle(exchange, "POST", this::save));
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        created.setExecutor(executor);
+        created.start();
+        server = created;
+        this.port = created.getAddress().getPort();
+        logger.info("HTTP API listening on {}", created.getAddress());
+    }
+
+    @Override
+    public synchronized void close() {
+        if (server == null) {
+            return;
+        }
+        server.stop(0);
+        executor.close();
+        server = null;
+        logger.info("HTTP API stopped");
+    }
+
+    // Обработчик запроса: параметры на входе, тело JSON на выходе
+    private interface Endpoint {
+        Response apply(Map<String, String> parameters) throws IOException;
+    }
+
+    private static final class Response {
+        private final int status;
+        private final byte[] body;
+
+        private Response(int status, byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        static Response ok(String json) {
+            return new Response(200, json.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Response error(int status, String message) {
+            return new Response(status, ("{\"error\":" + quote(message) + "}").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void handle(HttpExchange exchange, String method, Endpoint endpoint) throws IOException {
+        Response response;
+        try {
+            if (!exchange.getRequestMethod().equalsIgnoreCase(method)) {
+                exchange.getResponseHeaders().set("Allow", method);
+                response = Response.error(405, "Method not allowed, use " + method);
+            } else {
+                response = endpoint.apply(parameters(exchange));
+            }
+        } catch (IllegalStateException e) {
+            response = Response.error(409, e.getMessage());
+        } catch (IllegalArgumentException | UnknownCategoryException e) {
+            response = Response.error(400, e.getMessage());
+        } catch (RuntimeException e) {
+            logger.error("API request {} failed: {}", exchange.getRequestURI(), e.getMessage());
+            response = Response.error(500, String.valueOf(e.getMessage()));
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status, response.body.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(response.body);
+        }
+    }
+
+    // Параметры строки запроса и тела формы
+    private static Map<String, String> parameters(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = new HashMap<>();
+        parse(exchange.getRequestURI().getRawQuery(), parameters);
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (contentType != null && contentType.startsWith("application/x-www-form-urlencoded")) {
+            try (InputStream body = exchange.getRequestBody()) {
+                parse(new String(body.readAllBytes(), StandardCharsets.UTF_8), parameters);
+            }
+        }
+        return parameters;
+    }
+
+    private static void parse(String query, Map<String, String> parameters) {
+        if (query == null || query.isEmpty()) {
+            return;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String key = URLDecoder.decode(equals >= 0 ? pair.substring(0, equals) : pair, StandardCharsets.UTF_8);
+            String value = equals >= 0 ? URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8) : "";
+            parameters.put(key, value);
+        }
+    }
+
+    private Response status(Map<String, String> parameters) {
+        WorldSnapshot snapshot = runner.getSnapshot();
+        TickScheduler scheduler = runner.getScheduler();
+        return Response.ok("{\"running\":" + runner.isRunning() + ",\"paused\":" + runner.isPaused()
+                + ",\"year\":" + snapshot.getYear() + ",\"species\":" + snapshot.size()
+                + ",\"rate\":" + scheduler.getRate() + ",\"achievedRate\":" + scheduler.getAchievedRate()
+                + ",\"meanYearMillis\":" + scheduler.getMeanTickMillis() + ",\"overruns\":" + scheduler.getOverruns()
+                + ",\"totals\":" + totalsJson(snapshot) + "}");
+    }
+
+    // Итоги категорий снимка; не зависит от количества видов
+    private static String totalsJson(WorldSnapshot snapshot) {
+        StringBuilder json = new StringBuilder("{");
+        for (Category category : Category.values()) {
+            json.append(json.length() > 1 ? "," : "").append('"').append(category).append("\":").append(snapshot.total(category));
+        }
+        return json.append('}').toString();
+    }
+
+    private Response population(Map<String, String> parameters) {
+        WorldSnapshot snapshot = runner.getSnapshot();
+        String category = parameters.get("category");
+        if (category != null) {
+            return new Response(200, populationJson(snapshot, Category.of(category)));
+        }
+        CachedBody cached = population.get();
+        if (cached == null || cached.snapshot != snapshot) {
+            cached = new CachedBody(snapshot, populationJson(snapshot, null));
+            population.set(cached); // Гонка безопасна: одинаковые снимки дают одинаковый JSON
+        }
+        return new Response(200, cached.body);
+    }
+
+    private static byte[] populationJson(WorldSnapshot snapshot, Category only) {
+        StringBuilder json = new StringBuilder(64 + snapshot.size() * 48);
+        json.append("{\"year\":").append(snapshot.getYear())
+                .append(",\"temperature\":").append(snapshot.getTemperature())
+                .append(",\"water\":").append(snapshot.getAccessibleWater())
+                .append(",\"humidity\":").append(snapshot.getHumidityPercentage())
+                .append(",\"totals\":{");
+        boolean first = true;
+        for (Category category : Category.values()) {
+            if (only == null || only == category) {
+                json.append(first ? "" : ",").append('"').append(category).append("\":").append(snapshot.total(category));
+                first = false;
+            }
+        }
+        json.append("},\"species\":[");
+        first = true;
+        for (Category category : Category.values()) {
+            if (only != null && only != category) {
+                continue;
+            }
+            for (int i = 0; i < snapshot.getMemberCount(category); i++) {
+                int id = snapshot.getMember(category, i);
+                if (!snapshot.isAlive(id)) {
+                    continue;
+                }
+                json.append(first ? "" : ",").append("{\"id\":").append(id)
+                        .append(",\"category\":\"").append(category)
+                        .append("\",\"name\":").append(quote(snapshot.getName(id)))
+                        .append(",\"count\":").append(snapshot.getCount(id)).append('}');
+                first = false;
+            }
+        }
+        json.append("]}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Response history(Map<String, String> parameters) {
+        String name = required(parameters, "species").toUpperCase();
+        WorldSnapshot snapshot = runner.getSnapshot();
+        int id = -1;
+        String category = parameters.get("category");
+        if (category != null) {
+            id = snapshot.find(Category.of(category), name);
+        } else {
+            for (Category candidate : Category.values()) {
+                if ((id = snapshot.find(candidate, name)) >= 0) {
+                    break;
+                }
+            }
+        }
+        if (id < 0 || !history.hasSpecies(id)) {
+            return Response.error(404, "No history for " + name);
+        }
+        int from = integer(parameters, "from", Integer.MIN_VALUE);
+        int to = integer(parameters, "to", Integer.MAX_VALUE);
+        int step = integer(parameters, "step", 0);
+        if (step == 0) {
+            long span = (long) Math.min(to, history.getLastYear()) - Math.max(from, history.getFirstYear());
+            step = (int) Math.max(1, span / DEFAULT_HISTORY_POINTS + 1);
+        }
+        PopulationHistory.Series series = history.query(id, from, to, step);
+        StringBuilder json = new StringBuilder("{\"species\":").append(quote(name)).append(",\"step\":").append(step).append(",\"points\":[");
+        for (int i = 0; series != null && i < series.size(); i++) {
+            json.append(i == 0 ? "" : ",").append("{\"year\":").append(series.getYears()[i])
+                    .append(",\"value\":").append(series.getValues()[i])
+                    .append(",\"min\":").append(series.getMin()[i])
+                    .append(",\"max\":").append(series.getMax()[i])
+                    .append(",\"mean\":").append(series.getMean()[i]).append('}');
+        }
+        return Response.ok(json.append("]}").toString());
+    }
+
+    private Response start(Map<String, String> parameters) {
+        if (!runner.start()) {
+            throw new IllegalStateException("Simulation is already running.");
+        }
+        return status(parameters);
+    }
+
+    private Response stop(Map<String, String> parameters) {
+        if (!runner.stop()) {
+            throw new IllegalStateException("Simulation is not running.");
+        }
+        return status(parameters);
+    }
+
+    private Response pause(Map<String, String> parameters) {
+        if (!runner.pause()) {
+            throw new IllegalStateException(runner.isRunning() ? "Simulation is already paused." : "Simulation is not running.");
+        }
+        return status(parameters);
+    }
+
+    private Response resume(Map<String, String> parameters) {
+        if (!runner.resume()) {
+            throw new IllegalStateException(runner.isRunning() ? "Simulation is not paused." : "Simulation is not running.");
+        }
+        return status(parameters);
+    }
+
+    private Response speed(Map<String, String> parameters) {
+        String rate = required(parameters, "rate").trim();
+        try {
+            runner.setRate(rate.equalsIgnoreCase("max") ? 0 : Double.parseDouble(rate));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for rate: " + rate);
+        }
+        return status(parameters);
+    }
+
+    private Response step(Map<String, String> parameters) {
+        runner.step(integer(parameters, "years", 1));
+        return status(parameters);
+    }
+
+    private Response conditions(Map<String, String> parameters) {
+        WorldSnapshot snapshot = runner.getSnapshot();
+        runner.changeConditions(integer(parameters, "temperature", snapshot.getTemperature()),
+                integer(parameters, "water", snapshot.getAccessibleWater()),
+                integer(parameters, "humidity", snapshot.getHumidityPercentage()));
+        WorldSnapshot updated = runner.getSnapshot();
+        return Response.ok("{\"temperature\":" + updated.getTemperature() + ",\"water\":" + updated.getAccessibleWater()
+                + ",\"humidity\":" + updated.getHumidityPercentage() + "}");
+    }
+
+    private Response species(Map<String, String> parameters) {
+        String category = Category.of(required(parameters, "category")).name();
+        String name = required(parameters, "name").trim().toUpperCase();
+        if (name.isEmpty() || name.indexOf(',') >= 0) {
+            throw new IllegalArgumentException("Invalid species name: " + name);
+        }
+        long count = number(parameters, "count");
+        runner.addSpecies(category, name, count, integer(parameters, "temperature", 0),
+                integer(parameters, "water", 0), integer(parameters, "humidity", 0));
+        return Response.ok("{\"category\":\"" + category + "\",\"name\":" + quote(name) + ",\"count\":" + Math.max(count, 0) + "}");
+    }
+
+    private Response save(Map<String, String> parameters) {
+        String path = required(parameters, "path");
+        runner.save(path);
+        return Response.ok("{\"path\":" + quote(path) + "}");
+    }
+
+    private static String required(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    private static long number(Map<String, String> parameters, String name) {
+        String value = required(parameters, name);
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + name + ": " + value);
+        }
+    }
+
+    private static int integer(Map<String, String> parameters, String name, int defaultValue) {
+        String value = parameters.get(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + name + ": " + value);
+        }
+    }
+
+    // Строка JSON с экранированием
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static final class CachedBody {
+        private final WorldSnapshot snapshot;
+        private final byte[] body;
+
+        private CachedBody(WorldSnapshot snapshot, byte[] body) {
+            this.snapshot = snapshot;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,563 @@
+package first.second.third.ecosystem.engine;
+
+import first.second.third.ecosystem.entity.animal.CreatureBehavior;
+import first.second.third.ecosystem.entity.animal.DecomposerBehavior;
+import first.second.third.ecosystem.entity.animal.HerbivoreBehavior;
+import first.second.third.ecosystem.entity.animal.PlantBehavior;
+import first.second.third.ecosystem.entity.animal.PredatorBehavior;
+import first.second.third.ecosystem.entity.parameters.Category;
+import first.second.third.ecosystem.entity.parameters.WorldConditions;
+import first.second.third.ecosystem.population.AgentStore;
+import first.second.third.ecosystem.population.FoodWeb;
+import first.second.third.ecosystem.population.PopulationStore;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGenerator.SplittableGenerator;
+
+/**
+ * Режим особей: вместо численности вида моделируется каждая особь со своим
+ * возрастом и запасом энергии (хранятся вне кучи в AgentStore).
+ * Год считается двумя параллельными проходами по блокам особей:
+ * 1) особь умирает с вероятностью deathChance своего вида, выжившая даёт
+ * потомка с вероятностью birthChance, стареет и тратит энергию metabolism;
+ * особь с исчерпанным запасом голодна;
+ * 2) голодная особь выбирает жертву по тем же правилам, что вид в TickEngine
+ * (по весам рациона или равновероятно среди живых видов категории пищи),
+ * и съедает её с вероятностью, равной доле покрытого спроса на эту жертву,
+ * иначе умирает от голода (как и её потомок этого года). Спрос на жертву -
+ * ожидаемое число голодных особей, выбравших её; как и в TickEngine,
+ * съеденные особи не вычитаются из численности жертвы, она лишь ограничивает
+ * улов. Выжившие сдвигаются к началу блока, потомки занимают освободившиеся
+ * места блока, а не поместившиеся запоминаются отдельно; затем блоки
+ * по порядку сдвигаются вплотную друг к другу, и лишние потомки дописываются
+ * в конец, так что мёртвых мест в хранилище между годами нет.
+ * Каждый блок получает свой поток случайных чисел, отщеплённый от генератора
+ * в порядке блоков, а итоги видов копятся по рабочим потокам и складываются,
+ * поэтому при одинаковом зерне результат не зависит от числа потоков.
+ * Память кучи не зависит от числа особей: массивы по видам и по блокам.
+ * Вызывающий должен держать монитор хранилища, чтобы набор видов не менялся.
+ */
+public class AgentEngine implements AutoCloseable {
+
+    // Особей в блоке с собственным потоком случайных чисел; страница хранилища делится на блоки нацело
+    static final int CHUNK = 1 << 16;
+    // Больше особей номера блоков не адресуют
+    public static final long MAX_AGENTS = (long) Integer.MAX_VALUE * CHUNK;
+    // Энергия сытой особи: столько даёт одна съеденная жертва и столько у новорождённой
+    private static final float FULL_ENERGY = 1;
+
+    // Проходы по блокам
+    private static final int CREATE = 0;
+    private static final int LIVE = 1;
+    private static final int FEED = 2;
+
+    private static final int CATEGORIES = Category.values().length;
+
+    private final PopulationStore store;
+    private final ForkJoinPool pool;
+    private final CreatureBehavior[] behaviors = new CreatureBehavior[CATEGORIES];
+    private final AgentStore agents;
+    private final Worker[] workers;
+    private final AtomicInteger nextChunk = new AtomicInteger();
+
+    private int size; // Количество видов с последнего reset
+    // Численность видов, совпадает с числом особей каждого вида
+    private long[] counts = new long[0];
+    private byte[] categories = new byte[0];
+    private byte[] consumed = new byte[0]; // Категория пищи вида
+    private boolean[] preyAlive = new boolean[0]; // Жив на начало года - кандидат в жертвы
+    // Вероятности и расход энергии видов текущего года
+    private double[] deathChances = new double[0];
+    private double[] birthChances = new double[0];
+    private float[] metabolism = new float[0];
+    private long[] starts = new long[0]; // Первая особь каждого вида при создании
+    // Итоги первого прохода по видам и распределение пищи
+    private long[] deaths = new long[0];
+    private long[] births = new long[0];
+    private long[] hungry = new long[0];
+    private double[] demand = new double[0]; // Ожидаемый спрос на вид как на жертву
+    private double[] fed = new double[0]; // Доля спроса на вид, которую он покрывает
+    private final double[] uniformDemand = new double[CATEGORIES];
+    // Живые виды каждой категории на начало года - кандидаты в жертвы
+    private final int[][] alive = new int[CATEGORIES][0];
+    private final int[] aliveCounts = new int[CATEGORIES];
+    private final PreySampler sampler = new PreySampler();
+    private FoodWeb foodWeb;
+
+    // Блоки текущего прохода
+    private int chunks;
+    private SplittableGenerator[] chunkRandoms = new SplittableGenerator[0];
+    private int[] lengths = new int[0]; // Особей в блоке после второго прохода
+    private int[][] overflow = new int[0][]; // Виды потомков, не поместившихся в блок
+    private int[] overflowCounts = new int[0];
+
+    // Статистика с последнего reset
+    @Getter
+    private long years;
+    @Getter
+    private long totalBirths;
+    @Getter
+    private long totalDeaths;
+    @Getter
+    private long totalHungerDeaths;
+
+    /**
+     * @param pool Пул для проходов по блокам; null - расчёт в вызывающем потоке.
+     * @param directory Каталог файла особей; null - системный временный каталог.
+     */
+    public AgentEngine(PopulationStore store, ForkJoinPool pool, Path directory) throws IOException {
+        this.store = store;
+        this.pool = pool;
+        this.agents = new AgentStore(directory);
+        workers = new Worker[pool != null ? Math.max(1, pool.getParallelism()) : 1];
+        behaviors[Category.PREDATOR.ordinal()] = new PredatorBehavior();
+        behaviors[Category.HERBIVORE.ordinal()] = new HerbivoreBehavior();
+        behaviors[Category.PLANT.ordinal()] = new PlantBehavior();
+        behaviors[Category.DECOMPOSER.ordinal()] = new DecomposerBehavior();
+    }
+
+    /**
+     * Создаёт особей по численностям видов: возраст 0, запас энергии
+     * равномерно случаен, чтобы голод наступал не у всех в один год.
+     */
+    public void reset(long[] counts, SplittableGenerator random) throws IOException {
+        size = store.size();
+        if (starts.length < size + 1) {
+            this.counts = new long[size];
+            categories = new byte[size];
+            consumed = new byte[size];
+            preyAlive = new boolean[size];
+            deathChances = new double[size];
+            birthChances = new double[size];
+            metabolism = new float[size];
+            starts = new long[size + 1];
+            deaths = new long[size];
+            births = new long[size];
+            hungry = new long[size];
+            demand = new double[size];
+            fed = new double[size];
+        }
+        long total = 0;
+        for (int id = 0; id < size; id++) {
+            categories[id] = (byte) store.getCategory(id).ordinal();
+            consumed[id] = (byte) store.getCategory(id).getConsumed().ordinal();
+            this.counts[id] = Math.max(counts[id], 0);
+            starts[id] = total;
+            total += this.counts[id];
+            if (total > MAX_AGENTS || total < 0) {
+                throw new IllegalArgumentException("Too many agents: more than " + MAX_AGENTS);
+            }
+        }
+        starts[size] = total;
+        for (int w = 0; w < workers.length; w++) {
+            workers[w] = new Worker(size);
+        }
+        agents.ensureCapacity(total);
+        agents.setSize(total);
+        years = 0;
+        totalBirths = 0;
+        totalDeaths = 0;
+        totalHungerDeaths = 0;
+        prepareChunks(random);
+        runPass(CREATE);
+    }
+
+    /**
+     * Один год всех особей при условиях мира; численности видов после него - в getCount.
+     */
+    public void advance(WorldConditions worldConditions, SplittableGenerator random) throws IOException {
+        for (int id = 0; id < size; id++) {
+            CreatureBehavior behavior = behaviors[categories[id]];
+            deathChances[id] = behavior.deathChance(store.getExtinctionFactor(id, worldConditions));
+            birthChances[id] = behavior.birthChance(counts[id], store.getBirthFactor(id, worldConditions));
+            metabolism[id] = behavior.metabolism();
+        }
+        collectAlive();
+        foodWeb = store.getFoodWeb();
+        sampler.refresh(foodWeb, counts);
+        prepareChunks(random);
+        for (Worker worker : workers) {
+            worker.clear();
+        }
+        runPass(LIVE);
+        distributeFood();
+        runPass(FEED);
+        compact();
+        long lost = 0;
+        for (Worker worker : workers) {
+            for (int id = 0; id < size; id++) {
+                counts[id] -= worker.hungerDeaths[id] + worker.lostBirths[id];
+                totalHungerDeaths += worker.hungerDeaths[id];
+                lost += worker.lostBirths[id];
+            }
+        }
+        long total = 0;
+        for (int id = 0; id < size; id++) {
+            total += counts[id];
+        }
+        if (total != agents.size()) {
+            throw new IllegalStateException("Agent count " + agents.size() + " does not match species total " + total);
+        }
+        totalBirths -= lost;
+        years++;
+    }
+
+    // Численность вида после последнего года
+    public long getCount(int id) {
+        return counts[id];
+    }
+
+    // Численности в target; виды сверх размера хранилища обнуляются
+    public void copyCounts(long[] target) {
+        System.arraycopy(counts, 0, target, 0, size);
+        Arrays.fill(target, size, target.length, 0);
+    }
+
+    public long getAgentCount() {
+        return agents.size();
+    }
+
+    // Байт вне кучи, отображённых под особей
+    public long getMappedBytes() {
+        return agents.getMappedBytes();
+    }
+
+    // Средний возраст и запас энергии особей по категориям
+    public void printReport(PrintStream out) {
+        long[] population = new long[CATEGORIES];
+        double[] ages = new double[CATEGORIES];
+        double[] energy = new double[CATEGORIES];
+        for (long start = 0; start < agents.size(); start += CHUNK) {
+            AgentStore.Page page = agents.page(start);
+            int from = AgentStore.offset(start);
+            int to = from + (int) Math.min(CHUNK, agents.size() - start);
+            for (int i = from; i < to; i++) {
+                int category = categories[page.getSpecies(i)];
+                population[category]++;
+                ages[category] += page.getAge(i);
+                energy[category] += page.getEnergy(i);
+            }
+        }
+        out.printf("Agents: %d in %d pages (%.1f MB off-heap)%n", agents.size(), agents.getPageCount(),
+                agents.getMappedBytes() / (1024.0 * 1024.0));
+        for (Category category : Category.values()) {
+            int c = category.ordinal();
+            if (population[c] > 0) {
+                out.printf("  %s: %d agents, mean age %.2f, mean energy %.3f%n",
+                        category, population[c], ages[c] / population[c], energy[c] / population[c]);
+            }
+        }
+        out.printf("Over %d years: %d births, %d deaths, %d hunger deaths%n", years, totalBirths, totalDeaths, totalHungerDeaths);
+    }
+
+    @Override
+    public void close() throws IOException {
+        agents.close();
+    }
+
+    // Списки живых видов по категориям, как в TickEngine
+    private void collectAlive() {
+        for (Category category : Category.values()) {
+            int ordinal = category.ordinal();
+            int members = store.getMemberCount(category);
+            if (alive[ordinal].length < members) {
+                alive[ordinal] = new int[members];
+            }
+            int count = 0;
+            for (int i = 0; i < members; i++) {
+                int id = store.getMember(category, i);
+                preyAlive[id] = counts[id] > 0;
+                if (preyAlive[id]) {
+                    alive[ordinal][count++] = id;
+                }
+            }
+            aliveCounts[ordinal] = count;
+        }
+    }
+
+    // Блоки текущего числа особей и их генераторы
+    private void prepareChunks(SplittableGenerator random) {
+        chunks = (int) ((agents.size() + CHUNK - 1) / CHUNK);
+        if (chunkRandoms.length < chunks) {
+            int capacity = Math.max(chunks, chunkRandoms.length * 2);
+            chunkRandoms = new SplittableGenerator[capacity];
+            lengths = new int[capacity];
+            overflow = Arrays.copyOf(overflow, capacity);
+            overflowCounts = new int[capacity];
+        }
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            chunkRandoms[chunk] = random.split();
+        }
+    }
+
+    // Проход по всем блокам рабочими потоками; блоки раздаются по одному
+    private void runPass(int pass) {
+        nextChunk.set(0);
+        int active = Math.min(workers.length, chunks);
+        if (active <= 1) {
+            workers[0].run(pass);
+            return;
+        }
+        pool.invoke(new PassTask(pass, 0, active));
+    }
+
+    /**
+     * Ожидаемый спрос голодных особей на каждую жертву и доля спроса,
+     * которую жертва покрывает своей численностью после смертей и рождений.
+     */
+    private void distributeFood() {
+        Arrays.fill(deaths, 0, size, 0);
+        Arrays.fill(births, 0, size, 0);
+        Arrays.fill(hungry, 0, size, 0);
+        for (Worker worker : workers) {
+            for (int id = 0; id < size; id++) {
+                deaths[id] += worker.deaths[id];
+                births[id] += worker.births[id];
+                hungry[id] += worker.hungry[id];
+            }
+        }
+        Arrays.fill(demand, 0, size, 0);
+        Arrays.fill(uniformDemand, 0);
+        for (int id = 0; id < size; id++) {
+            counts[id] += births[id] - deaths[id];
+            totalDeaths += deaths[id];
+            totalBirths += births[id];
+            if (hungry[id] == 0) {
+                continue;
+            }
+            if (foodWeb.hasDiet(id)) {
+                double weights = 0;
+                for (int edge = foodWeb.dietStart(id); edge < foodWeb.dietEnd(id); edge++) {
+                    if (preyAlive[foodWeb.getPrey(edge)]) {
+                        weights += foodWeb.getWeight(edge);
+                    }
+                }
+                for (int edge = foodWeb.dietStart(id); edge < foodWeb.dietEnd(id) && weights > 0; edge++) {
+                    int prey = foodWeb.getPrey(edge);
+                    if (preyAlive[prey]) {
+                        demand[prey] += hungry[id] * foodWeb.getWeight(edge) / weights;
+                    }
+                }
+            } else {
+                int food = consumed[id];
+                if (aliveCounts[food] > 0) {
+                    uniformDemand[food] += (double) hungry[id] / aliveCounts[food];
+                }
+            }
+        }
+        for (int id = 0; id < size; id++) {
+            double total = demand[id] + uniformDemand[categories[id]];
+            fed[id] = total <= counts[id] ? 1 : counts[id] / total;
+        }
+    }
+
+    // Сдвигает блоки вплотную и дописывает не поместившихся в блоки потомков
+    private void compact() throws IOException {
+        long target = 0;
+        long extra = 0;
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            long start = (long) chunk * CHUNK;
+            if (target != start) {
+                agents.move(start, target, lengths[chunk]);
+            }
+            target += lengths[chunk];
+            extra += overflowCounts[chunk];
+        }
+        agents.ensureCapacity(target + extra);
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            for (int i = 0; i < overflowCounts[chunk]; i++) {
+                agents.set(target++, overflow[chunk][i], 0, FULL_ENERGY, AgentStore.ALIVE);
+            }
+            overflowCounts[chunk] = 0;
+        }
+        agents.setSize(target);
+    }
+
+    // Рабочий поток: итоги видов за проход копятся в его собственных массивах
+    private class Worker {
+        private final long[] deaths;
+        private final long[] births;
+        private final long[] hungry;
+        private final long[] hungerDeaths;
+        private final long[] lostBirths; // Потомки умерших от голода
+
+        Worker(int size) {
+            deaths = new long[size];
+            births = new long[size];
+            hungry = new long[size];
+            hungerDeaths = new long[size];
+            lostBirths = new long[size];
+        }
+
+        void clear() {
+            Arrays.fill(deaths, 0);
+            Arrays.fill(births, 0);
+            Arrays.fill(hungry, 0);
+            Arrays.fill(hungerDeaths, 0);
+            Arrays.fill(lostBirths, 0);
+        }
+
+        void run(int pass) {
+            int chunk;
+            while ((chunk = nextChunk.getAndIncrement()) < chunks) {
+                long start = (long) chunk * CHUNK;
+                AgentStore.Page page = agents.page(start);
+                int from = AgentStore.offset(start);
+                int to = from + (int) Math.min(CHUNK, agents.size() - start);
+                RandomGenerator random = chunkRandoms[chunk];
+                switch (pass) {
+                    case CREATE:
+                        create(page, start, from, to, random);
+                        break;
+                    case LIVE:
+                        live(page, from, to, random);
+                        break;
+                    default:
+                        lengths[chunk] = feed(chunk, page, from, to, random);
+                        break;
+                }
+            }
+        }
+
+        private void create(AgentStore.Page page, long start, int from, int to, RandomGenerator random) {
+            // Вид первой особи блока - последний, начинающийся не позже неё
+            int id = Arrays.binarySearch(starts, 0, size + 1, start);
+            id = id >= 0 ? id : -id - 2;
+            long index = start;
+            for (int i = from; i < to; i++, index++) {
+                while (index >= starts[id + 1]) {
+                    id++;
+                }
+                page.setSpecies(i, id);
+                page.setAge(i, 0);
+                page.setEnergy(i, 1 - random.nextFloat()); // (0; 1]
+                page.setFlags(i, AgentStore.ALIVE);
+            }
+        }
+
+        // Первый проход: смерть, рождение, возраст и расход энергии
+        private void live(AgentStore.Page page, int from, int to, RandomGenerator random) {
+            for (int i = from; i < to; i++) {
+                int id = page.getSpecies(i);
+                if (random.nextDouble() < deathChances[id]) {
+                    page.setFlags(i, AgentStore.DEAD);
+                    deaths[id]++;
+                    continue;
+                }
+                if (birthChances[id] > 0 && random.nextDouble() < birthChances[id]) {
+                    page.setFlags(i, (byte) (AgentStore.ALIVE | AgentStore.PARENT));
+                    births[id]++;
+                }
+                page.setAge(i, page.getAge(i) + 1);
+                float energy = page.getEnergy(i) - metabolism[id];
+                page.setEnergy(i, energy);
+                if (energy <= 0) {
+                    hungry[id]++;
+                }
+            }
+        }
+
+        /**
+         * Второй проход: питание голодных, сдвиг выживших к началу блока
+         * и размещение потомков.
+         *
+         * @return Количество особей блока после прохода.
+         */
+        private int feed(int chunk, AgentStore.Page page, int from, int to, RandomGenerator random) {
+            int write = from;
+            for (int i = from; i < to; i++) {
+                byte flags = page.getFlags(i);
+                if (flags == AgentStore.DEAD) {
+                    continue;
+                }
+                int id = page.getSpecies(i);
+                float energy = page.getEnergy(i);
+                if (energy <= 0) {
+                    int prey = choosePrey(id, random);
+                    if (prey < 0 || random.nextDouble() >= fed[prey]) {
+                        hungerDeaths[id]++;
+                        if ((flags & AgentStore.PARENT) != 0) {
+                            lostBirths[id]++;
+                        }
+                        continue;
+                    }
+                    energy += FULL_ENERGY;
+                }
+                if (write != i) {
+                    page.setSpecies(write, id);
+                    page.setAge(write, page.getAge(i));
+                    page.setFlags(write, flags);
+                }
+                page.setEnergy(write, energy);
+                write++;
+            }
+            int survivors = write;
+            for (int i = from; i < survivors; i++) {
+                if ((page.getFlags(i) & AgentStore.PARENT) == 0) {
+                    continue;
+                }
+                page.setFlags(i, AgentStore.ALIVE);
+                int id = page.getSpecies(i);
+                if (write < to) {
+                    page.setSpecies(write, id);
+                    page.setAge(write, 0);
+                    page.setEnergy(write, FULL_ENERGY);
+                    page.setFlags(write, AgentStore.ALIVE);
+                    write++;
+                } else {
+                    addOverflow(chunk, id);
+                }
+            }
+            return write - from;
+        }
+
+        private int choosePrey(int id, RandomGenerator random) {
+            if (foodWeb.hasDiet(id)) {
+                return sampler.sample(id, random);
+            }
+            int food = consumed[id];
+            return behaviors[categories[id]].choosePrey(alive[food], aliveCounts[food], random);
+        }
+
+        private void addOverflow(int chunk, int id) {
+            int[] list = overflow[chunk];
+            if (list == null || overflowCounts[chunk] == list.length) {
+                overflow[chunk] = list = Arrays.copyOf(list != null ? list : new int[0], Math.max(16, overflowCounts[chunk] * 2));
+            }
+            list[overflowCounts[chunk]++] = id;
+        }
+    }
+
+    // Запуск рабочих [from, to) на проход делением диапазона пополам
+    private class PassTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int pass;
+        private final int from;
+        private final int to;
+
+        PassTask(int pass, int from, int to) {
+            this.pass = pass;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                workers[from].run(pass);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new PassTask(pass, from, middle), new PassTask(pass, middle, to));
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package first.second.third.ecosystem.engine;
+
+import first.second.third.ecosystem.entity.parameters.WorldConditions;
+import first.second.third.ecosystem.event.ConsoleEventSink;
+import first.second.third.ecosystem.event.EventLevel;
+import first.second.third.ecosystem.event.EventPipeline;
+import first.second.third.ecosystem.event.FileEventSink;
+import first.second.third.ecosystem.fileprocessor.EcoSystemFileProcessor;
+import first.second.third.ecosystem.fileprocessor.MutationJournal;
+import first.second.third.ecosystem.kernel.KernelCheck;
+import first.second.third.ecosystem.kernel.SpeciesKernel;
+import first.second.third.ecosystem.metrics.FlightRecording;
+import first.second.third.ecosystem.metrics.SimulationMetrics;
+import first.second.third.ecosystem.population.WorldSnapshot;
+import first.second.third.ecosystem.util.CommandLineOptions;
+import first.second.third.ecosystem.util.SimulationRandom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.random.RandomGenerator.SplittableGenerator;
+
+// Пакетный режим: прогон заданного числа лет на полной скорости; действия выводятся только по --events
+public class BatchSimulation {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchSimulation.class);
+    // На сколько лет вперёд заранее строятся таблицы факторов расписания климата
+    private static final long SCHEDULE_COMPILE_YEARS = 100_000;
+
+    private final CommandLineOptions options;
+    private final EcoSystemFileProcessor processor;
+    private final WorldConditions worldConditions;
+    // Запись JFR по --record; в пакетном режиме охватывает и загрузку, и сохранение мира
+    private final FlightRecording recording = new FlightRecording();
+
+    public BatchSimulation(CommandLineOptions options) {
+        this.options = options;
+        this.processor = EcoSystemFileProcessor.getInstance();
+        this.worldConditions = WorldConditions.getInstance();
+    }
+
+    /**
+     * Выполняет прогон выбранного режима.
+     *
+     * @return false, если прогон не состоялся (мир не загрузился, журнал не открылся,
+     * ядра разошлись); вызывающий завершает процесс с ненулевым кодом.
+     */
+    public boolean run() throws InterruptedException {
+        if (options.getMode() == CommandLineOptions.Mode.KERNEL_CHECK) {
+            return new KernelCheck(options.getCheckSpecies(), createRandom()).run(System.out);
+        }
+        if (options.getMode() != CommandLineOptions.Mode.BATCH) {
+            if (!loadWorld()) {
+                return false;
+            }
+            switch (options.getMode()) {
+                case ENSEMBLE:
+                    runEnsemble();
+                    break;
+                case GRID:
+                    runGrid();
+                    break;
+                case COMPARE:
+                    runComparison();
+                    break;
+                default:
+                    runSweep();
+                    break;
+            }
+            return true;
+        }
+        startRecording();
+        try {
+            MutationJournal journal = null;
+            if (options.getJournalDirectory() != null) {
+                journal = openJournal();
+                if (journal == null) {
+                    return false; // Журнал не открылся или мир не загрузился
+                }
+            } else if (!loadWorld()) {
+                return false;
+            }
+            try (EventPipeline events = createEvents()) {
+                if (options.isMeanField()) {
+                    runMeanField(events);
+                } else if (options.isAgents()) {
+                    runAgents(events);
+                } else {
+                    runYears(events, journal);
+                }
+            } finally {
+                if (journal != null) {
+                    journal.close();
+                }
+            }
+            return true;
+        } finally {
+            recording.stop(); // Запись дольше прогона сохраняется по его окончании
+        }
+    }
+
+    // Загрузка файла мира; без него прогон пустого мира ничего не значит
+    private boolean loadWorld() {
+        if (processor.loadWorld(options.getWorldFile())) {
+            return true;
+        }
+        System.out.println("Batch run aborted: world file " + options.getWorldFile() + " could not be loaded");
+        logger.error("Batch run aborted: world file {} could not be loaded", options.getWorldFile());
+        return false;
+    }
+
+    private void startRecording() {
+        if (options.getRecordFile() == null) {
+            return;
+        }
+        try {
+            recording.start(options.getRecordYears() > 0 ? options.getRecordYears() : Long.MAX_VALUE, Path.of(options.getRecordFile()));
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Error starting flight recording: " + e.getMessage());
+            logger.error("Error starting flight recording: {}", e.getMessage());
+        }
+    }
+
+    // Открывает журнал: восстанавливает из него мир или загружает файл мира; null - прогон невозможен
+    private MutationJournal openJournal() {
+        MutationJournal journal = new MutationJournal(Path.of(options.getJournalDirectory()), processor.getStore(),
+                worldConditions, options.getCompactionInterval());
+        try {
+            // Мир загружается до открытия журнала: неудачная загрузка не оставляет в каталоге снимок пустого мира
+            if (!journal.exists() && !loadWorld()) {
+                return null;
+            }
+            if (journal.open()) {
+                System.out.println("Resuming from journal " + options.getJournalDirectory() + " at year " + worldConditions.getYear());
+                logger.info("Batch simulation resumed from journal {} at year {}", options.getJournalDirectory(), worldConditions.getYear());
+            }
+            processor.setJournal(journal);
+            return journal;
+        } catch (IOException e) {
+            System.out.println("Error opening journal: " + e.getMessage());
+            logger.error("Error opening journal {}: {}", options.getJournalDirectory(), e.getMessage());
+            return null;
+        }
+    }
+
+    private void runYears(EventPipeline events, MutationJournal journal) {
+        SimulationEngine engine = new SimulationEngine(processor, worldConditions, events, createRandom());
+        engine.setJournal(journal);
+        engine.setRecording(recording);
+        if (options.isKernel()) {
+            SpeciesKernel kernel = SpeciesKernel.getInstance();
+            engine.setKernel(kernel);
+            System.out.println("Species kernel: " + kernel.getName());
+        }
+        if (worldConditions.getSchedule() != null) {
+            long rows = engine.precompileSchedule((int) Math.min(options.getYears(), SCHEDULE_COMPILE_YEARS));
+            System.out.println("Climate schedule: " + rows + " factor rows precompiled");
+            logger.info("Climate schedule: {} factor rows precompiled", rows);
+        }
+        SimulationMetrics metrics = null;
+        if (options.isMetrics()) {
+            metrics = SimulationMetrics.getInstance();
+            metrics.setEnabled(true);
+            engine.setMetrics(metrics);
+        }
+        logger.info("Batch simulation started: {} years from {}", options.getYears(), options.getWorldFile());
+
+        long checkpoint = options.getCheckpointInterval();
+        long started = System.nanoTime();
+        for (long year = 1; year <= options.getYears(); year++) {
+            engine.advanceYear();
+            if (checkpoint > 0 && year % checkpoint == 0) {
+                events.flush(); // Строка итогов не должна перемешиваться с событиями
+                System.out.println(engine.checkpointLine());
+            }
+        }
+        events.flush();
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        engine.printSummary(System.out);
+        System.out.printf("Simulated %d years in %.3f s (%.0f years/s)%n",
+                options.getYears(), seconds, seconds > 0 ? options.getYears() / seconds : 0.0);
+        if (metrics != null) {
+            metrics.printReport(System.out);
+        }
+        logger.info("Batch simulation finished at year {} in {} s", worldConditions.getYear(), seconds);
+
+        if (options.getOutputFile() != null) {
+            processor.saveWorld(WorldSnapshot.capture(processor.getStore(), worldConditions), options.getOutputFile());
+        }
+    }
+
+    // Прогон расчётом средних: сообщения о действиях и журнал не ведутся, шаг может охватывать несколько лет
+    private void runMeanField(EventPipeline events) {
+        SimulationEngine summary = new SimulationEngine(processor, worldConditions, events, createRandom()); // Для сводок
+        MeanFieldEngine engine = new MeanFieldEngine(processor.getStore());
+        engine.setTolerance(options.getTolerance());
+        logger.info("Mean-field simulation started: {} years from {}", options.getYears(), options.getWorldFile());
+
+        long checkpoint = options.getCheckpointInterval();
+        long started = System.nanoTime();
+        synchronized (processor.getStore()) {
+            engine.reset(processor.getStore().getCounts());
+            int startYear = worldConditions.getYear();
+            long year = 0;
+            while (year < options.getYears()) {
+                // Шаг не перескакивает контрольную точку
+                long limit = options.getYears() - year;
+                if (checkpoint > 0) {
+                    limit = Math.min(limit, checkpoint - year % checkpoint);
+                }
+                // По расписанию климата условия меняются каждый год: шаг в один год
+                worldConditions.setYear((int) (startYear + year));
+                if (worldConditions.applySchedule()) {
+                    limit = 1;
+                }
+                year += engine.advance(worldConditions, (int) Math.min(limit, Integer.MAX_VALUE));
+                if (checkpoint > 0 && year % checkpoint == 0) {
+                    commitMeanField(engine, (int) (startYear + year));
+                    System.out.println(summary.checkpointLine());
+                }
+            }
+            commitMeanField(engine, (int) (startYear + year));
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        summary.printSummary(System.out);
+        System.out.printf("Simulated %d years in %.3f s with the mean-field model (%d steps)%n",
+                options.getYears(), seconds, engine.getSteps());
+        logger.info("Mean-field simulation finished at year {} in {} s, {} steps", worldConditions.getYear(), seconds, engine.getSteps());
+
+        if (options.getOutputFile() != null) {
+            processor.saveWorld(WorldSnapshot.capture(processor.getStore(), worldConditions), options.getOutputFile());
+        }
+    }
+
+    // Записывает округлённые численности расчёта средних в хранилище
+    private void commitMeanField(MeanFieldEngine engine, int year) {
+        long[] next = new long[processor.getStore().getCounts().length];
+        engine.copyCounts(next);
+        processor.getStore().swapCounts(next);
+        worldConditions.setYear(year);
+        worldConditions.applySchedule();
+    }
+
+    // Прогон в режиме особей: сообщения о действиях и журнал не ведутся, численности видов - число их особей
+    private void runAgents(EventPipeline events) {
+        SimulationEngine summary = new SimulationEngine(processor, worldConditions, events, createRandom()); // Для сводок
+        SplittableGenerator random = createRandom();
+        Path directory = options.getAgentDirectory() != null ? Path.of(options.getAgentDirectory()) : null;
+        logger.info("Agent simulation started: {} years from {}", options.getYears(), options.getWorldFile());
+
+        long checkpoint = options.getCheckpointInterval();
+        synchronized (processor.getStore()) {
+            try (AgentEngine engine = new AgentEngine(processor.getStore(), ForkJoinPool.commonPool(), directory)) {
+                long mark = System.nanoTime();
+                engine.reset(processor.getStore().getCounts(), random);
+                System.out.printf("Created %d agents in %.3f s (%.1f MB off-heap)%n", engine.getAgentCount(),
+                        (System.nanoTime() - mark) / 1e9, engine.getMappedBytes() / (1024.0 * 1024.0));
+                logger.info("Created {} agents, {} bytes off-heap", engine.getAgentCount(), engine.getMappedBytes());
+                long[] next = new long[processor.getStore().getCounts().length];
+                long started = System.nanoTime();
+                for (long year = 1; year <= options.getYears(); year++) {
+                    worldConditions.applySchedule();
+                    engine.advance(worldConditions, random);
+                    engine.copyCounts(next);
+                    next = processor.getStore().swapCounts(next);
+                    worldConditions.setYear(worldConditions.getYear() + 1);
+                    worldConditions.applySchedule();
+                    if (checkpoint > 0 && year % checkpoint == 0) {
+                        System.out.println(summary.checkpointLine() + ", agents=" + engine.getAgentCount());
+                    }
+                }
+                double seconds = (System.nanoTime() - started) / 1e9;
+                summary.printSummary(System.out);
+                engine.printReport(System.out);
+                System.out.printf("Simulated %d years in %.3f s with the agent model%n", options.getYears(), seconds);
+                logger.info("Agent simulation finished at year {} in {} s, {} agents", worldConditions.getYear(), seconds,
+                        engine.getAgentCount());
+            } catch (IOException | IllegalArgumentException e) {
+                System.out.println("Error in agent simulation: " + e.getMessage());
+                logger.error("Error in agent simulation: {}", e.getMessage());
+                return;
+            }
+        }
+
+        if (options.getOutputFile() != null) {
+            processor.saveWorld(WorldSnapshot.capture(processor.getStore(), worldConditions), options.getOutputFile());
+        }
+    }
+
+    private void runComparison() {
+        ModelComparison comparison = new ModelComparison(processor.getStore(), worldConditions, options.getYears(), createRandom());
+        comparison.setTolerance(options.getTolerance());
+        comparison.run();
+        comparison.printReport(System.out);
+        if (options.getOutputFile() != null) {
+            comparison.saveReport(options.getOutputFile());
+        }
+    }
+
+    private void runEnsemble() throws InterruptedException {
+        EnsembleRunner ensemble = new EnsembleRunner(processor.getStore(), worldConditions, options.getReplicas(), (int) options.getYears(), createRandom());
+        long started = System.nanoTime();
+        ensemble.run();
+        ensemble.printReport(System.out);
+        System.out.printf("Ensemble finished in %.3f s%n", (System.nanoTime() - started) / 1e9);
+        if (options.getOutputFile() != null) {
+            ensemble.saveReport(options.getOutputFile());
+        }
+    }
+
+    private void runGrid() throws InterruptedException {
+        GridRunner grid = new GridRunner(processor.getStore(), worldConditions, options.getGridWidth(), options.getGridHeight(),
+                (int) options.getYears(), options.getMigrationRate(), createRandom());
+        long started = System.nanoTime();
+        grid.run();
+        grid.printReport(System.out);
+        System.out.printf("Grid finished in %.3f s%n", (System.nanoTime() - started) / 1e9);
+        if (options.getOutputFile() != null) {
+            grid.saveReport(options.getOutputFile());
+        }
+    }
+
+    private void runSweep() throws InterruptedException {
+        SweepRunner sweep = new SweepRunner(processor.getStore(), options.getSweepTemperatures(), options.getSweepWater(),
+                options.getSweepHumidity(), (int) options.getYears(), createRandom());
+        sweep.setMeanField(options.isMeanField());
+        sweep.setTolerance(options.getTolerance());
+        long started = System.nanoTime();
+        sweep.run();
+        sweep.printReport(System.out);
+        System.out.printf("Sweep finished in %.3f s%n", (System.nanoTime() - started) / 1e9);
+        if (options.getOutputFile() != null) {
+            sweep.saveReport(options.getOutputFile());
+        }
+    }
+
+    private EventPipeline createEvents() {
+        EventPipeline events = new EventPipeline(processor.getStore(), options.getEventLevel());
+        if (options.getEventLevel() == EventLevel.OFF) {
+            return events; // Без получателей события не публикуются
+        }
+        if (options.getEventsFile() != null) {
+            try {
+                events.addSink(new FileEventSink(options.getEventsFile()));
+            } catch (IOException e) {
+                System.out.println("Error opening events file: " + e.getMessage());
+                logger.error("Error opening events file {}: {}", options.getEventsFile(), e.getMessage());
+            }
+        } else {
+            events.addSink(new ConsoleEventSink(System.out));
+        }
+        return events;
+    }
+
+    private SplittableGenerator createRandom() {
+        return options.getSeed() != null ? SimulationRandom.create(options.getSeed()) : SimulationRandom.create();
+    }
+}
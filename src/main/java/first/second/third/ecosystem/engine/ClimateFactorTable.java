@@ -0,0 +1,177 @@
+package first.second.third.ecosystem.engine;
+
+import first.second.third.ecosystem.entity.parameters.ClimateSchedule;
+import first.second.third.ecosystem.entity.parameters.CreatureStatistics;
+import first.second.third.ecosystem.entity.parameters.WorldConditions;
+import first.second.third.ecosystem.population.PopulationStore;
+
+import java.util.HashMap;
+
+import static first.second.third.ecosystem.util.Constants.BIRTH_FACTOR_DIVISOR;
+
+/**
+ * Факторы видов для условий по расписанию климата. Коэффициент условий
+ * вида - произведение коэффициентов температуры, влажности и воды, поэтому
+ * для каждого различного значения каждой переменной один раз считается
+ * строка коэффициентов всех видов, а факторы года собираются из трёх строк
+ * (fillRow и combine, общие с SweepRunner). Строки для всех значений, которые расписание примет на отрезке
+ * лет, строятся заранее (compile); значения вне отрезка добавляются при первом
+ * появлении. Год с теми же условиями, что и предыдущий, ничего не пересчитывает.
+ * Таблицы сбрасываются при изменении набора или параметров видов и при
+ * превышении MAX_ROW_BYTES. Вызывающий должен держать монитор хранилища.
+ */
+class ClimateFactorTable {
+
+    // Предел памяти строк коэффициентов всех переменных
+    static final long MAX_ROW_BYTES = 64L << 20;
+
+    private final PopulationStore store;
+    private long speciesVersion = -1;
+    private int species;
+    private long rows; // Сколько строк во всех таблицах
+
+    // Строки коэффициентов видов по значению переменной
+    private final HashMap<Integer, double[]> temperatureRows = new HashMap<>();
+    private final HashMap<Integer, double[]> waterRows = new HashMap<>();
+    private final HashMap<Integer, double[]> humidityRows = new HashMap<>();
+
+    // Факторы последних запрошенных условий
+    private double[] extinctionFactors = new double[0];
+    private double[] birthFactors = new double[0];
+    private boolean filled;
+    private int temperature;
+    private int accessibleWater;
+    private int humidity;
+
+    ClimateFactorTable(PopulationStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Заранее строит строки для всех значений, которые расписание условий
+     * примет в годы [fromYear, toYear]; без расписания ничего не делает.
+     */
+    void compile(WorldConditions worldConditions, int fromYear, int toYear) {
+        ClimateSchedule schedule = worldConditions.getSchedule();
+        if (schedule == null) {
+            return;
+        }
+        validate();
+        for (long year = fromYear; year <= toYear && rows * species * Double.BYTES < MAX_ROW_BYTES; year++) {
+            row(temperatureRows, ClimateSchedule.TEMPERATURE,
+                    schedule.value(ClimateSchedule.TEMPERATURE, (int) year, worldConditions.getTemperature()));
+            row(waterRows, ClimateSchedule.WATER,
+                    schedule.value(ClimateSchedule.WATER, (int) year, worldConditions.getAccessibleWater()));
+            row(humidityRows, ClimateSchedule.HUMIDITY,
+                    schedule.value(ClimateSchedule.HUMIDITY, (int) year, worldConditions.getHumidityPercentage()));
+        }
+    }
+
+    // Собирает факторы видов для текущих условий мира
+    void refresh(WorldConditions worldConditions) {
+        validate();
+        if (filled && temperature == worldConditions.getTemperature() && accessibleWater == worldConditions.getAccessibleWater()
+                && humidity == worldConditions.getHumidityPercentage()) {
+            return;
+        }
+        temperature = worldConditions.getTemperature();
+        accessibleWater = worldConditions.getAccessibleWater();
+        humidity = worldConditions.getHumidityPercentage();
+        double[] temperatureRow = row(temperatureRows, ClimateSchedule.TEMPERATURE, temperature);
+        double[] waterRow = row(waterRows, ClimateSchedule.WATER, accessibleWater);
+        double[] humidityRow = row(humidityRows, ClimateSchedule.HUMIDITY, humidity);
+        combine(temperatureRow, 0, waterRow, 0, humidityRow, 0, species, extinctionFactors, birthFactors);
+        filled = true;
+    }
+
+    // Факторы вымирания после refresh, индекс - идентификатор вида
+    double[] getExtinctionFactors() {
+        return extinctionFactors;
+    }
+
+    // Факторы рождаемости после refresh, индекс - идентификатор вида
+    double[] getBirthFactors() {
+        return birthFactors;
+    }
+
+    // Количество различных значений переменных, для которых построены строки
+    long getRows() {
+        return rows;
+    }
+
+    // Сбрасывает таблицы, если виды изменились с их построения
+    private void validate() {
+        long version = store.getSpeciesVersion();
+        if (version == speciesVersion && species == store.size()) {
+            return;
+        }
+        speciesVersion = version;
+        species = store.size();
+        clear();
+        if (extinctionFactors.length < species) {
+            extinctionFactors = new double[species];
+            birthFactors = new double[species];
+        }
+    }
+
+    private void clear() {
+        temperatureRows.clear();
+        waterRows.clear();
+        humidityRows.clear();
+        rows = 0;
+        filled = false;
+    }
+
+    // Строка коэффициентов переменной для значения; строится при первом запросе
+    private double[] row(HashMap<Integer, double[]> table, int variable, int value) {
+        double[] row = table.get(value);
+        if (row != null) {
+            return row;
+        }
+        if ((rows + 1) * species * Double.BYTES > MAX_ROW_BYTES) {
+            clear(); // Таблицы переполнены (например, долгий тренд): начинаем заново
+        }
+        row = new double[species];
+        fillRow(store, variable, value, row, 0, species);
+        table.put(value, row);
+        rows++;
+        return row;
+    }
+
+    /**
+     * Коэффициенты переменной (ClimateSchedule.TEMPERATURE, WATER или HUMIDITY)
+     * для её значения value у видов [0, species): коэффициент вида id пишется в row[offset + id].
+     */
+    static void fillRow(PopulationStore store, int variable, int value, double[] row, int offset, int species) {
+        for (int id = 0; id < species; id++) {
+            switch (variable) {
+                case ClimateSchedule.TEMPERATURE:
+                    row[offset + id] = CreatureStatistics.calculateTemperatureFactor(value, store.getComfortTemperature(id));
+                    break;
+                case ClimateSchedule.WATER:
+                    row[offset + id] = CreatureStatistics.calculateWaterFactor(value, store.getConsumedWater(id));
+                    break;
+                default:
+                    row[offset + id] = CreatureStatistics.calculateHumidityFactor(value, store.getComfortHumidity(id));
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Факторы видов [0, species) из строк коэффициентов температуры, воды и влажности,
+     * начинающихся с указанных смещений. Порядок умножения (температура, влажность, вода)
+     * тот же, что в CreatureStatistics.calculateConditionsFactor, поэтому факторы
+     * побитно совпадают с поштучным расчётом; менять его нельзя.
+     */
+    static void combine(double[] temperatureRow, int temperatureOffset, double[] waterRow, int waterOffset,
+                        double[] humidityRow, int humidityOffset, int species,
+                        double[] extinctionFactors, double[] birthFactors) {
+        for (int id = 0; id < species; id++) {
+            double conditionsFactor = temperatureRow[temperatureOffset + id] * humidityRow[humidityOffset + id]
+                    * waterRow[waterOffset + id];
+            extinctionFactors[id] = 1 / conditionsFactor;
+            birthFactors[id] = conditionsFactor / BIRTH_FACTOR_DIVISOR;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package first.second.third.ecosystem.engine;
+
+import first.second.third.ecosystem.entity.parameters.Category;
+import first.second.third.ecosystem.entity.parameters.WorldConditions;
+import first.second.third.ecosystem.kernel.SpeciesKernel;
+import first.second.third.ecosystem.population.PopulationStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.random.RandomGenerator.SplittableGenerator;
+
+/**
+ * Ансамбль Монте-Карло: K независимых копий загруженного мира прогоняются
+ * на Y лет параллельно на всех ядрах, после чего по каждому виду считаются
+ * вероятность вымирания, квантили времени до вымирания и разброс численности.
+ * Реплика хранит только массив численностей и год вымирания каждого вида,
+ * буферы расчёта года принадлежат рабочему потоку.
+ * Каждая реплика получает собственный поток случайных чисел, отщеплённый
+ * от генератора ансамбля в порядке номеров реплик, поэтому при заданном
+ * зерне результат ансамбля воспроизводим.
+ * С расписанием климата условия каждого года реплики берутся из расписания.
+ */
+public class EnsembleRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(EnsembleRunner.class);
+    // Год вымирания для вида, дожившего до конца прогона
+    private static final int SURVIVED = -1;
+
+    private final PopulationStore store;
+    private final WorldConditions worldConditions;
+    private final int replicas;
+    private final int years;
+    private final int threads;
+    private final SplittableGenerator random;
+
+    private long[][] counts; // Численности видов в каждой реплике
+    private int[][] extinctionYears; // Через сколько лет вид вымер в реплике
+    private SplittableGenerator[] randoms; // Генератор каждой реплики
+    private int size; // Количество видов на момент старта
+    // Комфортные параметры видов для факторов по расписанию: рабочие потоки не обращаются к хранилищу под его монитором
+    private int[] comfortTemperatures;
+    private int[] consumedWater;
+    private int[] comfortHumidity;
+
+    public EnsembleRunner(PopulationStore store, WorldConditions worldConditions, int replicas, int years, SplittableGenerator random) {
+        this(store, worldConditions, replicas, years, random, Runtime.getRuntime().availableProcessors());
+    }
+
+    public EnsembleRunner(PopulationStore store, WorldConditions worldConditions, int replicas, int years, SplittableGenerator random, int threads) {
+        if (replicas <= 0 || years < 0) {
+            throw new IllegalArgumentException("Replicas must be positive and years non-negative");
+        }
+        this.store = store;
+        this.worldConditions = worldConditions.copy();
+        this.replicas = replicas;
+        this.years = years;
+        this.threads = Math.max(1, Math.min(threads, replicas));
+        this.random = random;
+    }
+
+    /**
+     * Прогоняет все реплики. Монитор хранилища удерживается до конца прогона,
+     * чтобы набор видов и кеш факторов не менялись.
+     */
+    public void run() throws InterruptedException {
+        WorldCopyRuns.locked(store, size -> {
+            this.size = size;
+            long[] initial = Arrays.copyOf(store.getCounts(), size);
+            counts = new long[replicas][];
+            extinctionYears = new int[replicas][];
+            randoms = new SplittableGenerator[replicas];
+            for (int r = 0; r < replicas; r++) {
+                randoms[r] = random.split();
+                counts[r] = initial.clone();
+                extinctionYears[r] = new int[size];
+                for (int id = 0; id < size; id++) {
+                    extinctionYears[r][id] = initial[id] > 0 ? SURVIVED : 0;
+                }
+            }
+            store.refreshFactors(worldConditions);
+            if (worldConditions.getSchedule() != null) {
+                comfortTemperatures = new int[size];
+                consumedWater = new int[size];
+                comfortHumidity = new int[size];
+                for (int id = 0; id < size; id++) {
+                    comfortTemperatures[id] = store.getComfortTemperature(id);
+                    consumedWater[id] = store.getConsumedWater(id);
+                    comfortHumidity[id] = store.getComfortHumidity(id);
+                }
+            }
+
+            long started = System.nanoTime();
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                AtomicInteger nextReplica = new AtomicInteger();
+                List<Future<?>> workers = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    workers.add(executor.submit(() -> runWorker(nextReplica)));
+                }
+                for (Future<?> worker : workers) {
+                    worker.get();
+                }
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Ensemble replica failed: " + e.getCause().getMessage(), e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+            logger.info("Ensemble of {} replicas x {} years finished in {} ms",
+                    replicas, years, (System.nanoTime() - started) / 1_000_000);
+        });
+    }
+
+    // Рабочий поток забирает реплики по одной и прогоняет их своим движком
+    private void runWorker(AtomicInteger nextReplica) {
+        TickEngine engine = new TickEngine(store);
+        // Условия по расписанию у каждого потока свои: год реплик у потоков разный
+        boolean scheduled = worldConditions.getSchedule() != null;
+        WorldConditions conditions = worldConditions.copy();
+        double[] extinctionFactors = new double[scheduled ? size : 0];
+        double[] birthFactors = new double[extinctionFactors.length];
+        long epoch = 0; // Эпоха условий, для которых посчитаны факторы
+        long[] capacityCurrent = new long[store.getCounts().length];
+        long[] capacityNext = new long[capacityCurrent.length];
+        int replica;
+        while ((replica = nextReplica.getAndIncrement()) < replicas) {
+            long[] state = counts[replica];
+            int[] extinct = extinctionYears[replica];
+            System.arraycopy(state, 0, capacityCurrent, 0, size);
+            for (int year = 1; year <= years; year++) {
+                if (scheduled) {
+                    conditions.setYear(worldConditions.getYear() + year - 1);
+                    conditions.applySchedule();
+                    if (conditions.getEpoch() != epoch) {
+                        epoch = conditions.getEpoch();
+                        SpeciesKernel.getInstance().conditionsFactors(conditions.getTemperature(), conditions.getAccessibleWater(),
+                                conditions.getHumidityPercentage(), comfortTemperatures, consumedWater, comfortHumidity,
+                                extinctionFactors, birthFactors, 0, size);
+                    }
+                    engine.tick(capacityCurrent, capacityNext, extinctionFactors, birthFactors, randoms[replica]);
+                } else {
+                    engine.tick(capacityCurrent, capacityNext, worldConditions, randoms[replica]);
+                }
+                long[] swap = capacityCurrent;
+                capacityCurrent = capacityNext;
+                capacityNext = swap;
+
+                boolean anyAlive = false;
+                for (int id = 0; id < size; id++) {
+                    if (capacityCurrent[id] > 0) {
+                        anyAlive = true;
+                    } else if (extinct[id] == SURVIVED) {
+                        extinct[id] = year;
+                    }
+                }
+                if (!anyAlive) {
+                    break; // Дальше ничего не изменится
+                }
+            }
+            System.arraycopy(capacityCurrent, 0, state, 0, size);
+            randoms[replica] = null; // Генератор больше не нужен
+        }
+    }
+
+    // Итоговая таблица по видам
+    public void printReport(PrintStream out) {
+        out.printf("Ensemble: %d replicas, %d years%n", replicas, years);
+        out.printf("%-10s %-16s %8s %10s %10s %10s %12s %12s %12s%n",
+                "CATEGORY", "SPECIES", "P(EXT)", "T10", "T50", "T90", "POP5", "POP50", "POP95");
+        for (SpeciesSummary summary : summarize()) {
+            out.printf("%-10s %-16s %8.4f %10s %10s %10s %12d %12d %12d%n",
+                    summary.category, summary.name, summary.extinctionProbability,
+                    format(summary.extinction10), format(summary.extinction50), format(summary.extinction90),
+                    summary.population5, summary.population50, summary.population95);
+        }
+    }
+
+    // Та же таблица в формате CSV
+    public void saveReport(String filePath) {
+        WorldCopyRuns.saveReport(logger, "ensemble", filePath, writer -> {
+            writer.write("category,species,extinction_probability,extinction_p10,extinction_p50,extinction_p90,population_p5,population_p50,population_p95");
+            writer.newLine();
+            for (SpeciesSummary summary : summarize()) {
+                writer.write(summary.category + "," + summary.name + "," + summary.extinctionProbability + ","
+                        + format(summary.extinction10) + "," + format(summary.extinction50) + "," + format(summary.extinction90) + ","
+                        + summary.population5 + "," + summary.population50 + "," + summary.population95);
+                writer.newLine();
+            }
+        });
+    }
+
+    private List<SpeciesSummary> summarize() {
+        List<SpeciesSummary> summaries = new ArrayList<>();
+        long[] populations = new long[replicas];
+        int[] extinctions = new int[replicas];
+        for (Category category : Category.values()) {
+            for (int id : WorldCopyRuns.members(store, category, size)) {
+                int extinct = 0;
+                for (int r = 0; r < replicas; r++) {
+                    populations[r] = counts[r][id];
+                    if (extinctionYears[r][id] != SURVIVED) {
+                        extinctions[extinct++] = extinctionYears[r][id];
+                    }
+                }
+                Arrays.sort(populations);
+                Arrays.sort(extinctions, 0, extinct);
+
+                SpeciesSummary summary = new SpeciesSummary();
+                summary.category = category;
+                summary.name = store.getName(id);
+                summary.extinctionProbability = (double) extinct / replicas;
+                summary.extinction10 = extinct > 0 ? extinctions[quantileIndex(extinct, 0.10)] : SURVIVED;
+                summary.extinction50 = extinct > 0 ? extinctions[quantileIndex(extinct, 0.50)] : SURVIVED;
+                summary.extinction90 = extinct > 0 ? extinctions[quantileIndex(extinct, 0.90)] : SURVIVED;
+                summary.population5 = populations[quantileIndex(replicas, 0.05)];
+                summary.population50 = populations[quantileIndex(replicas, 0.50)];
+                summary.population95 = populations[quantileIndex(replicas, 0.95)];
+                summaries.add(summary);
+            }
+        }
+        return summaries;
+    }
+
+    // Индекс квантиля в отсортированном массиве (ближайший ранг)
+    private static int quantileIndex(int length, double quantile) {
+        return Math.min(length - 1, Math.max(0, (int) Math.ceil(quantile * length) - 1));
+    }
+
+    private static String format(int extinctionYear) {
+        return extinctionYear == SURVIVED ? "-" : String.valueOf(extinctionYear);
+    }
+
+    private static class SpeciesSummary {
+        private Category category;
+        private String name;
+        private double extinctionProbability;
+        private int extinction10;
+        private int extinction50;
+        private int extinction90;
+        private long population5;
+        private long population50;
+        private long population95;
+    }
+}
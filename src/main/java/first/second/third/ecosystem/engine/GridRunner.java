@@ -0,0 +1,379 @@
+package first.second.third.ecosystem.engine;
+
+import first.second.third.ecosystem.entity.parameters.Category;
+import first.second.third.ecosystem.entity.parameters.WorldConditions;
+import first.second.third.ecosystem.kernel.SpeciesKernel;
+import first.second.third.ecosystem.population.PopulationStore;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.random.RandomGenerator.SplittableGenerator;
+
+/**
+ * Пространственная сетка: мир делится на width x height регионов, у каждого
+ * свои условия (температура меняется с севера на юг, влажность - с запада
+ * на восток) и свои численности всех видов загруженного мира.
+ * Год считается в две фазы с барьером между ними:
+ * 1) регионы независимо рассчитываются обычными правилами года; сетка
+ *    разрезана на полосы строк, полоса - единица параллельной работы
+ *    со своим движком и буферами;
+ * 2) миграция: из каждого региона уходит доля migrationRate каждого вида,
+ *    поровну между соседями по сторонам; остаток от деления достаётся
+ *    соседям в фиксированном порядке, поэтому особи не теряются и не
+ *    появляются. Регион сам собирает пришедших от соседей (по результатам
+ *    фазы 1), и полосы снова пишут только свои строки.
+ * Численности хранятся одним массивом region-major: вид id региона r
+ * лежит в ячейке r * species + id.
+ * С расписанием климата условия всех регионов каждый год сдвигаются
+ * на изменение условий по расписанию относительно года старта.
+ * Разрезание на полосы не зависит от числа потоков, а генератор каждой
+ * полосы отщепляется от генератора сетки в порядке полос, поэтому
+ * при заданном зерне результат воспроизводим.
+ */
+public class GridRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(GridRunner.class);
+
+    // Строк сетки в одной полосе
+    private static final int SHARD_ROWS = 8;
+    // Размах температуры от центра к северному и южному краю
+    public static final int TEMPERATURE_SPREAD = 15;
+    // Размах влажности от центра к западному и восточному краю
+    public static final int HUMIDITY_SPREAD = 30;
+    public static final double DEFAULT_MIGRATION_RATE = 0.05;
+
+    private final PopulationStore store;
+    @Getter
+    private final int width;
+    @Getter
+    private final int height;
+    @Getter
+    private final int years;
+    private final double migrationRate;
+    private final int threads;
+    private final SplittableGenerator random;
+
+    // Условия регионов, индекс - номер региона row * width + col
+    private final int[] temperatures;
+    private final int[] water;
+    private final int[] humidity;
+    // Условия мира, от которых построены регионы; год по расписанию устанавливается на них
+    private final WorldConditions worldConditions;
+    private final int baseTemperature;
+    private final int baseWater;
+    private final int baseHumidity;
+    // Сдвиг условий регионов по расписанию в текущем году
+    private int temperatureShift;
+    private int waterShift;
+    private int humidityShift;
+
+    private int species; // Количество видов на момент старта
+    // Комфортные параметры видов на момент старта для расчёта факторов регионов ядром
+    private int[] comfortTemperatures;
+    private int[] consumedWater;
+    private int[] comfortHumidity;
+    private final SpeciesKernel kernel = SpeciesKernel.getInstance();
+    private long[] counts; // Численности на начало года
+    private long[] next; // Численности после фазы 1
+    private Shard[] shards;
+
+    public GridRunner(PopulationStore store, WorldConditions worldConditions, int width, int height, int years,
+                      double migrationRate, SplittableGenerator random) {
+        this(store, worldConditions, width, height, years, migrationRate, random, Runtime.getRuntime().availableProcessors());
+    }
+
+    public GridRunner(PopulationStore store, WorldConditions worldConditions, int width, int height, int years,
+                      double migrationRate, SplittableGenerator random, int threads) {
+        if (width <= 0 || height <= 0 || years < 0) {
+            throw new IllegalArgumentException("Grid size must be positive and years non-negative");
+        }
+        if (migrationRate < 0 || migrationRate > 1) {
+            throw new IllegalArgumentException("Migration rate must be between 0 and 1: " + migrationRate);
+        }
+        if ((long) width * height > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many regions: " + width + "x" + height);
+        }
+        this.store = store;
+        this.width = width;
+        this.height = height;
+        this.years = years;
+        this.migrationRate = migrationRate;
+        this.threads = Math.max(1, threads);
+        this.random = random;
+        this.worldConditions = worldConditions.copy();
+        baseTemperature = worldConditions.getTemperature();
+        baseWater = worldConditions.getAccessibleWater();
+        baseHumidity = worldConditions.getHumidityPercentage();
+
+        int regions = width * height;
+        temperatures = new int[regions];
+        water = new int[regions];
+        humidity = new int[regions];
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                int region = row * width + col;
+                temperatures[region] = worldConditions.getTemperature() + gradient(row, height, TEMPERATURE_SPREAD);
+                water[region] = worldConditions.getAccessibleWater();
+                humidity[region] = Math.max(0, Math.min(100,
+                        worldConditions.getHumidityPercentage() + gradient(col, width, HUMIDITY_SPREAD)));
+            }
+        }
+    }
+
+    // Отклонение от базового значения: от -spread у первого ряда до +spread у последнего
+    private static int gradient(int index, int length, int spread) {
+        return length == 1 ? 0 : (int) Math.round(spread * (2.0 * index / (length - 1) - 1));
+    }
+
+    /**
+     * Прогоняет все годы. Монитор хранилища удерживается до конца прогона,
+     * чтобы набор видов не менялся.
+     */
+    public void run() throws InterruptedException {
+        WorldCopyRuns.locked(store, size -> {
+            species = size;
+            int regions = width * height;
+            if ((long) regions * species > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("Grid of " + regions + " regions x " + species + " species is too large");
+            }
+            long[] initial = store.getCounts();
+            comfortTemperatures = new int[species];
+            consumedWater = new int[species];
+            comfortHumidity = new int[species];
+            for (int id = 0; id < species; id++) {
+                comfortTemperatures[id] = store.getComfortTemperature(id);
+                consumedWater[id] = store.getConsumedWater(id);
+                comfortHumidity[id] = store.getComfortHumidity(id);
+            }
+            counts = new long[regions * species];
+            next = new long[counts.length];
+            for (int region = 0; region < regions; region++) {
+                System.arraycopy(initial, 0, counts, region * species, species);
+            }
+            shards = new Shard[(height + SHARD_ROWS - 1) / SHARD_ROWS];
+            List<Callable<Void>> ticks = new ArrayList<>();
+            List<Callable<Void>> migrations = new ArrayList<>();
+            for (int s = 0; s < shards.length; s++) {
+                Shard shard = new Shard(s * SHARD_ROWS, Math.min(height, (s + 1) * SHARD_ROWS));
+                shards[s] = shard;
+                ticks.add(() -> {
+                    shard.tick();
+                    return null;
+                });
+                migrations.add(() -> {
+                    shard.migrate();
+                    return null;
+                });
+            }
+
+            long started = System.nanoTime();
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, shards.length));
+            try {
+                int startYear = worldConditions.getYear();
+                for (int year = 1; year <= years; year++) {
+                    worldConditions.setYear(startYear + year - 1);
+                    if (worldConditions.applySchedule()) {
+                        temperatureShift = worldConditions.getTemperature() - baseTemperature;
+                        waterShift = worldConditions.getAccessibleWater() - baseWater;
+                        humidityShift = worldConditions.getHumidityPercentage() - baseHumidity;
+                    }
+                    for (Shard shard : shards) {
+                        shard.random = random.split();
+                    }
+                    invokeAll(executor, ticks);
+                    if (migrationRate > 0 && regions > 1) {
+                        invokeAll(executor, migrations);
+                    } else {
+                        long[] swap = counts;
+                        counts = next;
+                        next = swap;
+                    }
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+            logger.info("Grid of {}x{} regions x {} years finished in {} ms",
+                    width, height, years, (System.nanoTime() - started) / 1_000_000);
+        });
+    }
+
+    // Запуск фазы на всех полосах; возврат из метода - барьер между фазами
+    private static void invokeAll(ExecutorService executor, List<Callable<Void>> tasks) throws InterruptedException {
+        for (Future<Void> future : executor.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Grid shard failed: " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+    }
+
+    // Вода региона со сдвигом по расписанию, не меньше нуля
+    private int shiftedWater(int water) {
+        return waterShift == 0 ? water : Math.max(0, water + waterShift);
+    }
+
+    // Влажность региона со сдвигом по расписанию в пределах 0-100
+    private int shiftedHumidity(int humidity) {
+        return humidityShift == 0 ? humidity : Math.max(0, Math.min(100, humidity + humidityShift));
+    }
+
+    // Количество соседей региона по сторонам
+    private int neighbours(int row, int col) {
+        return (row > 0 ? 1 : 0) + (col > 0 ? 1 : 0) + (col < width - 1 ? 1 : 0) + (row < height - 1 ? 1 : 0);
+    }
+
+    // Сколько особей вида уходит из региона
+    private long emigrants(long population) {
+        return population > 0 ? Math.min(population, (long) (population * migrationRate)) : 0;
+    }
+
+    /**
+     * Доля эмигрантов соседа, приходящаяся на регион: поровну между соседями,
+     * остаток по одному первым rank соседям в порядке север, запад, восток, юг.
+     *
+     * @param rank Позиция принимающего региона в этом порядке у отправителя.
+     */
+    private static long share(long emigrants, int degree, int rank) {
+        return emigrants / degree + (rank < emigrants % degree ? 1 : 0);
+    }
+
+    // Полоса строк [fromRow, toRow) со своим движком и буферами
+    private final class Shard {
+        private final int fromRow;
+        private final int toRow;
+        private final TickEngine engine = new TickEngine(store);
+        private final long[] current = new long[species];
+        private final long[] result = new long[species];
+        private final double[] extinctionFactors = new double[species];
+        private final double[] birthFactors = new double[species];
+        private SplittableGenerator random;
+
+        private Shard(int fromRow, int toRow) {
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        // Фаза 1: год каждого региона полосы по его условиям
+        private void tick() {
+            for (int region = fromRow * width; region < toRow * width; region++) {
+                int offset = region * species;
+                boolean empty = true;
+                for (int id = 0; id < species; id++) {
+                    current[id] = counts[offset + id];
+                    empty &= current[id] <= 0;
+                }
+                if (empty) {
+                    Arrays.fill(next, offset, offset + species, 0);
+                    continue; // Пустой регион заселяется только миграцией
+                }
+                kernel.conditionsFactors(temperatures[region] + temperatureShift, shiftedWater(water[region]),
+                        shiftedHumidity(humidity[region]), comfortTemperatures, consumedWater, comfortHumidity, extinctionFactors, birthFactors, 0, species);
+                engine.tick(current, result, extinctionFactors, birthFactors, random);
+                System.arraycopy(result, 0, next, offset, species);
+            }
+        }
+
+        // Фаза 2: регион теряет своих эмигрантов и собирает иммигрантов соседей
+        private void migrate() {
+            for (int row = fromRow; row < toRow; row++) {
+                for (int col = 0; col < width; col++) {
+                    int offset = (row * width + col) * species;
+                    int northDegree = row > 0 ? neighbours(row - 1, col) : 0;
+                    int westDegree = col > 0 ? neighbours(row, col - 1) : 0;
+                    int eastDegree = col < width - 1 ? neighbours(row, col + 1) : 0;
+                    int southDegree = row < height - 1 ? neighbours(row + 1, col) : 0;
+                    // Позиции этого региона в порядке соседей у каждого отправителя
+                    int westRank = (row > 0 ? 1 : 0) + (col > 1 ? 1 : 0);
+                    int eastRank = row > 0 ? 1 : 0;
+                    for (int id = 0; id < species; id++) {
+                        long population = next[offset + id];
+                        long value = population - (neighbours(row, col) > 0 ? emigrants(population) : 0);
+                        if (northDegree > 0) {
+                            // Для северного соседа регион - последний (южный)
+                            value += share(emigrants(next[offset - width * species + id]), northDegree, northDegree - 1);
+                        }
+                        if (westDegree > 0) {
+                            value += share(emigrants(next[offset - species + id]), westDegree, westRank);
+                        }
+                        if (eastDegree > 0) {
+                            value += share(emigrants(next[offset + species + id]), eastDegree, eastRank);
+                        }
+                        if (southDegree > 0) {
+                            // Для южного соседа регион - первый (северный)
+                            value += share(emigrants(next[offset + width * species + id]), southDegree, 0);
+                        }
+                        counts[offset + id] = value;
+                    }
+                }
+            }
+        }
+    }
+
+    // Численность вида по всей сетке
+    public long total(int id) {
+        long total = 0;
+        for (int offset = id; offset < counts.length; offset += species) {
+            total += counts[offset];
+        }
+        return total;
+    }
+
+    // Количество регионов, где вид жив
+    public int occupiedRegions(int id) {
+        int occupied = 0;
+        for (int offset = id; offset < counts.length; offset += species) {
+            if (counts[offset] > 0) {
+                occupied++;
+            }
+        }
+        return occupied;
+    }
+
+    // Итоговая таблица по видам
+    public void printReport(PrintStream out) {
+        out.printf("Grid: %dx%d regions, %d years, migration rate %s%n", width, height, years, migrationRate);
+        out.printf("%-10s %-16s %16s %10s%n", "CATEGORY", "SPECIES", "TOTAL", "REGIONS");
+        for (Category category : Category.values()) {
+            long categoryTotal = 0;
+            for (int id : WorldCopyRuns.members(store, category, species)) {
+                long total = total(id);
+                categoryTotal += total;
+                out.printf("%-10s %-16s %16d %10d%n", category, store.getName(id), total, occupiedRegions(id));
+            }
+            out.println("Total " + category + ": " + categoryTotal);
+        }
+    }
+
+    // Численности по регионам в формате CSV: строка на регион, столбец на вид
+    public void saveReport(String filePath) {
+        WorldCopyRuns.saveReport(logger, "grid", filePath, writer -> {
+            StringBuilder line = new StringBuilder("row,col,temperature,water,humidity");
+            for (int id = 0; id < species; id++) {
+                line.append(',').append(store.getName(id));
+            }
+            writer.write(line.toString());
+            writer.newLine();
+            for (int region = 0; region < width * height; region++) {
+                line.setLength(0);
+                line.append(region / width).append(',').append(region % width).append(',')
+                        .append(temperatures[region]).append(',').append(water[region]).append(',').append(humidity[region]);
+                for (int id = 0; id < species; id++) {
+                    line.append(',').append(counts[region * species + id]);
+                }
+                writer.write(line.toString());
+                writer.newLine();
+            }
+        });
+    }
+}
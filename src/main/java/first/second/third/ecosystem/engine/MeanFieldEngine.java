@@ -0,0 +1,441 @@
+package first.second.third.ecosystem.engine;
+
+import first.second.third.ecosystem.entity.parameters.Category;
+import first.second.third.ecosystem.entity.parameters.WorldConditions;
+import first.second.third.ecosystem.population.FoodWeb;
+import first.second.third.ecosystem.population.PopulationStore;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.Arrays;
+
+import static first.second.third.ecosystem.util.Constants.HUNGER_PERCENT;
+import static first.second.third.ecosystem.util.Constants.POPULATION_CALCULATIONS_BORDER;
+import static first.second.third.ecosystem.util.Constants.TAKE_PERCENT;
+
+/**
+ * Детерминированный расчёт средних (mean-field): вместо розыгрыша смертей,
+ * рождений и выбора жертвы считаются их математические ожидания по тем же
+ * правилам, что в Calculations и CreatureBehavior, а численности хранятся
+ * дробными. Выбор случайной жертвы заменяется распределением спроса
+ * потребителя по всем живым жертвам с их вероятностями. Нехватка пищи
+ * считается не по среднему спросу: число потребителей, выбравших жертву,
+ * случайно (приближённо по Пуассону), а перегруженная жертва даёт нехватку
+ * больше, чем недогруженная - излишек, поэтому берётся ожидание нехватки
+ * по этому распределению.
+ * Год считается несколькими проходами по массивам примитивов.
+ * Пока темпы изменения численностей меняются медленно, движок перескакивает
+ * сразу несколько лет: логарифм численности вида внутри шага продолжается
+ * с текущим темпом роста и скоростью его изменения, оценённой по двум
+ * последним расчётам. Шаг выбирается так, чтобы поправка за изменение темпа
+ * не превышала допуск (для малых популяций - не меньше доли от ERROR_FLOOR
+ * особей) и ни один вид не перешёл внутри шага порог размножения.
+ * По расписанию климата условия меняются каждый год, поэтому run
+ * под расписанием считает строго по году.
+ * Вызывающий должен держать монитор хранилища, чтобы набор видов не менялся.
+ */
+public class MeanFieldEngine {
+
+    // Допустимая относительная ошибка численности вида за шаг; 0 - расчёт по году
+    public static final double DEFAULT_TOLERANCE = 0.01;
+    // Больше стольких лет за шаг движок не перескакивает
+    public static final int DEFAULT_MAX_STEP = 100;
+
+    // Среднее random.nextDouble(90, 200) / 100 для больших популяций
+    private static final double LARGE_DEATH_MULTIPLIER = 1.45;
+    // Среднее Math.round(random.nextDouble(90, 200) / 100): 1 на [0.9; 1.5), 2 на [1.5; 2.0)
+    private static final double SMALL_DEATH_MULTIPLIER = 160.0 / 110;
+    // Среднее random.nextDouble(0, 1.2)
+    private static final double BIRTH_MULTIPLIER = 0.6;
+    // Меньшие популяции не размножаются: random.nextInt(0, 1) всегда 0
+    private static final double MIN_REPRODUCING = 10;
+    // Доля вымирающих от голода при полном отсутствии пищи
+    private static final double STARVATION_PERCENT = 0.1;
+    // Численность меньше этой считается вымиранием (округляется до нуля)
+    private static final double EXTINCTION = 0.5;
+    // Для меньших популяций допуск ошибки считается от стольких особей
+    private static final double ERROR_FLOOR = 100;
+    // При большем среднем числе потребителей жертвы их разброс не учитывается
+    private static final double POISSON_LIMIT = 30;
+    // Вероятность, ниже которой хвост распределения Пуассона отбрасывается
+    private static final double NEGLIGIBLE = 1e-12;
+    // Обратные числа 1/m; длины хватает на хвост распределения при POISSON_LIMIT
+    private static final double[] INVERSE = new double[128];
+
+    static {
+        for (int m = 1; m < INVERSE.length; m++) {
+            INVERSE[m] = 1.0 / m;
+        }
+    }
+
+    private static final int CATEGORIES = Category.values().length;
+
+    private final PopulationStore store;
+    // Допуск изменения за шаг и наибольший шаг в годах
+    @Getter
+    @Setter
+    private double tolerance = DEFAULT_TOLERANCE;
+    @Getter
+    @Setter
+    private int maxStep = DEFAULT_MAX_STEP;
+
+    private int size;
+    // Численности видов, индекс - идентификатор вида
+    private double[] populations = new double[0];
+    // Промежуточные результаты года
+    private double[] extinctionFactors = new double[0];
+    private double[] birthFactors = new double[0];
+    private double[] own = new double[0]; // После смертей и рождений
+    private double[] appetite = new double[0]; // Спрос на пищу
+    private double[] totalDemand = new double[0]; // Суммарный спрос на вид как на жертву
+    private double[] arrivals = new double[0]; // Среднее число потребителей, выбравших вид
+    private double[] shortage = new double[0]; // Доля спроса, которую вид-жертва не покрывает
+    private double[] next = new double[0];
+    private double[] growth = new double[0]; // Логарифм изменения численности за год
+    private double[] previousGrowth = new double[0]; // Темпы предыдущего шага
+    private int previousStep; // Длина предыдущего шага, 0 - шагов ещё не было
+    private byte[] categories = new byte[0];
+    private byte[] consumed = new byte[0]; // Категория пищи вида
+    private boolean[] preyAlive = new boolean[0]; // Жив на начало года - кандидат в жертвы
+    // По категориям жертв: живых видов, спрос и число потребителей без рациона на одну жертву, средняя нехватка
+    private final int[] aliveCounts = new int[CATEGORIES];
+    private final double[] uniformDemand = new double[CATEGORIES];
+    private final double[] uniformArrivals = new double[CATEGORIES];
+    private final double[] uniformShortage = new double[CATEGORIES];
+    // Последнее вычисленное exp(-consumers)
+    private double cachedConsumers = -1;
+    private double cachedExp;
+    // Факторы видов для условий по расписанию; создаются при первом прогоне с расписанием
+    private ClimateFactorTable climateFactors;
+
+    // Статистика с последнего reset
+    @Getter
+    private long years;
+    @Getter
+    private long steps;
+
+    public MeanFieldEngine(PopulationStore store) {
+        this.store = store;
+    }
+
+    // Начальное состояние: численности видов хранилища из counts
+    public void reset(long[] counts) {
+        size = store.size();
+        if (populations.length < size) {
+            populations = new double[size];
+            extinctionFactors = new double[size];
+            birthFactors = new double[size];
+            own = new double[size];
+            appetite = new double[size];
+            totalDemand = new double[size];
+            arrivals = new double[size];
+            shortage = new double[size];
+            next = new double[size];
+            growth = new double[size];
+            previousGrowth = new double[size];
+            categories = new byte[size];
+            consumed = new byte[size];
+            preyAlive = new boolean[size];
+        }
+        for (int id = 0; id < size; id++) {
+            populations[id] = counts[id];
+            categories[id] = (byte) store.getCategory(id).ordinal();
+            consumed[id] = (byte) store.getCategory(id).getConsumed().ordinal();
+        }
+        years = 0;
+        steps = 0;
+        previousStep = 0;
+    }
+
+    /**
+     * Прогоняет заданное число лет. С расписанием климата условия каждого
+     * года берутся из расписания на копии worldConditions; сами условия
+     * не изменяются.
+     *
+     * @return Количество шагов расчёта.
+     */
+    public long run(WorldConditions worldConditions, long years) {
+        if (worldConditions.getSchedule() != null) {
+            return runScheduled(worldConditions.copy(), years);
+        }
+        long before = steps;
+        long remaining = years;
+        while (remaining > 0) {
+            remaining -= advance(worldConditions, (int) Math.min(remaining, Integer.MAX_VALUE));
+        }
+        return steps - before;
+    }
+
+    // Прогон по году: условия года устанавливаются по расписанию перед его расчётом
+    private long runScheduled(WorldConditions conditions, long years) {
+        if (climateFactors == null) {
+            climateFactors = new ClimateFactorTable(store);
+        }
+        long before = steps;
+        int year = conditions.getYear();
+        for (long i = 0; i < years; i++) {
+            conditions.setYear(year++);
+            conditions.applySchedule();
+            climateFactors.refresh(conditions);
+            advance(climateFactors.getExtinctionFactors(), climateFactors.getBirthFactors(), 1);
+        }
+        return steps - before;
+    }
+
+    /**
+     * Один шаг расчёта: год или, пока численности меняются медленно, несколько лет.
+     *
+     * @param limit Наибольшее число лет шага (например, до контрольной точки).
+     * @return Сколько лет пройдено, от 1 до limit.
+     */
+    public int advance(WorldConditions worldConditions, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Step limit must be positive: " + limit);
+        }
+        for (int id = 0; id < size; id++) {
+            extinctionFactors[id] = store.getExtinctionFactor(id, worldConditions);
+            birthFactors[id] = store.getBirthFactor(id, worldConditions);
+        }
+        return step(limit);
+    }
+
+    /**
+     * Шаг с заранее посчитанными факторами видов, не обращаясь к кешу факторов
+     * хранилища (например, для точки перебора условий со своими условиями).
+     *
+     * @param extinctionFactors Факторы вымирания, индекс - идентификатор вида.
+     * @param birthFactors Факторы рождаемости, индекс - идентификатор вида.
+     */
+    public int advance(double[] extinctionFactors, double[] birthFactors, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Step limit must be positive: " + limit);
+        }
+        System.arraycopy(extinctionFactors, 0, this.extinctionFactors, 0, size);
+        System.arraycopy(birthFactors, 0, this.birthFactors, 0, size);
+        return step(limit);
+    }
+
+    private int step(int limit) {
+        computeYear();
+        int step = chooseStep(Math.min(limit, Math.max(1, maxStep)));
+        if (step == 1) {
+            System.arraycopy(next, 0, populations, 0, size);
+        } else {
+            for (int id = 0; id < size; id++) {
+                double slope = (growth[id] - previousGrowth[id]) / previousStep;
+                populations[id] *= Math.exp(step * growth[id] + 0.5 * step * step * slope);
+            }
+        }
+        for (int id = 0; id < size; id++) {
+            if (populations[id] < EXTINCTION) {
+                populations[id] = 0;
+            }
+        }
+        double[] swap = previousGrowth;
+        previousGrowth = growth;
+        growth = swap;
+        previousStep = step;
+        years += step;
+        steps++;
+        return step;
+    }
+
+    // Ожидаемые потоки одного года по численностям populations; итог - в next и growth
+    private void computeYear() {
+        // Смерти и рождения
+        for (int id = 0; id < size; id++) {
+            double population = populations[id];
+            double multiplier = population > POPULATION_CALCULATIONS_BORDER ? LARGE_DEATH_MULTIPLIER : SMALL_DEATH_MULTIPLIER;
+            double deaths = Math.min(roundedUp(population * TAKE_PERCENT * extinctionFactors[id] * multiplier), population);
+            double survived = population - deaths;
+            double births = survived < MIN_REPRODUCING ? 0 : roundedUp(survived * TAKE_PERCENT * birthFactors[id] * BIRTH_MULTIPLIER);
+            own[id] = population > 0 ? survived + births : 0;
+            preyAlive[id] = population > 0;
+            totalDemand[id] = 0;
+            arrivals[id] = 0;
+        }
+        Arrays.fill(aliveCounts, 0);
+        Arrays.fill(uniformDemand, 0);
+        Arrays.fill(uniformArrivals, 0);
+        Arrays.fill(uniformShortage, 0);
+        for (int id = 0; id < size; id++) {
+            if (preyAlive[id]) {
+                aliveCounts[categories[id]]++;
+            }
+        }
+        // Спрос: без рациона - поровну на всех живых видов категории пищи, с рационом - по весам живых жертв
+        FoodWeb web = store.getFoodWeb();
+        for (int id = 0; id < size; id++) {
+            appetite[id] = 0;
+            if (own[id] <= 0) {
+                continue;
+            }
+            if (web.hasDiet(id)) {
+                double weights = aliveWeights(web, id);
+                if (weights > 0) {
+                    appetite[id] = roundedUp(own[id] * HUNGER_PERCENT);
+                    for (int edge = web.dietStart(id); edge < web.dietEnd(id); edge++) {
+                        int prey = web.getPrey(edge);
+                        if (preyAlive[prey]) {
+                            double probability = web.getWeight(edge) / weights;
+                            totalDemand[prey] += appetite[id] * probability;
+                            arrivals[prey] += probability;
+                        }
+                    }
+                }
+            } else {
+                int food = consumed[id];
+                if (aliveCounts[food] > 0) {
+                    appetite[id] = roundedUp(own[id] * HUNGER_PERCENT);
+                    uniformDemand[food] += appetite[id] / aliveCounts[food];
+                    uniformArrivals[food] += 1.0 / aliveCounts[food];
+                }
+            }
+        }
+        // Нехватка: жертва отдаёт не больше своей численности, спрос делится пропорционально
+        for (int id = 0; id < size; id++) {
+            if (!preyAlive[id]) {
+                shortage[id] = 0;
+                continue;
+            }
+            double consumers = arrivals[id] + uniformArrivals[categories[id]];
+            double demand = totalDemand[id] + uniformDemand[categories[id]];
+            shortage[id] = consumers > 0 ? expectedShortage(own[id], demand / consumers, consumers) : 0;
+            uniformShortage[categories[id]] += shortage[id];
+        }
+        for (int category = 0; category < CATEGORIES; category++) {
+            if (aliveCounts[category] > 0) {
+                uniformShortage[category] /= aliveCounts[category];
+            }
+        }
+        // Голод и итог года
+        for (int id = 0; id < size; id++) {
+            double population = populations[id];
+            double hunger;
+            if (own[id] <= 0) {
+                hunger = 0;
+            } else if (appetite[id] <= 0) {
+                hunger = roundedUp(own[id] * STARVATION_PERCENT); // Пищи нет совсем
+            } else if (web.hasDiet(id)) {
+                hunger = appetite[id] * dietShortage(web, id);
+            } else {
+                hunger = appetite[id] * uniformShortage[consumed[id]];
+            }
+            next[id] = Math.max(own[id] - hunger, 0);
+            growth[id] = population > 0 ? Math.log(next[id] / population) : 0; // -Infinity, если вид вымер за год
+        }
+    }
+
+    /**
+     * Ожидаемая доля недополученного спроса для потребителя, выбравшего жертву:
+     * кроме него жертву выбирают m ~ Poisson(consumers) других потребителей
+     * со средним спросом appetite, и при спросе больше численности каждому
+     * достаётся доля available / ((m + 1) * appetite).
+     * Вероятности считаются рекуррентно без делений; счёт обрывается,
+     * когда хвост распределения становится пренебрежимо мал.
+     */
+    private double expectedShortage(double available, double appetite, double consumers) {
+        double fed = available / appetite; // Столько потребителей жертва прокормит полностью
+        if (consumers > POISSON_LIMIT) {
+            return consumers + 1 > fed ? 1 - fed / (consumers + 1) : 0;
+        }
+        if (consumers != cachedConsumers) {
+            cachedConsumers = consumers; // Без рационов у всех жертв категории одно и то же среднее
+            cachedExp = Math.exp(-consumers);
+        }
+        double probability = cachedExp;
+        double expected = 0;
+        for (int m = 0; m < INVERSE.length - 1; m++) {
+            if (m > 0) {
+                probability *= consumers * INVERSE[m];
+                if (m > consumers && probability < NEGLIGIBLE) {
+                    break;
+                }
+            }
+            if (m + 1 > fed) {
+                expected += probability * (1 - fed * INVERSE[m + 1]);
+            }
+        }
+        return expected;
+    }
+
+    private double aliveWeights(FoodWeb web, int consumer) {
+        double weights = 0;
+        for (int edge = web.dietStart(consumer); edge < web.dietEnd(consumer); edge++) {
+            if (preyAlive[web.getPrey(edge)]) {
+                weights += web.getWeight(edge);
+            }
+        }
+        return weights;
+    }
+
+    // Средняя нехватка по жертвам рациона с весами предпочтения
+    private double dietShortage(FoodWeb web, int consumer) {
+        double weights = 0;
+        double missing = 0;
+        for (int edge = web.dietStart(consumer); edge < web.dietEnd(consumer); edge++) {
+            int prey = web.getPrey(edge);
+            if (preyAlive[prey]) {
+                weights += web.getWeight(edge);
+                missing += web.getWeight(edge) * shortage[prey];
+            }
+        }
+        return weights > 0 ? missing / weights : 0;
+    }
+
+    /**
+     * Длина шага: поправка за изменение темпа за k лет составляет примерно
+     * population * drift * k^2 / 2, где drift - изменение темпа за год между
+     * двумя последними расчётами.
+     */
+    private int chooseStep(int limit) {
+        if (limit == 1 || previousStep == 0) {
+            return 1; // Скорость изменения темпов ещё неизвестна
+        }
+        double step = limit;
+        for (int id = 0; id < size; id++) {
+            double population = populations[id];
+            if (population <= 0) {
+                continue;
+            }
+            if (growth[id] == Double.NEGATIVE_INFINITY) {
+                return 1; // Вид вымирает за год
+            }
+            if (growth[id] < 0 && population >= MIN_REPRODUCING) {
+                // Ниже порога рождения прекращаются и темп скачком меняется: шаг не переходит порог
+                step = Math.min(step, Math.log(MIN_REPRODUCING / population) / growth[id]);
+            }
+            double drift = Math.abs(growth[id] - previousGrowth[id]) / previousStep;
+            if (drift > 0) {
+                double allowed = tolerance * Math.max(population, ERROR_FLOOR) / population;
+                step = Math.min(step, Math.sqrt(2 * allowed / drift));
+            }
+            if (step < 2) {
+                return 1;
+            }
+        }
+        return (int) step;
+    }
+
+    // Ожидание округления вверх (Math.ceil) величины со средним value: в среднем на полшага больше, но не меньше одного
+    private static double roundedUp(double value) {
+        return value > 0 ? Math.max(value + 0.5, 1) : 0;
+    }
+
+    // Количество видов, рассчитываемых с последнего reset
+    public int size() {
+        return size;
+    }
+
+    public double getPopulation(int id) {
+        return populations[id];
+    }
+
+    // Численности, округлённые до целых, в target; виды сверх размера хранилища обнуляются
+    public void copyCounts(long[] target) {
+        for (int id = 0; id < size; id++) {
+            target[id] = Math.round(populations[id]);
+        }
+        Arrays.fill(target, size, target.length, 0);
+    }
+}
@@ -0,0 +1,143 @@
+package first.second.third.ecosystem.engine;
+
+import first.second.third.ecosystem.entity.parameters.Category;
+import first.second.third.ecosystem.entity.parameters.WorldConditions;
+import first.second.third.ecosystem.population.PopulationStore;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.random.RandomGenerator.SplittableGenerator;
+
+/**
+ * Сравнение случайного движка с расчётом средних: загруженный мир
+ * прогоняется на Y лет обоими движками из одного начального состояния,
+ * после чего по каждому виду выводятся обе численности, их расхождение
+ * и время каждого прогона. С расписанием климата оба движка меняют
+ * условия каждый год по расписанию. Хранилище не изменяется.
+ */
+public class ModelComparison {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModelComparison.class);
+
+    private final PopulationStore store;
+    private final WorldConditions worldConditions;
+    private final long years;
+    private final SplittableGenerator random;
+    // Допустимая ошибка шага расчёта средних
+    @Setter
+    private double tolerance = MeanFieldEngine.DEFAULT_TOLERANCE;
+
+    private int size; // Количество видов на момент старта
+    private long[] initial;
+    private long[] stochastic;
+    private long[] meanField;
+    private long stochasticNanos;
+    private long meanFieldNanos;
+    private long meanFieldSteps;
+
+    public ModelComparison(PopulationStore store, WorldConditions worldConditions, long years, SplittableGenerator random) {
+        if (years < 0) {
+            throw new IllegalArgumentException("Number of years must not be negative: " + years);
+        }
+        this.store = store;
+        this.worldConditions = worldConditions.copy();
+        this.years = years;
+        this.random = random;
+    }
+
+    // Прогоняет оба движка под монитором хранилища
+    public void run() {
+        WorldCopyRuns.locked(store, size -> {
+            this.size = size;
+            initial = Arrays.copyOf(store.getCounts(), store.getCounts().length);
+
+            long started = System.nanoTime();
+            TickEngine engine = new TickEngine(store, ForkJoinPool.commonPool());
+            long[] current = initial.clone();
+            long[] next = new long[current.length];
+            WorldConditions conditions = worldConditions.copy(); // Расчёт средних начинает с тех же условий
+            ClimateFactorTable climateFactors = new ClimateFactorTable(store);
+            for (long year = 0; year < years; year++) {
+                conditions.setYear((int) (worldConditions.getYear() + year));
+                if (conditions.applySchedule()) {
+                    climateFactors.refresh(conditions);
+                    engine.tick(current, next, climateFactors.getExtinctionFactors(), climateFactors.getBirthFactors(), random);
+                } else {
+                    engine.tick(current, next, conditions, random);
+                }
+                long[] swap = current;
+                current = next;
+                next = swap;
+            }
+            stochastic = current;
+            stochasticNanos = System.nanoTime() - started;
+
+            started = System.nanoTime();
+            MeanFieldEngine meanFieldEngine = new MeanFieldEngine(store);
+            meanFieldEngine.setTolerance(tolerance);
+            meanFieldEngine.reset(initial);
+            meanFieldSteps = meanFieldEngine.run(worldConditions, years);
+            meanField = new long[initial.length];
+            meanFieldEngine.copyCounts(meanField);
+            meanFieldNanos = System.nanoTime() - started;
+        });
+        logger.info("Model comparison over {} years: stochastic {} ms, mean-field {} ms in {} steps",
+                years, stochasticNanos / 1_000_000, meanFieldNanos / 1_000_000, meanFieldSteps);
+    }
+
+    // Таблица по видам и итоги по категориям
+    public void printReport(PrintStream out) {
+        out.printf("Comparison over %d years: stochastic %.3f s, mean-field %.3f s (%d steps)%n",
+                years, stochasticNanos / 1e9, meanFieldNanos / 1e9, meanFieldSteps);
+        out.printf("%-10s %-16s %12s %12s %12s %9s%n", "CATEGORY", "SPECIES", "INITIAL", "STOCHASTIC", "MEAN-FIELD", "DIFF");
+        int disagreements = 0;
+        for (Category category : Category.values()) {
+            for (int id : WorldCopyRuns.members(store, category, size)) {
+                out.printf("%-10s %-16s %12d %12d %12d %9s%n", category, store.getName(id),
+                        initial[id], stochastic[id], meanField[id], difference(stochastic[id], meanField[id]));
+                if ((stochastic[id] > 0) != (meanField[id] > 0)) {
+                    disagreements++;
+                }
+            }
+        }
+        for (Category category : Category.values()) {
+            out.printf("Total %-10s %12d %12d %9s%n", category, total(stochastic, category), total(meanField, category),
+                    difference(total(stochastic, category), total(meanField, category)));
+        }
+        out.println("Species extinct in only one model: " + disagreements);
+    }
+
+    // Та же таблица в формате CSV
+    public void saveReport(String filePath) {
+        WorldCopyRuns.saveReport(logger, "comparison", filePath, writer -> {
+            writer.write("category,species,initial,stochastic,mean_field");
+            writer.newLine();
+            for (Category category : Category.values()) {
+                for (int id : WorldCopyRuns.members(store, category, size)) {
+                    writer.write(category + "," + store.getName(id) + "," + initial[id] + "," + stochastic[id] + "," + meanField[id]);
+                    writer.newLine();
+                }
+            }
+        });
+    }
+
+    private long total(long[] counts, Category category) {
+        long total = 0;
+        for (int id : WorldCopyRuns.members(store, category, size)) {
+            total += counts[id];
+        }
+        return total;
+    }
+
+    // Расхождение расчёта средних относительно случайного прогона
+    private static String difference(long stochastic, long meanField) {
+        if (stochastic == 0) {
+            return meanField == 0 ? "0%" : "n/a";
+        }
+        return String.format("%+.1f%%", (meanField - stochastic) * 100.0 / stochastic);
+    }
+}
@@ -0,0 +1,150 @@
+package first.second.third.ecosystem.engine;
+
+import first.second.third.ecosystem.population.FoodWeb;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Выбор жертвы по весам рациона за O(1) методом псевдонимов (Vose).
+ * Таблица каждого потребителя строится только по живым жертвам и лежит
+ * в общих массивах на местах его рёбер в сети. Между годами таблицы
+ * не перестраиваются целиком: пересчитываются только рационы потребителей
+ * тех жертв, которые вымерли или возродились с прошлого вызова refresh.
+ * Принадлежит одному движку: refresh и выборки одного года не пересекаются.
+ */
+final class PreySampler {
+
+    private FoodWeb web;
+    private boolean[] preyAlive = new boolean[0]; // Состояние жертв при последнем пересчёте
+    private int[] aliveCounts = new int[0]; // Живых жертв в таблице потребителя
+    private boolean[] dirty = new boolean[0];
+    private int[] dirtyList = new int[0];
+    private int dirtyCount;
+
+    // Таблицы псевдонимов на местах рёбер потребителя
+    private int[] aliasPrey = new int[0];
+    private int[] aliasAlternative = new int[0];
+    private double[] aliasProbability = new double[0];
+
+    // Рабочие массивы построения таблицы
+    private double[] scaled = new double[0];
+    private int[] small = new int[0];
+    private int[] large = new int[0];
+
+    // Приводит таблицы к живым жертвам снимка current
+    void refresh(FoodWeb web, long[] current) {
+        if (web.edgeCount() == 0) {
+            this.web = web;
+            return;
+        }
+        int size = web.size();
+        if (web != this.web) {
+            this.web = web; // Новая сеть: все таблицы строятся заново
+            int edges = web.edgeCount();
+            preyAlive = new boolean[size];
+            aliveCounts = new int[size];
+            dirty = new boolean[size];
+            dirtyList = new int[size];
+            aliasPrey = new int[edges];
+            aliasAlternative = new int[edges];
+            aliasProbability = new double[edges];
+            int degree = 0;
+            for (int id = 0; id < size; id++) {
+                preyAlive[id] = current[id] > 0;
+                degree = Math.max(degree, web.dietEnd(id) - web.dietStart(id));
+                if (web.hasDiet(id)) {
+                    markDirty(id);
+                }
+            }
+            scaled = new double[degree];
+            small = new int[degree];
+            large = new int[degree];
+        } else {
+            for (int id = 0; id < size; id++) {
+                boolean alive = current[id] > 0;
+                if (alive != preyAlive[id]) {
+                    preyAlive[id] = alive;
+                    for (int i = web.consumersStart(id); i < web.consumersEnd(id); i++) {
+                        markDirty(web.getConsumer(i));
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < dirtyCount; i++) {
+            rebuild(dirtyList[i]);
+            dirty[dirtyList[i]] = false;
+        }
+        dirtyCount = 0;
+    }
+
+    private void markDirty(int consumer) {
+        if (!dirty[consumer]) {
+            dirty[consumer] = true;
+            dirtyList[dirtyCount++] = consumer;
+        }
+    }
+
+    // Таблица псевдонимов потребителя по его живым жертвам
+    private void rebuild(int consumer) {
+        int base = web.dietStart(consumer);
+        int count = 0;
+        double total = 0;
+        for (int edge = base; edge < web.dietEnd(consumer); edge++) {
+            int prey = web.getPrey(edge);
+            if (preyAlive[prey]) {
+                aliasPrey[base + count] = prey;
+                scaled[count] = web.getWeight(edge);
+                total += scaled[count];
+                count++;
+            }
+        }
+        aliveCounts[consumer] = count;
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < count; i++) {
+            scaled[i] = scaled[i] * count / total;
+            if (scaled[i] < 1) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            aliasProbability[base + less] = scaled[less];
+            aliasAlternative[base + less] = aliasPrey[base + more];
+            scaled[more] += scaled[less] - 1;
+            if (scaled[more] < 1) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // Оставшиеся ячейки заполнены полностью (с точностью до округления)
+        while (largeCount > 0) {
+            int i = large[--largeCount];
+            aliasProbability[base + i] = 1;
+            aliasAlternative[base + i] = aliasPrey[base + i];
+        }
+        while (smallCount > 0) {
+            int i = small[--smallCount];
+            aliasProbability[base + i] = 1;
+            aliasAlternative[base + i] = aliasPrey[base + i];
+        }
+    }
+
+    // Жертва потребителя с объявленным рационом или -1, если все его жертвы вымерли
+    int sample(int consumer, RandomGenerator random) {
+        int count = aliveCounts[consumer];
+        if (count == 0) {
+            return -1;
+        }
+        int base = web.dietStart(consumer);
+        if (count == 1) {
+            return aliasPrey[base];
+        }
+        int slot = base + random.nextInt(count);
+        return random.nextDouble() < aliasProbability[slot] ? aliasPrey[slot] : aliasAlternative[slot];
+    }
+}
@@ -0,0 +1,217 @@
+package first.second.third.ecosystem.engine;
+
+import first.second.third.ecosystem.entity.parameters.Category;
+import first.second.third.ecosystem.entity.parameters.WorldConditions;
+import first.second.third.ecosystem.event.EventPipeline;
+import first.second.third.ecosystem.event.EventType;
+import first.second.third.ecosystem.fileprocessor.EcoSystemFileProcessor;
+import first.second.third.ecosystem.fileprocessor.MutationJournal;
+import first.second.third.ecosystem.kernel.SpeciesKernel;
+import first.second.third.ecosystem.metrics.FlightRecording;
+import first.second.third.ecosystem.metrics.SimulationMetrics;
+import first.second.third.ecosystem.metrics.TickPhase;
+import first.second.third.ecosystem.metrics.YearEvent;
+import first.second.third.ecosystem.population.PopulationHistory;
+import first.second.third.ecosystem.population.PopulationStore;
+import first.second.third.ecosystem.population.WorldSnapshot;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.random.RandomGenerator.SplittableGenerator;
+
+// Движок симуляции: продвигает мир на один год, без привязки к консоли.
+// При расписании климата условия каждого года берутся из расписания,
+// а факторы видов собираются из заранее посчитанных таблиц (ClimateFactorTable)
+public class SimulationEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(SimulationEngine.class);
+
+    private final PopulationStore store;
+    private final WorldConditions worldConditions;
+
+    private final TickEngine tickEngine;
+    // Факторы видов для условий по расписанию климата
+    private final ClimateFactorTable climateFactors;
+    // Генератор симуляции, от которого каждый год отщепляются потоки для блоков видов
+    private final SplittableGenerator random;
+    // Буфер численностей следующего года, после расчёта меняется местами с текущим
+    private long[] spare = new long[0];
+
+    // Конвейер событий; подробность вывода настраивается в нём
+    private final EventPipeline events;
+    // История численностей по годам (null - не записывается)
+    @Setter
+    private PopulationHistory history;
+    // Журнал изменений: итог каждого года фиксируется одним кадром (null - без журнала)
+    @Setter
+    private MutationJournal journal;
+    // Куда публикуется снимок мира после каждого года (null - не публикуется)
+    @Setter
+    private AtomicReference<WorldSnapshot> snapshot;
+    // Метрики расчёта; замеры идут, только пока они включены (null - без метрик)
+    @Setter
+    private SimulationMetrics metrics;
+    // Запись JFR на заданное число лет; отмечается после каждого года (null - без записи)
+    @Setter
+    private FlightRecording recording;
+
+    public SimulationEngine(EcoSystemFileProcessor processor, WorldConditions worldConditions, EventPipeline events, SplittableGenerator random) {
+        this.store = processor.getStore();
+        this.random = random;
+        this.worldConditions = worldConditions;
+        this.events = events;
+        this.tickEngine = new TickEngine(store, ForkJoinPool.commonPool());
+        this.climateFactors = new ClimateFactorTable(store);
+    }
+
+    /**
+     * Заранее строит таблицы факторов для условий, которые расписание климата
+     * примет в следующие years лет; без расписания ничего не делает.
+     *
+     * @return Количество построенных строк таблиц.
+     */
+    public long precompileSchedule(int years) {
+        synchronized (store) {
+            int year = worldConditions.getYear();
+            climateFactors.compile(worldConditions, year, (int) Math.min(Integer.MAX_VALUE, (long) year + years));
+            return climateFactors.getRows();
+        }
+    }
+
+    // Ядро смертей и рождений; null - расчёт поведениями видов (см. TickEngine.setKernel)
+    public void setKernel(SpeciesKernel kernel) {
+        tickEngine.setKernel(kernel);
+    }
+
+    // Один год симуляции: действия всех существ и увеличение года
+    public void advanceYear() {
+        // Флаг метрик проверяется один раз за год; выключенные метрики ничего не замеряют
+        SimulationMetrics active = metrics != null && metrics.isEnabled() ? metrics : null;
+        long started = 0;
+        long allocated = 0;
+        if (active != null) {
+            started = System.nanoTime();
+            allocated = SimulationMetrics.allocatedBytes();
+        }
+        long mark = started;
+        YearEvent yearEvent = new YearEvent(); // Без записи JFR не пишется
+        yearEvent.begin();
+        int species;
+        int year = worldConditions.getYear();
+        if (events.isEnabled(EventType.YEAR_START)) {
+            events.publish(EventType.YEAR_START, year, null, -1, -1, 0);
+        }
+
+        synchronized (store) {
+            long[] current = store.getCounts();
+            if (spare.length != current.length) {
+                spare = new long[current.length]; // Хранилище выросло
+            }
+            tickEngine.setMetrics(active);
+            if (worldConditions.applySchedule()) {
+                long factorsMark = active != null ? System.nanoTime() : 0;
+                climateFactors.refresh(worldConditions);
+                if (active != null) {
+                    active.lap(TickPhase.FACTORS, factorsMark);
+                }
+                tickEngine.tick(current, spare, climateFactors.getExtinctionFactors(), climateFactors.getBirthFactors(), random);
+            } else {
+                store.refreshFactors(worldConditions); // Устаревшие факторы пересчитываются ядром пачкой
+                tickEngine.tick(current, spare, worldConditions, random);
+            }
+            if (active != null) {
+                mark = System.nanoTime();
+            }
+            tickEngine.publish(events, year, current, spare);
+            tickEngine.recordFlightEvents(year, current);
+            if (active != null) {
+                mark = active.lap(TickPhase.EVENTS, mark);
+            }
+            if (history != null) {
+                if (history.isEmpty() || history.getLastYear() != year) {
+                    history.record(year, current, store.size()); // Начальное состояние
+                }
+                history.record(year + 1, spare, store.size());
+            }
+            if (active != null) {
+                mark = active.lap(TickPhase.HISTORY, mark);
+            }
+            if (journal != null) {
+                journal.commitYear(year + 1, current, spare, store.size());
+            }
+            if (active != null) {
+                mark = active.lap(TickPhase.JOURNAL, mark);
+            }
+            spare = store.swapCounts(spare, tickEngine.getNextTotals());
+            worldConditions.setYear(year + 1); // Увеличение года
+            worldConditions.applySchedule(); // Снимок видит условия нового года
+            if (snapshot != null) {
+                snapshot.set(WorldSnapshot.capture(store, worldConditions, year + 1, snapshot.get()));
+            }
+            if (active != null) {
+                mark = active.lap(TickPhase.SNAPSHOT, mark);
+            }
+            species = store.size();
+            if (yearEvent.shouldCommit()) {
+                yearEvent.year = year;
+                yearEvent.species = species;
+                for (int id = 0; id < species; id++) {
+                    long count = store.getCount(id);
+                    if (count > 0) {
+                        yearEvent.aliveSpecies++;
+                        yearEvent.population += count;
+                    }
+                }
+            }
+        }
+
+        if (journal != null) {
+            journal.compactIfDue();
+        }
+        if (active != null) {
+            active.lap(TickPhase.COMPACTION, mark);
+            active.endYear(System.nanoTime() - started, species,
+                    allocated >= 0 ? SimulationMetrics.allocatedBytes() - allocated : -1);
+        }
+        yearEvent.commit();
+        if (recording != null) {
+            recording.yearFinished();
+        }
+        logger.debug("Simulation year progressed to: {}", year + 1);
+    }
+
+    // Краткая строка с итогами по категориям (для контрольных точек)
+    public String checkpointLine() {
+        return "Year " + worldConditions.getYear()
+                + ": predators=" + store.total(Category.PREDATOR)
+                + ", herbivores=" + store.total(Category.HERBIVORE)
+                + ", plants=" + store.total(Category.PLANT)
+                + ", decomposers=" + store.total(Category.DECOMPOSER);
+    }
+
+    // Полная сводка: условия мира и численность каждого вида
+    public void printSummary(PrintStream out) {
+        out.println("Current year: " + worldConditions.getYear());
+        out.println("Temperature: " + worldConditions.getTemperature()
+                + ", accessible water: " + worldConditions.getAccessibleWater()
+                + ", humidity: " + worldConditions.getHumidityPercentage());
+        printCategory(out, Category.PREDATOR);
+        printCategory(out, Category.HERBIVORE);
+        printCategory(out, Category.PLANT);
+        printCategory(out, Category.DECOMPOSER);
+    }
+
+    private void printCategory(PrintStream out, Category category) {
+        out.println("Total " + category + ": " + store.total(category));
+        for (int i = 0; i < store.getMemberCount(category); i++) {
+            int id = store.getMember(category, i);
+            if (store.isAlive(id)) {
+                out.println("  " + category + ": " + store.getName(id) + " -> " + store.getCount(id));
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package first.second.third.ecosystem.engine;
+
+import first.second.third.ecosystem.entity.parameters.WorldConditions;
+import first.second.third.ecosystem.event.EventPipeline;
+import first.second.third.ecosystem.fileprocessor.EcoSystemFileProcessor;
+import first.second.third.ecosystem.fileprocessor.MutationJournal;
+import first.second.third.ecosystem.metrics.FlightRecording;
+import first.second.third.ecosystem.metrics.SimulationMetrics;
+import first.second.third.ecosystem.population.PopulationHistory;
+import first.second.third.ecosystem.population.PopulationStore;
+import first.second.third.ecosystem.population.WorldSnapshot;
+import first.second.third.ecosystem.util.SimulationRandom;
+import lombok.Getter;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.random.RandomGenerator.SplittableGenerator;
+
+/**
+ * Управление интерактивной симуляцией, общее для консоли и HTTP API:
+ * фоновый прогон лет через планировщик (частота, пауза, шаги),
+ * пошаговый расчёт, изменение мира и публикация снимков.
+ * После каждого года и каждого изменения мира публикуется новый неизменяемый
+ * снимок; читатели берут последний снимок и не блокируют расчёт.
+ */
+public class SimulationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(SimulationRunner.class);
+
+    private final EcoSystemFileProcessor processor;
+    private final PopulationStore store;
+    private final WorldConditions worldConditions;
+    private final EventPipeline events;
+    @Getter
+    private final PopulationHistory history;
+    // Журнал изменений (null - без журнала)
+    @Setter
+    private MutationJournal journal;
+
+    // Генератор случайных чисел симуляции; продолжается между запусками
+    private SplittableGenerator random = SimulationRandom.create();
+    // Фоновый прогон: частота, пауза и статистика перегрузок
+    @Getter
+    private final TickScheduler scheduler = new TickScheduler("simulation");
+    // Метрики расчёта лет (команда stats и JMX); по умолчанию выключены
+    @Getter
+    private final SimulationMetrics metrics = SimulationMetrics.getInstance();
+    // Запись JFR на заданное число лет (команда record)
+    @Getter
+    private final FlightRecording recording = new FlightRecording();
+    // Последний опубликованный снимок мира
+    private final AtomicReference<WorldSnapshot> snapshot = new AtomicReference<>();
+
+    public SimulationRunner(EcoSystemFileProcessor processor, WorldConditions worldConditions, EventPipeline events, PopulationHistory history) {
+        this.processor = processor;
+        this.store = processor.getStore();
+        this.worldConditions = worldConditions;
+        this.events = events;
+        this.history = history;
+    }
+
+    public boolean isRunning() {
+        return scheduler.isRunning();
+    }
+
+    public boolean isPaused() {
+        return scheduler.isPaused();
+    }
+
+    // Запуск фонового прогона; false, если он уже идёт
+    public synchronized boolean start() {
+        SimulationEngine engine = createEngine();
+        if (!scheduler.start(engine::advanceYear)) {
+            return false;
+        }
+        logger.info("Simulation started at year {}, rate {}", worldConditions.getYear(), rateName(scheduler.getRate()));
+        return true;
+    }
+
+    /**
+     * Остановка фонового прогона; возвращается после завершения текущего года.
+     * Поток не прерывается, чтобы не закрыть каналы журнала посреди записи.
+     *
+     * @return false, если прогон не шёл.
+     */
+    public boolean stop() {
+        if (!scheduler.stop()) {
+            return false;
+        }
+        logger.info("Simulation stopped at year {} after {} years, {} overruns", worldConditions.getYear(),
+                scheduler.getTicks(), scheduler.getOverruns());
+        return true;
+    }
+
+    // Пауза фонового прогона после текущего года
+    public boolean pause() {
+        if (!scheduler.pause()) {
+            return false;
+        }
+        logger.info("Simulation paused");
+        return true;
+    }
+
+    public boolean resume() {
+        if (!scheduler.resume()) {
+            return false;
+        }
+        logger.info("Simulation resumed");
+        return true;
+    }
+
+    /**
+     * Пошаговый расчёт: на паузе - на потоке прогона, без прогона - на вызывающем потоке.
+     *
+     * @return Год после расчёта.
+     * @throws IllegalStateException Если прогон идёт без паузы.
+     */
+    public synchronized int step(int years) {
+        if (years <= 0) {
+            throw new IllegalArgumentException("Number of years must be positive: " + years);
+        }
+        if (scheduler.isRunning()) {
+            try {
+                scheduler.step(years);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while stepping");
+            }
+            return worldConditions.getYear();
+        }
+        SimulationEngine engine = createEngine();
+        for (int i = 0; i < years; i++) {
+            engine.advanceYear();
+        }
+        return worldConditions.getYear();
+    }
+
+    /**
+     * Целевая частота фонового прогона.
+     *
+     * @param rate Лет в секунду; 0 - без ограничения.
+     */
+    public void setRate(double rate) {
+        scheduler.setRate(rate);
+        logger.info("Simulation rate set to {}", rateName(rate));
+    }
+
+    public static String rateName(double rate) {
+        return rate > 0 ? rate + " years/s" : "max";
+    }
+
+    private SimulationEngine createEngine() {
+        SimulationEngine engine = new SimulationEngine(processor, worldConditions, events, random);
+        engine.setHistory(history);
+        engine.setJournal(journal);
+        engine.setSnapshot(snapshot);
+        engine.setMetrics(metrics);
+        engine.setRecording(recording);
+        return engine;
+    }
+
+    // Новое зерно генератора; только при остановленной симуляции
+    public synchronized void setSeed(long seed) {
+        if (scheduler.isRunning()) {
+            throw new IllegalStateException("Stop the simulation before changing the seed.");
+        }
+        random = SimulationRandom.create(seed);
+    }
+
+    // Независимый поток случайных чисел (например, для ансамбля)
+    public synchronized SplittableGenerator splitRandom() {
+        return random.split();
+    }
+
+    // Изменение условий мира между годами расчёта
+    public void changeConditions(int temperature, int accessibleWater, int humidityPercentage) {
+        synchronized (store) {
+            worldConditions.setSchedule(null); // Ручное изменение отменяет расписание климата
+            worldConditions.setTemperature(temperature);
+            worldConditions.setAccessibleWater(accessibleWater);
+            worldConditions.setHumidityPercentage(humidityPercentage);
+            processor.conditionsChanged(); // Запись в журнал
+            publishSnapshot();
+        }
+    }
+
+    // Добавление вида или перезапись параметров существующего
+    public void addSpecies(String category, String species, long count, int comfortTemperature, int consumedWater, int comfortHumidity) {
+        synchronized (store) {
+            processor.addCreature(category, species, count, comfortTemperature, consumedWater, comfortHumidity);
+            publishSnapshot();
+        }
+    }
+
+    /**
+     * Прогноз расчётом средних от текущего состояния; мир не изменяется.
+     * На время прогноза фоновый прогон ждёт монитора хранилища.
+     *
+     * @return Движок с численностями через years лет.
+     */
+    public MeanFieldEngine forecast(long years) {
+        if (years <= 0) {
+            throw new IllegalArgumentException("Number of years must be positive: " + years);
+        }
+        synchronized (store) {
+            MeanFieldEngine engine = new MeanFieldEngine(store);
+            engine.reset(store.getCounts());
+            engine.run(worldConditions, years);
+            return engine;
+        }
+    }
+
+    // Сохранение последнего снимка мира; формат по расширению файла, расчёт не останавливается
+    public void save(String filePath) {
+        processor.saveWorld(getSnapshot(), filePath);
+    }
+
+    // Последний опубликованный снимок мира
+    public WorldSnapshot getSnapshot() {
+        WorldSnapshot latest = snapshot.get();
+        return latest != null ? latest : publishSnapshot();
+    }
+
+    /**
+     * Публикует снимок текущего состояния; вызывается после изменений мира
+     * в обход движка (загрузка, восстановление из журнала).
+     */
+    public WorldSnapshot publishSnapshot() {
+        synchronized (store) { // Порядок публикаций совпадает с порядком изменений
+            WorldSnapshot published = WorldSnapshot.capture(store, worldConditions, worldConditions.getYear(), snapshot.get());
+            snapshot.set(published);
+            return published;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package first.second.third.ecosystem.engine;
+
+import first.second.third.ecosystem.entity.parameters.Category;
+import first.second.third.ecosystem.entity.parameters.ClimateSchedule;
+import first.second.third.ecosystem.population.PopulationStore;
+import lombok.Getter;
+import lombok.Setter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.random.RandomGenerator.SplittableGenerator;
+
+/**
+ * Перебор условий мира: загруженный мир прогоняется на Y лет в каждой точке
+ * сетки значений температуры, воды и влажности, точки считаются параллельно
+ * на всех ядрах. Точка - независимая копия мира со своими условиями, её
+ * результат - итоговая численность и год вымирания каждого вида.
+ * Коэффициент условий вида - произведение коэффициентов температуры,
+ * влажности и воды, каждый из которых зависит только от своей оси, поэтому
+ * до прогона для каждого значения каждой оси считается строка коэффициентов
+ * видов, а факторы точки собираются из трёх строк теми же функциями, что
+ * и в ClimateFactorTable (fillRow и combine).
+ * Буферы расчёта принадлежат рабочему потоку, генератор каждой точки
+ * отщепляется от генератора перебора в порядке точек, поэтому при заданном
+ * зерне результат не зависит от количества ядер.
+ * С расчётом средних точки считаются MeanFieldEngine без случайности;
+ * год вымирания тогда - конец шага, на котором вид вымер.
+ */
+public class SweepRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(SweepRunner.class);
+    // Год вымирания для вида, дожившего до конца прогона
+    private static final int SURVIVED = -1;
+
+    private final PopulationStore store;
+    @Getter
+    private final Axis temperatures;
+    @Getter
+    private final Axis water;
+    @Getter
+    private final Axis humidity;
+    @Getter
+    private final int years;
+    private final int threads;
+    private final SplittableGenerator random;
+    // Точки считаются движком средних вместо случайного движка
+    @Getter
+    @Setter
+    private boolean meanField;
+    @Getter
+    @Setter
+    private double tolerance = MeanFieldEngine.DEFAULT_TOLERANCE;
+
+    private final int points;
+    private int species; // Количество видов на момент старта
+    // Коэффициенты видов по значениям осей: [номер значения * species + id]
+    private double[] temperatureTable;
+    private double[] waterTable;
+    private double[] humidityTable;
+    private long[] counts; // Итоговые численности: [точка * species + id]
+    private int[] extinctionYears; // Через сколько лет вид вымер в точке
+    private SplittableGenerator[] randoms; // Генератор каждой точки
+
+    public SweepRunner(PopulationStore store, Axis temperatures, Axis water, Axis humidity, int years, SplittableGenerator random) {
+        this(store, temperatures, water, humidity, years, random, Runtime.getRuntime().availableProcessors());
+    }
+
+    public SweepRunner(PopulationStore store, Axis temperatures, Axis water, Axis humidity, int years,
+                       SplittableGenerator random, int threads) {
+        if (years < 0) {
+            throw new IllegalArgumentException("Years must be non-negative");
+        }
+        if ((long) temperatures.getPoints() * water.getPoints() * humidity.getPoints() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many sweep points: "
+                    + temperatures.getPoints() + "x" + water.getPoints() + "x" + humidity.getPoints());
+        }
+        this.store = store;
+        this.temperatures = temperatures;
+        this.water = water;
+        this.humidity = humidity;
+        this.years = years;
+        this.random = random;
+        this.points = temperatures.getPoints() * water.getPoints() * humidity.getPoints();
+        this.threads = Math.max(1, Math.min(threads, points));
+    }
+
+    /**
+     * Прогоняет все точки. Монитор хранилища удерживается до конца прогона,
+     * чтобы набор видов не менялся.
+     */
+    public void run() throws InterruptedException {
+        WorldCopyRuns.locked(store, size -> {
+            species = size;
+            if ((long) points * species > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("Sweep of " + points + " points x " + species + " species is too large");
+            }
+            long[] initial = store.getCounts().clone();
+            buildTables();
+            counts = new long[points * species];
+            extinctionYears = new int[points * species];
+            if (!meanField) {
+                randoms = new SplittableGenerator[points];
+                for (int point = 0; point < points; point++) {
+                    randoms[point] = random.split();
+                }
+            }
+
+            long started = System.nanoTime();
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                AtomicInteger nextPoint = new AtomicInteger();
+                List<Future<?>> workers = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    workers.add(executor.submit(() -> runWorker(nextPoint, initial)));
+                }
+                for (Future<?> worker : workers) {
+                    worker.get();
+                }
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Sweep point failed: " + e.getCause().getMessage(), e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+            randoms = null;
+            logger.info("Sweep of {} points x {} years finished in {} ms",
+                    points, years, (System.nanoTime() - started) / 1_000_000);
+        });
+    }
+
+    // Таблицы коэффициентов видов для каждого значения каждой оси
+    private void buildTables() {
+        temperatureTable = new double[temperatures.getPoints() * species];
+        waterTable = new double[water.getPoints() * species];
+        humidityTable = new double[humidity.getPoints() * species];
+        for (int i = 0; i < temperatures.getPoints(); i++) {
+            ClimateFactorTable.fillRow(store, ClimateSchedule.TEMPERATURE, temperatures.value(i), temperatureTable, i * species, species);
+        }
+        for (int i = 0; i < water.getPoints(); i++) {
+            ClimateFactorTable.fillRow(store, ClimateSchedule.WATER, water.value(i), waterTable, i * species, species);
+        }
+        for (int i = 0; i < humidity.getPoints(); i++) {
+            ClimateFactorTable.fillRow(store, ClimateSchedule.HUMIDITY, humidity.value(i), humidityTable, i * species, species);
+        }
+    }
+
+    // Факторы видов в точке из строк таблиц её значений
+    private void factors(int point, double[] extinctionFactors, double[] birthFactors) {
+        ClimateFactorTable.combine(temperatureTable, temperatureIndex(point) * species, waterTable, waterIndex(point) * species,
+                humidityTable, humidityIndex(point) * species, species, extinctionFactors, birthFactors);
+    }
+
+    // Номера значений осей точки: температура - старший разряд, влажность - младший
+    private int temperatureIndex(int point) {
+        return point / (water.getPoints() * humidity.getPoints());
+    }
+
+    private int waterIndex(int point) {
+        return point / humidity.getPoints() % water.getPoints();
+    }
+
+    private int humidityIndex(int point) {
+        return point % humidity.getPoints();
+    }
+
+    // Рабочий поток забирает точки по одной и прогоняет их своим движком
+    private void runWorker(AtomicInteger nextPoint, long[] initial) {
+        TickEngine engine = meanField ? null : new TickEngine(store);
+        MeanFieldEngine meanFieldEngine = null;
+        if (meanField) {
+            meanFieldEngine = new MeanFieldEngine(store);
+            meanFieldEngine.setTolerance(tolerance);
+        }
+        long[] current = new long[initial.length];
+        long[] next = new long[initial.length];
+        double[] extinctionFactors = new double[species];
+        double[] birthFactors = new double[species];
+        int point;
+        while ((point = nextPoint.getAndIncrement()) < points) {
+            int offset = point * species;
+            for (int id = 0; id < species; id++) {
+                extinctionYears[offset + id] = initial[id] > 0 ? SURVIVED : 0;
+            }
+            factors(point, extinctionFactors, birthFactors);
+            if (meanField) {
+                runMeanField(meanFieldEngine, offset, initial, current, extinctionFactors, birthFactors);
+            } else {
+                System.arraycopy(initial, 0, current, 0, initial.length);
+                runRandom(engine, offset, current, next, extinctionFactors, birthFactors, randoms[point]);
+                randoms[point] = null; // Генератор больше не нужен
+            }
+        }
+    }
+
+    // Прогон точки случайным движком; current и next - рабочие буферы потока
+    private void runRandom(TickEngine engine, int offset, long[] current, long[] next,
+                             double[] extinctionFactors, double[] birthFactors, SplittableGenerator pointRandom) {
+        for (int year = 1; year <= years; year++) {
+            engine.tick(current, next, extinctionFactors, birthFactors, pointRandom);
+            long[] swap = current;
+            current = next;
+            next = swap;
+            if (!markExtinct(offset, current, year)) {
+                break; // Дальше ничего не изменится
+            }
+        }
+        System.arraycopy(current, 0, counts, offset, species);
+    }
+
+    private void runMeanField(MeanFieldEngine engine, int offset, long[] initial, long[] buffer,
+                              double[] extinctionFactors, double[] birthFactors) {
+        engine.reset(initial);
+        int year = 0;
+        while (year < years) {
+            year += engine.advance(extinctionFactors, birthFactors, years - year);
+            engine.copyCounts(buffer);
+            if (!markExtinct(offset, buffer, year)) {
+                break;
+            }
+        }
+        engine.copyCounts(buffer); // Для прогона без лет - начальные численности
+        System.arraycopy(buffer, 0, counts, offset, species);
+    }
+
+    // Отмечает вымерших к году year; false, если в точке не осталось живых видов
+    private boolean markExtinct(int offset, long[] populations, int year) {
+        boolean anyAlive = false;
+        for (int id = 0; id < species; id++) {
+            if (populations[id] > 0) {
+                anyAlive = true;
+            } else if (extinctionYears[offset + id] == SURVIVED) {
+                extinctionYears[offset + id] = year;
+            }
+        }
+        return anyAlive;
+    }
+
+    // Итоговая таблица по видам: в скольких точках вид дожил до конца и лучшие для него условия
+    public void printReport(PrintStream out) {
+        out.printf("Sweep: %d temperatures x %d water x %d humidity = %d points, %d years%s%n",
+                temperatures.getPoints(), water.getPoints(), humidity.getPoints(), points, years,
+                meanField ? " (mean-field)" : "");
+        out.printf("%-10s %-16s %10s %8s %14s %16s %6s %6s %6s%n",
+                "CATEGORY", "SPECIES", "SURVIVED", "SHARE", "MEAN POP", "BEST POP", "T", "WATER", "HUM");
+        for (Category category : Category.values()) {
+            for (int id : WorldCopyRuns.members(store, category, species)) {
+                int survived = 0;
+                double sum = 0;
+                int best = 0;
+                for (int point = 0; point < points; point++) {
+                    long population = counts[point * species + id];
+                    if (extinctionYears[point * species + id] == SURVIVED) {
+                        survived++;
+                    }
+                    sum += population;
+                    if (population > counts[best * species + id]) {
+                        best = point;
+                    }
+                }
+                out.printf("%-10s %-16s %10d %8.4f %14.1f %16d %6d %6d %6d%n",
+                        category, store.getName(id), survived, (double) survived / points, sum / points,
+                        counts[best * species + id], temperatures.value(temperatureIndex(best)),
+                        water.value(waterIndex(best)), humidity.value(humidityIndex(best)));
+            }
+        }
+    }
+
+    /**
+     * Результаты в формате CSV: строка на точку и вид (итоговая численность
+     * и год вымирания), удобно для построения тепловых карт по двум осям.
+     */
+    public void saveReport(String filePath) {
+        WorldCopyRuns.saveReport(logger, "sweep", filePath, writer -> {
+            writer.write("temperature,water,humidity,category,species,population,extinction_year");
+            writer.newLine();
+            StringBuilder line = new StringBuilder();
+            for (int point = 0; point < points; point++) {
+                for (int id = 0; id < species; id++) {
+                    int extinct = extinctionYears[point * species + id];
+                    line.setLength(0);
+                    line.append(temperatures.value(temperatureIndex(point))).append(',')
+                            .append(water.value(waterIndex(point))).append(',')
+                            .append(humidity.value(humidityIndex(point))).append(',')
+                            .append(store.getCategory(id)).append(',').append(store.getName(id)).append(',')
+                            .append(counts[point * species + id]).append(',')
+                            .append(extinct == SURVIVED ? "-" : String.valueOf(extinct));
+                    writer.write(line.toString());
+                    writer.newLine();
+                }
+            }
+        });
+    }
+
+    /**
+     * Ось перебора: points целых значений, равномерно от from до to включительно
+     * (с округлением). Задаётся строкой "from:to:points" или одним значением.
+     */
+    @Getter
+    public static final class Axis {
+        private final int from;
+        private final int to;
+        private final int points;
+
+        public Axis(int from, int to, int points) {
+            if (points <= 0) {
+                throw new IllegalArgumentException("Number of points must be positive: " + points);
+            }
+            if (points == 1 && from != to) {
+                throw new IllegalArgumentException("A range of one point must have equal bounds: " + from + ":" + to);
+            }
+            if (points > Math.abs((long) to - from) + 1) {
+                throw new IllegalArgumentException("More points (" + points + ") than distinct values in " + from + ":" + to);
+            }
+            this.from = from;
+            this.to = to;
+            this.points = points;
+        }
+
+        public int value(int index) {
+            return points == 1 ? from : (int) Math.round(from + ((double) to - from) * index / (points - 1));
+        }
+
+        // "from:to:points" или одно значение
+        public static Axis parse(String spec, String name) {
+            String[] parts = spec.trim().split(":");
+            try {
+                if (parts.length == 1) {
+                    int value = Integer.parseInt(parts[0].trim());
+                    return new Axis(value, value, 1);
+                }
+                if (parts.length == 3) {
+                    return new Axis(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()),
+                            Integer.parseInt(parts[2].trim()));
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number in " + name + " range: " + spec);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid " + name + " range: " + e.getMessage());
+            }
+            throw new IllegalArgumentException("Invalid " + name + " range (expected from:to:points): " + spec);
+        }
+
+        @Override
+        public String toString() {
+            return points == 1 ? String.valueOf(from) : from + ":" + to + ":" + points;
+        }
+    }
+}
@@ -0,0 +1,515 @@
+package first.second.third.ecosystem.engine;
+
+import first.second.third.ecosystem.entity.animal.CreatureBehavior;
+import first.second.third.ecosystem.entity.animal.DecomposerBehavior;
+import first.second.third.ecosystem.entity.animal.HerbivoreBehavior;
+import first.second.third.ecosystem.entity.animal.PlantBehavior;
+import first.second.third.ecosystem.entity.animal.PredatorBehavior;
+import first.second.third.ecosystem.entity.parameters.Category;
+import first.second.third.ecosystem.entity.parameters.WorldConditions;
+import first.second.third.ecosystem.event.EventLevel;
+import first.second.third.ecosystem.event.EventPipeline;
+import first.second.third.ecosystem.event.EventType;
+import first.second.third.ecosystem.kernel.SpeciesKernel;
+import first.second.third.ecosystem.metrics.SimulationMetrics;
+import first.second.third.ecosystem.metrics.SpeciesAction;
+import first.second.third.ecosystem.metrics.SpeciesActionEvent;
+import first.second.third.ecosystem.metrics.TickPhase;
+import first.second.third.ecosystem.population.FoodWeb;
+import first.second.third.ecosystem.population.PopulationStore;
+import first.second.third.ecosystem.util.Calculations;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGenerator.SplittableGenerator;
+
+/**
+ * Расчёт одного года по неизменному снимку численностей.
+ * Сначала каждый вид независимо (и параллельно) считает свои смерти, рождения
+ * и спрос на пищу по численностям года N, затем при фиксации спрос хищников
+ * на одну и ту же жертву распределяется детерминированно, а итог пишется
+ * в отдельный буфер года N+1.
+ * Как и в исходных правилах, съеденные особи не вычитаются из численности
+ * жертвы: её численность лишь ограничивает суммарный улов всех потребителей,
+ * а недополученное умирает от голода.
+ * Вид с объявленным рационом выбирает жертву по весам предпочтения,
+ * остальные - равновероятно среди живых видов категории пищи.
+ * Виды обрабатываются блоками фиксированного размера, и каждый блок получает
+ * свой поток случайных чисел, отщеплённый от генератора симуляции в порядке
+ * блоков, поэтому при одинаковом зерне результат не зависит от числа потоков.
+ * С заданным ядром видов смерти и рождения всех блоков задачи считаются одним
+ * вызовом ядра по заранее выпавшим множителям (см. computeWithKernel).
+ */
+public class TickEngine {
+
+    // Размер блока видов с собственным потоком случайных чисел
+    private static final int CHUNK = 256;
+    // Меньше этого количества блоков на задачу расчёт не дробится
+    private static final int PARALLEL_THRESHOLD = 2;
+
+    private final PopulationStore store;
+    private final ForkJoinPool pool;
+    private final CreatureBehavior[] behaviors = new CreatureBehavior[Category.values().length];
+
+    // Промежуточные результаты года, индекс - идентификатор вида
+    private long[] deaths = new long[0];
+    private long[] births = new long[0];
+    private long[] own = new long[0]; // Численность после смертей и рождений
+    private long[] demand = new long[0]; // Сколько особей жертвы хочет съесть вид
+    private long[] granted = new long[0]; // Сколько досталось при распределении
+    private long[] starvation = new long[0]; // Смерти от голода при полном отсутствии пищи
+    private long[] totalDemand = new long[0]; // Суммарный спрос на вид как на жертву
+    private long[] eaten = new long[0]; // Сколько особей вида уже распределено потребителям
+    private int[] prey = new int[0];
+    // Множители смертей и рождений, выпавшие для расчёта ядром
+    private double[] deathRolls = new double[0];
+    private double[] birthRolls = new double[0];
+    // Ядро смертей и рождений; null - их считают поведения видов
+    private SpeciesKernel kernel;
+    // Живые виды каждой категории на начало года - кандидаты в жертвы
+    private final int[][] alive = new int[Category.values().length][0];
+    private final int[] aliveCounts = new int[Category.values().length];
+    // Итоги категорий года N+1, считаются при записи буфера
+    private final long[] nextTotals = new long[Category.values().length];
+    // Генераторы блоков текущего года
+    private SplittableGenerator[] chunkRandoms = new SplittableGenerator[0];
+    // Выбор жертв для видов с объявленным рационом
+    private final PreySampler sampler = new PreySampler();
+    private FoodWeb foodWeb;
+    // Факторы вымирания и рождаемости видов при условиях мира
+    private double[] extinctionFactors = new double[0];
+    private double[] birthFactors = new double[0];
+    // Метрики текущего года; null - время не замеряется
+    private SimulationMetrics metrics;
+    private int sampleOffset; // Сдвиг выборки замеряемых видов, меняется каждый год
+
+    // Однопоточный движок (например, для отдельной реплики ансамбля)
+    public TickEngine(PopulationStore store) {
+        this(store, null);
+    }
+
+    public TickEngine(PopulationStore store, ForkJoinPool pool) {
+        this.store = store;
+        this.pool = pool;
+        behaviors[Category.PREDATOR.ordinal()] = new PredatorBehavior();
+        behaviors[Category.HERBIVORE.ordinal()] = new HerbivoreBehavior();
+        behaviors[Category.PLANT.ordinal()] = new PlantBehavior();
+        behaviors[Category.DECOMPOSER.ordinal()] = new DecomposerBehavior();
+    }
+
+    public CreatureBehavior getBehavior(Category category) {
+        return behaviors[category.ordinal()];
+    }
+
+    /**
+     * Ядро для смертей и рождений следующих лет; null возвращает расчёт поведениями видов.
+     * Ядро тратит случайные числа в другом порядке, поэтому при одном зерне
+     * прогоны с ядром и без него различаются (но не зависят от реализации ядра).
+     */
+    public void setKernel(SpeciesKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    // Метрики для следующих лет; null отключает замеры
+    public void setMetrics(SimulationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Рассчитывает год: читает только current, пишет только next.
+     * Вызывающий должен держать монитор хранилища, чтобы набор видов не менялся.
+     */
+    public void tick(long[] current, long[] next, WorldConditions worldConditions, SplittableGenerator random) {
+        SimulationMetrics active = metrics;
+        long mark = active != null ? System.nanoTime() : 0;
+        int size = store.size();
+        if (extinctionFactors.length < size) {
+            extinctionFactors = new double[current.length];
+            birthFactors = new double[current.length];
+        }
+        for (int id = 0; id < size; id++) {
+            extinctionFactors[id] = store.getExtinctionFactor(id, worldConditions);
+            birthFactors[id] = store.getBirthFactor(id, worldConditions);
+        }
+        if (active != null) {
+            active.lap(TickPhase.FACTORS, mark);
+        }
+        tick(current, next, extinctionFactors, birthFactors, random);
+    }
+
+    /**
+     * Рассчитывает год с заранее посчитанными факторами видов, не обращаясь
+     * к кешу факторов хранилища (например, для регионов со своими условиями).
+     *
+     * @param extinctionFactors Факторы вымирания, индекс - идентификатор вида.
+     * @param birthFactors Факторы рождаемости, индекс - идентификатор вида.
+     */
+    public void tick(long[] current, long[] next, double[] extinctionFactors, double[] birthFactors, SplittableGenerator random) {
+        SimulationMetrics active = metrics;
+        long mark = active != null ? System.nanoTime() : 0;
+        int size = store.size();
+        ensureCapacity(current.length);
+        collectAlive(current);
+        foodWeb = store.getFoodWeb();
+        sampler.refresh(foodWeb, current);
+        int chunks = (size + CHUNK - 1) / CHUNK;
+        if (chunkRandoms.length < chunks) {
+            chunkRandoms = new SplittableGenerator[chunks];
+        }
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            chunkRandoms[chunk] = random.split();
+        }
+        if (pool != null && chunks >= PARALLEL_THRESHOLD * 2 && pool.getParallelism() > 1) {
+            pool.invoke(new ComputeTask(current, extinctionFactors, birthFactors, 0, chunks));
+        } else {
+            compute(current, extinctionFactors, birthFactors, 0, chunks);
+        }
+        if (active != null) {
+            mark = active.lap(TickPhase.COMPUTE, mark);
+            sampleOffset = (sampleOffset + 1) & (SimulationMetrics.SPECIES_SAMPLE - 1);
+        }
+        commit(next, size);
+        if (active != null) {
+            active.lap(TickPhase.COMMIT, mark);
+        }
+    }
+
+    // Фаза 1: независимый расчёт каждого вида блоков [fromChunk, toChunk) по снимку
+    private void compute(long[] current, double[] extinctionFactors, double[] birthFactors, int fromChunk, int toChunk) {
+        int size = store.size();
+        // Время действий копится локально и сливается в метрики один раз на задачу
+        long[] times = metrics != null ? SimulationMetrics.newActionTimes() : null;
+        if (kernel != null) {
+            computeWithKernel(current, extinctionFactors, birthFactors, fromChunk, toChunk, times);
+        } else {
+            for (int chunk = fromChunk; chunk < toChunk; chunk++) {
+                RandomGenerator random = chunkRandoms[chunk];
+                int to = Math.min(size, (chunk + 1) * CHUNK);
+                for (int id = chunk * CHUNK; id < to; id++) {
+                    computeSpecies(id, current, extinctionFactors[id], birthFactors[id], random, times);
+                }
+            }
+        }
+        if (times != null) {
+            metrics.addActionTimes(times);
+        }
+    }
+
+    /**
+     * Расчёт одного вида: смерти, рождения и спрос на пищу.
+     *
+     * @param times Замеры задачи (SimulationMetrics.newActionTimes) или null без замеров.
+     */
+    private void computeSpecies(int id, long[] current, double extinctionFactor, double birthFactor, RandomGenerator random, long[] times) {
+        long population = current[id];
+        deaths[id] = births[id] = 0;
+        clearFeeding(id);
+        own[id] = population;
+        if (population <= 0) {
+            return; // Вымерший вид
+        }
+        int category = store.getCategory(id).ordinal();
+        CreatureBehavior behavior = behaviors[category];
+        boolean timed = times != null && sample(id, category, times);
+        long mark = timed ? System.nanoTime() : 0;
+        deaths[id] = behavior.die(population, extinctionFactor, random);
+        if (timed) {
+            mark = lap(times, SpeciesAction.DIE, category, mark);
+        }
+        long survived = population - deaths[id];
+        births[id] = behavior.reproduce(survived, birthFactor, random);
+        own[id] = survived + births[id];
+        if (timed) {
+            mark = lap(times, SpeciesAction.REPRODUCE, category, mark);
+        }
+        feed(id, category, behavior, random, timed ? times : null, mark);
+    }
+
+    /**
+     * Расчёт блоков [fromChunk, toChunk) ядром: сначала для живых видов каждого
+     * блока его генератор выдаёт множители смертей и рождений в порядке
+     * идентификаторов, затем ядро одним вызовом считает смерти и рождения всех
+     * блоков, и после этого виды каждого блока выбирают жертв тем же генератором.
+     * Поведения видов не переопределяют die и reproduce, поэтому результат
+     * по распределению совпадает с расчётом по видам.
+     * Время смертей и рождений в этом режиме по видам не замеряется.
+     */
+    private void computeWithKernel(long[] current, double[] extinctionFactors, double[] birthFactors,
+                                   int fromChunk, int toChunk, long[] times) {
+        int size = store.size();
+        for (int chunk = fromChunk; chunk < toChunk; chunk++) {
+            RandomGenerator random = chunkRandoms[chunk];
+            int to = Math.min(size, (chunk + 1) * CHUNK);
+            for (int id = chunk * CHUNK; id < to; id++) {
+                if (current[id] > 0) {
+                    deathRolls[id] = Calculations.deathRoll(random);
+                    birthRolls[id] = Calculations.birthRoll(random);
+                }
+            }
+        }
+        kernel.deathsAndBirths(current, extinctionFactors, birthFactors, deathRolls, birthRolls, deaths, births,
+                fromChunk * CHUNK, Math.min(size, toChunk * CHUNK));
+        for (int chunk = fromChunk; chunk < toChunk; chunk++) {
+            RandomGenerator random = chunkRandoms[chunk];
+            int to = Math.min(size, (chunk + 1) * CHUNK);
+            for (int id = chunk * CHUNK; id < to; id++) {
+                long population = current[id];
+                clearFeeding(id);
+                own[id] = population - deaths[id] + births[id];
+                if (population <= 0) {
+                    continue;
+                }
+                int category = store.getCategory(id).ordinal();
+                boolean timed = times != null && sample(id, category, times);
+                feed(id, category, behaviors[category], random, timed ? times : null, timed ? System.nanoTime() : 0);
+            }
+        }
+    }
+
+    // Учитывает вид в замерах задачи; true, если его действия замеряются
+    private boolean sample(int id, int category, long[] times) {
+        times[SimulationMetrics.speciesIndex(category)]++;
+        if (((id + sampleOffset) & (SimulationMetrics.SPECIES_SAMPLE - 1)) != 0) {
+            return false;
+        }
+        times[SimulationMetrics.sampledIndex(category)]++;
+        return true;
+    }
+
+    private void clearFeeding(int id) {
+        demand[id] = granted[id] = starvation[id] = totalDemand[id] = eaten[id] = 0;
+        prey[id] = -1;
+    }
+
+    /**
+     * Выбор жертвы и спрос на пищу вида с численностью own[id].
+     *
+     * @param times Замеры задачи, если вид в выборке, иначе null.
+     */
+    private void feed(int id, int category, CreatureBehavior behavior, RandomGenerator random, long[] times, long mark) {
+        if (own[id] <= 0) {
+            return;
+        }
+        if (foodWeb.hasDiet(id)) {
+            prey[id] = sampler.sample(id, random);
+        } else {
+            int consumed = behavior.getConsumedCategory().ordinal();
+            prey[id] = behavior.choosePrey(alive[consumed], aliveCounts[consumed], random);
+        }
+        if (prey[id] >= 0) {
+            demand[id] = behavior.appetite(own[id]);
+        } else {
+            starvation[id] = behavior.starvation(own[id]);
+        }
+        if (times != null) {
+            lap(times, SpeciesAction.FEED, category, mark);
+        }
+    }
+
+    private static long lap(long[] times, SpeciesAction action, int category, long since) {
+        long now = System.nanoTime();
+        times[SimulationMetrics.actionIndex(action, category)] += now - since;
+        return now;
+    }
+
+    // Списки живых видов по категориям, чтобы выбор жертвы не требовал обхода
+    private void collectAlive(long[] current) {
+        for (Category category : Category.values()) {
+            int ordinal = category.ordinal();
+            int members = store.getMemberCount(category);
+            if (alive[ordinal].length < members) {
+                alive[ordinal] = new int[members];
+            }
+            int count = 0;
+            for (int i = 0; i < members; i++) {
+                int id = store.getMember(category, i);
+                if (current[id] > 0) {
+                    alive[ordinal][count++] = id;
+                }
+            }
+            aliveCounts[ordinal] = count;
+        }
+    }
+
+    // Фаза 2: детерминированное распределение жертв и запись года N+1
+    private void commit(long[] next, int size) {
+        for (int id = 0; id < size; id++) {
+            if (prey[id] >= 0) {
+                totalDemand[prey[id]] += demand[id];
+            }
+        }
+        // Пропорциональная доля каждому потребителю в порядке идентификаторов
+        for (int id = 0; id < size; id++) {
+            int p = prey[id];
+            if (p < 0) {
+                continue;
+            }
+            long available = own[p];
+            granted[id] = totalDemand[p] <= available
+                    ? demand[id]
+                    : (long) Math.floor((double) demand[id] * available / totalDemand[p]);
+            eaten[p] += granted[id];
+        }
+        // Остаток от округления отдаём первым по идентификатору потребителям
+        for (int id = 0; id < size; id++) {
+            int p = prey[id];
+            if (p < 0 || totalDemand[p] <= own[p] || eaten[p] >= own[p]) {
+                continue;
+            }
+            long extra = Math.min(demand[id] - granted[id], own[p] - eaten[p]);
+            granted[id] += extra;
+            eaten[p] += extra;
+        }
+        Arrays.fill(nextTotals, 0);
+        for (int id = 0; id < size; id++) {
+            long hungerDeath = demand[id] - granted[id] + starvation[id];
+            next[id] = Math.max(own[id] - hungerDeath, 0);
+            nextTotals[store.getCategory(id).ordinal()] += next[id];
+        }
+        Arrays.fill(next, size, next.length, 0);
+    }
+
+    /**
+     * Общая численность категорий в буфере последнего рассчитанного года
+     * (для PopulationStore.swapCounts); массив переиспользуется следующим годом.
+     */
+    public long[] getNextTotals() {
+        return nextTotals;
+    }
+
+    // События года в порядке категорий, как при последовательном обходе
+    public void publish(EventPipeline events, int year, long[] current, long[] next) {
+        publish(events, year, Category.PREDATOR, current, next);
+        publish(events, year, Category.HERBIVORE, current, next);
+        publish(events, year, Category.PLANT, current, next);
+        publish(events, year, Category.DECOMPOSER, current, next);
+    }
+
+    private void publish(EventPipeline events, int year, Category category, long[] current, long[] next) {
+        if (!events.isEnabled(EventType.CATEGORY_TOTAL, category)) {
+            return; // Категория отключена: не тратим время даже на обход
+        }
+        boolean species = events.getLevel(category).includes(EventLevel.SPECIES);
+        boolean detail = events.getLevel(category).includes(EventLevel.DETAIL);
+        long total = 0;
+        for (int i = 0; i < store.getMemberCount(category); i++) {
+            int id = store.getMember(category, i);
+            total += next[id];
+            if (!species || current[id] <= 0) {
+                continue;
+            }
+            if (detail) {
+                publishActions(events, year, category, id, current[id]);
+            }
+            events.publish(EventType.POPULATION, year, category, id, -1, next[id]);
+        }
+        events.publish(EventType.CATEGORY_TOTAL, year, category, -1, -1, total);
+    }
+
+    /**
+     * События JFR о действиях видов за год по выборке: каждый
+     * SpeciesActionEvent.SPECIES_SAMPLE-й живой вид, выборка сдвигается с годом.
+     * Без активной записи JFR возвращается сразу.
+     */
+    public void recordFlightEvents(int year, long[] current) {
+        if (!new SpeciesActionEvent().isEnabled()) {
+            return;
+        }
+        int size = store.size();
+        for (int id = Math.floorMod(year, SpeciesActionEvent.SPECIES_SAMPLE); id < size; id += SpeciesActionEvent.SPECIES_SAMPLE) {
+            if (current[id] <= 0) {
+                continue;
+            }
+            recordAction(year, id, "DEATH", deaths[id], -1);
+            recordAction(year, id, "BIRTH", births[id], -1);
+            if (own[id] > 0 && prey[id] >= 0) {
+                recordAction(year, id, "EATING", granted[id], prey[id]);
+            }
+            long hungerDeath = own[id] > 0 ? demand[id] - granted[id] + starvation[id] : 0;
+            if (hungerDeath > 0) {
+                recordAction(year, id, "HUNGER", hungerDeath, -1);
+            }
+        }
+    }
+
+    private void recordAction(int year, int id, String action, long delta, int preyId) {
+        SpeciesActionEvent event = new SpeciesActionEvent();
+        event.year = year;
+        event.category = store.getCategory(id).toString();
+        event.species = store.getName(id);
+        event.action = action;
+        event.delta = delta;
+        event.prey = preyId >= 0 ? store.getName(preyId) : null;
+        event.commit();
+    }
+
+    private void publishActions(EventPipeline events, int year, Category category, int id, long population) {
+        events.publish(EventType.DEATH, year, category, id, -1, deaths[id]);
+        if (population - deaths[id] < 1) {
+            events.publish(EventType.NO_REPRODUCTION, year, category, id, -1, 0);
+        } else {
+            events.publish(EventType.BIRTH, year, category, id, -1, births[id]);
+        }
+        if (own[id] <= 0) {
+            return;
+        }
+        if (prey[id] < 0) {
+            events.publish(EventType.NO_FOOD, year, category, id, -1, 0);
+        } else {
+            events.publish(EventType.EATING, year, category, id, prey[id], granted[id]);
+        }
+        long hungerDeath = demand[id] - granted[id] + starvation[id];
+        if (hungerDeath > 0) {
+            events.publish(EventType.HUNGER, year, category, id, -1, hungerDeath);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (deaths.length == capacity) {
+            return;
+        }
+        deaths = new long[capacity];
+        births = new long[capacity];
+        own = new long[capacity];
+        demand = new long[capacity];
+        granted = new long[capacity];
+        starvation = new long[capacity];
+        totalDemand = new long[capacity];
+        eaten = new long[capacity];
+        prey = new int[capacity];
+        deathRolls = new double[capacity];
+        birthRolls = new double[capacity];
+    }
+
+    // Параллельный расчёт фазы 1 делением диапазона блоков пополам
+    private class ComputeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] current;
+        private final double[] extinctionFactors;
+        private final double[] birthFactors;
+        private final int from;
+        private final int to;
+
+        ComputeTask(long[] current, double[] extinctionFactors, double[] birthFactors, int from, int to) {
+            this.current = current;
+            this.extinctionFactors = extinctionFactors;
+            this.birthFactors = birthFactors;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                TickEngine.this.compute(current, extinctionFactors, birthFactors, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ComputeTask(current, extinctionFactors, birthFactors, from, middle),
+                    new ComputeTask(current, extinctionFactors, birthFactors, middle, to));
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package first.second.third.ecosystem.engine;
+
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Планировщик лет фонового прогона. Годы запускаются с заданной частотой
+ * (интервал отсчитывается от начала предыдущего года, поэтому время расчёта
+ * входит в период) или без пауз, если частота не ограничена. Год, посчитанный
+ * дольше периода, считается перегрузкой: следующий год начинается сразу,
+ * пропущенные такты не догоняются. Прогон можно приостановить и на паузе
+ * рассчитывать заданное число лет на том же потоке.
+ * Поток прогона не прерывается: ожидания будятся через монитор планировщика.
+ */
+public class TickScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(TickScheduler.class);
+    // Частота по умолчанию: год каждые 50 мс
+    public static final double DEFAULT_RATE = 20;
+    // Вес нового интервала в скользящем среднем фактической частоты
+    private static final double RATE_SMOOTHING = 0.1;
+
+    private final String threadName;
+
+    private Thread thread;
+    private volatile boolean running;
+    private volatile boolean paused;
+    // Лет, которые ещё нужно посчитать на паузе по команде step
+    private int pendingSteps;
+    // Целевая частота, лет в секунду; 0 - без ограничения
+    @Getter
+    private volatile double rate = DEFAULT_RATE;
+    private long periodNanos = periodNanos(DEFAULT_RATE);
+    private RuntimeException failure; // Ошибка, остановившая прогон
+
+    // Статистика с момента запуска
+    private long ticks;
+    private long overruns;
+    private long overrunNanos; // Суммарное превышение периода
+    private long tickNanos; // Суммарное время расчёта лет
+    private long maxTickNanos;
+    private long previousStart; // Начало предыдущего года без паузы между ними, 0 - нет
+    private double meanIntervalNanos; // Скользящее среднее интервала между годами
+
+    public TickScheduler(String threadName) {
+        this.threadName = threadName;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Запускает прогон на отдельном потоке.
+     *
+     * @return false, если прогон уже идёт.
+     */
+    public synchronized boolean start(Runnable tick) {
+        if (running) {
+            return false;
+        }
+        running = true;
+        paused = false;
+        pendingSteps = 0;
+        failure = null;
+        ticks = 0;
+        overruns = 0;
+        overrunNanos = 0;
+        tickNanos = 0;
+        maxTickNanos = 0;
+        previousStart = 0;
+        meanIntervalNanos = 0;
+        thread = new Thread(() -> run(tick), threadName);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Останавливает прогон и ждёт завершения текущего года.
+     *
+     * @return false, если прогон не шёл.
+     */
+    public boolean stop() {
+        Thread stopped;
+        synchronized (this) {
+            if (!running) {
+                return false;
+            }
+            running = false;
+            stopped = thread;
+            thread = null;
+            notifyAll();
+        }
+        try {
+            stopped.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return true;
+    }
+
+    // Приостановка после текущего года; false, если прогон не идёт или уже на паузе
+    public synchronized boolean pause() {
+        if (!running || paused) {
+            return false;
+        }
+        paused = true;
+        previousStart = 0;
+        notifyAll();
+        return true;
+    }
+
+    // Продолжение после паузы; false, если прогон не на паузе
+    public synchronized boolean resume() {
+        if (!running || !paused) {
+            return false;
+        }
+        paused = false;
+        pendingSteps = 0; // Незавершённые шаги досчитает продолженный прогон
+        previousStart = 0;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Рассчитывает years лет на потоке прогона, пока он на паузе, и ждёт их завершения.
+     *
+     * @throws IllegalStateException Если прогон не на паузе или остановился во время расчёта.
+     */
+    public synchronized void step(int years) throws InterruptedException {
+        if (!running || !paused) {
+            throw new IllegalStateException("Pause the simulation before stepping");
+        }
+        if (years <= 0) {
+            throw new IllegalArgumentException("Number of years must be positive: " + years);
+        }
+        pendingSteps += years;
+        notifyAll();
+        while (pendingSteps > 0 && running) {
+            wait();
+        }
+        if (pendingSteps > 0) {
+            pendingSteps = 0;
+            throw new IllegalStateException(failure != null
+                    ? "Simulation failed: " + failure.getMessage()
+                    : "Simulation stopped before stepping finished");
+        }
+    }
+
+    /**
+     * Задаёт целевую частоту.
+     *
+     * @param rate Лет в секунду; 0 - без ограничения.
+     */
+    public synchronized void setRate(double rate) {
+        if (!(rate >= 0) || Double.isInfinite(rate)) {
+            throw new IllegalArgumentException("Rate must be a non-negative number: " + rate);
+        }
+        this.rate = rate;
+        periodNanos = periodNanos(rate);
+        notifyAll(); // Новый период действует сразу, в том числе для уже начатого ожидания
+    }
+
+    private static long periodNanos(double rate) {
+        return rate > 0 ? Math.max(1, Math.round(1e9 / rate)) : 0;
+    }
+
+    private void run(Runnable tick) {
+        try {
+            while (true) {
+                long started;
+                boolean stepping; // Год по команде step на паузе
+                synchronized (this) {
+                    if (!awaitTick()) {
+                        break;
+                    }
+                    stepping = paused;
+                    started = System.nanoTime();
+                    if (previousStart != 0) {
+                        double interval = started - previousStart;
+                        meanIntervalNanos = meanIntervalNanos == 0 ? interval
+                                : meanIntervalNanos + RATE_SMOOTHING * (interval - meanIntervalNanos);
+                    }
+                    previousStart = paused ? 0 : started;
+                }
+                tick.run(); // Год считается без монитора: команды управления не ждут расчёта
+                long duration = System.nanoTime() - started;
+                synchronized (this) {
+                    ticks++;
+                    tickNanos += duration;
+                    maxTickNanos = Math.max(maxTickNanos, duration);
+                    if (stepping) {
+                        if (pendingSteps > 0 && --pendingSteps == 0) {
+                            notifyAll();
+                        }
+                    } else if (periodNanos > 0 && duration > periodNanos) {
+                        overruns++;
+                        overrunNanos += duration - periodNanos;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.warn("Simulation thread interrupted");
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                failure = e;
+            }
+            System.out.println("Error during simulation: " + e.getMessage()); // Обработка ошибок
+            logger.error("Critical error during simulation: {}", e.getMessage());
+        } finally {
+            synchronized (this) {
+                running = false;
+                notifyAll(); // Будим ожидающих step
+            }
+            logger.info("Simulation fully stopped.");
+        }
+    }
+
+    /**
+     * Ждёт момента следующего года под монитором.
+     *
+     * @return false, если прогон остановлен.
+     */
+    private boolean awaitTick() throws InterruptedException {
+        while (running) {
+            if (paused) {
+                if (pendingSteps > 0) {
+                    return true;
+                }
+                wait();
+                continue;
+            }
+            long delay = previousStart == 0 || periodNanos == 0 ? 0 : previousStart + periodNanos - System.nanoTime();
+            if (delay <= 0) {
+                return true;
+            }
+            wait(delay / 1_000_000, (int) (delay % 1_000_000));
+        }
+        return false;
+    }
+
+    // Фактическая частота, лет в секунду (0 - ещё не измерена)
+    public synchronized double getAchievedRate() {
+        return meanIntervalNanos > 0 ? 1e9 / meanIntervalNanos : 0;
+    }
+
+    public synchronized long getTicks() {
+        return ticks;
+    }
+
+    public synchronized long getOverruns() {
+        return overruns;
+    }
+
+    public synchronized double getMeanTickMillis() {
+        return ticks > 0 ? tickNanos / 1e6 / ticks : 0;
+    }
+
+    public synchronized double getMaxTickMillis() {
+        return maxTickNanos / 1e6;
+    }
+
+    // Суммарное превышение периода перегруженными годами
+    public synchronized double getOverrunMillis() {
+        return overrunNanos / 1e6;
+    }
+}
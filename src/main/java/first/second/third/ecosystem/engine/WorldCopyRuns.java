@@ -0,0 +1,71 @@
+package first.second.third.ecosystem.engine;
+
+import first.second.third.ecosystem.entity.parameters.Category;
+import first.second.third.ecosystem.population.PopulationStore;
+import org.slf4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Общая обвязка прогонов копий загруженного мира (ансамбль, сетка, перебор
+ * условий, сравнение моделей): прогон под монитором хранилища, отбор видов,
+ * существовавших на момент старта, и сохранение отчёта.
+ */
+final class WorldCopyRuns {
+
+    private WorldCopyRuns() {
+    }
+
+    // Тело прогона; получает количество видов на момент старта
+    interface Run<E extends Exception> {
+        void run(int species) throws E;
+    }
+
+    // Запись отчёта в открытый файл
+    interface Report {
+        void write(BufferedWriter writer) throws IOException;
+    }
+
+    /**
+     * Выполняет прогон под монитором хранилища, чтобы набор видов не менялся
+     * до его конца. Сеть питания компилируется до прогона, пока монитор
+     * у этого потока: рабочие потоки получают уже готовую сеть.
+     */
+    static <E extends Exception> void locked(PopulationStore store, Run<E> run) throws E {
+        synchronized (store) {
+            store.getFoodWeb();
+            run.run(store.size());
+        }
+    }
+
+    // Виды категории, существовавшие на момент старта прогона; добавленные после него пропускаются
+    static int[] members(PopulationStore store, Category category, int species) {
+        int[] members = new int[store.getMemberCount(category)];
+        int count = 0;
+        for (int i = 0; i < members.length; i++) {
+            int id = store.getMember(category, i);
+            if (id < species) {
+                members[count++] = id;
+            }
+        }
+        return count == members.length ? members : Arrays.copyOf(members, count);
+    }
+
+    // Сохранение отчёта; name - название отчёта в сообщениях ("grid", "ensemble", ...)
+    static void saveReport(Logger logger, String name, String filePath, Report report) {
+        String title = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filePath), StandardCharsets.UTF_8))) {
+            report.write(writer);
+            System.out.println(title + " report saved to " + filePath);
+            logger.info("{} report saved to {}", title, filePath);
+        } catch (IOException e) {
+            System.out.println("Error saving " + name + " report: " + e.getMessage());
+            logger.error("Error saving {} report: {}", name, e.getMessage());
+        }
+    }
+}
@@ -1,27 +1,15 @@
 package first.second.third.ecosystem.entity.animal;
 
-import first.second.third.ecosystem.entity.parameters.CreatureStatistics;
-
-import java.util.HashMap;
+import first.second.third.ecosystem.entity.parameters.Category;
 
 public class DecomposerBehavior extends CreatureBehavior {
     @Override
-    protected HashMap<String, CreatureStatistics> getConsumers() {
-        return processor.getDecomposers(); // Возвращаем растения как потребителей
-    }
-
-    @Override
-    protected HashMap<String, CreatureStatistics> getConsumed() {
-        return processor.getPredators(); // Возвращаем разложители как тех, кого едят
-    }
-
-    @Override
-    protected String getConsumersCategory() {
-        return "DECOMPOSER";
+    public Category getConsumersCategory() {
+        return Category.DECOMPOSER;
     }
 
     @Override
-    protected String getConsumedCategory() {
-        return "PREDATOR";
+    public Category getConsumedCategory() {
+        return Category.PREDATOR;
     }
 }
@@ -1,28 +1,16 @@
 package first.second.third.ecosystem.entity.animal;
 
-import first.second.third.ecosystem.entity.parameters.CreatureStatistics;
-
-import java.util.HashMap;
+import first.second.third.ecosystem.entity.parameters.Category;
 
 public class HerbivoreBehavior extends CreatureBehavior {
 
     @Override
-    protected HashMap<String, CreatureStatistics> getConsumers() {
-        return processor.getHerbivores(); // Возвращаем травоядных как потребителей
-    }
-
-    @Override
-    protected HashMap<String, CreatureStatistics> getConsumed() {
-        return processor.getPlants(); // Возвращаем растения как тех, кого едят
-    }
-
-    @Override
-    protected String getConsumersCategory() {
-        return "HERBIVORE";
+    public Category getConsumersCategory() {
+        return Category.HERBIVORE;
     }
 
     @Override
-    protected String getConsumedCategory() {
-        return "PLANT";
+    public Category getConsumedCategory() {
+        return Category.PLANT;
     }
 }
\ No newline at end of file
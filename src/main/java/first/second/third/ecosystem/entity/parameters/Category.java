@@ -0,0 +1,44 @@
+package first.second.third.ecosystem.entity.parameters;
+
+import first.second.third.ecosystem.exception.UnknownCategoryException;
+
+// Категория существ и пищевая цепь между категориями
+public enum Category {
+    PLANT,
+    HERBIVORE,
+    PREDATOR,
+    DECOMPOSER;
+
+    private static final Category[] VALUES = values();
+
+    // Категория, которой питаются существа данной категории
+    public Category getConsumed() {
+        switch (this) {
+            case PLANT:
+                return DECOMPOSER; // Растения потребляют разложителей
+            case HERBIVORE:
+                return PLANT; // Травоядные едят растения
+            case PREDATOR:
+                return HERBIVORE; // Хищники едят травоядных
+            default:
+                return PREDATOR; // Разложители потребляют хищников
+        }
+    }
+
+    public static Category of(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    // Разбор названия категории без учёта регистра
+    public static Category of(String name) {
+        if (name != null) {
+            String normalized = name.trim().toUpperCase();
+            for (Category category : VALUES) {
+                if (category.name().equals(normalized)) {
+                    return category;
+                }
+            }
+        }
+        throw new UnknownCategoryException(name);
+    }
+}
@@ -0,0 +1,287 @@
+package first.second.third.ecosystem.entity.parameters;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Расписание климата: значение каждой переменной условий (температура,
+ * вода, влажность) как функция года мира. Переменная задаётся ключевыми
+ * точками ГОД:ЗНАЧЕНИЕ, интерполяцией между ними, трендом (изменение за год,
+ * отсчитывается от первой ключевой точки) и необязательным периодом,
+ * с которым ключевые точки повторяются (сезонные и многолетние циклы).
+ * До первой и после последней ключевой точки без периода значение постоянно.
+ * Переменная без расписания остаётся такой, как задана в мире.
+ * Расписание неизменяемо и разделяется копиями условий и снимками мира.
+ */
+public final class ClimateSchedule {
+
+    // Переменные условий в порядке индексов дорожек
+    public static final String[] VARIABLES = {"TEMPERATURE", "WATER", "HUMIDITY"};
+    public static final int TEMPERATURE = 0;
+    public static final int WATER = 1;
+    public static final int HUMIDITY = 2;
+
+    public enum Interpolation {
+        STEP, // Значение ключевой точки до следующей
+        LINEAR,
+        SINE // Плавный переход по полуволне косинуса
+    }
+
+    private final Track[] tracks;
+
+    private ClimateSchedule(Track[] tracks) {
+        this.tracks = tracks;
+    }
+
+    // Дорожка переменной или null, если переменная не меняется по расписанию
+    public Track getTrack(int variable) {
+        return tracks[variable];
+    }
+
+    // Значение переменной в году; null-дорожка возвращает текущее значение
+    public int value(int variable, int year, int current) {
+        Track track = tracks[variable];
+        if (track == null) {
+            return current;
+        }
+        long value = Math.round(track.value(year));
+        if (variable == HUMIDITY) {
+            value = Math.max(0, Math.min(100, value));
+        } else if (variable == WATER) {
+            value = Math.max(0, value);
+        }
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+    }
+
+    // Строки заголовка файла мира, по которым расписание читается обратно
+    public List<String> toHeaderLines() {
+        List<String> lines = new ArrayList<>();
+        for (int variable = 0; variable < tracks.length; variable++) {
+            Track track = tracks[variable];
+            if (track == null) {
+                continue;
+            }
+            String prefix = VARIABLES[variable] + ".";
+            StringBuilder keyframes = new StringBuilder();
+            for (int i = 0; i < track.years.length; i++) {
+                keyframes.append(i > 0 ? " " : "").append(track.years[i]).append(':').append(format(track.values[i]));
+            }
+            lines.add(prefix + "KEYFRAMES=" + keyframes);
+            lines.add(prefix + "INTERPOLATION=" + track.interpolation);
+            if (track.trend != 0) {
+                lines.add(prefix + "TREND=" + format(track.trend));
+            }
+            if (track.period > 0) {
+                lines.add(prefix + "PERIOD=" + track.period);
+            }
+        }
+        return lines;
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15 ? String.valueOf((long) value) : String.valueOf(value);
+    }
+
+    // Является ли ключ заголовка ключом расписания (ПЕРЕМЕННАЯ.СВОЙСТВО)
+    public static boolean isScheduleKey(String key) {
+        int dot = key.indexOf('.');
+        return dot > 0 && variableIndex(key.substring(0, dot)) >= 0;
+    }
+
+    private static int variableIndex(String name) {
+        for (int i = 0; i < VARIABLES.length; i++) {
+            if (VARIABLES[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Дорожка одной переменной. Годы ключевых точек строго возрастают;
+     * с периодом все точки лежат внутри одного периода от первой.
+     */
+    public static final class Track {
+        private final int[] years;
+        private final double[] values;
+        private final Interpolation interpolation;
+        private final double trend;
+        private final int period;
+
+        public Track(int[] years, double[] values, Interpolation interpolation, double trend, int period) {
+            if (years.length == 0 || years.length != values.length) {
+                throw new IllegalArgumentException("At least one keyframe is required");
+            }
+            for (int i = 1; i < years.length; i++) {
+                if (years[i] <= years[i - 1]) {
+                    throw new IllegalArgumentException("Keyframe years must increase: " + years[i - 1] + ", " + years[i]);
+                }
+            }
+            if (period < 0 || (period > 0 && (long) years[years.length - 1] - years[0] >= period)) {
+                throw new IllegalArgumentException("Period " + period + " must be longer than the keyframe span");
+            }
+            if (Double.isNaN(trend) || Double.isInfinite(trend)) {
+                throw new IllegalArgumentException("Invalid trend: " + trend);
+            }
+            this.years = years.clone();
+            this.values = values.clone();
+            this.interpolation = interpolation;
+            this.trend = trend;
+            this.period = period;
+        }
+
+        public double value(int year) {
+            double base;
+            long position = year;
+            if (period > 0) {
+                position = years[0] + Math.floorMod((long) year - years[0], (long) period);
+            }
+            int last = years.length - 1;
+            if (position <= years[0] && period == 0) {
+                base = values[0];
+            } else if (position >= years[last]) {
+                base = period > 0
+                        ? interpolate(values[last], values[0], (double) (position - years[last]) / (years[0] + period - years[last]))
+                        : values[last];
+            } else {
+                int i = 0;
+                while (years[i + 1] <= position) {
+                    i++;
+                }
+                base = interpolate(values[i], values[i + 1], (double) (position - years[i]) / (years[i + 1] - years[i]));
+            }
+            return base + trend * ((long) year - years[0]);
+        }
+
+        private double interpolate(double from, double to, double fraction) {
+            switch (interpolation) {
+                case STEP:
+                    return from;
+                case SINE:
+                    return from + (to - from) * (1 - Math.cos(Math.PI * fraction)) / 2;
+                default:
+                    return from + (to - from) * fraction;
+            }
+        }
+    }
+
+    /**
+     * Сборка расписания из ключей заголовка файла мира:
+     * ПЕРЕМЕННАЯ.KEYFRAMES=ГОД:ЗНАЧЕНИЕ ..., .INTERPOLATION=STEP|LINEAR|SINE,
+     * .TREND=изменение за год, .PERIOD=лет. Переменная с трендом или периодом,
+     * но без ключевых точек, получает одну точку - значение мира в год мира.
+     */
+    public static final class Builder {
+        private final int[][] years = new int[VARIABLES.length][];
+        private final double[][] values = new double[VARIABLES.length][];
+        private final Interpolation[] interpolations = new Interpolation[VARIABLES.length];
+        private final double[] trends = new double[VARIABLES.length];
+        private final int[] periods = new int[VARIABLES.length];
+        private final boolean[] present = new boolean[VARIABLES.length];
+
+        /**
+         * Разбирает одну строку расписания.
+         *
+         * @throws IllegalArgumentException При неизвестном ключе или неверном значении.
+         */
+        public void set(String key, String value) {
+            int dot = key.indexOf('.');
+            int variable = dot > 0 ? variableIndex(key.substring(0, dot)) : -1;
+            if (variable < 0) {
+                throw new IllegalArgumentException("Unknown schedule key: " + key);
+            }
+            String property = key.substring(dot + 1);
+            value = value.trim();
+            try {
+                switch (property) {
+                    case "KEYFRAMES":
+                        parseKeyframes(variable, value);
+                        break;
+                    case "INTERPOLATION":
+                        interpolations[variable] = Interpolation.valueOf(value.toUpperCase(Locale.ROOT));
+                        break;
+                    case "TREND":
+                        trends[variable] = Double.parseDouble(value);
+                        if (Double.isNaN(trends[variable]) || Double.isInfinite(trends[variable])) {
+                            throw new NumberFormatException(value);
+                        }
+                        break;
+                    case "PERIOD":
+                        periods[variable] = Integer.parseInt(value);
+                        if (periods[variable] <= 0) {
+                            throw new IllegalArgumentException("Period must be positive: " + value);
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown schedule key: " + key);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number in " + key + ": " + value);
+            }
+            present[variable] = true;
+        }
+
+        private void parseKeyframes(int variable, String value) {
+            String[] parts = value.split("\\s+");
+            int[] keyYears = new int[parts.length];
+            double[] keyValues = new double[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                int colon = parts[i].indexOf(':');
+                if (colon <= 0) {
+                    throw new IllegalArgumentException("Keyframe must be YEAR:VALUE: " + parts[i]);
+                }
+                keyYears[i] = Integer.parseInt(parts[i].substring(0, colon));
+                keyValues[i] = Double.parseDouble(parts[i].substring(colon + 1));
+                if (Double.isNaN(keyValues[i]) || Double.isInfinite(keyValues[i])) {
+                    throw new NumberFormatException(parts[i]);
+                }
+            }
+            years[variable] = keyYears;
+            values[variable] = keyValues;
+        }
+
+        /**
+         * Расписание по разобранным строкам.
+         *
+         * @param worldConditions Условия мира после чтения заголовка: опора для переменных без ключевых точек.
+         * @return null, если строк расписания не было.
+         * @throws IllegalArgumentException Если дорожка противоречива.
+         */
+        public ClimateSchedule build(WorldConditions worldConditions) {
+            Track[] tracks = new Track[VARIABLES.length];
+            boolean any = false;
+            for (int variable = 0; variable < VARIABLES.length; variable++) {
+                if (!present[variable]) {
+                    continue;
+                }
+                int[] keyYears = years[variable];
+                double[] keyValues = values[variable];
+                if (keyYears == null) {
+                    keyYears = new int[]{worldConditions.getYear()};
+                    keyValues = new double[]{current(worldConditions, variable)};
+                }
+                Interpolation interpolation = interpolations[variable] != null ? interpolations[variable] : Interpolation.LINEAR;
+                try {
+                    tracks[variable] = new Track(keyYears, keyValues, interpolation, trends[variable], periods[variable]);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Invalid " + VARIABLES[variable].toLowerCase(Locale.ROOT)
+                            + " schedule: " + e.getMessage());
+                }
+                any = true;
+            }
+            return any ? new ClimateSchedule(tracks) : null;
+        }
+
+        private static int current(WorldConditions worldConditions, int variable) {
+            switch (variable) {
+                case TEMPERATURE:
+                    return worldConditions.getTemperature();
+                case WATER:
+                    return worldConditions.getAccessibleWater();
+                default:
+                    return worldConditions.getHumidityPercentage();
+            }
+        }
+    }
+}
@@ -3,6 +3,8 @@ package first.second.third.ecosystem.entity.parameters;
 import lombok.Getter;
 import lombok.Setter;
 
+import static first.second.third.ecosystem.util.Constants.BIRTH_FACTOR_DIVISOR;
+
 // Класс, представляющий статистику существа в экосистеме
 @Setter
 @Getter
@@ -26,25 +28,43 @@ public class CreatureStatistics {
 
     // Метод для расчета фактора вымирания на основе условий окружающей среды
     public double calculateExtinctionFactor(WorldConditions worldConditions) {
-        double temperatureFactor = calculateTemperatureFactor(worldConditions.getTemperature(), comfortTemperature);
-        double humidityFactor = calculateHumidityFactor(worldConditions.getHumidityPercentage(), comfortHumidityPercentage);
-        double waterFactor = calculateWaterFactor(worldConditions.getAccessibleWater(), consumedWaterOnSingleCreature);
-        // Возвращаем общий фактор вымирания
-        return 1 / (temperatureFactor * humidityFactor * waterFactor);
+        return calculateExtinctionFactor(worldConditions, comfortTemperature, consumedWaterOnSingleCreature, comfortHumidityPercentage);
     }
 
     // Метод для расчета фактора рождаемости на основе условий окружающей среды
     public double calculateBirthFactor(WorldConditions worldConditions) {
-        double temperatureFactor = calculateTemperatureFactor(worldConditions.getTemperature(), comfortTemperature);
-        double humidityFactor = calculateHumidityFactor(worldConditions.getHumidityPercentage(), comfortHumidityPercentage);
-        double waterFactor = calculateWaterFactor(worldConditions.getAccessibleWater(), consumedWaterOnSingleCreature);
+        return calculateBirthFactor(worldConditions, comfortTemperature, consumedWaterOnSingleCreature, comfortHumidityPercentage);
+    }
+
+    // Фактор вымирания по комфортным параметрам вида
+    public static double calculateExtinctionFactor(WorldConditions worldConditions, int comfortTemperature, int consumedWater, int comfortHumidity) {
+        // Возвращаем общий фактор вымирания
+        return 1 / calculateConditionsFactor(worldConditions, comfortTemperature, consumedWater, comfortHumidity);
+    }
 
+    // Фактор рождаемости по комфортным параметрам вида
+    public static double calculateBirthFactor(WorldConditions worldConditions, int comfortTemperature, int consumedWater, int comfortHumidity) {
         // Итоговый коэффициент рождаемости (чем лучше условия, тем выше результат)
-        return temperatureFactor * humidityFactor * waterFactor / 1.5;
+        return calculateConditionsFactor(worldConditions, comfortTemperature, consumedWater, comfortHumidity) / BIRTH_FACTOR_DIVISOR;
+    }
+
+    // Произведение коэффициентов температуры, влажности и воды
+    public static double calculateConditionsFactor(WorldConditions worldConditions, int comfortTemperature, int consumedWater, int comfortHumidity) {
+        return calculateConditionsFactor(worldConditions.getTemperature(), worldConditions.getAccessibleWater(),
+                worldConditions.getHumidityPercentage(), comfortTemperature, consumedWater, comfortHumidity);
+    }
+
+    // То же по отдельным значениям условий (например, условий региона сетки)
+    public static double calculateConditionsFactor(int temperature, int accessibleWater, int humidity,
+                                                   int comfortTemperature, int consumedWater, int comfortHumidity) {
+        double temperatureFactor = calculateTemperatureFactor(temperature, comfortTemperature);
+        double humidityFactor = calculateHumidityFactor(humidity, comfortHumidity);
+        double waterFactor = calculateWaterFactor(accessibleWater, consumedWater);
+        return temperatureFactor * humidityFactor * waterFactor;
     }
 
     // Метод для расчета коэффициента температуры
-    private double calculateTemperatureFactor(int currentTemp, int comfortTemp) {
+    public static double calculateTemperatureFactor(int currentTemp, int comfortTemp) {
         double delta = Math.abs(currentTemp - comfortTemp); // Разница между текущей и комфортной температурой
         if (delta == 0) return 1.2; // Идеальные условия
         if (delta <= 5) return 1.1; // Небольшие отклонения
@@ -54,7 +74,7 @@ public class CreatureStatistics {
     }
 
     // Метод для расчета коэффициента влажности
-    private double calculateHumidityFactor(int currentHumidity, int comfortHumidity) {
+    public static double calculateHumidityFactor(int currentHumidity, int comfortHumidity) {
         double delta = Math.abs(currentHumidity - comfortHumidity); // Разница между текущей и комфортной влажностью
         if (delta == 0) return 1.2; // Идеальные условия
         if (delta <= 5) return 1.1; // Небольшие отклонения
@@ -64,7 +84,7 @@ public class CreatureStatistics {
     }
 
     // Метод для расчета коэффициента воды
-    private double calculateWaterFactor(int accessibleWater, int consumedWater) {
+    public static double calculateWaterFactor(int accessibleWater, int consumedWater) {
         int deltaWater = accessibleWater - consumedWater; // Разница между доступной водой и потребляемой
         if (deltaWater >= 0) return 1.4; // Достаточно воды
         if (deltaWater >= -50) return 0.9; // Небольшой дефицит воды
@@ -1,19 +1,33 @@
 package first.second.third.ecosystem.entity.parameters;
 
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 @Getter
 @Setter
 @NoArgsConstructor
 public class WorldConditions {
+    // Глобальный счётчик эпох: номер эпохи уникален для всех экземпляров условий
+    private static final AtomicLong EPOCHS = new AtomicLong();
+
     private int year;
     private int temperature;
     private int accessibleWater;
     private int humidityPercentage;
 
+    // Эпоха условий меняется при каждом изменении температуры, воды или влажности
+    // и служит ключом для кешированных факторов видов
+    @Setter(AccessLevel.NONE)
+    private long epoch = EPOCHS.incrementAndGet();
+
+    // Расписание климата (null - условия меняются только вручную)
+    private ClimateSchedule schedule;
+
     private static WorldConditions instance;
 
     public static WorldConditions getInstance() {
@@ -23,5 +37,53 @@ public class WorldConditions {
         return instance;
     }
 
+    // Независимая копия условий; эпоха сохраняется, пока значения совпадают
+    public WorldConditions copy() {
+        WorldConditions copy = new WorldConditions();
+        copy.year = year;
+        copy.temperature = temperature;
+        copy.accessibleWater = accessibleWater;
+        copy.humidityPercentage = humidityPercentage;
+        copy.epoch = epoch;
+        copy.schedule = schedule;
+        return copy;
+    }
+
+    /**
+     * Устанавливает условия текущего года по расписанию климата;
+     * эпоха меняется, только если значения изменились.
+     *
+     * @return false, если расписания нет.
+     */
+    public boolean applySchedule() {
+        ClimateSchedule current = schedule;
+        if (current == null) {
+            return false;
+        }
+        setTemperature(current.value(ClimateSchedule.TEMPERATURE, year, temperature));
+        setAccessibleWater(current.value(ClimateSchedule.WATER, year, accessibleWater));
+        setHumidityPercentage(current.value(ClimateSchedule.HUMIDITY, year, humidityPercentage));
+        return true;
+    }
+
+    public void setTemperature(int temperature) {
+        if (this.temperature != temperature) {
+            this.temperature = temperature;
+            epoch = EPOCHS.incrementAndGet();
+        }
+    }
+
+    public void setAccessibleWater(int accessibleWater) {
+        if (this.accessibleWater != accessibleWater) {
+            this.accessibleWater = accessibleWater;
+            epoch = EPOCHS.incrementAndGet();
+        }
+    }
 
+    public void setHumidityPercentage(int humidityPercentage) {
+        if (this.humidityPercentage != humidityPercentage) {
+            this.humidityPercentage = humidityPercentage;
+            epoch = EPOCHS.incrementAndGet();
+        }
+    }
 }
@@ -0,0 +1,23 @@
+package first.second.third.ecosystem.event;
+
+import java.io.PrintStream;
+
+// Вывод событий пользователю
+public class ConsoleEventSink implements EventSink {
+
+    private final PrintStream out;
+
+    public ConsoleEventSink(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void accept(SimulationEvent event, String message) {
+        out.println(message);
+    }
+
+    @Override
+    public void flush() {
+        out.flush();
+    }
+}
@@ -0,0 +1,21 @@
+package first.second.third.ecosystem.event;
+
+// Подробность сообщений о симуляции для одной категории существ
+public enum EventLevel {
+    OFF,      // Ничего не выводится
+    SUMMARY,  // Только итог по категории за год
+    SPECIES,  // Итог и численность каждого вида
+    DETAIL;   // Все действия существ
+
+    public boolean includes(EventLevel level) {
+        return ordinal() >= level.ordinal();
+    }
+
+    public static EventLevel of(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown event level: " + name + " (expected off, summary, species or detail)");
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package first.second.third.ecosystem.event;
+
+import first.second.third.ecosystem.entity.parameters.Category;
+import first.second.third.ecosystem.population.PopulationStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Асинхронный конвейер событий симуляции.
+ * Движок пишет события в заранее выделенный кольцевой буфер, а фоновый поток
+ * форматирует их и передаёт получателям (лог, консоль, файл), поэтому вывод
+ * не задерживает расчёт года. Если буфер заполнен, производитель ждёт:
+ * события не теряются. Подробность задаётся отдельно для каждой категории,
+ * и для отключённых событий не выполняется никакой работы.
+ */
+public class EventPipeline implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventPipeline.class);
+
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+    // Через столько событий потребитель освобождает место в буфере
+    private static final int BATCH = 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private final PopulationStore store;
+    private final SimulationEvent[] ring;
+    private final int mask;
+    private final List<EventSink> sinks = new CopyOnWriteArrayList<>();
+
+    // Подробность по категориям; при изменении массив заменяется целиком
+    private volatile EventLevel[] levels;
+    private volatile EventLevel maxLevel;
+
+    private long head; // Следующая позиция записи, только под монитором производителя
+    private volatile long published; // Сколько событий доступно потребителю
+    private volatile long consumed; // Сколько событий обработано
+    private volatile boolean closed;
+    private volatile boolean consumerParked; // Потребитель ждёт событий без таймаута, его нужно будить
+    private Thread consumer;
+
+    public EventPipeline(PopulationStore store, EventLevel level) {
+        this(store, level, DEFAULT_CAPACITY);
+    }
+
+    public EventPipeline(PopulationStore store, EventLevel level, int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Event buffer capacity must be a power of two: " + capacity);
+        }
+        this.store = store;
+        this.ring = new SimulationEvent[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new SimulationEvent();
+        }
+        applyLevels(uniform(level)); // Не через переопределяемый setLevel: объект ещё не построен
+    }
+
+    public void addSink(EventSink sink) {
+        sinks.add(sink);
+    }
+
+    // Удаляет и закрывает получателя после обработки уже опубликованных событий
+    public void removeSink(EventSink sink) {
+        flush();
+        if (sinks.remove(sink)) {
+            sink.close();
+        }
+    }
+
+    // Одинаковая подробность для всех категорий ("summary" - режим только итогов)
+    public void setLevel(EventLevel level) {
+        applyLevels(uniform(level));
+    }
+
+    public void setLevel(Category category, EventLevel level) {
+        EventLevel[] updated = levels.clone();
+        updated[category.ordinal()] = level;
+        applyLevels(updated);
+    }
+
+    public EventLevel getLevel(Category category) {
+        return levels[category.ordinal()];
+    }
+
+    private static EventLevel[] uniform(EventLevel level) {
+        EventLevel[] levels = new EventLevel[Category.values().length];
+        Arrays.fill(levels, level);
+        return levels;
+    }
+
+    private void applyLevels(EventLevel[] updated) {
+        EventLevel max = EventLevel.OFF;
+        for (EventLevel level : updated) {
+            if (level.includes(max)) {
+                max = level;
+            }
+        }
+        levels = updated;
+        maxLevel = max;
+    }
+
+    // Публикуется ли событие данного типа для категории
+    public boolean isEnabled(EventType type, Category category) {
+        return !sinks.isEmpty() && levels[category.ordinal()].includes(type.getLevel());
+    }
+
+    // Публикуется ли событие уровня года (нужно хотя бы для одной категории)
+    public boolean isEnabled(EventType type) {
+        return !sinks.isEmpty() && maxLevel.includes(type.getLevel());
+    }
+
+    /**
+     * Запись события в буфер. Вызывающий должен заранее проверить isEnabled,
+     * чтобы отключённые события не стоили ничего.
+     */
+    public synchronized void publish(EventType type, int year, Category category, int species, int target, long count) {
+        if (closed) {
+            return;
+        }
+        if (consumer == null) {
+            startConsumer();
+        }
+        long sequence = head;
+        while (sequence - consumed >= ring.length) {
+            LockSupport.unpark(consumer); // Буфер заполнен: ждём потребителя
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+        ring[(int) sequence & mask].set(type, year, category, species, target, count);
+        head = sequence + 1;
+        published = head;
+        if (consumerParked) {
+            LockSupport.unpark(consumer); // Будим только спящего потребителя: пока он разбирает буфер, unpark не нужен
+        }
+    }
+
+    // Ожидание обработки всех опубликованных событий
+    public void flush() {
+        Thread thread = consumer;
+        while (thread != null && thread.isAlive() && consumed < published) {
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        Thread thread = consumer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (EventSink sink : sinks) {
+            sink.close();
+        }
+        sinks.clear();
+    }
+
+    private void startConsumer() {
+        consumer = new Thread(this::drain, "simulation-events");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    // Фоновый поток: обрабатывает события пачками, пока конвейер не закрыт и буфер не пуст
+    private void drain() {
+        long position = consumed;
+        while (true) {
+            long available = published;
+            if (position == available) {
+                if (closed && position == published) {
+                    return;
+                }
+                // Флаг ставится до повторной проверки: publish после неё увидит флаг и разбудит поток
+                consumerParked = true;
+                if (position == published && !closed) {
+                    LockSupport.park(this);
+                }
+                consumerParked = false;
+                continue;
+            }
+            long end = Math.min(available, position + BATCH);
+            for (long sequence = position; sequence < end; sequence++) {
+                dispatch(ring[(int) sequence & mask]);
+            }
+            for (EventSink sink : sinks) {
+                sink.flush();
+            }
+            position = end;
+            consumed = position;
+        }
+    }
+
+    private void dispatch(SimulationEvent event) {
+        try {
+            String message = event.format(store);
+            for (EventSink sink : sinks) {
+                sink.accept(event, message);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Error processing simulation event {}: {}", event.getType(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package first.second.third.ecosystem.event;
+
+// Получатель событий; вызывается только из фонового потока конвейера
+public interface EventSink {
+
+    void accept(SimulationEvent event, String message);
+
+    // Вызывается после каждой обработанной пачки событий
+    default void flush() {
+    }
+
+    default void close() {
+    }
+}
@@ -0,0 +1,26 @@
+package first.second.third.ecosystem.event;
+
+import lombok.Getter;
+
+// Типы событий симуляции и минимальная подробность, при которой они публикуются
+@Getter
+public enum EventType {
+    YEAR_START(EventLevel.SUMMARY, false),
+    CATEGORY_TOTAL(EventLevel.SUMMARY, false),
+    POPULATION(EventLevel.SPECIES, false),
+    DEATH(EventLevel.DETAIL, false),
+    BIRTH(EventLevel.DETAIL, false),
+    NO_REPRODUCTION(EventLevel.DETAIL, true),
+    EATING(EventLevel.DETAIL, false),
+    NO_FOOD(EventLevel.DETAIL, true),
+    HUNGER(EventLevel.DETAIL, true);
+
+    private final EventLevel level;
+    // Предупреждения пишутся в лог с уровнем WARN
+    private final boolean warning;
+
+    EventType(EventLevel level, boolean warning) {
+        this.level = level;
+        this.warning = warning;
+    }
+}
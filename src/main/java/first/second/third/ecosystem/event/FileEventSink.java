@@ -0,0 +1,52 @@
+package first.second.third.ecosystem.event;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+// Запись событий в отдельный файл (дописывается в конец)
+public class FileEventSink implements EventSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileEventSink.class);
+
+    private final String filePath;
+    private final BufferedWriter writer;
+
+    public FileEventSink(String filePath) throws IOException {
+        this.filePath = filePath;
+        this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filePath, true), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void accept(SimulationEvent event, String message) {
+        try {
+            writer.write(message);
+            writer.newLine();
+        } catch (IOException e) {
+            logger.error("Error writing events to {}: {}", filePath, e.getMessage());
+        }
+    }
+
+    @Override
+    public void flush() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            logger.error("Error writing events to {}: {}", filePath, e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            logger.error("Error closing event file {}: {}", filePath, e.getMessage());
+        }
+    }
+}
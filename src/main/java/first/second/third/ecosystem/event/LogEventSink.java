@@ -0,0 +1,19 @@
+package first.second.third.ecosystem.event;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Запись событий в лог
+public class LogEventSink implements EventSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(LogEventSink.class);
+
+    @Override
+    public void accept(SimulationEvent event, String message) {
+        if (event.getType().isWarning()) {
+            logger.warn(message);
+        } else {
+            logger.info(message);
+        }
+    }
+}
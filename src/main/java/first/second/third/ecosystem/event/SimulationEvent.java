@@ -0,0 +1,58 @@
+package first.second.third.ecosystem.event;
+
+import first.second.third.ecosystem.entity.parameters.Category;
+import first.second.third.ecosystem.population.PopulationStore;
+import lombok.Getter;
+
+/**
+ * Событие симуляции. Объекты заранее создаются в кольцевом буфере
+ * и переиспользуются, поэтому публикация не выделяет память,
+ * а текст собирается только потребителем.
+ */
+@Getter
+public final class SimulationEvent {
+
+    private EventType type;
+    private int year;
+    private Category category; // null для событий уровня года
+    private int species = -1;  // Идентификатор вида
+    private int target = -1;   // Идентификатор жертвы для EATING
+    private long count;
+
+    void set(EventType type, int year, Category category, int species, int target, long count) {
+        this.type = type;
+        this.year = year;
+        this.category = category;
+        this.species = species;
+        this.target = target;
+        this.count = count;
+    }
+
+    // Текст события в прежнем формате консольного вывода
+    public String format(PopulationStore store) {
+        switch (type) {
+            case YEAR_START:
+                return "--------------------YEARS : " + year + " --------------------------------\n"
+                        + "-----------------------------------------------------------------------";
+            case CATEGORY_TOTAL:
+                return "Year " + year + ": total " + category + " = " + count;
+            case POPULATION:
+                return "ANIMAL: " + store.getName(species) + " population: " + count + "\n"
+                        + "---------------------------------------------------------------";
+            case DEATH:
+                return count + " " + store.getName(species) + "S have died";
+            case BIRTH:
+                return store.getName(species) + "S have reproduced " + count + " " + store.getName(species) + "S";
+            case NO_REPRODUCTION:
+                return "There is no such " + store.getName(species) + " in the ecosystem or not enough population to reproduce";
+            case EATING:
+                return store.getName(species) + "S are eating " + count + " " + store.getName(target) + "S";
+            case NO_FOOD:
+                return "No available food for " + store.getName(species) + " in the ecosystem";
+            case HUNGER:
+                return count + " " + store.getName(species) + "S have died of hunger";
+            default:
+                return type.name();
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package first.second.third.ecosystem.fileprocessor;
+
+import first.second.third.ecosystem.entity.parameters.Category;
+import first.second.third.ecosystem.entity.parameters.ClimateSchedule;
+import first.second.third.ecosystem.entity.parameters.WorldConditions;
+import first.second.third.ecosystem.population.PopulationStore;
+import first.second.third.ecosystem.population.WorldSnapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Двоичный снимок мира (.ecos), все числа в порядке little-endian.
+ * <pre>
+ * Заголовок, 40 байт:
+ *   int   magic "ECOS"
+ *   short version, short reserved
+ *   int   year, temperature, accessibleWater, humidityPercentage
+ *   int   speciesCount (n), int edgeCount (e) - количество записей рационов
+ *   long  namesLength - размер блока названий в байтах
+ * Таблица названий:
+ *   int[n + 1] смещения названий в блоке, затем блок UTF-8 байтов,
+ *   дополненный нулями до границы 8 байт
+ * Столбцы фиксированной ширины:
+ *   long[n] count, int[n] comfortTemperature, int[n] consumedWater,
+ *   int[n] comfortHumidity, byte[n] category
+ * Рационы (с версии 2), с границы 8 байт:
+ *   int[n + 1] смещения рационов, int[e] жертвы (номера видов в снимке),
+ *   затем с границы 8 байт double[e] веса предпочтения
+ * Расписание климата (с версии 3):
+ *   int длина, затем строки заголовка текстового файла (UTF-8, через '\n');
+ *   длина 0 - расписания нет
+ * </pre>
+ * Снимки версии 1 читаются без рационов, версии 2 - без расписания.
+ * Виды пишутся в том же порядке и с тем же пропуском вымерших, что и в текстовом формате,
+ * поэтому загрузка снимка выдаёт видам те же идентификаторы. Снимок для журнала
+ * (allSpecies) содержит все виды, включая вымершие, в порядке идентификаторов:
+ * загруженный в пустое хранилище, он восстанавливает и сами идентификаторы.
+ */
+public final class BinarySnapshotFormat {
+
+    public static final String EXTENSION = ".ecos";
+
+    private static final int MAGIC = 0x534F4345; // "ECOS" при чтении little-endian
+    private static final short VERSION = 3;
+    private static final short VERSION_WITHOUT_SCHEDULE = 2;
+    private static final short VERSION_WITHOUT_DIETS = 1;
+    private static final int HEADER_SIZE = 40;
+
+    // Порядок категорий совпадает с текстовым сохранением
+    private static final Category[] SAVE_ORDER = {Category.PLANT, Category.HERBIVORE, Category.PREDATOR, Category.DECOMPOSER};
+
+    private BinarySnapshotFormat() {
+    }
+
+    // Файл снимка определяется по расширению
+    public static boolean isSnapshot(String filePath) {
+        return filePath.toLowerCase().endsWith(EXTENSION);
+    }
+
+    /**
+     * Записывает живые виды и условия мира из снимка года через отображение в память.
+     * Снимок неизменяем, поэтому запись не блокирует расчёт следующих лет.
+     *
+     * @return Количество записанных видов.
+     */
+    public static int write(WorldSnapshot snapshot, Path path) throws IOException {
+        return write(snapshot, path, false);
+    }
+
+    public static int write(WorldSnapshot snapshot, Path path, boolean allSpecies) throws IOException {
+        int[] ids = allSpecies ? allSpecies(snapshot) : aliveSpecies(snapshot);
+        int n = ids.length;
+        byte[][] names = new byte[n][];
+        long[] counts = new long[n];
+        int[] temperatures = new int[n];
+        int[] water = new int[n];
+        int[] humidity = new int[n];
+        byte[] categories = new byte[n];
+        for (int i = 0; i < n; i++) {
+            int id = ids[i];
+            names[i] = snapshot.getName(id).getBytes(StandardCharsets.UTF_8);
+            counts[i] = snapshot.getCount(id);
+            temperatures[i] = snapshot.getComfortTemperature(id);
+            water[i] = snapshot.getConsumedWater(id);
+            humidity[i] = snapshot.getComfortHumidity(id);
+            categories[i] = (byte) snapshot.getCategory(id).ordinal();
+        }
+        // Рационы ссылаются на номера видов в снимке; жертвы вне снимка отбрасываются
+        int[] snapshotIndex = new int[snapshot.size()];
+        Arrays.fill(snapshotIndex, -1);
+        for (int i = 0; i < n; i++) {
+            snapshotIndex[ids[i]] = i;
+        }
+        int[] dietOffsets = new int[n + 1];
+        int edges = 0;
+        for (int i = 0; i < n; i++) {
+            int[] diet = snapshot.getDiet(ids[i]);
+            for (int j = 0; diet != null && j < diet.length; j++) {
+                if (snapshotIndex[diet[j]] >= 0) {
+                    edges++;
+                }
+            }
+            dietOffsets[i + 1] = edges;
+        }
+        int[] dietPrey = new int[edges];
+        double[] dietWeights = new double[edges];
+        int edge = 0;
+        for (int i = 0; i < n; i++) {
+            int[] diet = snapshot.getDiet(ids[i]);
+            double[] weights = snapshot.getDietWeights(ids[i]);
+            for (int j = 0; diet != null && j < diet.length; j++) {
+                if (snapshotIndex[diet[j]] >= 0) {
+                    dietPrey[edge] = snapshotIndex[diet[j]];
+                    dietWeights[edge++] = weights[j];
+                }
+            }
+        }
+
+        int[] offsets = new int[n + 1];
+        long namesLength = 0;
+        for (int i = 0; i < n; i++) {
+            offsets[i] = (int) namesLength;
+            namesLength += names[i].length;
+            if (namesLength > Integer.MAX_VALUE) {
+                throw new IOException("Species names are too large for a snapshot");
+            }
+        }
+        offsets[n] = (int) namesLength;
+        byte[] schedule = snapshot.getSchedule() == null ? new byte[0]
+                : String.join("\n", snapshot.getSchedule().toHeaderLines()).getBytes(StandardCharsets.UTF_8);
+        long size = fileSize(n, namesLength, dietPrey.length, VERSION) + Integer.BYTES + schedule.length;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot of " + n + " species is too large: " + size + " bytes");
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC);
+            buffer.putShort(VERSION);
+            buffer.putShort((short) 0);
+            buffer.putInt(snapshot.getYear());
+            buffer.putInt(snapshot.getTemperature());
+            buffer.putInt(snapshot.getAccessibleWater());
+            buffer.putInt(snapshot.getHumidityPercentage());
+            buffer.putInt(n);
+            buffer.putInt(dietPrey.length);
+            buffer.putLong(namesLength);
+
+            buffer.asIntBuffer().put(offsets);
+            buffer.position(buffer.position() + offsets.length * Integer.BYTES);
+            for (byte[] name : names) {
+                buffer.put(name);
+            }
+            buffer.position(align(buffer.position())); // Отображённый файл уже заполнен нулями
+
+            buffer.asLongBuffer().put(counts);
+            buffer.position(buffer.position() + n * Long.BYTES);
+            putInts(buffer, temperatures);
+            putInts(buffer, water);
+            putInts(buffer, humidity);
+            buffer.put(categories);
+            buffer.position(align(buffer.position()));
+            putInts(buffer, dietOffsets);
+            putInts(buffer, dietPrey);
+            buffer.position(align(buffer.position()));
+            buffer.asDoubleBuffer().put(dietWeights);
+            buffer.position(buffer.position() + dietWeights.length * Double.BYTES);
+            buffer.putInt(schedule.length);
+            buffer.put(schedule);
+            buffer.force();
+        }
+        return n;
+    }
+
+    /**
+     * Читает снимок: устанавливает условия мира и добавляет виды в хранилище
+     * (существующие виды с тем же названием перезаписываются, как при текстовой загрузке).
+     *
+     * @return Количество прочитанных видов.
+     */
+    public static int read(Path path, PopulationStore store, WorldConditions worldConditions) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException("Not an ecosystem snapshot: file is too short");
+            }
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot is too large: " + fileSize + " bytes");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not an ecosystem snapshot: bad magic number");
+            }
+            short version = buffer.getShort();
+            if (version != VERSION && version != VERSION_WITHOUT_SCHEDULE && version != VERSION_WITHOUT_DIETS) {
+                throw new IOException("Unsupported snapshot version: " + version);
+            }
+            buffer.getShort();
+            int year = buffer.getInt();
+            int temperature = buffer.getInt();
+            int accessibleWater = buffer.getInt();
+            int humidity = buffer.getInt();
+            int n = buffer.getInt();
+            int edges = buffer.getInt();
+            if (version == VERSION_WITHOUT_DIETS) {
+                edges = 0; // Поле было зарезервировано
+            }
+            long namesLength = buffer.getLong();
+            long expected = fileSize(n, namesLength, edges, version);
+            int scheduleLength = 0;
+            if (version == VERSION && expected >= HEADER_SIZE && expected + Integer.BYTES <= fileSize) {
+                scheduleLength = buffer.getInt((int) expected); // Длина расписания лежит после рационов
+                expected += Integer.BYTES + (long) scheduleLength;
+            } else if (version == VERSION) {
+                expected = -1; // Нет места даже для длины расписания
+            }
+            if (n < 0 || edges < 0 || namesLength < 0 || scheduleLength < 0 || expected != fileSize) {
+                throw new IOException("Corrupted snapshot: size does not match header");
+            }
+
+            int[] offsets = new int[n + 1];
+            buffer.asIntBuffer().get(offsets);
+            buffer.position(buffer.position() + offsets.length * Integer.BYTES);
+            byte[] nameBytes = new byte[(int) namesLength];
+            buffer.get(nameBytes);
+            buffer.position(align(buffer.position()));
+
+            long[] counts = new long[n];
+            buffer.asLongBuffer().get(counts);
+            buffer.position(buffer.position() + n * Long.BYTES);
+            int[] temperatures = getInts(buffer, n);
+            int[] water = getInts(buffer, n);
+            int[] humidities = getInts(buffer, n);
+            byte[] categories = new byte[n];
+            buffer.get(categories);
+            int[] dietOffsets = null;
+            int[] dietPrey = null;
+            double[] dietWeights = null;
+            if (version != VERSION_WITHOUT_DIETS) {
+                buffer.position(align(buffer.position()));
+                dietOffsets = getInts(buffer, n + 1);
+                dietPrey = getInts(buffer, edges);
+                buffer.position(align(buffer.position()));
+                dietWeights = new double[edges];
+                buffer.asDoubleBuffer().get(dietWeights);
+                buffer.position(buffer.position() + edges * Double.BYTES);
+                if (dietOffsets[0] != 0 || dietOffsets[n] != edges) {
+                    throw new IOException("Corrupted snapshot: invalid diet table");
+                }
+                for (int i = 0; i < n; i++) {
+                    if (dietOffsets[i] > dietOffsets[i + 1]) {
+                        throw new IOException("Corrupted snapshot: invalid diet of species " + i);
+                    }
+                }
+                for (int edge = 0; edge < edges; edge++) {
+                    if (dietPrey[edge] < 0 || dietPrey[edge] >= n || !(dietWeights[edge] > 0) || Double.isInfinite(dietWeights[edge])) {
+                        throw new IOException("Corrupted snapshot: invalid diet record " + edge);
+                    }
+                }
+            }
+
+            Category[] values = Category.values();
+            for (int i = 0; i < n; i++) {
+                if (categories[i] < 0 || categories[i] >= values.length
+                        || offsets[i] < 0 || offsets[i] > offsets[i + 1] || offsets[i + 1] > namesLength) {
+                    throw new IOException("Corrupted snapshot: invalid species record " + i);
+                }
+            }
+
+            worldConditions.setYear(year);
+            worldConditions.setTemperature(temperature);
+            worldConditions.setAccessibleWater(accessibleWater);
+            worldConditions.setHumidityPercentage(humidity);
+            worldConditions.setSchedule(readSchedule(buffer, scheduleLength, worldConditions));
+            String[] names = new String[n];
+            for (int i = 0; i < n; i++) {
+                names[i] = new String(nameBytes, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+            }
+            store.addAll(categories, names, counts, temperatures, water, humidities, n);
+            if (dietOffsets != null && edges > 0) {
+                // Номера видов в снимке переводятся в идентификаторы хранилища
+                int[] ids = new int[n];
+                for (int i = 0; i < n; i++) {
+                    ids[i] = store.find(values[categories[i]], names[i]);
+                }
+                for (int i = 0; i < n; i++) {
+                    int from = dietOffsets[i];
+                    int to = dietOffsets[i + 1];
+                    if (from == to) {
+                        continue;
+                    }
+                    int[] prey = new int[to - from];
+                    for (int edge = from; edge < to; edge++) {
+                        prey[edge - from] = ids[dietPrey[edge]];
+                    }
+                    store.setDiet(ids[i], prey, Arrays.copyOfRange(dietWeights, from, to));
+                }
+            }
+            return n;
+        }
+    }
+
+    // Расписание климата из строк заголовка; при длине 0 - null
+    private static ClimateSchedule readSchedule(ByteBuffer buffer, int length, WorldConditions worldConditions) throws IOException {
+        if (length == 0) {
+            return null;
+        }
+        buffer.position(buffer.position() + Integer.BYTES);
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        ClimateSchedule.Builder builder = new ClimateSchedule.Builder();
+        try {
+            for (String line : new String(bytes, StandardCharsets.UTF_8).split("\n")) {
+                int equals = line.indexOf('=');
+                if (equals < 0) {
+                    throw new IllegalArgumentException("Invalid schedule line: " + line);
+                }
+                builder.set(line.substring(0, equals), line.substring(equals + 1));
+            }
+            return builder.build(worldConditions);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupted snapshot: " + e.getMessage(), e);
+        }
+    }
+
+    // Все виды в порядке идентификаторов
+    private static int[] allSpecies(WorldSnapshot snapshot) {
+        int[] ids = new int[snapshot.size()];
+        for (int id = 0; id < ids.length; id++) {
+            ids[id] = id;
+        }
+        return ids;
+    }
+
+    // Живые виды в порядке сохранения
+    private static int[] aliveSpecies(WorldSnapshot snapshot) {
+        int alive = 0;
+        for (Category category : SAVE_ORDER) {
+            for (int i = 0; i < snapshot.getMemberCount(category); i++) {
+                if (snapshot.isAlive(snapshot.getMember(category, i))) {
+                    alive++;
+                }
+            }
+        }
+        int[] ids = new int[alive];
+        int position = 0;
+        for (Category category : SAVE_ORDER) {
+            for (int i = 0; i < snapshot.getMemberCount(category); i++) {
+                int id = snapshot.getMember(category, i);
+                if (snapshot.isAlive(id)) {
+                    ids[position++] = id;
+                }
+            }
+        }
+        return ids;
+    }
+
+    private static long fileSize(long n, long namesLength, long edges, short version) {
+        long names = align(HEADER_SIZE + (n + 1) * Integer.BYTES + namesLength);
+        long columns = names + n * (Long.BYTES + 3L * Integer.BYTES + 1);
+        if (version == VERSION_WITHOUT_DIETS) {
+            return columns;
+        }
+        return align(align(columns) + (n + 1 + edges) * Integer.BYTES) + edges * Double.BYTES;
+    }
+
+    private static int align(int position) {
+        return (int) align((long) position);
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    private static void putInts(ByteBuffer buffer, int[] values) {
+        buffer.asIntBuffer().put(values);
+        buffer.position(buffer.position() + values.length * Integer.BYTES);
+    }
+
+    private static int[] getInts(ByteBuffer buffer, int n) {
+        int[] values = new int[n];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + n * Integer.BYTES);
+        return values;
+    }
+}
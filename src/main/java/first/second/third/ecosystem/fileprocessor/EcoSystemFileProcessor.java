@@ -1,31 +1,38 @@
 package first.second.third.ecosystem.fileprocessor;
 
 
+import first.second.third.ecosystem.entity.parameters.Category;
 import first.second.third.ecosystem.entity.parameters.WorldConditions;
-import first.second.third.ecosystem.entity.parameters.CreatureStatistics;
 import first.second.third.ecosystem.exception.UnknownCategoryException;
+import first.second.third.ecosystem.metrics.WorldFileEvent;
+import first.second.third.ecosystem.population.PopulationStore;
+import first.second.third.ecosystem.population.WorldSnapshot;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.Optional;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Scanner;
 
 @Getter
 @NoArgsConstructor
 public class EcoSystemFileProcessor {
-    private final HashMap<String, CreatureStatistics> plants = new HashMap<>();
-    private final HashMap<String, CreatureStatistics> herbivores = new HashMap<>();
-    private final HashMap<String, CreatureStatistics> predators = new HashMap<>();
-    private final HashMap<String, CreatureStatistics> decomposers = new HashMap<>();
+    // Популяции всех видов, доступ по целочисленному идентификатору вида
+    private final PopulationStore store = new PopulationStore();
+    // Журнал изменений (null - изменения не журналируются)
+    @Setter
+    private MutationJournal journal;
 
     private static final Logger logger = LoggerFactory.getLogger(EcoSystemFileProcessor.class);  // Получаем логгер
 
     private static EcoSystemFileProcessor instance;
+    // Сколько ошибочных строк показывается пользователю при загрузке
+    private static final int MAX_PRINTED_ERRORS = 10;
 
 
     public static EcoSystemFileProcessor getInstance() {
@@ -35,248 +42,310 @@ public class EcoSystemFileProcessor {
         return instance;
     }
 
-    public void loadFromFile(String filename) {
-        try (BufferedReader reader = new BufferedReader(new FileReader(filename))) {
-            String line;
-            WorldConditions worldConditions = WorldConditions.getInstance(); // Получаем экземпляр WorldConditions
+    /**
+     * Загрузка с выбором формата по расширению файла (.ecos - двоичный снимок).
+     *
+     * @return false, если файл не удалось прочитать; ошибка уже выведена и записана в лог.
+     */
+    public boolean loadWorld(String filePath) {
+        if (BinarySnapshotFormat.isSnapshot(filePath)) {
+            return loadFromBinaryFile(filePath);
+        }
+        return loadFromFile(filePath);
+    }
 
-            int lineNumber = 0;  // Счётчик строк
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();  // Убираем пробелы
+    // Сохранение текущего состояния хранилища; снимок снимается под его монитором
+    public void saveWorld(WorldConditions worldConditions, String filePath) {
+        saveWorld(WorldSnapshot.capture(store, worldConditions), filePath);
+    }
 
-                if (line.startsWith("//")) {
-                    continue; // Пропускаем строки с комментариями
-                }
+    // Сохранение с выбором формата по расширению файла (.ecos - двоичный снимок)
+    public void saveWorld(WorldSnapshot snapshot, String filePath) {
+        if (BinarySnapshotFormat.isSnapshot(filePath)) {
+            saveToBinaryFile(snapshot, filePath);
+        } else {
+            saveToFile(snapshot, filePath);
+        }
+    }
 
-                switch (lineNumber) {
-                    case 0:
-                        worldConditions.setYear(Integer.parseInt(line));
-                        System.out.println("Loaded simulation year: " + line);  // Выводим пользователю
-                        break;
-                    case 1:
-                        worldConditions.setTemperature(Integer.parseInt(line));
-                        System.out.println("Loaded temperature: " + line);  // Выводим пользователю
-                        break;
-                    case 2:
-                        worldConditions.setAccessibleWater(Integer.parseInt(line));
-                        System.out.println("Loaded water: " + line);  // Выводим пользователю
-                        break;
-                    case 3:
-                        worldConditions.setHumidityPercentage(Integer.parseInt(line));
-                        System.out.println("Loaded humidity: " + line);  // Выводим пользователю
-                        break;
-                    default:
-                        // Обработка существ
-                        String[] parts = line.split(",");
-                        if (parts.length < 6) {
-                            logger.warn("Invalid line format: {}. Expected at least 6 parts.", line);
-                            continue; // Пропускаем строки с недостаточным количеством элементов
-                        }
-                        String category = parts[0].trim().toUpperCase();
-                        String type = parts[1].trim().toUpperCase();
-                        long count = Integer.parseInt(parts[2].trim());
-                        int comfortTemperature = Integer.parseInt(parts[3].trim());
-                        int consumedWaterOnPopulation = Integer.parseInt(parts[4].trim());
-                        int comfortHumidityPercentage = Integer.parseInt(parts[5].trim());
-
-                        CreatureStatistics stats = new CreatureStatistics(count, comfortTemperature, consumedWaterOnPopulation, comfortHumidityPercentage);
-
-                        switch (category) {
-                            case "HERBIVORE":
-                                herbivores.put(type, stats);
-                                break;
-                            case "PREDATOR":
-                                predators.put(type, stats);
-                                break;
-                            case "PLANT":
-                                plants.put(type, stats);
-                                break;
-                            case "DECOMPOSER":
-                                decomposers.put(type, stats);
-                                break;
-                            default:
-                                logger.warn("Unknown category: {}", category);  // Логгируем как предупреждение
-                        }
-                        break;
+    public boolean loadFromFile(String filename) {
+        WorldFileLoader loader = new WorldFileLoader(store, WorldConditions.getInstance());
+        WorldFileEvent event = new WorldFileEvent();
+        event.begin();
+        try {
+            loader.load(Path.of(filename));
+            commitFileEvent(event, "load", "text", filename, loader.getSpeciesCount());
+            for (int i = 0; i < loader.getHeader().length; i++) {
+                if (loader.getHeader()[i] != null) {
+                    System.out.println("Loaded " + WorldFileLoader.headerKey(i).toLowerCase() + ": " + loader.getHeader()[i]);  // Выводим пользователю
                 }
-                lineNumber++;
             }
-            System.out.println("Ecosystem loaded successfully from " + filename);  // Сообщение пользователю
-            logger.info("File {} loaded successfully.", filename);  // Логгируем успешную загрузку
-
+            if (loader.getSchedule() != null) {
+                for (String line : loader.getSchedule().toHeaderLines()) {
+                    System.out.println("Loaded climate schedule: " + line);
+                }
+            }
+            // Ошибочные строки пропускаются, загрузка продолжается
+            for (int i = 0; i < loader.getErrors().size(); i++) {
+                if (i < MAX_PRINTED_ERRORS) {
+                    System.out.println(loader.getErrors().get(i));
+                }
+                logger.warn("{}: {}", filename, loader.getErrors().get(i));
+            }
+            if (loader.getErrorCount() > 0) {
+                System.out.println(loader.getErrorCount() + " invalid lines skipped in " + filename);
+            }
+            System.out.println("Ecosystem loaded successfully from " + filename + " (" + loader.getSpeciesCount() + " species)");  // Сообщение пользователю
+            logger.info("File {} loaded successfully: {} species, {} lines, {} errors.", filename, loader.getSpeciesCount(), loader.getLineCount(), loader.getErrorCount());  // Логгируем успешную загрузку
+            compactJournal();
+            return true;
         } catch (IOException e) {
             System.out.println("Error reading file: " + e.getMessage());  // Сообщение пользователю
             logger.error("Error reading file {}: {}", filename, e.getMessage());  // Логгируем ошибку
-        } catch (IllegalArgumentException e) {
-            System.out.println("Error processing data from file: " + e.getMessage());  // Сообщение пользователю
-            logger.error("Error processing data from file {}: {}", filename, e.getMessage());  // Логгируем ошибку
+            return false;
         }
     }
 
 
     public void addCreature(String category, String species, long count, int comfortTemperature, int consumedWaterOnPopulation, int comfortHumidityPercentage) {
-        CreatureStatistics stats = new CreatureStatistics(count, comfortTemperature, consumedWaterOnPopulation, comfortHumidityPercentage);
-        switch (category) {
-            case "HERBIVORE":
-                herbivores.put(species, stats);
-                break;
-            case "PREDATOR":
-                predators.put(species, stats);
-                break;
-            case "PLANT":
-                plants.put(species, stats);
-                break;
-            case "DECOMPOSER":
-                decomposers.put(species, stats);
-                break;
-            default:
-                throw new UnknownCategoryException(category);
+        synchronized (store) { // Запись в журнал в том же порядке, что и изменение хранилища
+            int id = store.add(Category.of(category), species, count, comfortTemperature, consumedWaterOnPopulation, comfortHumidityPercentage);
+            if (journal != null) {
+                journal.recordAdd(id);
+                journal.commit();
+            }
         }
     }
 
     public void killCreature(String category, String species, long count) {
-        CreatureStatistics stats;
-        switch (category) {
-            case "HERBIVORE":
-                stats = herbivores.get(species);
-                updateCount(stats, species, herbivores, -count);
-                break;
-            case "PREDATOR":
-                stats = predators.get(species);
-                updateCount(stats, species, predators, -count);
-                break;
-            case "PLANT":
-                stats = plants.get(species);
-                updateCount(stats, species, plants, -count);
-                break;
-            case "DECOMPOSER":
-                stats = decomposers.get(species);
-                updateCount(stats, species, decomposers, -count);
-                break;
-            default:
-                throw new UnknownCategoryException(category);
-        }
+        updateCount(findSpecies(category, species), -count);
     }
 
     public void createCreature(String category, String species, long count) {
-        CreatureStatistics stats;
-        switch (category) {
-            case "HERBIVORE":
-                stats = herbivores.get(species);
-                updateCount(stats, species, herbivores, count);
-                break;
-            case "PREDATOR":
-                stats = predators.get(species);
-                updateCount(stats, species, predators, count);
-                break;
-            case "PLANT":
-                stats = plants.get(species);
-                updateCount(stats, species, plants, count);
-                break;
-            case "DECOMPOSER":
-                stats = decomposers.get(species);
-                updateCount(stats, species, decomposers, count);
-                break;
-            default:
-                System.out.println("Unknown category: " + category);
-        }
+        updateCount(findSpecies(category, species), count);
     }
 
-    public void updateCount(CreatureStatistics stats, String species, HashMap<String, CreatureStatistics> map, long count) {
-        Optional.ofNullable(stats).ifPresentOrElse(existingStats -> {
-            if (existingStats.getCount() <= 0) {
-                map.remove(species);
-            } else {
-                existingStats.setCount(existingStats.getCount() + count);
+    // Уменьшение численности вида по его идентификатору
+    public void killCreature(int id, long count) {
+        updateCount(id, -count);
+    }
+
+    // Увеличение численности вида по его идентификатору
+    public void createCreature(int id, long count) {
+        updateCount(id, count);
+    }
+
+    public void updateCount(int id, long count) {
+        if (id < 0) {
+            System.out.println("No such creature found");
+            return;
+        }
+        // Вымерший вид не возрождается от изменения численности, только через addCreature
+        synchronized (store) {
+            if (store.isAlive(id)) {
+                store.updateCount(id, count);
+                journalCount(id);
             }
-        }, () -> System.out.println("No such creature found"));
+        }
     }
 
     public void updateCreature(String category, String species, long count) {
         try {
-            switch (category.toUpperCase()) {
-                case "HERBIVORE":
-                    herbivores.merge(species, new CreatureStatistics(count, getComfortTemperature(species, herbivores), 0, 0),
-                            (existingStats, newStat) -> {
-                                existingStats.setCount(existingStats.getCount() + newStat.getCount());
-                                return existingStats;
-                            });
-                    break;
-                case "PREDATOR":
-                    predators.merge(species, new CreatureStatistics(count, getComfortTemperature(species, predators), 0, 0),
-                            (existingStats, newStat) -> {
-                                existingStats.setCount(existingStats.getCount() + newStat.getCount());
-                                return existingStats;
-                            });
-                    break;
-                case "PLANT":
-                    plants.merge(species, new CreatureStatistics(count, getComfortTemperature(species, plants), 0, 0),
-                            (existingStats, newStat) -> {
-                                existingStats.setCount(existingStats.getCount() + newStat.getCount());
-                                return existingStats;
-                            });
-                    break;
-                case "DECOMPOSER":
-                    decomposers.merge(species, new CreatureStatistics(count, getComfortTemperature(species, decomposers), 0, 0),
-                            (existingStats, newStat) -> {
-                                existingStats.setCount(existingStats.getCount() + newStat.getCount());
-                                return existingStats;
-                            });
-                    break;
-                default:
-                    System.out.println("Unknown category: " + category);
+            Category parsed = Category.of(category);
+            synchronized (store) {
+                int id = store.find(parsed, species);
+                if (id >= 0) {
+                    store.updateCount(id, count);
+                    journalCount(id);
+                } else {
+                    id = store.add(parsed, species, count, 0, 0, 0);
+                    if (journal != null) {
+                        journal.recordAdd(id);
+                        journal.commit();
+                    }
+                }
             }
-        } catch (IllegalArgumentException e) {
-            System.out.println("Error processing data: " + e.getMessage());
+        } catch (UnknownCategoryException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    // Запись изменения условий мира в журнал
+    public void conditionsChanged() {
+        if (journal != null) {
+            journal.recordConditions();
+            journal.commit();
+        }
+    }
+
+    private void journalCount(int id) {
+        if (journal != null) {
+            journal.recordCount(id);
+            journal.commit();
+        }
+    }
+
+    // После загрузки мира журнал начинается с нового снимка
+    private void compactJournal() {
+        if (journal == null) {
+            return;
         }
+        try {
+            journal.compact();
+        } catch (IOException e) {
+            System.out.println("Error writing journal snapshot: " + e.getMessage());  // Сообщение пользователю
+            logger.error("Error writing journal snapshot: {}", e.getMessage());  // Логгируем ошибку
+        }
+    }
+
+    // Идентификатор вида по названию категории и вида, -1 если не найден
+    private int findSpecies(String category, String species) {
+        return store.find(Category.of(category), species);
     }
 
     public void saveToFile(WorldConditions worldConditions, Scanner scanner) {
         System.out.print("Enter file path to save: ");
         String filePath = scanner.nextLine().trim(); // Получаем путь к файлу от пользователя
+        saveToFile(worldConditions, filePath);
+    }
+
+    // Сохранение текущего состояния хранилища без интерактивного запроса пути
+    public void saveToFile(WorldConditions worldConditions, String filePath) {
+        saveToFile(WorldSnapshot.capture(store, worldConditions), filePath);
+    }
 
+    // Сохранение снимка года без интерактивного запроса пути; расчёт при этом не блокируется
+    public void saveToFile(WorldSnapshot snapshot, String filePath) {
+        WorldFileEvent event = new WorldFileEvent();
+        event.begin();
+        int records = 0;
         try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filePath), StandardCharsets.UTF_8))) {
             // Сохраняем условия мира
             System.out.println("Saving ecosystem to " + filePath);  // Сообщение пользователю
             logger.info("Saving ecosystem to " + filePath);  // Логгируем сохранение
 
-            writer.write(String.valueOf(worldConditions.getYear()));
+            writer.write("YEAR=" + snapshot.getYear());
             writer.newLine();
-            writer.write(String.valueOf(worldConditions.getTemperature()));
+            writer.write("TEMPERATURE=" + snapshot.getTemperature());
             writer.newLine();
-            writer.write(String.valueOf(worldConditions.getAccessibleWater()));
+            writer.write("WATER=" + snapshot.getAccessibleWater());
             writer.newLine();
-            writer.write(String.valueOf(worldConditions.getHumidityPercentage()));
+            writer.write("HUMIDITY=" + snapshot.getHumidityPercentage());
             writer.newLine();
+            if (snapshot.getSchedule() != null) {
+                for (String line : snapshot.getSchedule().toHeaderLines()) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+            }
 
             // Сохраняем статистику существ
-            saveCreatures(writer, "PLANT", plants);
-            saveCreatures(writer, "HERBIVORE", herbivores);
-            saveCreatures(writer, "PREDATOR", predators);
-            saveCreatures(writer, "DECOMPOSER", decomposers);
+            records += saveCreatures(writer, snapshot, Category.PLANT);
+            records += saveCreatures(writer, snapshot, Category.HERBIVORE);
+            records += saveCreatures(writer, snapshot, Category.PREDATOR);
+            records += saveCreatures(writer, snapshot, Category.DECOMPOSER);
 
             System.out.println("Ecosystem saved successfully to " + filePath);  // Сообщение пользователю
             logger.info("Ecosystem saved successfully to {}", filePath);  // Логгируем успешное сохранение
         } catch (IOException e) {
             System.out.println("Error saving to file: " + e.getMessage());  // Сообщение пользователю об ошибке
             logger.error("Error saving to file: {}", e.getMessage());  // Логгируем ошибку
+            return;
+        }
+        commitFileEvent(event, "save", "text", filePath, records); // После закрытия: размер файла окончательный
+    }
+
+    // Загрузка двоичного снимка мира
+    public boolean loadFromBinaryFile(String filePath) {
+        WorldFileEvent event = new WorldFileEvent();
+        event.begin();
+        try {
+            int species = BinarySnapshotFormat.read(Path.of(filePath), store, WorldConditions.getInstance());
+            commitFileEvent(event, "load", "binary", filePath, species);
+            System.out.println("Snapshot loaded successfully from " + filePath + " (" + species + " species)");  // Сообщение пользователю
+            logger.info("Snapshot {} loaded successfully: {} species", filePath, species);
+            compactJournal();
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error reading snapshot: " + e.getMessage());  // Сообщение пользователю
+            logger.error("Error reading snapshot {}: {}", filePath, e.getMessage());  // Логгируем ошибку
+            return false;
+        }
+    }
+
+    // Сохранение двоичного снимка мира
+    public void saveToBinaryFile(WorldSnapshot snapshot, String filePath) {
+        WorldFileEvent event = new WorldFileEvent();
+        event.begin();
+        try {
+            System.out.println("Saving snapshot to " + filePath);  // Сообщение пользователю
+            int species = BinarySnapshotFormat.write(snapshot, Path.of(filePath));
+            commitFileEvent(event, "save", "binary", filePath, species);
+            System.out.println("Snapshot saved successfully to " + filePath + " (" + species + " species)");  // Сообщение пользователю
+            logger.info("Snapshot saved successfully to {}: {} species", filePath, species);
+        } catch (IOException e) {
+            System.out.println("Error saving snapshot: " + e.getMessage());  // Сообщение пользователю об ошибке
+            logger.error("Error saving snapshot to {}: {}", filePath, e.getMessage());  // Логгируем ошибку
+        }
+    }
+
+    // Событие JFR о файле мира; без активной записи ни размер файла, ни поля не вычисляются
+    private static void commitFileEvent(WorldFileEvent event, String operation, String format, String filePath, long records) {
+        if (!event.shouldCommit()) {
+            return;
+        }
+        event.operation = operation;
+        event.format = format;
+        event.path = filePath;
+        event.records = records;
+        try {
+            event.bytes = Files.size(Path.of(filePath));
+        } catch (IOException e) {
+            event.bytes = -1;
         }
+        event.commit();
     }
 
-    private void saveCreatures(BufferedWriter writer, String category, HashMap<String, CreatureStatistics> creatures) throws IOException {
-        for (var entry : creatures.entrySet()) {
-            String type = entry.getKey();
-            CreatureStatistics stats = entry.getValue();
+    // Записывает живые виды категории; возвращает их число
+    private int saveCreatures(BufferedWriter writer, WorldSnapshot snapshot, Category category) throws IOException {
+        int written = 0;
+        for (int i = 0; i < snapshot.getMemberCount(category); i++) {
+            int id = snapshot.getMember(category, i);
+            if (!snapshot.isAlive(id)) {
+                continue; // Вымершие виды не сохраняем
+            }
 
-            // Записываем данные о каждом существе в формате: CATEGORY, TYPE, COUNT, COMFORT_TEMPERATURE, CONSUMED_WATER, COMFORT_HUMIDITY
-            writer.write(String.format("%s,%s,%d,%d,%d,%d", category, type, stats.getCount(), stats.getComfortTemperature(), stats.getConsumedWaterOnSingleCreature(), stats.getComfortHumidityPercentage()));
+            // Записываем данные о каждом существе в формате: CATEGORY, TYPE, COUNT, COMFORT_TEMPERATURE, CONSUMED_WATER, COMFORT_HUMIDITY[, DIET]
+            writer.write(String.format("%s,%s,%d,%d,%d,%d", category, snapshot.getName(id), snapshot.getCount(id), snapshot.getComfortTemperature(id), snapshot.getConsumedWater(id), snapshot.getComfortHumidity(id)));
+            writeDiet(writer, snapshot, id);
             writer.newLine(); // Переход на новую строку
+            written++;
         }
+        return written;
     }
-    // Метод для получения комфортной температуры существ из карты
-    private int getComfortTemperature(String species, HashMap<String, CreatureStatistics> map) {
-        CreatureStatistics stats = map.get(species);
-        return stats != null ? stats.getComfortTemperature() : 0; // Возвращаем 0, если не найдено
+
+    // Рацион вида: NAME:WEIGHT через ';'; жертвы не из категории пищи записываются как CATEGORY/NAME
+    private void writeDiet(BufferedWriter writer, WorldSnapshot snapshot, int id) throws IOException {
+        int[] diet = snapshot.getDiet(id);
+        if (diet == null) {
+            return;
+        }
+        double[] weights = snapshot.getDietWeights(id);
+        Category consumed = snapshot.getCategory(id).getConsumed();
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < diet.length; i++) {
+            if (!snapshot.isAlive(diet[i])) {
+                continue; // Вымершие виды не сохраняются, ссылка на них не разрешится
+            }
+            line.append(line.length() == 0 ? "," : ";");
+            if (snapshot.getCategory(diet[i]) != consumed) {
+                line.append(snapshot.getCategory(diet[i])).append('/');
+            }
+            double weight = weights[i];
+            line.append(snapshot.getName(diet[i])).append(':')
+                    .append(weight == Math.rint(weight) && Math.abs(weight) < 1e15 ? String.valueOf((long) weight) : String.valueOf(weight));
+        }
+        writer.write(line.toString());
     }
 }
 
@@ -0,0 +1,408 @@
+package first.second.third.ecosystem.fileprocessor;
+
+import first.second.third.ecosystem.entity.parameters.Category;
+import first.second.third.ecosystem.entity.parameters.WorldConditions;
+import first.second.third.ecosystem.population.PopulationStore;
+import first.second.third.ecosystem.population.WorldSnapshot;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Журнал изменений мира с периодическим сжатием в снимок.
+ * <p>
+ * В каталоге журнала лежат пары snapshot-N.ecos (полный двоичный снимок
+ * поколения N, виды в порядке идентификаторов) и journal-N.wal (изменения
+ * после этого снимка). Изменения копятся в буфере и записываются одним кадром:
+ * после каждого года (групповая фиксация) или сразу после команды пользователя.
+ * Кадр - [int длина][int CRC32][записи], последний кадр с неверной длиной или
+ * суммой считается оборванным и отбрасывается.
+ * <p>
+ * Каждые N лет создаётся снимок следующего поколения и новый пустой журнал,
+ * после чего старое поколение удаляется, поэтому падение на любом шаге
+ * оставляет целую пару файлов. При запуске восстанавливается последнее
+ * поколение со снимком и все целые кадры его журнала.
+ * <p>
+ * Кадр передаётся ОС одним вызовом write: этого достаточно, чтобы пережить
+ * падение JVM. Принудительный сброс на диск выполняется только при сжатии.
+ */
+public class MutationJournal implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MutationJournal.class);
+
+    public static final int DEFAULT_COMPACTION_INTERVAL = 1000;
+
+    private static final byte ADD = 1;
+    private static final byte SET_COUNT = 2;
+    private static final byte CONDITIONS = 3;
+    private static final byte YEAR = 4;
+    private static final byte TICK = 5;
+
+    private static final int FRAME_HEADER = 2 * Integer.BYTES;
+
+    private final Path directory;
+    private final PopulationStore store;
+    private final WorldConditions worldConditions;
+    // Через сколько лет после снимка журнал сжимается в новый снимок
+    @Getter
+    private final int compactionInterval;
+
+    @Getter
+    private long generation;
+    @Getter
+    private int snapshotYear;
+    // Размер журнала текущего поколения в байтах
+    @Getter
+    private long journalSize;
+    private FileChannel channel;
+
+    private ByteBuffer pending = newBuffer(1 << 12);
+    // Каждый кадр заканчивается годом, чтобы восстановленный мир был согласован
+    private boolean lastEntryIsYear;
+    private final CRC32 crc = new CRC32();
+
+    public MutationJournal(Path directory, PopulationStore store, WorldConditions worldConditions, int compactionInterval) {
+        if (compactionInterval <= 0) {
+            throw new IllegalArgumentException("Compaction interval must be positive: " + compactionInterval);
+        }
+        this.directory = directory;
+        this.store = store;
+        this.worldConditions = worldConditions;
+        this.compactionInterval = compactionInterval;
+    }
+
+    // Есть ли в каталоге снимок, из которого open() восстановит мир
+    public boolean exists() throws IOException {
+        return Files.isDirectory(directory) && latestGeneration() >= 0;
+    }
+
+    /**
+     * Восстанавливает мир из последнего снимка и журнала, если они есть,
+     * иначе записывает снимок текущего состояния. После вызова журнал открыт для записи.
+     *
+     * @return true, если мир восстановлен из каталога журнала.
+     */
+    public boolean open() throws IOException {
+        Files.createDirectories(directory);
+        long latest = latestGeneration();
+        if (latest < 0) {
+            compact();
+            return false;
+        }
+        synchronized (store) { // Порядок мониторов как у движка: хранилище, затем журнал
+            synchronized (this) {
+                recover(latest);
+            }
+        }
+        logger.info("Recovered year {} from journal generation {} ({} bytes of journal)", worldConditions.getYear(), generation, journalSize);
+        return true;
+    }
+
+    private void recover(long latest) throws IOException {
+        generation = latest;
+        store.clear();
+        BinarySnapshotFormat.read(snapshotPath(latest), store, worldConditions);
+        snapshotYear = worldConditions.getYear();
+        channel = FileChannel.open(journalPath(latest), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        journalSize = replay(channel);
+        worldConditions.applySchedule(); // Условия восстановленного года по расписанию
+        channel.truncate(journalSize); // Оборванный хвост отбрасывается
+        channel.position(journalSize);
+    }
+
+    // Запись о новом виде или изменении параметров существующего
+    public synchronized void recordAdd(int id) {
+        byte[] name = store.getName(id).getBytes(StandardCharsets.UTF_8);
+        ensurePending(1 + 1 + Short.BYTES + name.length + Long.BYTES + 3 * Integer.BYTES);
+        pending.put(ADD);
+        pending.put((byte) store.getCategory(id).ordinal());
+        pending.putShort((short) name.length);
+        pending.put(name);
+        pending.putLong(store.getCount(id));
+        pending.putInt(store.getComfortTemperature(id));
+        pending.putInt(store.getConsumedWater(id));
+        pending.putInt(store.getComfortHumidity(id));
+    }
+
+    // Запись итоговой численности вида после изменения
+    public synchronized void recordCount(int id) {
+        ensurePending(1 + 5 + 10);
+        pending.put(SET_COUNT);
+        putVarLong(id);
+        putVarLong(store.getCount(id));
+    }
+
+    public synchronized void recordConditions() {
+        ensurePending(1 + 3 * Integer.BYTES);
+        pending.put(CONDITIONS);
+        pending.putInt(worldConditions.getTemperature());
+        pending.putInt(worldConditions.getAccessibleWater());
+        pending.putInt(worldConditions.getHumidityPercentage());
+    }
+
+    /**
+     * Групповая фиксация года: изменившиеся численности и новый год одним кадром.
+     * Вызывается движком под монитором хранилища.
+     */
+    public synchronized void commitYear(int year, long[] before, long[] after, int size) {
+        int changed = 0;
+        for (int id = 0; id < size; id++) {
+            if (before[id] != after[id]) {
+                changed++;
+            }
+        }
+        ensurePending(1 + 10 + changed * 15 + 1 + Integer.BYTES);
+        pending.put(TICK);
+        putVarLong(changed);
+        // Пары пишутся прямо в массив буфера: это самая частая запись журнала
+        byte[] array = pending.array();
+        int position = pending.position();
+        int previous = 0;
+        for (int id = 0; id < size; id++) {
+            if (before[id] != after[id]) {
+                position = putVarLong(array, position, id - previous); // Идентификаторы по возрастанию: пишется разность
+                position = putVarLong(array, position, after[id]);
+                previous = id;
+            }
+        }
+        pending.position(position);
+        putYear(year);
+        commit();
+    }
+
+    // Запись накопленных изменений одним кадром
+    public synchronized void commit() {
+        if (pending.position() == 0 || channel == null) {
+            return;
+        }
+        if (!lastEntryIsYear) {
+            putYear(worldConditions.getYear());
+        }
+        pending.flip();
+        int length = pending.remaining();
+        crc.reset();
+        crc.update(pending.duplicate());
+        ByteBuffer header = newBuffer(FRAME_HEADER);
+        header.putInt(length).putInt((int) crc.getValue()).flip();
+        try {
+            channel.write(new ByteBuffer[]{header, pending});
+            journalSize += FRAME_HEADER + length;
+        } catch (IOException e) {
+            System.out.println("Error writing journal: " + e.getMessage());
+            logger.error("Error writing journal {}: {}", journalPath(generation), e.getMessage());
+        } finally {
+            pending.clear();
+        }
+    }
+
+    // Сжатие, если с последнего снимка прошло достаточно лет
+    public void compactIfDue() {
+        if (worldConditions.getYear() - snapshotYear >= compactionInterval) {
+            try {
+                compact();
+            } catch (IOException e) {
+                System.out.println("Error compacting journal: " + e.getMessage());
+                logger.error("Error compacting journal in {}: {}", directory, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Новый снимок и пустой журнал следующего поколения; старое поколение удаляется
+     * только после того, как новый снимок записан на диск.
+     */
+    public void compact() throws IOException {
+        synchronized (store) { // Порядок мониторов как у движка: хранилище, затем журнал
+            synchronized (this) {
+                compactLocked();
+            }
+        }
+    }
+
+    private void compactLocked() throws IOException {
+        commit();
+        long next = generation + 1;
+        Path temporary = directory.resolve("snapshot-" + next + ".tmp");
+        BinarySnapshotFormat.write(WorldSnapshot.capture(store, worldConditions), temporary, true);
+        snapshotYear = worldConditions.getYear();
+        Files.move(temporary, snapshotPath(next), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        FileChannel nextChannel = FileChannel.open(journalPath(next), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        if (channel != null) {
+            channel.close();
+        }
+        long previous = generation;
+        channel = nextChannel;
+        generation = next;
+        journalSize = 0;
+        Files.deleteIfExists(journalPath(previous));
+        Files.deleteIfExists(snapshotPath(previous));
+        logger.info("Journal compacted into snapshot generation {} at year {}", generation, snapshotYear);
+    }
+
+    @Override
+    public synchronized void close() {
+        commit();
+        if (channel != null) {
+            try {
+                channel.force(false);
+                channel.close();
+            } catch (IOException e) {
+                logger.error("Error closing journal: {}", e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    // Применяет целые кадры журнала; возвращает длину целой части
+    private long replay(FileChannel journal) throws IOException {
+        long size = journal.size();
+        long position = 0;
+        ByteBuffer header = newBuffer(FRAME_HEADER);
+        while (position + FRAME_HEADER <= size) {
+            header.clear();
+            journal.read(header, position);
+            header.flip();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length <= 0 || position + FRAME_HEADER + length > size) {
+                break;
+            }
+            ByteBuffer frame = newBuffer(length);
+            journal.read(frame, position + FRAME_HEADER);
+            frame.flip();
+            crc.reset();
+            crc.update(frame.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            apply(frame);
+            position += FRAME_HEADER + length;
+        }
+        if (position < size) {
+            logger.warn("Discarded {} bytes of incomplete journal after position {}", size - position, position);
+        }
+        return position;
+    }
+
+    private void apply(ByteBuffer frame) throws IOException {
+        Category[] categories = Category.values();
+        while (frame.hasRemaining()) {
+            byte type = frame.get();
+            switch (type) {
+                case ADD:
+                    Category category = categories[frame.get()];
+                    byte[] name = new byte[frame.getShort()];
+                    frame.get(name);
+                    store.add(category, new String(name, StandardCharsets.UTF_8), frame.getLong(), frame.getInt(), frame.getInt(), frame.getInt());
+                    break;
+                case SET_COUNT:
+                    store.setCount((int) getVarLong(frame), getVarLong(frame));
+                    break;
+                case CONDITIONS:
+                    worldConditions.setSchedule(null); // Ручное изменение отменяет расписание
+                    worldConditions.setTemperature(frame.getInt());
+                    worldConditions.setAccessibleWater(frame.getInt());
+                    worldConditions.setHumidityPercentage(frame.getInt());
+                    break;
+                case YEAR:
+                    worldConditions.setYear(frame.getInt());
+                    break;
+                case TICK:
+                    long changed = getVarLong(frame);
+                    int id = 0;
+                    for (long i = 0; i < changed; i++) {
+                        id += (int) getVarLong(frame);
+                        store.setCount(id, getVarLong(frame));
+                    }
+                    break;
+                default:
+                    throw new IOException("Corrupted journal: unknown entry type " + type);
+            }
+        }
+    }
+
+    private long latestGeneration() throws IOException {
+        long latest = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "snapshot-*.ecos")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    latest = Math.max(latest, Long.parseLong(name.substring("snapshot-".length(), name.length() - BinarySnapshotFormat.EXTENSION.length())));
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring unexpected file in journal directory: {}", name);
+                }
+            }
+        }
+        return latest;
+    }
+
+    private Path snapshotPath(long generation) {
+        return directory.resolve("snapshot-" + generation + BinarySnapshotFormat.EXTENSION);
+    }
+
+    private Path journalPath(long generation) {
+        return directory.resolve("journal-" + generation + ".wal");
+    }
+
+    private void putYear(int year) {
+        ensurePending(1 + Integer.BYTES);
+        pending.put(YEAR);
+        pending.putInt(year);
+        lastEntryIsYear = true;
+    }
+
+    private void ensurePending(int bytes) {
+        lastEntryIsYear = false;
+        if (pending.remaining() < bytes) {
+            ByteBuffer larger = newBuffer(Math.max(pending.capacity() * 2, pending.position() + bytes));
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+    }
+
+    private void putVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            pending.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        pending.put((byte) value);
+    }
+
+    private static int putVarLong(byte[] array, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            array[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        array[position++] = (byte) value;
+        return position;
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static ByteBuffer newBuffer(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
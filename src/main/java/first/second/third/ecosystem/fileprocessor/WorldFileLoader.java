@@ -0,0 +1,594 @@
+package first.second.third.ecosystem.fileprocessor;
+
+import first.second.third.ecosystem.entity.parameters.Category;
+import first.second.third.ecosystem.entity.parameters.ClimateSchedule;
+import first.second.third.ecosystem.entity.parameters.WorldConditions;
+import first.second.third.ecosystem.exception.UnknownCategoryException;
+import first.second.third.ecosystem.population.PopulationStore;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Потоковый загрузчик текстового файла мира.
+ * Заголовок читается последовательно: либо строки вида KEY=VALUE
+ * (YEAR, TEMPERATURE, WATER, HUMIDITY в любом порядке), либо, как раньше,
+ * четыре числа подряд. Секция видов делится на блоки по границам строк,
+ * блоки разбираются параллельно побайтовым парсером без split и parseInt,
+ * а результаты в исходном порядке пачками добавляются в хранилище.
+ * Одновременно в памяти находится не больше нескольких блоков на поток.
+ * Ошибочные строки не прерывают загрузку, а собираются с номерами строк.
+ * Необязательное седьмое поле строки вида - рацион: записи NAME[:WEIGHT]
+ * через ';'. Название ищется в категории пищи вида, CATEGORY/NAME - в указанной
+ * категории. Ссылки на жертвы разрешаются после загрузки всего файла,
+ * поэтому жертва может быть описана ниже потребителя.
+ * Ключи заголовка ПЕРЕМЕННАЯ.СВОЙСТВО (например, TEMPERATURE.KEYFRAMES)
+ * задают расписание климата (см. ClimateSchedule.Builder); файл без них
+ * снимает с мира прежнее расписание.
+ */
+public class WorldFileLoader {
+
+    private static final int CHUNK_SIZE = 4 << 20;
+    // Сколько текстов ошибок сохраняется; остальные только подсчитываются
+    private static final int MAX_STORED_ERRORS = 100;
+    private static final String[] HEADER_KEYS = {"YEAR", "TEMPERATURE", "WATER", "HUMIDITY"};
+
+    private final PopulationStore store;
+    private final WorldConditions worldConditions;
+    private final ForkJoinPool pool;
+
+    // Итоги последней загрузки
+    @Getter
+    private long lineCount;
+    @Getter
+    private long speciesCount;
+    @Getter
+    private long errorCount;
+    @Getter
+    private final List<String> errors = new ArrayList<>();
+    // Значения заголовка; null - значение не задано в файле
+    @Getter
+    private final Integer[] header = new Integer[HEADER_KEYS.length];
+    // Расписание климата из заголовка; null - условия постоянны
+    @Getter
+    private ClimateSchedule schedule;
+    private ClimateSchedule.Builder scheduleBuilder;
+    private long scheduleLine; // Последняя строка расписания, для сообщения об ошибке
+    // Рационы, ожидающие разрешения названий жертв
+    private final List<PendingDiet> diets = new ArrayList<>();
+
+    public WorldFileLoader(PopulationStore store, WorldConditions worldConditions) {
+        this(store, worldConditions, ForkJoinPool.commonPool());
+    }
+
+    public WorldFileLoader(PopulationStore store, WorldConditions worldConditions, ForkJoinPool pool) {
+        this.store = store;
+        this.worldConditions = worldConditions;
+        this.pool = pool;
+    }
+
+    public static String headerKey(int index) {
+        return HEADER_KEYS[index];
+    }
+
+    /**
+     * Читает файл мира в хранилище и условия. Виды добавляются частями, заголовок применяется
+     * после них, поэтому во время загрузки мир не должен симулироваться.
+     */
+    public void load(Path path) throws IOException {
+        lineCount = speciesCount = errorCount = 0;
+        errors.clear();
+        diets.clear();
+        Arrays.fill(header, null);
+        schedule = null;
+        scheduleBuilder = new ClimateSchedule.Builder();
+        scheduleLine = 0;
+
+        int inFlight = Math.max(2, pool.getParallelism() * 2);
+        ArrayDeque<CompletableFuture<ParsedChunk>> pending = new ArrayDeque<>();
+        boolean headerDone = false;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            byte[] carry = new byte[0]; // Неполная последняя строка предыдущего блока
+            boolean eof = false;
+            while (!eof) {
+                byte[] chunk = new byte[Math.max(CHUNK_SIZE, carry.length * 2)];
+                System.arraycopy(carry, 0, chunk, 0, carry.length);
+                int length = carry.length;
+                ByteBuffer buffer = ByteBuffer.wrap(chunk);
+                buffer.position(length);
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        eof = true;
+                        break;
+                    }
+                }
+                length = buffer.position();
+                int end = eof ? length : lastNewline(chunk, length) + 1;
+                if (end == 0) {
+                    carry = Arrays.copyOf(chunk, length); // Строка длиннее блока: читаем блок больше
+                    continue;
+                }
+                carry = Arrays.copyOfRange(chunk, end, length);
+
+                int start = 0;
+                if (!headerDone) {
+                    start = parseHeader(chunk, end);
+                    headerDone = start < end || eof;
+                }
+                if (start < end) {
+                    int from = start;
+                    pending.add(CompletableFuture.supplyAsync(() -> parseChunk(chunk, from, end), pool));
+                }
+                while (pending.size() >= inFlight) {
+                    merge(pending.poll());
+                }
+            }
+            while (!pending.isEmpty()) {
+                merge(pending.poll());
+            }
+        }
+        applyHeader();
+        resolveDiets();
+    }
+
+    // Последовательный разбор заголовка; возвращает смещение первой строки видов
+    private int parseHeader(byte[] bytes, int end) {
+        int position = 0;
+        while (position < end) {
+            int lineEnd = indexOf(bytes, (byte) '\n', position, end);
+            int next = lineEnd < 0 ? end : lineEnd + 1;
+            int from = skipSpaces(bytes, position, lineEnd < 0 ? end : lineEnd);
+            int to = trimEnd(bytes, from, lineEnd < 0 ? end : lineEnd);
+            if (indexOf(bytes, (byte) ',', from, to) >= 0) {
+                return position; // Началась секция видов
+            }
+            lineCount++;
+            position = next;
+            if (from == to || isComment(bytes, from, to)) {
+                continue;
+            }
+            String line = new String(bytes, from, to - from, StandardCharsets.UTF_8);
+            int equals = line.indexOf('=');
+            try {
+                if (equals >= 0) {
+                    String key = line.substring(0, equals).trim().toUpperCase();
+                    if (ClimateSchedule.isScheduleKey(key)) {
+                        scheduleBuilder.set(key, line.substring(equals + 1));
+                        scheduleLine = lineCount;
+                        continue;
+                    }
+                    int index = Arrays.asList(HEADER_KEYS).indexOf(key);
+                    if (index < 0) {
+                        addError(lineCount, "Unknown header key: " + key);
+                        continue;
+                    }
+                    header[index] = Integer.parseInt(line.substring(equals + 1).trim());
+                } else {
+                    // Прежний формат: значения заголовка по порядку
+                    int index = Arrays.asList(header).indexOf(null);
+                    if (index < 0) {
+                        addError(lineCount, "Unexpected header line: " + line);
+                        continue;
+                    }
+                    header[index] = Integer.parseInt(line);
+                }
+            } catch (NumberFormatException e) {
+                addError(lineCount, "Invalid number in header: " + line);
+            } catch (IllegalArgumentException e) {
+                addError(lineCount, e.getMessage());
+            }
+        }
+        return position;
+    }
+
+    private void applyHeader() {
+        if (header[0] != null) {
+            worldConditions.setYear(header[0]);
+        }
+        if (header[1] != null) {
+            worldConditions.setTemperature(header[1]);
+        }
+        if (header[2] != null) {
+            worldConditions.setAccessibleWater(header[2]);
+        }
+        if (header[3] != null) {
+            worldConditions.setHumidityPercentage(header[3]);
+        }
+        try {
+            schedule = scheduleBuilder.build(worldConditions);
+        } catch (IllegalArgumentException e) {
+            addError(scheduleLine, e.getMessage());
+        }
+        worldConditions.setSchedule(schedule);
+        worldConditions.applySchedule(); // Условия года загрузки по расписанию
+    }
+
+    // Добавление разобранного блока в хранилище и пересчёт номеров строк с ошибками
+    private void merge(CompletableFuture<ParsedChunk> future) throws IOException {
+        ParsedChunk parsed;
+        try {
+            parsed = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Loading interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error parsing world file: " + e.getCause().getMessage(), e.getCause());
+        }
+        store.addAll(parsed.categories, parsed.names, parsed.counts, parsed.temperatures, parsed.water, parsed.humidity, parsed.size);
+        for (int i = 0; i < parsed.size; i++) {
+            if (parsed.dietNames[i] != null) {
+                int consumer = store.find(Category.of(parsed.categories[i]), parsed.names[i]);
+                diets.add(new PendingDiet(consumer, parsed.dietNames[i], parsed.dietWeights[i], lineCount + parsed.dietLines[i]));
+            }
+        }
+        for (int i = 0; i < parsed.errorLines.size(); i++) {
+            addError(lineCount + parsed.errorLines.get(i), parsed.errorMessages.get(i));
+        }
+        errorCount += parsed.errorCount - parsed.errorLines.size();
+        speciesCount += parsed.size;
+        lineCount += parsed.lines;
+    }
+
+    // Разрешение названий жертв в идентификаторы; неизвестные жертвы пропускаются с ошибкой
+    private void resolveDiets() {
+        for (PendingDiet diet : diets) {
+            Category consumed = store.getCategory(diet.consumer).getConsumed();
+            int[] prey = new int[diet.names.length];
+            double[] weights = new double[diet.names.length];
+            int count = 0;
+            for (int i = 0; i < diet.names.length; i++) {
+                String name = diet.names[i];
+                Category category = consumed;
+                int slash = name.indexOf('/');
+                try {
+                    if (slash >= 0) {
+                        category = Category.of(name.substring(0, slash));
+                        name = name.substring(slash + 1).trim();
+                    }
+                } catch (UnknownCategoryException e) {
+                    addError(diet.line, "Unknown prey category: " + diet.names[i]);
+                    continue;
+                }
+                int id = store.find(category, name);
+                if (id < 0) {
+                    addError(diet.line, "Unknown prey: " + diet.names[i]);
+                    continue;
+                }
+                prey[count] = id;
+                weights[count++] = diet.weights[i];
+            }
+            store.setDiet(diet.consumer, Arrays.copyOf(prey, count), Arrays.copyOf(weights, count));
+        }
+        diets.clear();
+    }
+
+    private void addError(long line, String message) {
+        errorCount++;
+        if (errors.size() < MAX_STORED_ERRORS) {
+            errors.add("Line " + line + ": " + message);
+        }
+    }
+
+    // Разбор блока строк видов [from, end); выполняется в пуле
+    private static ParsedChunk parseChunk(byte[] bytes, int from, int end) {
+        ParsedChunk parsed = new ParsedChunk(Math.max(16, (end - from) / 24));
+        int position = from;
+        while (position < end) {
+            int lineEnd = indexOf(bytes, (byte) '\n', position, end);
+            if (lineEnd < 0) {
+                lineEnd = end;
+            }
+            parsed.lines++;
+            try {
+                parseSpecies(bytes, position, lineEnd, parsed);
+            } catch (LineFormatException e) {
+                parsed.error(e.getMessage());
+            }
+            position = lineEnd + 1;
+        }
+        return parsed;
+    }
+
+    // Строка вида: CATEGORY,NAME,COUNT,COMFORT_TEMPERATURE,CONSUMED_WATER,COMFORT_HUMIDITY[,DIET]
+    private static void parseSpecies(byte[] bytes, int lineStart, int lineEnd, ParsedChunk parsed) throws LineFormatException {
+        int from = skipSpaces(bytes, lineStart, lineEnd);
+        int to = trimEnd(bytes, from, lineEnd);
+        if (from == to || isComment(bytes, from, to)) {
+            return;
+        }
+        int[] fields = parsed.fields; // Пары начало/конец первых шести полей
+        int field = 0;
+        int fieldStart = from;
+        for (int i = from; i <= to && field < 6; i++) {
+            if (i == to || bytes[i] == ',') {
+                fields[field * 2] = skipSpaces(bytes, fieldStart, i);
+                fields[field * 2 + 1] = trimEnd(bytes, fields[field * 2], i);
+                field++;
+                fieldStart = i + 1;
+            }
+        }
+        if (field < 6) {
+            throw new LineFormatException("Invalid line format: expected at least 6 parts");
+        }
+        byte category = parseCategory(bytes, fields[0], fields[1]);
+        if (fields[2] == fields[3]) {
+            throw new LineFormatException("Empty species name");
+        }
+        long count = parseLong(bytes, fields[4], fields[5], "count");
+        int temperature = (int) parseInt(bytes, fields[6], fields[7], "comfort temperature");
+        int water = (int) parseInt(bytes, fields[8], fields[9], "consumed water");
+        int humidity = (int) parseInt(bytes, fields[10], fields[11], "comfort humidity");
+        // После шестого поля была запятая - дальше рацион; разбирается до добавления вида
+        boolean diet = fieldStart <= to && parseDiet(bytes, fieldStart, to, parsed);
+        parsed.add(category, upperCaseName(bytes, fields[2], fields[3]), count, temperature, water, humidity);
+        if (diet) {
+            parsed.setDiet();
+        }
+    }
+
+    // Рацион: записи NAME[:WEIGHT] через ';', вес по умолчанию 1
+    private static boolean parseDiet(byte[] bytes, int from, int to, ParsedChunk parsed) throws LineFormatException {
+        List<String> names = parsed.pendingNames;
+        List<Double> weights = parsed.pendingWeights;
+        names.clear();
+        weights.clear();
+        int entryStart = from;
+        for (int i = from; i <= to; i++) {
+            if (i < to && bytes[i] != ';') {
+                continue;
+            }
+            int start = skipSpaces(bytes, entryStart, i);
+            int end = trimEnd(bytes, start, i);
+            entryStart = i + 1;
+            if (start == end) {
+                continue;
+            }
+            int colon = indexOf(bytes, (byte) ':', start, end);
+            int nameEnd = trimEnd(bytes, start, colon < 0 ? end : colon);
+            if (nameEnd == start) {
+                throw new LineFormatException("Empty prey name in diet");
+            }
+            double weight = 1;
+            if (colon >= 0) {
+                String value = new String(bytes, colon + 1, end - colon - 1, StandardCharsets.UTF_8).trim();
+                try {
+                    weight = Double.parseDouble(value);
+                } catch (NumberFormatException e) {
+                    throw new LineFormatException("Invalid diet weight: '" + value + "'");
+                }
+                if (!(weight > 0) || Double.isInfinite(weight)) {
+                    throw new LineFormatException("Diet weight must be positive: " + value);
+                }
+            }
+            names.add(upperCaseName(bytes, start, nameEnd));
+            weights.add(weight);
+        }
+        return !names.isEmpty();
+    }
+
+    private static byte parseCategory(byte[] bytes, int from, int to) throws LineFormatException {
+        for (Category category : Category.values()) {
+            String name = category.name();
+            if (name.length() != to - from) {
+                continue;
+            }
+            int i = 0;
+            while (i < name.length() && toUpper(bytes[from + i]) == name.charAt(i)) {
+                i++;
+            }
+            if (i == name.length()) {
+                return (byte) category.ordinal();
+            }
+        }
+        throw new LineFormatException("Unknown category: " + new String(bytes, from, to - from, StandardCharsets.UTF_8));
+    }
+
+    // Название вида в верхнем регистре; ASCII без промежуточной строки
+    private static String upperCaseName(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] < 0) {
+                return new String(bytes, from, to - from, StandardCharsets.UTF_8).toUpperCase();
+            }
+        }
+        for (int i = from; i < to; i++) {
+            bytes[i] = (byte) toUpper(bytes[i]);
+        }
+        return new String(bytes, from, to - from, StandardCharsets.US_ASCII);
+    }
+
+    private static long parseLong(byte[] bytes, int from, int to, String field) throws LineFormatException {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        if (i == to) {
+            throw invalidNumber(bytes, from, to, field);
+        }
+        long value = 0;
+        for (; i < to; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw invalidNumber(bytes, from, to, field);
+            }
+            // Накопление в отрицательную сторону позволяет получить Long.MIN_VALUE
+            if (value < (Long.MIN_VALUE + digit) / 10) {
+                throw new LineFormatException("Number out of range for " + field + ": " + new String(bytes, from, to - from, StandardCharsets.UTF_8));
+            }
+            value = value * 10 - digit;
+        }
+        if (!negative) {
+            if (value == Long.MIN_VALUE) {
+                throw new LineFormatException("Number out of range for " + field + ": " + new String(bytes, from, to - from, StandardCharsets.UTF_8));
+            }
+            value = -value;
+        }
+        return value;
+    }
+
+    private static long parseInt(byte[] bytes, int from, int to, String field) throws LineFormatException {
+        long value = parseLong(bytes, from, to, field);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new LineFormatException("Number out of range for " + field + ": " + value);
+        }
+        return value;
+    }
+
+    private static LineFormatException invalidNumber(byte[] bytes, int from, int to, String field) {
+        return new LineFormatException("Invalid number for " + field + ": '" + new String(bytes, from, to - from, StandardCharsets.UTF_8) + "'");
+    }
+
+    private static int toUpper(byte b) {
+        return b >= 'a' && b <= 'z' ? b - ('a' - 'A') : b;
+    }
+
+    private static boolean isComment(byte[] bytes, int from, int to) {
+        return to - from >= 2 && bytes[from] == '/' && bytes[from + 1] == '/';
+    }
+
+    private static int skipSpaces(byte[] bytes, int from, int to) {
+        while (from < to && (bytes[from] == ' ' || bytes[from] == '\t' || bytes[from] == '\r')) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimEnd(byte[] bytes, int from, int to) {
+        while (to > from && (bytes[to - 1] == ' ' || bytes[to - 1] == '\t' || bytes[to - 1] == '\r')) {
+            to--;
+        }
+        return to;
+    }
+
+    private static int indexOf(byte[] bytes, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastNewline(byte[] bytes, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (bytes[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Результат разбора блока в виде столбцов, готовых к добавлению в хранилище
+    private static final class ParsedChunk {
+        private final int[] fields = new int[12];
+        private byte[] categories;
+        private String[] names;
+        private long[] counts;
+        private int[] temperatures;
+        private int[] water;
+        private int[] humidity;
+        // Рационы видов блока (null - не объявлен) и номера их строк
+        private String[][] dietNames;
+        private double[][] dietWeights;
+        private int[] dietLines;
+        // Рацион разбираемой строки
+        private final List<String> pendingNames = new ArrayList<>();
+        private final List<Double> pendingWeights = new ArrayList<>();
+        private int size;
+        private int lines;
+        private long errorCount;
+        // Номера строк внутри блока (с единицы) и тексты первых ошибок
+        private final List<Integer> errorLines = new ArrayList<>();
+        private final List<String> errorMessages = new ArrayList<>();
+
+        private ParsedChunk(int capacity) {
+            categories = new byte[capacity];
+            names = new String[capacity];
+            counts = new long[capacity];
+            temperatures = new int[capacity];
+            water = new int[capacity];
+            humidity = new int[capacity];
+            dietNames = new String[capacity][];
+            dietWeights = new double[capacity][];
+            dietLines = new int[capacity];
+        }
+
+        private void add(byte category, String name, long count, int temperature, int consumedWater, int comfortHumidity) {
+            if (size == names.length) {
+                int capacity = size * 2;
+                categories = Arrays.copyOf(categories, capacity);
+                names = Arrays.copyOf(names, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+                temperatures = Arrays.copyOf(temperatures, capacity);
+                water = Arrays.copyOf(water, capacity);
+                humidity = Arrays.copyOf(humidity, capacity);
+                dietNames = Arrays.copyOf(dietNames, capacity);
+                dietWeights = Arrays.copyOf(dietWeights, capacity);
+                dietLines = Arrays.copyOf(dietLines, capacity);
+            }
+            categories[size] = category;
+            names[size] = name;
+            counts[size] = count;
+            temperatures[size] = temperature;
+            water[size] = consumedWater;
+            humidity[size] = comfortHumidity;
+            size++;
+        }
+
+        // Разобранный рацион строки становится рационом последнего добавленного вида
+        private void setDiet() {
+            double[] weights = new double[pendingWeights.size()];
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = pendingWeights.get(i);
+            }
+            dietNames[size - 1] = pendingNames.toArray(new String[0]);
+            dietWeights[size - 1] = weights;
+            dietLines[size - 1] = lines;
+        }
+
+        private void error(String message) {
+            errorCount++;
+            if (errorLines.size() < MAX_STORED_ERRORS) {
+                errorLines.add(lines);
+                errorMessages.add(message);
+            }
+        }
+    }
+
+    // Рацион вида до разрешения названий жертв
+    private static final class PendingDiet {
+        private final int consumer;
+        private final String[] names;
+        private final double[] weights;
+        private final long line;
+
+        private PendingDiet(int consumer, String[] names, double[] weights, long line) {
+            this.consumer = consumer;
+            this.names = names;
+            this.weights = weights;
+            this.line = line;
+        }
+    }
+
+    // Ошибка формата строки; без стека, так как служит только для передачи сообщения
+    private static final class LineFormatException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private LineFormatException(String message) {
+            super(message, null, false, false);
+        }
+    }
+}
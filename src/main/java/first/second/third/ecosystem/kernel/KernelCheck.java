@@ -0,0 +1,180 @@
+package first.second.third.ecosystem.kernel;
+
+import first.second.third.ecosystem.util.Calculations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintStream;
+import java.util.random.RandomGenerator;
+
+/**
+ * Проверка ядер видов (команда kernel-check): на случайных видах и условиях
+ * векторное ядро должно побитно совпасть со скалярным по факторам, смертям
+ * и рождениям. Численности покрывают вымершие виды, малые популяции у порога
+ * размножения, границу POPULATION_CALCULATIONS_BORDER и большие популяции
+ * за пределом int. Заодно замеряется время обоих ядер; первые WARMUP_ROUNDS
+ * раундов в замер не входят.
+ */
+public class KernelCheck {
+
+    private static final Logger logger = LoggerFactory.getLogger(KernelCheck.class);
+
+    public static final int DEFAULT_SPECIES = 100_000;
+    private static final int ROUNDS = 60;
+    private static final int WARMUP_ROUNDS = 40;
+    // Сколько расхождений выводится подробно
+    private static final int REPORTED_MISMATCHES = 10;
+
+    private final int species;
+    private final RandomGenerator random;
+
+    private final int[] comfortTemperatures;
+    private final int[] consumedWater;
+    private final int[] comfortHumidity;
+    private final long[] populations;
+    private final double[] deathRolls;
+    private final double[] birthRolls;
+
+    private long mismatches;
+
+    public KernelCheck(int species, RandomGenerator random) {
+        if (species <= 0) {
+            throw new IllegalArgumentException("Number of species must be positive: " + species);
+        }
+        this.species = species;
+        this.random = random;
+        comfortTemperatures = new int[species];
+        consumedWater = new int[species];
+        comfortHumidity = new int[species];
+        populations = new long[species];
+        deathRolls = new double[species];
+        birthRolls = new double[species];
+    }
+
+    /**
+     * Прогоняет проверку и выводит результат.
+     *
+     * @return false, если ядра разошлись хотя бы в одном значении.
+     */
+    public boolean run(PrintStream out) {
+        SpeciesKernel scalar = new ScalarSpeciesKernel();
+        SpeciesKernel vector = null;
+        if (SpeciesKernel.isVectorAvailable()) {
+            vector = SpeciesKernel.createVector();
+        }
+        out.printf("Species kernel check: %d species x %d conditions%n", species, ROUNDS);
+        if (vector == null) {
+            out.println("Vector API is not available (run with --add-modules " + SpeciesKernel.VECTOR_MODULE
+                    + "); only the scalar kernel is used.");
+        }
+        for (int id = 0; id < species; id++) {
+            comfortTemperatures[id] = random.nextInt(-30, 61);
+            consumedWater[id] = random.nextInt(0, 401);
+            comfortHumidity[id] = random.nextInt(0, 101);
+        }
+
+        double[][] extinctionFactors = new double[2][species];
+        double[][] birthFactors = new double[2][species];
+        long[][] deaths = new long[2][species];
+        long[][] births = new long[2][species];
+        long[] factorNanos = new long[2];
+        long[] vitalNanos = new long[2];
+        SpeciesKernel[] kernels = {scalar, vector};
+        for (int round = 0; round < ROUNDS; round++) {
+            int temperature = random.nextInt(-20, 51);
+            int accessibleWater = random.nextInt(0, 301);
+            int humidity = random.nextInt(0, 101);
+            fillPopulations();
+            for (int k = 0; k < kernels.length; k++) {
+                if (kernels[k] == null) {
+                    continue;
+                }
+                long started = System.nanoTime();
+                kernels[k].conditionsFactors(temperature, accessibleWater, humidity, comfortTemperatures, consumedWater,
+                        comfortHumidity, extinctionFactors[k], birthFactors[k], 0, species);
+                long factorsDone = System.nanoTime();
+                kernels[k].deathsAndBirths(populations, extinctionFactors[k], birthFactors[k], deathRolls, birthRolls,
+                        deaths[k], births[k], 0, species);
+                if (round >= WARMUP_ROUNDS) {
+                    factorNanos[k] += factorsDone - started;
+                    vitalNanos[k] += System.nanoTime() - factorsDone;
+                }
+            }
+            if (vector != null) {
+                compare(out, "extinction factor", extinctionFactors[0], extinctionFactors[1]);
+                compare(out, "birth factor", birthFactors[0], birthFactors[1]);
+                compare(out, "deaths", deaths[0], deaths[1]);
+                compare(out, "births", births[0], births[1]);
+            }
+        }
+
+        double measured = (double) species * (ROUNDS - WARMUP_ROUNDS);
+        for (int k = 0; k < kernels.length; k++) {
+            if (kernels[k] != null) {
+                out.printf("%-18s factors %.2f ns/species, deaths and births %.2f ns/species%n",
+                        kernels[k].getName() + ":", factorNanos[k] / measured, vitalNanos[k] / measured);
+            }
+        }
+        if (vector == null) {
+            return true;
+        }
+        if (mismatches > 0) {
+            out.println("Kernel check FAILED: " + mismatches + " mismatches");
+            logger.error("Species kernel check failed: {} mismatches", mismatches);
+            return false;
+        }
+        out.println("Kernel check passed: vector and scalar kernels agree");
+        logger.info("Species kernel check passed for {} species", species);
+        return true;
+    }
+
+    // Численности по группам: вымершие, ниже порога размножения, у границы расчёта и большие
+    private void fillPopulations() {
+        for (int id = 0; id < species; id++) {
+            long population;
+            switch (random.nextInt(8)) {
+                case 0:
+                    population = 0;
+                    break;
+                case 1:
+                    population = random.nextLong(1, 20);
+                    break;
+                case 2:
+                    population = random.nextLong(280, 321);
+                    break;
+                case 3:
+                    population = random.nextLong(100_000_000_000L, 1_000_000_000_000_000L); // Выше предела int
+                    break;
+                default:
+                    population = (long) Math.exp(random.nextDouble(0, Math.log(10_000_000)));
+                    break;
+            }
+            populations[id] = population;
+            deathRolls[id] = Calculations.deathRoll(random);
+            birthRolls[id] = Calculations.birthRoll(random);
+        }
+    }
+
+    private void compare(PrintStream out, String name, double[] expected, double[] actual) {
+        for (int id = 0; id < species; id++) {
+            if (Double.doubleToRawLongBits(expected[id]) != Double.doubleToRawLongBits(actual[id])) {
+                mismatch(out, name, id, Double.toString(expected[id]), Double.toString(actual[id]));
+            }
+        }
+    }
+
+    private void compare(PrintStream out, String name, long[] expected, long[] actual) {
+        for (int id = 0; id < species; id++) {
+            if (expected[id] != actual[id]) {
+                mismatch(out, name, id, Long.toString(expected[id]), Long.toString(actual[id]));
+            }
+        }
+    }
+
+    private void mismatch(PrintStream out, String name, int id, String expected, String actual) {
+        if (mismatches++ < REPORTED_MISMATCHES) {
+            out.printf("Mismatch in %s of species %d (population %d): scalar %s, vector %s%n",
+                    name, id, populations[id], expected, actual);
+        }
+    }
+}
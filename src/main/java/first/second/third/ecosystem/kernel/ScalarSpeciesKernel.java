@@ -0,0 +1,53 @@
+package first.second.third.ecosystem.kernel;
+
+import first.second.third.ecosystem.entity.parameters.CreatureStatistics;
+import first.second.third.ecosystem.util.Calculations;
+
+import static first.second.third.ecosystem.util.Constants.BIRTH_FACTOR_DIVISOR;
+
+/**
+ * Скалярное ядро: по одному виду за раз через те же функции, что и
+ * поведения видов. Используется без модуля jdk.incubator.vector
+ * и как образец при проверке векторного ядра.
+ */
+public class ScalarSpeciesKernel extends SpeciesKernel {
+
+    // Ниже этой численности после смертей рождений нет (CreatureBehavior.reproduce)
+    static final long REPRODUCTION_THRESHOLD = 10;
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+    @Override
+    public void conditionsFactors(int temperature, int accessibleWater, int humidity,
+                                  int[] comfortTemperatures, int[] consumedWater, int[] comfortHumidity,
+                                  double[] extinctionFactors, double[] birthFactors, int from, int to) {
+        for (int id = from; id < to; id++) {
+            double conditionsFactor = CreatureStatistics.calculateConditionsFactor(temperature, accessibleWater, humidity,
+                    comfortTemperatures[id], consumedWater[id], comfortHumidity[id]);
+            extinctionFactors[id] = 1 / conditionsFactor;
+            birthFactors[id] = conditionsFactor / BIRTH_FACTOR_DIVISOR;
+        }
+    }
+
+    @Override
+    public void deathsAndBirths(long[] populations, double[] extinctionFactors, double[] birthFactors,
+                                double[] deathRolls, double[] birthRolls, long[] deaths, long[] births,
+                                int from, int to) {
+        for (int id = from; id < to; id++) {
+            long population = populations[id];
+            if (population <= 0) {
+                deaths[id] = births[id] = 0;
+                continue;
+            }
+            long died = Math.min(Calculations.calculateDeaths(population, extinctionFactors[id], deathRolls[id]), population);
+            long survived = population - died;
+            deaths[id] = died;
+            births[id] = survived < REPRODUCTION_THRESHOLD
+                    ? 0
+                    : Calculations.calculateBirth(survived, birthFactors[id], birthRolls[id]);
+        }
+    }
+}
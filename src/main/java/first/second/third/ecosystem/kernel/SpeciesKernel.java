@@ -0,0 +1,77 @@
+package first.second.third.ecosystem.kernel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ядро расчёта видов по массивам примитивов: факторы условий и смерти
+ * с рождениями для диапазона идентификаторов за один вызов.
+ * Результаты обеих реализаций побитно совпадают с расчётом
+ * CreatureStatistics.calculateConditionsFactor и Calculations при тех же
+ * случайных множителях (проверяется командой kernel-check).
+ * Векторная реализация на jdk.incubator.vector выбирается, если модуль
+ * подключён к JVM (--add-modules jdk.incubator.vector), иначе используется скалярная.
+ */
+public abstract class SpeciesKernel {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpeciesKernel.class);
+
+    public static final String VECTOR_MODULE = "jdk.incubator.vector";
+    // Системное свойство, которым векторное ядро можно отключить (-Decosystem.vector=false)
+    public static final String VECTOR_PROPERTY = "ecosystem.vector";
+
+    private static SpeciesKernel instance;
+
+    // Название реализации для вывода
+    public abstract String getName();
+
+    /**
+     * Факторы вымирания и рождаемости видов [from, to) при заданных условиях.
+     *
+     * @param comfortTemperatures Комфортные температуры, индекс - идентификатор вида.
+     * @param consumedWater Потребление воды одной особью.
+     * @param comfortHumidity Комфортная влажность.
+     */
+    public abstract void conditionsFactors(int temperature, int accessibleWater, int humidity,
+                                           int[] comfortTemperatures, int[] consumedWater, int[] comfortHumidity,
+                                           double[] extinctionFactors, double[] birthFactors, int from, int to);
+
+    /**
+     * Смерти и рождения видов [from, to) за год при выпавших множителях.
+     * Вымершие виды (численность не больше нуля) получают нули, их множители не читаются.
+     *
+     * @param deathRolls Множители Calculations.deathRoll.
+     * @param birthRolls Множители Calculations.birthRoll.
+     */
+    public abstract void deathsAndBirths(long[] populations, double[] extinctionFactors, double[] birthFactors,
+                                         double[] deathRolls, double[] birthRolls, long[] deaths, long[] births,
+                                         int from, int to);
+
+    // Ядро для этой JVM: векторное, если доступно, иначе скалярное
+    public static synchronized SpeciesKernel getInstance() {
+        if (instance == null) {
+            instance = isVectorAvailable() ? createVector() : new ScalarSpeciesKernel();
+            logger.info("Species kernel: {}", instance.getName());
+        }
+        return instance;
+    }
+
+    public static boolean isVectorAvailable() {
+        return ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()
+                && !"false".equalsIgnoreCase(System.getProperty(VECTOR_PROPERTY));
+    }
+
+    /**
+     * Векторное ядро; класс загружается только здесь, поэтому без модуля
+     * jdk.incubator.vector остальной код работает как обычно.
+     *
+     * @throws IllegalStateException Если модуль не подключён к JVM.
+     */
+    public static SpeciesKernel createVector() {
+        try {
+            return new VectorSpeciesKernel();
+        } catch (LinkageError e) {
+            throw new IllegalStateException("Vector API is not available, run with --add-modules " + VECTOR_MODULE, e);
+        }
+    }
+}
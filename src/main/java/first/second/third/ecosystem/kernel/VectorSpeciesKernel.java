@@ -0,0 +1,138 @@
+package first.second.third.ecosystem.kernel;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+import static first.second.third.ecosystem.util.Constants.BIRTH_FACTOR_DIVISOR;
+import static first.second.third.ecosystem.util.Constants.POPULATION_CALCULATIONS_BORDER;
+import static first.second.third.ecosystem.util.Constants.TAKE_PERCENT;
+
+/**
+ * Векторное ядро на jdk.incubator.vector: виды обрабатываются группами по
+ * числу дорожек предпочтительной формы процессора. Ступени коэффициентов
+ * выбираются масками сравнений без ветвлений, округление вверх и приведение
+ * к long повторяют скалярный расчёт (усечение, сравнение и +1, насыщение
+ * на Long.MAX_VALUE). Операции над double выполняются в том же порядке, что
+ * и в скалярном расчёте, поэтому результаты совпадают побитно.
+ * Хвост диапазона короче одной группы считается скалярным ядром.
+ */
+final class VectorSpeciesKernel extends SpeciesKernel {
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = DOUBLES.withLanes(long.class);
+    // Столько же дорожек int, сколько double
+    private static final VectorSpecies<Integer> INTS =
+            VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+
+    private final ScalarSpeciesKernel tail = new ScalarSpeciesKernel();
+
+    VectorSpeciesKernel() {
+        if (INTS.length() != DOUBLES.length()) {
+            throw new IllegalStateException("Unsupported vector shape: " + DOUBLES);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "vector (" + DOUBLES.length() + " lanes)";
+    }
+
+    @Override
+    public void conditionsFactors(int temperature, int accessibleWater, int humidity,
+                                  int[] comfortTemperatures, int[] consumedWater, int[] comfortHumidity,
+                                  double[] extinctionFactors, double[] birthFactors, int from, int to) {
+        int bound = from + DOUBLES.loopBound(to - from);
+        int id = from;
+        for (; id < bound; id += DOUBLES.length()) {
+            IntVector temperatureDelta = IntVector.broadcast(INTS, temperature)
+                    .sub(IntVector.fromArray(INTS, comfortTemperatures, id)).lanewise(VectorOperators.ABS);
+            IntVector humidityDelta = IntVector.broadcast(INTS, humidity)
+                    .sub(IntVector.fromArray(INTS, comfortHumidity, id)).lanewise(VectorOperators.ABS);
+            IntVector waterDelta = IntVector.broadcast(INTS, accessibleWater)
+                    .sub(IntVector.fromArray(INTS, consumedWater, id));
+
+            // Ступени CreatureStatistics: от самой широкой к самой узкой
+            DoubleVector temperatureFactor = DoubleVector.broadcast(DOUBLES, 0.5)
+                    .blend(0.8, atMost(temperatureDelta, 20))
+                    .blend(1.0, atMost(temperatureDelta, 10))
+                    .blend(1.1, atMost(temperatureDelta, 5))
+                    .blend(1.2, atMost(temperatureDelta, 0));
+            DoubleVector humidityFactor = DoubleVector.broadcast(DOUBLES, 0.5)
+                    .blend(0.8, atMost(humidityDelta, 50))
+                    .blend(1.0, atMost(humidityDelta, 20))
+                    .blend(1.1, atMost(humidityDelta, 5))
+                    .blend(1.2, atMost(humidityDelta, 0));
+            DoubleVector waterFactor = DoubleVector.broadcast(DOUBLES, 0.3)
+                    .blend(0.6, atLeast(waterDelta, -150))
+                    .blend(0.8, atLeast(waterDelta, -100))
+                    .blend(0.9, atLeast(waterDelta, -50))
+                    .blend(1.4, atLeast(waterDelta, 0));
+
+            DoubleVector conditionsFactor = temperatureFactor.mul(humidityFactor).mul(waterFactor);
+            DoubleVector.broadcast(DOUBLES, 1).div(conditionsFactor).intoArray(extinctionFactors, id);
+            conditionsFactor.div(BIRTH_FACTOR_DIVISOR).intoArray(birthFactors, id);
+        }
+        tail.conditionsFactors(temperature, accessibleWater, humidity, comfortTemperatures, consumedWater, comfortHumidity,
+                extinctionFactors, birthFactors, id, to);
+    }
+
+    @Override
+    public void deathsAndBirths(long[] populations, double[] extinctionFactors, double[] birthFactors,
+                                double[] deathRolls, double[] birthRolls, long[] deaths, long[] births,
+                                int from, int to) {
+        int bound = from + DOUBLES.loopBound(to - from);
+        int id = from;
+        for (; id < bound; id += DOUBLES.length()) {
+            LongVector population = LongVector.fromArray(LONGS, populations, id);
+            VectorMask<Long> extinct = population.compare(VectorOperators.LE, 0);
+            if (extinct.allTrue()) {
+                LongVector.zero(LONGS).intoArray(deaths, id);
+                LongVector.zero(LONGS).intoArray(births, id);
+                continue;
+            }
+            // Calculations.calculateDeaths: множитель в процентах у больших популяций, 1 или 2 у малых
+            DoubleVector living = (DoubleVector) population.convert(VectorOperators.L2D, 0);
+            DoubleVector deathRoll = DoubleVector.fromArray(DOUBLES, deathRolls, id);
+            DoubleVector base = living.mul(TAKE_PERCENT).mul(DoubleVector.fromArray(DOUBLES, extinctionFactors, id));
+            DoubleVector rounded = DoubleVector.broadcast(DOUBLES, 1)
+                    .blend(2, deathRoll.div(100).compare(VectorOperators.GE, 1.5));
+            DoubleVector expectedDeaths = base.mul(rounded).blend(base.mul(deathRoll).div(100),
+                    population.compare(VectorOperators.GT, POPULATION_CALCULATIONS_BORDER).cast(DOUBLES));
+            LongVector died = ceilToLong(expectedDeaths).min(population).blend(0, extinct);
+
+            // CreatureBehavior.reproduce: без рождений ниже порога
+            LongVector survived = population.sub(died);
+            DoubleVector survivors = (DoubleVector) survived.convert(VectorOperators.L2D, 0);
+            DoubleVector expectedBirths = survivors.mul(TAKE_PERCENT).mul(DoubleVector.fromArray(DOUBLES, birthFactors, id))
+                    .mul(DoubleVector.fromArray(DOUBLES, birthRolls, id));
+            LongVector newborn = ceilToLong(expectedBirths)
+                    .blend(0, survived.compare(VectorOperators.LT, ScalarSpeciesKernel.REPRODUCTION_THRESHOLD));
+
+            died.intoArray(deaths, id);
+            newborn.intoArray(births, id);
+        }
+        tail.deathsAndBirths(populations, extinctionFactors, birthFactors, deathRolls, birthRolls, deaths, births, id, to);
+    }
+
+    private static VectorMask<Double> atMost(IntVector delta, int limit) {
+        return delta.compare(VectorOperators.LE, limit).cast(DOUBLES);
+    }
+
+    private static VectorMask<Double> atLeast(IntVector delta, int limit) {
+        return delta.compare(VectorOperators.GE, limit).cast(DOUBLES);
+    }
+
+    // (long) Math.ceil(value) по дорожкам: насыщение сверху, NaN даёт 0.
+    // Ограничение 2^63 нужно для бесконечности: иначе после насыщения D2L к дорожке прибавилась бы единица
+    private static LongVector ceilToLong(DoubleVector value) {
+        DoubleVector clamped = value.min(0x1p63);
+        LongVector truncated = (LongVector) clamped.convert(VectorOperators.D2L, 0);
+        DoubleVector back = (DoubleVector) truncated.convert(VectorOperators.L2D, 0);
+        return truncated.add(1, back.compare(VectorOperators.LT, clamped).cast(LONGS));
+    }
+}
@@ -0,0 +1,112 @@
+package first.second.third.ecosystem.metrics;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+
+/**
+ * Запись JDK Flight Recorder на заданное число лет: настройки "profile"
+ * плюс события симуляции (годы, действия видов, файлы мира).
+ * Движок сообщает о каждом рассчитанном годе; после последнего года запись
+ * останавливается и сохраняется в файл. Пока запись не идёт, отметка года
+ * стоит одного чтения volatile-флага.
+ */
+public class FlightRecording {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlightRecording.class);
+    public static final String DEFAULT_FILE = "ecosystem.jfr";
+    private static final String CONFIGURATION = "profile";
+
+    private volatile boolean active;
+    private Recording recording;
+    @Getter
+    private Path destination;
+    private long remainingYears;
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public synchronized long getRemainingYears() {
+        return active ? remainingYears : 0;
+    }
+
+    /**
+     * Начинает запись.
+     *
+     * @param years Сколько лет записать.
+     * @param destination Файл записи (.jfr).
+     * @throws IllegalStateException Если запись уже идёт.
+     */
+    public synchronized void start(long years, Path destination) throws IOException {
+        if (active) {
+            throw new IllegalStateException("A flight recording is already in progress: " + this.destination);
+        }
+        if (years <= 0) {
+            throw new IllegalArgumentException("Number of years must be positive: " + years);
+        }
+        Recording started;
+        try {
+            started = new Recording(Configuration.getConfiguration(CONFIGURATION));
+        } catch (ParseException e) {
+            throw new IOException("Cannot read JFR configuration " + CONFIGURATION + ": " + e.getMessage(), e);
+        }
+        started.setName("ecosystem");
+        started.enable(YearEvent.class);
+        started.enable(SpeciesActionEvent.class);
+        started.enable(WorldFileEvent.class);
+        started.setDestination(destination); // Файл пишется при остановке
+        started.start();
+        recording = started;
+        this.destination = destination;
+        remainingYears = years;
+        active = true;
+        logger.info("Flight recording started for {} years: {}", years, destination);
+    }
+
+    // Отметка рассчитанного года; после последнего записываемого года запись сохраняется
+    public void yearFinished() {
+        if (!active) {
+            return;
+        }
+        synchronized (this) {
+            if (active && --remainingYears <= 0) {
+                finish();
+            }
+        }
+    }
+
+    /**
+     * Досрочная остановка с сохранением записанного.
+     *
+     * @return false, если запись не шла.
+     */
+    public synchronized boolean stop() {
+        if (!active) {
+            return false;
+        }
+        finish();
+        return true;
+    }
+
+    private void finish() {
+        active = false;
+        try {
+            recording.stop();
+            System.out.println("Flight recording saved to: " + destination);
+            logger.info("Flight recording saved to: {}", destination);
+        } catch (IllegalStateException e) {
+            System.out.println("Error saving flight recording: " + e.getMessage());
+            logger.error("Error saving flight recording {}: {}", destination, e.getMessage());
+        } finally {
+            recording.close();
+            recording = null;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package first.second.third.ecosystem.metrics;
+
+import first.second.third.ecosystem.entity.parameters.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * Метрики расчёта лет: гистограммы времени года и каждой его фазы, время
+ * смертей, рождений и питания по категориям, видов в секунду и байт,
+ * выделенных за год потоком расчёта.
+ * Пока метрики выключены, движок проверяет один флаг в начале года и больше
+ * ничего не замеряет. Включённые метрики записываются несколько раз за год
+ * под монитором, а время действий видов копится в локальных массивах задач
+ * расчёта и сливается один раз на задачу. Чтобы замеры не удваивали время
+ * расчёта больших миров, действия замеряются у каждого SPECIES_SAMPLE-го вида
+ * (выборка сдвигается каждый год), а время категории масштабируется на долю
+ * замеренных видов.
+ * Выделения памяти рабочими потоками пула при параллельном расчёте не учитываются.
+ */
+public class SimulationMetrics implements SimulationMetricsMBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(SimulationMetrics.class);
+    public static final String OBJECT_NAME = "first.second.third.ecosystem:type=SimulationMetrics";
+
+    // Замеряется один вид из стольких (степень двойки)
+    public static final int SPECIES_SAMPLE = 8;
+
+    private static final int CATEGORIES = Category.values().length;
+    private static final int ACTION_SLOTS = SpeciesAction.values().length * CATEGORIES;
+    private static final TickPhase[] PHASES = TickPhase.values();
+    private static final SpeciesAction[] ACTIONS = SpeciesAction.values();
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private static SimulationMetrics instance;
+
+    private volatile boolean enabled;
+
+    private final LatencyHistogram years = new LatencyHistogram();
+    private final LatencyHistogram[] phases = new LatencyHistogram[PHASES.length];
+    // Время действия за год по категориям, индекс - actionIndex
+    private final LatencyHistogram[] actions = new LatencyHistogram[ACTIONS.length * CATEGORIES];
+    private final long[] pendingActions = newActionTimes(); // Текущий год
+    private final LatencyHistogram allocations = new LatencyHistogram(); // Байт за год
+    private long species; // Обработано видов за все записанные годы
+
+    public SimulationMetrics() {
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < actions.length; i++) {
+            actions[i] = new LatencyHistogram();
+        }
+    }
+
+    // Общие метрики интерактивной симуляции, зарегистрированные в JMX
+    public static synchronized SimulationMetrics getInstance() {
+        if (instance == null) {
+            instance = new SimulationMetrics();
+            instance.register();
+        }
+        return instance;
+    }
+
+    private void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (JMException e) {
+            logger.warn("Cannot register metrics MBean: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        logger.info("Simulation metrics {}", enabled ? "enabled" : "disabled");
+    }
+
+    // Байт, выделенных текущим потоком с его запуска; -1, если JVM этого не измеряет
+    public static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads.getCurrentThreadAllocatedBytes();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Записывает время фазы, прошедшее с момента since.
+     *
+     * @return Текущее время, начало следующей фазы.
+     */
+    public long lap(TickPhase phase, long since) {
+        long now = System.nanoTime();
+        synchronized (this) {
+            phases[phase.ordinal()].record(now - since);
+        }
+        return now;
+    }
+
+    /**
+     * Массив для накопления замеров одной задачей расчёта: время действий
+     * (actionIndex), затем количество замеренных (sampledIndex) и всех
+     * рассчитанных (speciesIndex) живых видов по категориям.
+     */
+    public static long[] newActionTimes() {
+        return new long[ACTION_SLOTS + 2 * CATEGORIES];
+    }
+
+    public static int actionIndex(SpeciesAction action, int category) {
+        return action.ordinal() * CATEGORIES + category;
+    }
+
+    public static int sampledIndex(int category) {
+        return ACTION_SLOTS + category;
+    }
+
+    public static int speciesIndex(int category) {
+        return ACTION_SLOTS + CATEGORIES + category;
+    }
+
+    // Добавляет время действий, накопленное задачей, к текущему году
+    public synchronized void addActionTimes(long[] times) {
+        for (int i = 0; i < times.length; i++) {
+            pendingActions[i] += times[i];
+        }
+    }
+
+    /**
+     * Завершает год.
+     *
+     * @param nanos Время года целиком.
+     * @param speciesCount Сколько видов рассчитано за год.
+     * @param allocated Байт, выделенных потоком расчёта за год, или -1.
+     */
+    public synchronized void endYear(long nanos, int speciesCount, long allocated) {
+        years.record(nanos);
+        species += speciesCount;
+        if (allocated >= 0) {
+            allocations.record(allocated);
+        }
+        for (int category = 0; category < CATEGORIES; category++) {
+            long sampled = pendingActions[sampledIndex(category)];
+            if (sampled == 0) {
+                continue; // Категории без замеров не искажают квантили
+            }
+            double scale = (double) pendingActions[speciesIndex(category)] / sampled;
+            for (SpeciesAction action : ACTIONS) {
+                actions[actionIndex(action, category)].record(Math.round(pendingActions[actionIndex(action, category)] * scale));
+            }
+        }
+        Arrays.fill(pendingActions, 0);
+    }
+
+    @Override
+    public synchronized void reset() {
+        years.reset();
+        for (LatencyHistogram phase : phases) {
+            phase.reset();
+        }
+        for (LatencyHistogram action : actions) {
+            action.reset();
+        }
+        allocations.reset();
+        Arrays.fill(pendingActions, 0);
+        species = 0;
+    }
+
+    @Override
+    public synchronized long getYears() {
+        return years.getCount();
+    }
+
+    @Override
+    public synchronized double getMeanYearMillis() {
+        return years.getMean() / 1e6;
+    }
+
+    @Override
+    public synchronized double getP50YearMillis() {
+        return years.percentile(0.5) / 1e6;
+    }
+
+    @Override
+    public synchronized double getP99YearMillis() {
+        return years.percentile(0.99) / 1e6;
+    }
+
+    @Override
+    public synchronized double getMaxYearMillis() {
+        return years.getMax() / 1e6;
+    }
+
+    @Override
+    public synchronized double getSpeciesPerSecond() {
+        return years.getSum() > 0 ? species * 1e9 / years.getSum() : 0;
+    }
+
+    @Override
+    public synchronized double getAllocatedBytesPerYear() {
+        return allocations.getCount() > 0 ? allocations.getMean() : -1;
+    }
+
+    @Override
+    public String[] getPhaseNames() {
+        String[] names = new String[PHASES.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = PHASES[i].name();
+        }
+        return names;
+    }
+
+    @Override
+    public synchronized double[] getPhaseMeanMillis() {
+        double[] means = new double[PHASES.length];
+        for (int i = 0; i < means.length; i++) {
+            means[i] = phases[i].getMean() / 1e6;
+        }
+        return means;
+    }
+
+    @Override
+    public synchronized double[] getPhaseP99Millis() {
+        double[] percentiles = new double[PHASES.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            percentiles[i] = phases[i].percentile(0.99) / 1e6;
+        }
+        return percentiles;
+    }
+
+    @Override
+    public String report() {
+        StringWriter text = new StringWriter();
+        try (PrintWriter out = new PrintWriter(text)) {
+            writeReport(out);
+        }
+        return text.toString();
+    }
+
+    public void printReport(PrintStream out) {
+        out.print(report());
+        out.flush();
+    }
+
+    private synchronized void writeReport(PrintWriter out) {
+        if (years.getCount() == 0) {
+            out.println("No years recorded" + (enabled ? "." : " (metrics are disabled)."));
+            return;
+        }
+        out.printf("Years: %d, species/s: %.0f, allocated per year: %s%n", years.getCount(), getSpeciesPerSecond(),
+                allocations.getCount() > 0 ? String.format("%.0f bytes", allocations.getMean()) : "n/a");
+        out.printf("%-22s %10s %10s %10s %10s %10s%n", "Time, ms", "mean", "p50", "p90", "p99", "max");
+        printRow(out, "YEAR", years);
+        for (TickPhase phase : PHASES) {
+            printRow(out, phase.name(), phases[phase.ordinal()]);
+        }
+        for (Category category : Category.values()) {
+            for (SpeciesAction action : ACTIONS) {
+                LatencyHistogram histogram = actions[actionIndex(action, category.ordinal())];
+                if (histogram.getCount() > 0) {
+                    printRow(out, category + " " + action, histogram);
+                }
+            }
+        }
+    }
+
+    private static void printRow(PrintWriter out, String name, LatencyHistogram histogram) {
+        out.printf("%-22s %10.3f %10.3f %10.3f %10.3f %10.3f%n", name, histogram.getMean() / 1e6,
+                histogram.percentile(0.5) / 1e6, histogram.percentile(0.9) / 1e6,
+                histogram.percentile(0.99) / 1e6, histogram.getMax() / 1e6);
+    }
+}
@@ -0,0 +1,37 @@
+package first.second.third.ecosystem.metrics;
+
+/**
+ * Метрики расчёта лет для JMX (jconsole, VisualVM).
+ * Время в миллисекундах; массивы фаз параллельны getPhaseNames.
+ */
+public interface SimulationMetricsMBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getYears();
+
+    double getMeanYearMillis();
+
+    double getP50YearMillis();
+
+    double getP99YearMillis();
+
+    double getMaxYearMillis();
+
+    double getSpeciesPerSecond();
+
+    // Байт, выделенных потоком расчёта за год; -1, если JVM этого не измеряет
+    double getAllocatedBytesPerYear();
+
+    String[] getPhaseNames();
+
+    double[] getPhaseMeanMillis();
+
+    double[] getPhaseP99Millis();
+
+    void reset();
+
+    String report();
+}
@@ -0,0 +1,8 @@
+package first.second.third.ecosystem.metrics;
+
+// Действия вида за год, время которых учитывается по категориям
+public enum SpeciesAction {
+    DIE,        // Расчёт смертей
+    REPRODUCE,  // Расчёт рождений
+    FEED        // Выбор жертвы и спрос на пищу
+}
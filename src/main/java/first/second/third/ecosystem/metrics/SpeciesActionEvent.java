@@ -0,0 +1,43 @@
+package first.second.third.ecosystem.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Событие JFR: итог действия вида за год (смерти, рождения, съедено, голод).
+ * Пишется по выборке видов, чтобы запись большого мира не тормозила расчёт.
+ */
+@Name("first.second.third.ecosystem.SpeciesAction")
+@Label("Species Action")
+@Category({"Ecosystem", "Simulation"})
+@Description("Sampled yearly outcome of a species action")
+@StackTrace(false)
+public class SpeciesActionEvent extends jdk.jfr.Event {
+
+    // Один вид из стольких попадает в запись; выборка сдвигается каждый год
+    public static final int SPECIES_SAMPLE = 16;
+
+    @Label("Year")
+    public int year;
+
+    @Label("Category")
+    public String category;
+
+    @Label("Species")
+    public String species;
+
+    @Label("Action")
+    @Description("DEATH, BIRTH, EATING or HUNGER")
+    public String action;
+
+    @Label("Delta")
+    @Description("Number of creatures affected")
+    public long delta;
+
+    @Label("Prey")
+    @Description("Eaten species for EATING")
+    public String prey;
+}
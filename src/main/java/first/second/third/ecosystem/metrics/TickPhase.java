@@ -0,0 +1,13 @@
+package first.second.third.ecosystem.metrics;
+
+// Фазы расчёта одного года в порядке выполнения
+public enum TickPhase {
+    FACTORS,     // Факторы вымирания и рождаемости видов
+    COMPUTE,     // Смерти, рождения и спрос на пищу каждого вида
+    COMMIT,      // Распределение жертв и запись года N+1
+    EVENTS,      // Сообщения о годе (логирование и вывод)
+    HISTORY,     // Запись истории численностей
+    JOURNAL,     // Кадр года в журнале изменений
+    SNAPSHOT,    // Публикация снимка мира
+    COMPACTION   // Сжатие журнала в новый снимок
+}
@@ -0,0 +1,34 @@
+package first.second.third.ecosystem.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Событие JFR: загрузка или сохранение файла мира
+@Name("first.second.third.ecosystem.WorldFile")
+@Label("World File I/O")
+@Category({"Ecosystem", "File I/O"})
+@Description("Loading or saving a world file")
+public class WorldFileEvent extends jdk.jfr.Event {
+
+    @Label("Operation")
+    @Description("load or save")
+    public String operation;
+
+    @Label("Format")
+    @Description("text or binary")
+    public String format;
+
+    @Label("Path")
+    public String path;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Records")
+    @Description("Species read or written")
+    public long records;
+}
@@ -0,0 +1,30 @@
+package first.second.third.ecosystem.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Событие JFR: расчёт одного года симуляции; длительность - время года целиком
+@Name("first.second.third.ecosystem.Year")
+@Label("Simulation Year")
+@Category({"Ecosystem", "Simulation"})
+@Description("One simulated year: all species updated and the year committed")
+@StackTrace(false)
+public class YearEvent extends jdk.jfr.Event {
+
+    @Label("Year")
+    @Description("Year that was computed")
+    public int year;
+
+    @Label("Species")
+    @Description("Number of species in the store")
+    public int species;
+
+    @Label("Alive Species")
+    public int aliveSpecies;
+
+    @Label("Total Population")
+    public long population;
+}
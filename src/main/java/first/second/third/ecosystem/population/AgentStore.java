@@ -0,0 +1,199 @@
+package first.second.third.ecosystem.population;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Особи режима особей вне кучи: у каждой особи вид, возраст, запас энергии
+ * и флаги состояния, разложенные по столбцам. Особи лежат страницами
+ * по PAGE особей, внутри страницы столбцы идут друг за другом. Страница -
+ * участок отображённого в память временного файла, поэтому объём хранилища
+ * ограничен диском, а не кучей и не -XX:MaxDirectMemorySize, а давно не
+ * используемые страницы операционная система может вытеснить в файл.
+ * Страницы добавляются по мере роста числа особей и не освобождаются до
+ * закрытия; файл удаляется при закрытии, отображения освобождает сборщик мусора.
+ * Хранилище не потокобезопасно: параллельные задачи работают только
+ * с непересекающимися участками страниц.
+ */
+public final class AgentStore implements AutoCloseable {
+
+    public static final int PAGE_SHIFT = 22;
+    // Особей на странице
+    public static final int PAGE = 1 << PAGE_SHIFT;
+    // Байт на особь: вид (int), энергия (float), возраст (short), флаги (byte)
+    public static final int AGENT_BYTES = Integer.BYTES + Float.BYTES + Short.BYTES + Byte.BYTES;
+    private static final long PAGE_BYTES = (long) PAGE * AGENT_BYTES;
+
+    // Флаги состояния особи
+    public static final byte DEAD = 0;
+    public static final byte ALIVE = 1;
+    public static final byte PARENT = 2; // Особь дала потомка в этом году
+
+    private final FileChannel channel;
+    private final List<Page> pages = new ArrayList<>();
+    // Количество особей; места [size, capacity) свободны
+    private long size;
+
+    /**
+     * Создаёт пустое хранилище во временном файле каталога.
+     *
+     * @param directory Каталог файла страниц; null - системный временный каталог.
+     */
+    public AgentStore(Path directory) throws IOException {
+        Path file = directory != null
+                ? Files.createTempFile(directory, "ecosystem-agents", ".bin")
+                : Files.createTempFile("ecosystem-agents", ".bin");
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    public long size() {
+        return size;
+    }
+
+    // Особи [size, newSize) должны быть заполнены вызывающим
+    public void setSize(long newSize) {
+        if (newSize < 0 || newSize > capacity()) {
+            throw new IllegalArgumentException("Agent count " + newSize + " exceeds capacity " + capacity());
+        }
+        size = newSize;
+    }
+
+    public long capacity() {
+        return (long) pages.size() * PAGE;
+    }
+
+    // Байт файла страниц, отображённых в память
+    public long getMappedBytes() {
+        return pages.size() * PAGE_BYTES;
+    }
+
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    // Отображает новые страницы, пока в хранилище не поместится agents особей
+    public void ensureCapacity(long agents) throws IOException {
+        while (capacity() < agents) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, pages.size() * PAGE_BYTES, PAGE_BYTES);
+            pages.add(new Page(buffer));
+        }
+    }
+
+    // Страница особи с номером index
+    public Page page(long index) {
+        return pages.get((int) (index >>> PAGE_SHIFT));
+    }
+
+    // Номер особи index внутри её страницы
+    public static int offset(long index) {
+        return (int) (index & (PAGE - 1));
+    }
+
+    // Записывает особь index; место должно быть в пределах ёмкости
+    public void set(long index, int species, int age, float energy, byte flags) {
+        Page page = page(index);
+        int i = offset(index);
+        page.setSpecies(i, species);
+        page.setAge(i, age);
+        page.setEnergy(i, energy);
+        page.setFlags(i, flags);
+    }
+
+    /**
+     * Переносит length особей с места from на место to &lt;= from столбец
+     * за столбцом; участки могут перекрываться и лежать на разных страницах.
+     */
+    public void move(long from, long to, long length) {
+        if (to > from) {
+            throw new IllegalArgumentException("Agents can only move down: " + from + " -> " + to);
+        }
+        while (length > 0) {
+            int source = offset(from);
+            int target = offset(to);
+            int count = (int) Math.min(length, Math.min(PAGE - source, PAGE - target));
+            page(to).copy(page(from), source, target, count);
+            from += count;
+            to += count;
+            length -= count;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        pages.clear();
+        size = 0;
+        channel.close(); // Файл удаляется, отображения остаются до сборки мусора
+    }
+
+    // Столбцы одной страницы особей
+    public static final class Page {
+        private final IntBuffer species;
+        private final FloatBuffer energy;
+        private final ShortBuffer age;
+        private final ByteBuffer flags;
+
+        private Page(MappedByteBuffer buffer) {
+            buffer.order(ByteOrder.nativeOrder());
+            int position = 0;
+            species = buffer.slice(position, PAGE * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+            position += PAGE * Integer.BYTES;
+            energy = buffer.slice(position, PAGE * Float.BYTES).order(ByteOrder.nativeOrder()).asFloatBuffer();
+            position += PAGE * Float.BYTES;
+            age = buffer.slice(position, PAGE * Short.BYTES).order(ByteOrder.nativeOrder()).asShortBuffer();
+            position += PAGE * Short.BYTES;
+            flags = buffer.slice(position, PAGE);
+        }
+
+        public int getSpecies(int i) {
+            return species.get(i);
+        }
+
+        public void setSpecies(int i, int value) {
+            species.put(i, value);
+        }
+
+        public float getEnergy(int i) {
+            return energy.get(i);
+        }
+
+        public void setEnergy(int i, float value) {
+            energy.put(i, value);
+        }
+
+        // Возраст в годах; больше Short.MAX_VALUE не растёт
+        public int getAge(int i) {
+            return age.get(i);
+        }
+
+        public void setAge(int i, int value) {
+            age.put(i, (short) Math.min(value, Short.MAX_VALUE));
+        }
+
+        public byte getFlags(int i) {
+            return flags.get(i);
+        }
+
+        public void setFlags(int i, byte value) {
+            flags.put(i, value);
+        }
+
+        // Копирует count особей страницы source с места from на место to этой страницы
+        private void copy(Page source, int from, int to, int count) {
+            species.put(to, source.species, from, count);
+            energy.put(to, source.energy, from, count);
+            age.put(to, source.age, from, count);
+            flags.put(to, source.flags, from, count);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package first.second.third.ecosystem.population;
+
+/**
+ * Неизменяемая пищевая сеть уровня видов в виде смежности CSR:
+ * жертвы вида id лежат в prey[offsets[id]..offsets[id + 1]) вместе
+ * с весами предпочтения. Обратная смежность (потребители каждой жертвы)
+ * позволяет при вымирании или возрождении жертвы найти рационы,
+ * которые нужно пересчитать, не обходя всю сеть.
+ * Вид без объявленного рациона питается всей категорией пищи поровну.
+ */
+public final class FoodWeb {
+
+    private final int size; // Количество видов на момент построения
+    private final int[] offsets;
+    private final int[] prey;
+    private final double[] weights;
+    private final int[] consumerOffsets;
+    private final int[] consumers;
+
+    private FoodWeb(int size, int[] offsets, int[] prey, double[] weights, int[] consumerOffsets, int[] consumers) {
+        this.size = size;
+        this.offsets = offsets;
+        this.prey = prey;
+        this.weights = weights;
+        this.consumerOffsets = consumerOffsets;
+        this.consumers = consumers;
+    }
+
+    /**
+     * Строит сеть по рационам видов.
+     *
+     * @param diets Жертвы каждого вида; null - рацион не объявлен.
+     * @param dietWeights Веса предпочтения, параллельные diets.
+     */
+    static FoodWeb compile(int size, int[][] diets, double[][] dietWeights) {
+        int[] offsets = new int[size + 1];
+        for (int id = 0; id < size; id++) {
+            offsets[id + 1] = offsets[id] + (diets[id] != null ? diets[id].length : 0);
+        }
+        int edges = offsets[size];
+        int[] prey = new int[edges];
+        double[] weights = new double[edges];
+        int[] consumerOffsets = new int[size + 1];
+        for (int id = 0; id < size; id++) {
+            if (diets[id] != null) {
+                System.arraycopy(diets[id], 0, prey, offsets[id], diets[id].length);
+                System.arraycopy(dietWeights[id], 0, weights, offsets[id], diets[id].length);
+            }
+        }
+        // Обратная смежность подсчётом: сначала степени, затем раскладка
+        for (int edge = 0; edge < edges; edge++) {
+            consumerOffsets[prey[edge] + 1]++;
+        }
+        for (int id = 0; id < size; id++) {
+            consumerOffsets[id + 1] += consumerOffsets[id];
+        }
+        int[] consumers = new int[edges];
+        int[] fill = new int[size];
+        for (int id = 0; id < size; id++) {
+            for (int edge = offsets[id]; edge < offsets[id + 1]; edge++) {
+                consumers[consumerOffsets[prey[edge]] + fill[prey[edge]]++] = id;
+            }
+        }
+        return new FoodWeb(size, offsets, prey, weights, consumerOffsets, consumers);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int edgeCount() {
+        return prey.length;
+    }
+
+    // Объявлен ли у вида собственный рацион
+    public boolean hasDiet(int id) {
+        return id < size && offsets[id + 1] > offsets[id];
+    }
+
+    public int dietStart(int id) {
+        return offsets[id];
+    }
+
+    public int dietEnd(int id) {
+        return offsets[id + 1];
+    }
+
+    public int getPrey(int edge) {
+        return prey[edge];
+    }
+
+    public double getWeight(int edge) {
+        return weights[edge];
+    }
+
+    public int consumersStart(int id) {
+        return consumerOffsets[id];
+    }
+
+    public int consumersEnd(int id) {
+        return consumerOffsets[id + 1];
+    }
+
+    public int getConsumer(int index) {
+        return consumers[index];
+    }
+}
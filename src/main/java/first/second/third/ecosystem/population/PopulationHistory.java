@@ -0,0 +1,198 @@
+package first.second.third.ecosystem.population;
+
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+/**
+ * История численностей по годам в виде столбцов примитивов.
+ * Для каждого вида, который хотя бы раз был жив, хранится кольцевой буфер
+ * long[retention]; год Y лежит в ячейке floorMod(Y, retention), поэтому
+ * запись года и поиск диапазона не требуют индексов и объектов на год.
+ * Годы идут подряд: если записывается не следующий год (загрузка мира),
+ * история начинается заново. Объём памяти ограничен бюджетом: виды,
+ * не поместившиеся в него, не записываются.
+ */
+public class PopulationHistory {
+
+    private static final Logger logger = LoggerFactory.getLogger(PopulationHistory.class);
+
+    public static final int DEFAULT_RETENTION = 10_000;
+    public static final long DEFAULT_BUDGET_BYTES = 512L << 20;
+
+    // Сколько последних лет хранится
+    @Getter
+    private int retention;
+    private final long budgetBytes;
+
+    private long[][] columns = new long[16][];
+    private int allocatedColumns;
+    private boolean budgetWarned;
+
+    @Getter
+    private int firstYear;
+    @Getter
+    private int lastYear;
+    private int length; // Количество хранимых лет
+
+    public PopulationHistory() {
+        this(DEFAULT_RETENTION, DEFAULT_BUDGET_BYTES);
+    }
+
+    public PopulationHistory(int retention, long budgetBytes) {
+        if (retention <= 0) {
+            throw new IllegalArgumentException("History retention must be positive: " + retention);
+        }
+        this.retention = retention;
+        this.budgetBytes = budgetBytes;
+    }
+
+    // Изменение глубины истории; записанная история сбрасывается
+    public synchronized void setRetention(int retention) {
+        if (retention <= 0) {
+            throw new IllegalArgumentException("History retention must be positive: " + retention);
+        }
+        this.retention = retention;
+        clear();
+    }
+
+    public synchronized void clear() {
+        columns = new long[16][];
+        allocatedColumns = 0;
+        budgetWarned = false;
+        length = 0;
+    }
+
+    public synchronized boolean isEmpty() {
+        return length == 0;
+    }
+
+    // Примерный объём памяти под столбцы
+    public synchronized long memoryBytes() {
+        return (long) allocatedColumns * retention * Long.BYTES;
+    }
+
+    /**
+     * Записывает численности года; повторная запись того же года заменяет значения.
+     *
+     * @param counts Численности, индекс - идентификатор вида.
+     * @param size Количество видов в хранилище.
+     */
+    public synchronized void record(int year, long[] counts, int size) {
+        if (length > 0 && year == lastYear) {
+            // Тот же год: перезапись
+        } else if (length > 0 && year == lastYear + 1) {
+            lastYear = year;
+            if (length < retention) {
+                length++;
+            } else {
+                firstYear++; // Самый старый год вытесняется
+            }
+        } else {
+            clear();
+            firstYear = lastYear = year;
+            length = 1;
+        }
+        if (columns.length < size) {
+            columns = Arrays.copyOf(columns, Math.max(size, columns.length * 2));
+        }
+        int slot = Math.floorMod(year, retention);
+        for (int id = 0; id < size; id++) {
+            long[] column = columns[id];
+            if (column == null) {
+                if (counts[id] <= 0 || (column = allocate(id)) == null) {
+                    continue; // Вид ещё не появлялся или не помещается в бюджет
+                }
+            }
+            column[slot] = counts[id];
+        }
+    }
+
+    private long[] allocate(int id) {
+        if ((long) (allocatedColumns + 1) * retention * Long.BYTES > budgetBytes) {
+            if (!budgetWarned) {
+                budgetWarned = true;
+                logger.warn("History memory budget of {} bytes exhausted: species from id {} are not recorded", budgetBytes, id);
+            }
+            return null;
+        }
+        allocatedColumns++;
+        return columns[id] = new long[retention];
+    }
+
+    // Есть ли история для вида
+    public synchronized boolean hasSpecies(int id) {
+        return id >= 0 && id < columns.length && columns[id] != null;
+    }
+
+    /**
+     * Численности вида за годы [fromYear, toYear] с прореживанием: каждая точка
+     * описывает интервал из step лет (значение в начале, минимум, максимум, среднее).
+     * Диапазон обрезается по хранимым годам.
+     *
+     * @return Ряд или null, если для вида нет истории или диапазон пуст.
+     */
+    public synchronized Series query(int id, int fromYear, int toYear, int step) {
+        if (step <= 0) {
+            throw new IllegalArgumentException("Step must be positive: " + step);
+        }
+        if (!hasSpecies(id) || length == 0) {
+            return null;
+        }
+        int from = Math.max(fromYear, firstYear);
+        int to = Math.min(toYear, lastYear);
+        if (from > to) {
+            return null;
+        }
+        long[] column = columns[id];
+        int points = (int) (((long) to - from) / step + 1);
+        Series series = new Series(points);
+        for (int point = 0; point < points; point++) {
+            int start = from + point * step;
+            int end = (int) Math.min((long) start + step - 1, to);
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            double sum = 0;
+            int slot = Math.floorMod(start, retention);
+            for (int year = start; year <= end; year++) {
+                long value = column[slot];
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+                sum += value;
+                if (++slot == retention) {
+                    slot = 0;
+                }
+            }
+            series.years[point] = start;
+            series.values[point] = column[Math.floorMod(start, retention)];
+            series.min[point] = min;
+            series.max[point] = max;
+            series.mean[point] = sum / (end - start + 1);
+        }
+        return series;
+    }
+
+    // Результат запроса: по точке на каждый интервал прореживания
+    @Getter
+    public static final class Series {
+        private final int[] years;
+        private final long[] values;
+        private final long[] min;
+        private final long[] max;
+        private final double[] mean;
+
+        private Series(int points) {
+            years = new int[points];
+            values = new long[points];
+            min = new long[points];
+            max = new long[points];
+            mean = new double[points];
+        }
+
+        public int size() {
+            return years.length;
+        }
+    }
+}
@@ -0,0 +1,386 @@
+package first.second.third.ecosystem.population;
+
+import first.second.third.ecosystem.entity.parameters.Category;
+import first.second.third.ecosystem.entity.parameters.CreatureStatistics;
+import first.second.third.ecosystem.entity.parameters.WorldConditions;
+import first.second.third.ecosystem.kernel.SpeciesKernel;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+
+import static first.second.third.ecosystem.util.Constants.BIRTH_FACTOR_DIVISOR;
+
+/**
+ * Хранилище популяций в виде параллельных массивов примитивов.
+ * Каждый вид при добавлении получает плотный целочисленный идентификатор,
+ * по которому поведения работают без строковых ключей и хеширования.
+ * Вид с нулевой численностью считается вымершим и пропускается при обходе,
+ * но сохраняет свой идентификатор и может быть добавлен заново.
+ * Изменяющие методы синхронизированы на самом хранилище: движок держит
+ * этот монитор на время расчёта года.
+ * Общая численность категорий поддерживается при каждом изменении
+ * численностей, поэтому её чтение не зависит от количества видов.
+ */
+public class PopulationStore {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int CATEGORIES = Category.values().length;
+
+    private int size; // Количество зарегистрированных видов
+    // Меняется при любом изменении набора или параметров видов (но не численностей)
+    private long speciesVersion;
+
+    // Столбцы данных, индекс массива - идентификатор вида
+    private String[] names = new String[INITIAL_CAPACITY];
+    private byte[] categories = new byte[INITIAL_CAPACITY];
+    private long[] counts = new long[INITIAL_CAPACITY];
+    // Общая численность по категориям, индекс - ordinal
+    private final long[] totals = new long[CATEGORIES];
+    private int[] comfortTemperatures = new int[INITIAL_CAPACITY];
+    private int[] consumedWater = new int[INITIAL_CAPACITY];
+    private int[] comfortHumidity = new int[INITIAL_CAPACITY];
+
+    // Кеш факторов вымирания и рождаемости, действителен для эпохи условий factorEpochs[id]
+    private double[] extinctionFactors = new double[INITIAL_CAPACITY];
+    private double[] birthFactors = new double[INITIAL_CAPACITY];
+    private long[] factorEpochs = new long[INITIAL_CAPACITY];
+
+    // Рационы видов: жертвы и веса предпочтения; null - вся категория пищи поровну
+    private int[][] diets = new int[INITIAL_CAPACITY][];
+    private double[][] dietWeights = new double[INITIAL_CAPACITY][];
+    // Скомпилированная сеть; сбрасывается при изменении рационов
+    private volatile FoodWeb foodWeb;
+
+    // Идентификаторы видов каждой категории в порядке добавления
+    private final int[][] members = new int[CATEGORIES][INITIAL_CAPACITY];
+    private final int[] memberCounts = new int[CATEGORIES];
+
+    // Поиск идентификатора по названию нужен только консоли и загрузчику
+    private final EnumMap<Category, HashMap<String, Integer>> index = new EnumMap<>(Category.class);
+
+    public PopulationStore() {
+        for (Category category : Category.values()) {
+            index.put(category, new HashMap<>());
+        }
+    }
+
+    /**
+     * Регистрирует вид или перезаписывает параметры уже существующего
+     * (рацион существующего вида сбрасывается к категории пищи).
+     *
+     * @return Идентификатор вида.
+     */
+    public synchronized int add(Category category, String name, long count, int comfortTemperature, int consumedWaterOnSingleCreature, int comfortHumidityPercentage) {
+        Integer existing = index.get(category).get(name);
+        int id;
+        if (existing != null) {
+            id = existing;
+            if (diets[id] != null) {
+                diets[id] = null;
+                dietWeights[id] = null;
+                foodWeb = null;
+            }
+        } else {
+            id = size++;
+            ensureCapacity(size);
+            names[id] = name;
+            categories[id] = (byte) category.ordinal();
+            index.get(category).put(name, id);
+            int ordinal = category.ordinal();
+            if (memberCounts[ordinal] == members[ordinal].length) {
+                members[ordinal] = Arrays.copyOf(members[ordinal], memberCounts[ordinal] * 2);
+            }
+            members[ordinal][memberCounts[ordinal]++] = id;
+        }
+        setCount(id, count);
+        speciesVersion++;
+        comfortTemperatures[id] = comfortTemperature;
+        consumedWater[id] = consumedWaterOnSingleCreature;
+        comfortHumidity[id] = comfortHumidityPercentage;
+        factorEpochs[id] = 0; // Параметры изменились - кеш факторов недействителен
+        return id;
+    }
+
+    /**
+     * Добавляет пачку видов за один захват монитора (используется загрузчиками).
+     * Категория задаётся порядковым номером, остальные параметры как в add.
+     */
+    public synchronized void addAll(byte[] categories, String[] names, long[] counts, int[] comfortTemperatures,
+                                    int[] consumedWater, int[] comfortHumidity, int n) {
+        ensureCapacity(size + n);
+        Category[] values = Category.values();
+        // Индекс названий расширяется один раз под всю пачку, а не удвоениями
+        int[] added = new int[CATEGORIES];
+        for (int i = 0; i < n; i++) {
+            added[categories[i]]++;
+        }
+        for (Category category : values) {
+            HashMap<String, Integer> categoryIndex = index.get(category);
+            if (added[category.ordinal()] > categoryIndex.size()) {
+                HashMap<String, Integer> resized = HashMap.newHashMap(categoryIndex.size() + added[category.ordinal()]);
+                resized.putAll(categoryIndex);
+                index.put(category, resized);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            add(values[categories[i]], names[i], counts[i], comfortTemperatures[i], consumedWater[i], comfortHumidity[i]);
+        }
+    }
+
+    // Удаляет все виды; идентификаторы начинают выдаваться заново
+    public synchronized void clear() {
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(counts, 0, size, 0);
+        Arrays.fill(factorEpochs, 0, size, 0);
+        Arrays.fill(diets, 0, size, null);
+        Arrays.fill(dietWeights, 0, size, null);
+        foodWeb = null;
+        Arrays.fill(memberCounts, 0);
+        Arrays.fill(totals, 0);
+        for (HashMap<String, Integer> categoryIndex : index.values()) {
+            categoryIndex.clear();
+        }
+        size = 0;
+        speciesVersion++;
+    }
+
+    // Идентификатор вида или -1, если такого вида нет
+    public int find(Category category, String name) {
+        Integer id = index.get(category).get(name);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Изменяет численность вида. Численность не опускается ниже нуля,
+     * вид с нулевой численностью считается вымершим.
+     */
+    public synchronized void updateCount(int id, long delta) {
+        setCount(id, counts[id] + delta);
+    }
+
+    public boolean isAlive(int id) {
+        return counts[id] > 0;
+    }
+
+    // Массив численностей текущего года; индекс - идентификатор вида.
+    // Длина массива - текущая ёмкость хранилища, а не количество видов.
+    public long[] getCounts() {
+        return counts;
+    }
+
+    /**
+     * Подменяет массив численностей рассчитанным буфером следующего года;
+     * итоги категорий пересчитываются обходом всех видов.
+     *
+     * @return Прежний массив, который движок использует как буфер на следующий год.
+     */
+    public synchronized long[] swapCounts(long[] next) {
+        long[] previous = swapBuffer(next);
+        Arrays.fill(totals, 0);
+        for (int id = 0; id < size; id++) {
+            totals[categories[id]] += counts[id];
+        }
+        return previous;
+    }
+
+    /**
+     * То же с итогами категорий, уже посчитанными при заполнении буфера.
+     *
+     * @param nextTotals Общая численность по категориям в next, индекс - ordinal.
+     */
+    public synchronized long[] swapCounts(long[] next, long[] nextTotals) {
+        if (nextTotals.length != CATEGORIES) {
+            throw new IllegalArgumentException("Expected " + CATEGORIES + " category totals, got " + nextTotals.length);
+        }
+        long[] previous = swapBuffer(next);
+        System.arraycopy(nextTotals, 0, totals, 0, CATEGORIES);
+        return previous;
+    }
+
+    private long[] swapBuffer(long[] next) {
+        if (next.length != counts.length) {
+            throw new IllegalArgumentException("Buffer length " + next.length + " does not match capacity " + counts.length);
+        }
+        long[] previous = counts;
+        counts = next;
+        return previous;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public synchronized long getSpeciesVersion() {
+        return speciesVersion;
+    }
+
+    public String getName(int id) {
+        return names[id];
+    }
+
+    public Category getCategory(int id) {
+        return Category.of(categories[id]);
+    }
+
+    public long getCount(int id) {
+        return counts[id];
+    }
+
+    public synchronized void setCount(int id, long count) {
+        long updated = Math.max(count, 0);
+        totals[categories[id]] += updated - counts[id];
+        counts[id] = updated;
+    }
+
+    public int getComfortTemperature(int id) {
+        return comfortTemperatures[id];
+    }
+
+    public int getConsumedWater(int id) {
+        return consumedWater[id];
+    }
+
+    public int getComfortHumidity(int id) {
+        return comfortHumidity[id];
+    }
+
+    // Количество видов категории (включая вымершие)
+    public int getMemberCount(Category category) {
+        return memberCounts[category.ordinal()];
+    }
+
+    // Идентификатор i-го вида категории
+    public int getMember(Category category, int i) {
+        return members[category.ordinal()][i];
+    }
+
+    // Общая численность категории за O(1)
+    public long total(Category category) {
+        return totals[category.ordinal()];
+    }
+
+    // Фактор вымирания вида; пересчитывается только при смене эпохи условий
+    public double getExtinctionFactor(int id, WorldConditions worldConditions) {
+        refreshFactors(id, worldConditions);
+        return extinctionFactors[id];
+    }
+
+    // Фактор рождаемости вида; пересчитывается только при смене эпохи условий
+    public double getBirthFactor(int id, WorldConditions worldConditions) {
+        refreshFactors(id, worldConditions);
+        return birthFactors[id];
+    }
+
+    /**
+     * Заранее рассчитывает факторы всех видов для условий мира.
+     * После этого чтение факторов при тех же условиях ничего не изменяет,
+     * поэтому безопасно из нескольких потоков.
+     */
+    public synchronized void refreshFactors(WorldConditions worldConditions) {
+        long epoch = worldConditions.getEpoch();
+        SpeciesKernel kernel = SpeciesKernel.getInstance();
+        int id = 0;
+        while (id < size) {
+            if (factorEpochs[id] == epoch) {
+                id++;
+                continue;
+            }
+            // Устаревшие виды подряд пересчитываются ядром за один вызов
+            int from = id;
+            while (id < size && factorEpochs[id] != epoch) {
+                factorEpochs[id++] = epoch;
+            }
+            kernel.conditionsFactors(worldConditions.getTemperature(), worldConditions.getAccessibleWater(),
+                    worldConditions.getHumidityPercentage(), comfortTemperatures, consumedWater, comfortHumidity,
+                    extinctionFactors, birthFactors, from, id);
+        }
+    }
+
+    private void refreshFactors(int id, WorldConditions worldConditions) {
+        long epoch = worldConditions.getEpoch();
+        if (factorEpochs[id] != epoch) {
+            double conditionsFactor = CreatureStatistics.calculateConditionsFactor(worldConditions, comfortTemperatures[id], consumedWater[id], comfortHumidity[id]);
+            extinctionFactors[id] = 1 / conditionsFactor;
+            birthFactors[id] = conditionsFactor / BIRTH_FACTOR_DIVISOR;
+            factorEpochs[id] = epoch;
+        }
+    }
+
+    /**
+     * Задаёт рацион вида: кого и с каким предпочтением он ест.
+     * Пустой или null рацион возвращает вид к питанию всей категорией пищи.
+     *
+     * @param prey Идентификаторы жертв.
+     * @param weights Положительные веса предпочтения, параллельные prey.
+     */
+    public synchronized void setDiet(int id, int[] prey, double[] weights) {
+        if (prey == null || prey.length == 0) {
+            diets[id] = null;
+            dietWeights[id] = null;
+        } else {
+            if (weights == null || weights.length != prey.length) {
+                throw new IllegalArgumentException("Diet weights do not match prey");
+            }
+            for (int i = 0; i < prey.length; i++) {
+                if (prey[i] < 0 || prey[i] >= size) {
+                    throw new IllegalArgumentException("Unknown prey id: " + prey[i]);
+                }
+                if (!(weights[i] > 0) || Double.isInfinite(weights[i])) {
+                    throw new IllegalArgumentException("Diet weight must be positive: " + weights[i]);
+                }
+            }
+            diets[id] = prey.clone();
+            dietWeights[id] = weights.clone();
+        }
+        foodWeb = null;
+        speciesVersion++;
+    }
+
+    // Жертвы из рациона вида или null, если рацион не объявлен; массив не изменяется после setDiet
+    public int[] getDiet(int id) {
+        return diets[id];
+    }
+
+    public double[] getDietWeights(int id) {
+        return dietWeights[id];
+    }
+
+    /**
+     * Пищевая сеть, скомпилированная по текущим рационам. Виды, добавленные
+     * после компиляции, в ней не участвуют, пока не изменится какой-либо рацион.
+     * Потоки, считающие год под монитором, который держит другой поток
+     * (ансамбль, сетка), должны получать сеть после того, как её получил владелец монитора.
+     */
+    public FoodWeb getFoodWeb() {
+        FoodWeb web = foodWeb;
+        if (web == null) {
+            synchronized (this) {
+                web = foodWeb;
+                if (web == null) {
+                    web = FoodWeb.compile(size, diets, dietWeights);
+                    foodWeb = web;
+                }
+            }
+        }
+        return web;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= names.length) {
+            return;
+        }
+        int capacity = Math.max(required, names.length * 2);
+        names = Arrays.copyOf(names, capacity);
+        categories = Arrays.copyOf(categories, capacity);
+        counts = Arrays.copyOf(counts, capacity);
+        comfortTemperatures = Arrays.copyOf(comfortTemperatures, capacity);
+        consumedWater = Arrays.copyOf(consumedWater, capacity);
+        comfortHumidity = Arrays.copyOf(comfortHumidity, capacity);
+        extinctionFactors = Arrays.copyOf(extinctionFactors, capacity);
+        birthFactors = Arrays.copyOf(birthFactors, capacity);
+        factorEpochs = Arrays.copyOf(factorEpochs, capacity);
+        diets = Arrays.copyOf(diets, capacity);
+        dietWeights = Arrays.copyOf(dietWeights, capacity);
+    }
+}
@@ -0,0 +1,237 @@
+package first.second.third.ecosystem.population;
+
+import first.second.third.ecosystem.entity.parameters.Category;
+import first.second.third.ecosystem.entity.parameters.ClimateSchedule;
+import first.second.third.ecosystem.entity.parameters.WorldConditions;
+import first.second.third.ecosystem.kernel.SpeciesKernel;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Неизменяемый согласованный снимок мира на начало года: условия,
+ * численности, параметры и рационы всех видов. Снимок снимается под монитором
+ * хранилища и после этого читается из любых потоков без блокировок:
+ * вывод, сохранение и оценки выживания работают по снимку, не останавливая расчёт.
+ * Параметры видов меняются редко, поэтому общая их часть (Species)
+ * переиспользуется следующими снимками, пока набор видов не изменился;
+ * каждый год копируются только численности. Итоги категорий берутся из
+ * итогов хранилища, а факторы видов (для оценок выживания) считаются при
+ * первом запросе и переходят к следующим снимкам, пока не изменились
+ * ни набор видов, ни условия, поэтому итоги и оценка выживания одного вида
+ * стоят O(1).
+ */
+@Getter
+public final class WorldSnapshot {
+
+    private final int year;
+    private final int temperature;
+    private final int accessibleWater;
+    private final int humidityPercentage;
+    private final ClimateSchedule schedule; // Расписание климата мира или null
+    @Getter(AccessLevel.NONE)
+    private final Species species;
+    @Getter(AccessLevel.NONE)
+    private final long[] counts;
+    @Getter(AccessLevel.NONE)
+    private final long[] totals; // Общая численность по категориям, индекс - ordinal
+    @Getter(AccessLevel.NONE)
+    private volatile Factors factors; // null - ещё не запрашивались
+
+    private WorldSnapshot(int year, WorldConditions worldConditions, Species species, long[] counts, long[] totals, WorldSnapshot previous) {
+        this.year = year;
+        this.temperature = worldConditions.getTemperature();
+        this.accessibleWater = worldConditions.getAccessibleWater();
+        this.humidityPercentage = worldConditions.getHumidityPercentage();
+        this.schedule = worldConditions.getSchedule();
+        this.species = species;
+        this.counts = counts;
+        this.totals = totals;
+        if (previous != null && previous.species == species && previous.temperature == temperature
+                && previous.accessibleWater == accessibleWater && previous.humidityPercentage == humidityPercentage) {
+            factors = previous.factors; // Входы факторов не изменились
+        }
+    }
+
+    /**
+     * Снимает состояние хранилища.
+     *
+     * @param year Год, к началу которого относятся численности.
+     * @param previous Предыдущий снимок, чьи параметры видов можно переиспользовать, или null.
+     */
+    public static WorldSnapshot capture(PopulationStore store, WorldConditions worldConditions, int year, WorldSnapshot previous) {
+        synchronized (store) {
+            Species species = previous != null && previous.species.version == store.getSpeciesVersion()
+                    ? previous.species
+                    : new Species(store);
+            long[] totals = new long[Category.values().length];
+            for (Category category : Category.values()) {
+                totals[category.ordinal()] = store.total(category);
+            }
+            return new WorldSnapshot(year, worldConditions, species, Arrays.copyOf(store.getCounts(), species.size()), totals, previous);
+        }
+    }
+
+    // Снимок текущего года без переиспользования параметров (сохранение, сжатие журнала)
+    public static WorldSnapshot capture(PopulationStore store, WorldConditions worldConditions) {
+        synchronized (store) {
+            return capture(store, worldConditions, worldConditions.getYear(), null);
+        }
+    }
+
+    public int size() {
+        return counts.length;
+    }
+
+    public long getCount(int id) {
+        return counts[id];
+    }
+
+    public boolean isAlive(int id) {
+        return counts[id] > 0;
+    }
+
+    public long total(Category category) {
+        return totals[category.ordinal()];
+    }
+
+    public String getName(int id) {
+        return species.names[id];
+    }
+
+    public Category getCategory(int id) {
+        return Category.of(species.categories[id]);
+    }
+
+    public int getComfortTemperature(int id) {
+        return species.comfortTemperatures[id];
+    }
+
+    public int getConsumedWater(int id) {
+        return species.consumedWater[id];
+    }
+
+    public int getComfortHumidity(int id) {
+        return species.comfortHumidity[id];
+    }
+
+    public int getMemberCount(Category category) {
+        return species.members[category.ordinal()].length;
+    }
+
+    public int getMember(Category category, int i) {
+        return species.members[category.ordinal()][i];
+    }
+
+    // Жертвы из рациона вида или null, если рацион не объявлен
+    public int[] getDiet(int id) {
+        return species.diets[id];
+    }
+
+    public double[] getDietWeights(int id) {
+        return species.dietWeights[id];
+    }
+
+    // Фактор вымирания вида при условиях снимка
+    public double getExtinctionFactor(int id) {
+        return factors().extinctionFactors[id];
+    }
+
+    // Фактор рождаемости вида при условиях снимка
+    public double getBirthFactor(int id) {
+        return factors().birthFactors[id];
+    }
+
+    // Гонка при расчёте безопасна: все потоки получают одинаковые факторы
+    private Factors factors() {
+        Factors computed = factors;
+        if (computed == null) {
+            computed = new Factors(species, temperature, accessibleWater, humidityPercentage);
+            factors = computed;
+        }
+        return computed;
+    }
+
+    // Идентификатор вида или -1, если такого вида нет
+    public int find(Category category, String name) {
+        Integer id = species.index().get(category.ordinal() + ":" + name);
+        return id != null ? id : -1;
+    }
+
+    // Факторы всех видов при условиях снимка, считаются ядром видов за один проход
+    private static final class Factors {
+        private final double[] extinctionFactors;
+        private final double[] birthFactors;
+
+        private Factors(Species species, int temperature, int accessibleWater, int humidity) {
+            int size = species.size();
+            extinctionFactors = new double[size];
+            birthFactors = new double[size];
+            SpeciesKernel.getInstance().conditionsFactors(temperature, accessibleWater, humidity, species.comfortTemperatures,
+                    species.consumedWater, species.comfortHumidity, extinctionFactors, birthFactors, 0, size);
+        }
+    }
+
+    // Параметры видов, общие для снимков с одной версией набора видов
+    private static final class Species {
+        private final long version;
+        private final String[] names;
+        private final byte[] categories;
+        private final int[] comfortTemperatures;
+        private final int[] consumedWater;
+        private final int[] comfortHumidity;
+        private final int[][] members;
+        // Массивы рационов хранилища не изменяются после setDiet, поэтому копируются ссылки
+        private final int[][] diets;
+        private final double[][] dietWeights;
+        private volatile HashMap<String, Integer> index; // Строится при первом поиске
+
+        private Species(PopulationStore store) {
+            int size = store.size();
+            version = store.getSpeciesVersion();
+            names = new String[size];
+            categories = new byte[size];
+            comfortTemperatures = new int[size];
+            consumedWater = new int[size];
+            comfortHumidity = new int[size];
+            diets = new int[size][];
+            dietWeights = new double[size][];
+            for (int id = 0; id < size; id++) {
+                names[id] = store.getName(id);
+                categories[id] = (byte) store.getCategory(id).ordinal();
+                comfortTemperatures[id] = store.getComfortTemperature(id);
+                consumedWater[id] = store.getConsumedWater(id);
+                comfortHumidity[id] = store.getComfortHumidity(id);
+                diets[id] = store.getDiet(id);
+                dietWeights[id] = store.getDietWeights(id);
+            }
+            members = new int[Category.values().length][];
+            for (Category category : Category.values()) {
+                int[] ids = new int[store.getMemberCount(category)];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = store.getMember(category, i);
+                }
+                members[category.ordinal()] = ids;
+            }
+        }
+
+        private int size() {
+            return names.length;
+        }
+
+        // Гонка при построении безопасна: все потоки строят одинаковый индекс
+        private HashMap<String, Integer> index() {
+            HashMap<String, Integer> built = index;
+            if (built == null) {
+                built = HashMap.newHashMap(names.length);
+                for (int id = 0; id < names.length; id++) {
+                    built.put(categories[id] + ":" + names[id], id);
+                }
+                index = built;
+            }
+            return built;
+        }
+    }
+}
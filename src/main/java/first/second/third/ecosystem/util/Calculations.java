@@ -1,40 +1,60 @@
 package first.second.third.ecosystem.util;
 
-import first.second.third.ecosystem.entity.parameters.CreatureStatistics;
-import first.second.third.ecosystem.entity.parameters.WorldConditions;
+import first.second.third.ecosystem.population.WorldSnapshot;
 
-import java.util.Random;
+import java.util.random.RandomGenerator;
 
 import static first.second.third.ecosystem.util.Constants.POPULATION_CALCULATIONS_BORDER;
 import static first.second.third.ecosystem.util.Constants.TAKE_PERCENT;
 
 public class Calculations {
 
-    public int calculateDeaths(double livingCreatures, double extinctionFactor) {
-        Random random = new Random();
+    // Средние множителей deathRoll и birthRoll
+    public static final double MEAN_DEATH_ROLL = 145;
+    public static final double MEAN_BIRTH_ROLL = 0.6;
+
+    public long calculateDeaths(double livingCreatures, double extinctionFactor, RandomGenerator random) {
+        return calculateDeaths(livingCreatures, extinctionFactor, deathRoll(random));
+    }
+
+    public long calculateBirth(double livingCreatures, double birthFactor, RandomGenerator random) {
+        return calculateBirth(livingCreatures, birthFactor, birthRoll(random));
+    }
+
+    // Случайный множитель смертности, в процентах
+    public static double deathRoll(RandomGenerator random) {
+        return random.nextDouble(90, 200);
+    }
+
+    // Случайный множитель рождаемости
+    public static double birthRoll(RandomGenerator random) {
+        return random.nextDouble(0, 1.2);
+    }
+
+    // Смерти при уже выпавшем множителе deathRoll; ядра видов обязаны совпадать с этим расчётом
+    public static long calculateDeaths(double livingCreatures, double extinctionFactor, double roll) {
         if(livingCreatures > POPULATION_CALCULATIONS_BORDER){
-            return (int) Math.ceil(livingCreatures * TAKE_PERCENT * extinctionFactor * random.nextDouble(90, 200) / 100);
+            return (long) Math.ceil(livingCreatures * TAKE_PERCENT * extinctionFactor * roll / 100);
         }
-        return (int) Math.ceil(livingCreatures * TAKE_PERCENT * extinctionFactor * Math.round(random.nextDouble(90, 200)/ 100));
+        return (long) Math.ceil(livingCreatures * TAKE_PERCENT * extinctionFactor * Math.round(roll / 100));
     }
 
-    public int calculateBirth(double livingCreatures, double birthFactor) {
-        Random random = new Random();
-
+    // Рождения при уже выпавшем множителе birthRoll
+    public static long calculateBirth(double livingCreatures, double birthFactor, double roll) {
         if (livingCreatures > POPULATION_CALCULATIONS_BORDER) {
             // Для больших популяций: слегка увеличиваем фактор случайности
-            return (int) Math.ceil(livingCreatures * TAKE_PERCENT * birthFactor * random.nextDouble(0, 1.2));
+            return (long) Math.ceil(livingCreatures * TAKE_PERCENT * birthFactor * roll);
         }
-        return (int) Math.ceil(livingCreatures * TAKE_PERCENT * birthFactor * random.nextDouble(0, 1.2));
+        return (long) Math.ceil(livingCreatures * TAKE_PERCENT * birthFactor * roll);
     }
 
     // Метод для оценки шансов выживания травоядных
-    public static double calculateHerbivoreSurvivalChance(CreatureStatistics herbivoreStats, long totalPredators, long totalPlants, WorldConditions worldConditions) {
-        double predatorHerbivoreRatio = totalPredators > 0 ? (double) herbivoreStats.getCount() / totalPredators : Double.MAX_VALUE;
-        double plantHerbivoreRatio = totalPlants > 0 ? (double) totalPlants / herbivoreStats.getCount() : 0;
+    public static double calculateHerbivoreSurvivalChance(WorldSnapshot snapshot, int herbivore, long totalPredators, long totalPlants) {
+        double predatorHerbivoreRatio = totalPredators > 0 ? (double) snapshot.getCount(herbivore) / totalPredators : Double.MAX_VALUE;
+        double plantHerbivoreRatio = totalPlants > 0 ? (double) totalPlants / snapshot.getCount(herbivore) : 0;
 
-        double extinctionFactor = herbivoreStats.calculateExtinctionFactor(worldConditions);
-        double birthFactor = herbivoreStats.calculateBirthFactor(worldConditions);
+        double extinctionFactor = snapshot.getExtinctionFactor(herbivore);
+        double birthFactor = snapshot.getBirthFactor(herbivore);
 
         double survivalChance = (birthFactor - extinctionFactor) * predatorHerbivoreRatio * plantHerbivoreRatio;
 
@@ -42,12 +62,12 @@ public class Calculations {
     }
 
     // Метод для оценки шансов выживания хищников
-    public static double calculatePredatorSurvivalChance(CreatureStatistics predatorStats, long totalHerbivores, long totalDecomposers, WorldConditions worldConditions) {
-        double herbivorePredatorRatio = totalHerbivores > 0 ? (double) totalHerbivores / predatorStats.getCount() : 0;
-        double decomposerEffect = totalDecomposers > 0 ? (double) totalDecomposers / predatorStats.getCount() : 0.5;
+    public static double calculatePredatorSurvivalChance(WorldSnapshot snapshot, int predator, long totalHerbivores, long totalDecomposers) {
+        double herbivorePredatorRatio = totalHerbivores > 0 ? (double) totalHerbivores / snapshot.getCount(predator) : 0;
+        double decomposerEffect = totalDecomposers > 0 ? (double) totalDecomposers / snapshot.getCount(predator) : 0.5;
 
-        double extinctionFactor = predatorStats.calculateExtinctionFactor(worldConditions);
-        double birthFactor = predatorStats.calculateBirthFactor(worldConditions);
+        double extinctionFactor = snapshot.getExtinctionFactor(predator);
+        double birthFactor = snapshot.getBirthFactor(predator);
 
         double survivalChance = (birthFactor - extinctionFactor) * herbivorePredatorRatio / (1 + decomposerEffect);
 
@@ -55,11 +75,11 @@ public class Calculations {
     }
 
     // Метод для оценки шансов выживания растений
-    public static double calculatePlantSurvivalChance(CreatureStatistics plantStats, long totalHerbivores, WorldConditions worldConditions) {
-        double herbivorePlantRatio = totalHerbivores > 0 ? (double) totalHerbivores / plantStats.getCount() : 0;
+    public static double calculatePlantSurvivalChance(WorldSnapshot snapshot, int plant, long totalHerbivores) {
+        double herbivorePlantRatio = totalHerbivores > 0 ? (double) totalHerbivores / snapshot.getCount(plant) : 0;
 
-        double extinctionFactor = plantStats.calculateExtinctionFactor(worldConditions);
-        double birthFactor = plantStats.calculateBirthFactor(worldConditions);
+        double extinctionFactor = snapshot.getExtinctionFactor(plant);
+        double birthFactor = snapshot.getBirthFactor(plant);
 
         double survivalChance = (birthFactor - extinctionFactor) / (1 + herbivorePlantRatio);
 
@@ -67,11 +87,11 @@ public class Calculations {
     }
 
     // Метод для оценки шансов выживания декомпозиторов
-    public static double calculateDecomposerSurvivalChance(CreatureStatistics decomposerStats, long totalPredators, WorldConditions worldConditions) {
-        double predatorDecomposerRatio = totalPredators > 0 ? (double) totalPredators / decomposerStats.getCount() : 0;
+    public static double calculateDecomposerSurvivalChance(WorldSnapshot snapshot, int decomposer, long totalPredators) {
+        double predatorDecomposerRatio = totalPredators > 0 ? (double) totalPredators / snapshot.getCount(decomposer) : 0;
 
-        double extinctionFactor = decomposerStats.calculateExtinctionFactor(worldConditions);
-        double birthFactor = decomposerStats.calculateBirthFactor(worldConditions);
+        double extinctionFactor = snapshot.getExtinctionFactor(decomposer);
+        double birthFactor = snapshot.getBirthFactor(decomposer);
 
         double survivalChance = (birthFactor - extinctionFactor) * predatorDecomposerRatio;
 
@@ -0,0 +1,335 @@
+package first.second.third.ecosystem.util;
+
+import first.second.third.ecosystem.engine.GridRunner;
+import first.second.third.ecosystem.engine.MeanFieldEngine;
+import first.second.third.ecosystem.engine.SweepRunner;
+import first.second.third.ecosystem.event.EventLevel;
+import first.second.third.ecosystem.fileprocessor.MutationJournal;
+import first.second.third.ecosystem.kernel.KernelCheck;
+import first.second.third.ecosystem.metrics.FlightRecording;
+import lombok.Getter;
+
+// Параметры пакетного запуска: ecosystem <файл мира> <лет> [файл результата] [--checkpoint N] [--seed N] [--events LEVEL] [--events-file F]
+// или ecosystem ensemble <файл мира> <лет> <реплик> [файл отчёта] [--seed N]
+// или ecosystem grid <файл мира> <лет> <ширина> <высота> [файл отчёта] [--migration R] [--seed N]
+// или ecosystem compare <файл мира> <лет> [файл отчёта] [--tolerance T] [--seed N]
+// или ecosystem sweep <файл мира> <лет> <температуры> <вода> <влажность> [файл отчёта] [--mean-field] [--tolerance T] [--seed N]
+// или ecosystem kernel-check [видов] [--seed N]
+@Getter
+public class CommandLineOptions {
+
+    public static final String USAGE =
+            "Usage: java -jar ecosystem.jar <world file> <years> [output file] [--checkpoint N] [--seed N]\n"
+                    + "                               [--events off|summary|species|detail] [--events-file FILE]\n"
+                    + "                               [--journal DIR] [--compact N] [--metrics]\n"
+                    + "                               [--record N] [--record-file FILE] [--mean-field] [--tolerance T] [--kernel]\n"
+                    + "                               [--agents] [--agent-dir DIR]\n"
+                    + "       java -jar ecosystem.jar ensemble <world file> <years> <replicas> [report file] [--seed N]\n"
+                    + "       java -jar ecosystem.jar grid <world file> <years> <width> <height> [report file] [--migration R] [--seed N]\n"
+                    + "       java -jar ecosystem.jar compare <world file> <years> [report file] [--tolerance T] [--seed N]\n"
+                    + "       java -jar ecosystem.jar sweep <world file> <years> <temperatures> <water> <humidity> [report file]\n"
+                    + "                               [--mean-field] [--tolerance T] [--seed N]\n"
+                    + "       java -jar ecosystem.jar kernel-check [species] [--seed N]\n"
+                    + "Sweep ranges are from:to:points or a single value, e.g. -10:40:50.\n"
+                    + "World and output files ending in .ecos use the binary snapshot format.";
+
+    public enum Mode {
+        BATCH,
+        ENSEMBLE,
+        GRID,
+        COMPARE,
+        SWEEP,
+        KERNEL_CHECK
+    }
+
+    private Mode mode = Mode.BATCH;
+    private String worldFile;
+    private long years;
+    private String outputFile;
+    // Количество реплик ансамбля
+    private int replicas;
+    // Размер сетки регионов и доля особей, мигрирующих за год
+    private int gridWidth;
+    private int gridHeight;
+    private double migrationRate = GridRunner.DEFAULT_MIGRATION_RATE;
+    // Оси перебора условий: температура, вода и влажность
+    private SweepRunner.Axis sweepTemperatures;
+    private SweepRunner.Axis sweepWater;
+    private SweepRunner.Axis sweepHumidity;
+    // Каждые N лет выводится строка с итогами (0 - только финальная сводка)
+    private long checkpointInterval;
+    // Зерно генератора случайных чисел (null - случайное)
+    private Long seed;
+    // Подробность событий симуляции и файл для них (без файла - в консоль)
+    private EventLevel eventLevel = EventLevel.OFF;
+    private String eventsFile;
+    // Каталог журнала: при наличии в нём состояния прогон продолжается с него
+    private String journalDirectory;
+    // Через сколько лет журнал сжимается в снимок
+    private int compactionInterval = MutationJournal.DEFAULT_COMPACTION_INTERVAL;
+    // Замерять время фаз года и вывести отчёт в конце
+    private boolean metrics;
+    // Запись JFR: сколько лет записать (0 - весь прогон) и файл записи (null - без записи)
+    private long recordYears;
+    private String recordFile;
+    // Прогон расчётом средних вместо случайного движка
+    private boolean meanField;
+    // Допустимая ошибка шага расчёта средних (0 - шаг в один год)
+    private double tolerance = MeanFieldEngine.DEFAULT_TOLERANCE;
+    // Смерти и рождения считаются ядром видов (векторным, если оно доступно)
+    private boolean kernel;
+    // Прогон в режиме особей и каталог файла особей (null - системный временный каталог)
+    private boolean agents;
+    private String agentDirectory;
+    // Количество случайных видов для проверки ядер
+    private int checkSpecies = KernelCheck.DEFAULT_SPECIES;
+
+    private CommandLineOptions() {
+    }
+
+    public static CommandLineOptions parse(String[] args) {
+        CommandLineOptions options = new CommandLineOptions();
+        int position = 0; // Номер позиционного аргумента
+        int first = 0;
+        if (args.length > 0 && args[0].equalsIgnoreCase("ensemble")) {
+            options.mode = Mode.ENSEMBLE;
+            first = 1;
+        } else if (args.length > 0 && args[0].equalsIgnoreCase("grid")) {
+            options.mode = Mode.GRID;
+            first = 1;
+        } else if (args.length > 0 && args[0].equalsIgnoreCase("compare")) {
+            options.mode = Mode.COMPARE;
+            first = 1;
+        } else if (args.length > 0 && args[0].equalsIgnoreCase("sweep")) {
+            options.mode = Mode.SWEEP;
+            first = 1;
+        } else if (args.length > 0 && args[0].equalsIgnoreCase("kernel-check")) {
+            options.mode = Mode.KERNEL_CHECK;
+            first = 1;
+        }
+        for (int i = first; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--checkpoint")) {
+                options.checkpointInterval = parseNonNegative(requireValue(args, ++i, arg), arg);
+                continue;
+            }
+            if (arg.equals("--seed")) {
+                options.seed = parseSeed(requireValue(args, ++i, arg));
+                continue;
+            }
+            if (arg.equals("--migration")) {
+                options.migrationRate = parseRate(requireValue(args, ++i, arg), arg);
+                continue;
+            }
+            if (arg.equals("--events")) {
+                options.eventLevel = EventLevel.of(requireValue(args, ++i, arg));
+                continue;
+            }
+            if (arg.equals("--events-file")) {
+                options.eventsFile = requireValue(args, ++i, arg);
+                if (options.eventLevel == EventLevel.OFF) {
+                    options.eventLevel = EventLevel.SUMMARY; // Файл без уровня - только итоги
+                }
+                continue;
+            }
+            if (arg.equals("--metrics")) {
+                options.metrics = true;
+                continue;
+            }
+            if (arg.equals("--mean-field")) {
+                options.meanField = true;
+                continue;
+            }
+            if (arg.equals("--kernel")) {
+                options.kernel = true;
+                continue;
+            }
+            if (arg.equals("--agents")) {
+                options.agents = true;
+                continue;
+            }
+            if (arg.equals("--agent-dir")) {
+                options.agentDirectory = requireValue(args, ++i, arg);
+                options.agents = true;
+                continue;
+            }
+            if (arg.equals("--tolerance")) {
+                options.tolerance = parseTolerance(requireValue(args, ++i, arg));
+                continue;
+            }
+            if (arg.equals("--record")) {
+                options.recordYears = parseNonNegative(requireValue(args, ++i, arg), arg);
+                if (options.recordFile == null) {
+                    options.recordFile = FlightRecording.DEFAULT_FILE;
+                }
+                continue;
+            }
+            if (arg.equals("--record-file")) {
+                options.recordFile = requireValue(args, ++i, arg);
+                continue;
+            }
+            if (arg.equals("--journal")) {
+                options.journalDirectory = requireValue(args, ++i, arg);
+                continue;
+            }
+            if (arg.equals("--compact")) {
+                long interval = parseNonNegative(requireValue(args, ++i, arg), arg);
+                if (interval == 0 || interval > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Invalid compaction interval: " + interval);
+                }
+                options.compactionInterval = (int) interval;
+                continue;
+            }
+            if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+            if (options.mode == Mode.KERNEL_CHECK) {
+                if (position++ > 0) {
+                    throw new IllegalArgumentException("Unexpected argument: " + arg);
+                }
+                long species = parseNonNegative(arg, "species");
+                if (species == 0 || species > Integer.MAX_VALUE - 8) {
+                    throw new IllegalArgumentException("Invalid number of species: " + arg);
+                }
+                options.checkSpecies = (int) species;
+                continue;
+            }
+            switch (position++) {
+                case 0:
+                    options.worldFile = arg;
+                    break;
+                case 1:
+                    options.years = parseNonNegative(arg, "years");
+                    break;
+                case 2:
+                    if (options.mode == Mode.ENSEMBLE) {
+                        options.replicas = (int) Math.min(parseNonNegative(arg, "replicas"), Integer.MAX_VALUE);
+                    } else if (options.mode == Mode.GRID) {
+                        options.gridWidth = (int) Math.min(parseNonNegative(arg, "width"), Integer.MAX_VALUE);
+                    } else if (options.mode == Mode.SWEEP) {
+                        options.sweepTemperatures = SweepRunner.Axis.parse(arg, "temperature");
+                    } else { // Файл результата или отчёта сравнения
+                        options.outputFile = arg;
+                    }
+                    break;
+                case 3:
+                    if (options.mode == Mode.GRID) {
+                        options.gridHeight = (int) Math.min(parseNonNegative(arg, "height"), Integer.MAX_VALUE);
+                    } else if (options.mode == Mode.ENSEMBLE) {
+                        options.outputFile = arg;
+                    } else if (options.mode == Mode.SWEEP) {
+                        options.sweepWater = SweepRunner.Axis.parse(arg, "water");
+                    } else {
+                        throw new IllegalArgumentException("Unexpected argument: " + arg);
+                    }
+                    break;
+                case 4:
+                    if (options.mode == Mode.SWEEP) {
+                        options.sweepHumidity = SweepRunner.Axis.parse(arg, "humidity");
+                    } else if (options.mode == Mode.GRID) {
+                        options.outputFile = arg;
+                    } else {
+                        throw new IllegalArgumentException("Unexpected argument: " + arg);
+                    }
+                    break;
+                case 5:
+                    if (options.mode != Mode.SWEEP) {
+                        throw new IllegalArgumentException("Unexpected argument: " + arg);
+                    }
+                    options.outputFile = arg;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+        }
+        if (options.mode == Mode.KERNEL_CHECK) {
+            return options; // Файл мира не нужен
+        }
+        if (position < 2) {
+            throw new IllegalArgumentException("World file and number of years are required");
+        }
+        if (options.meanField && options.journalDirectory != null) {
+            throw new IllegalArgumentException("--mean-field cannot be combined with --journal");
+        }
+        if (options.agents && (options.meanField || options.journalDirectory != null)) {
+            throw new IllegalArgumentException("--agents cannot be combined with --mean-field or --journal");
+        }
+        if (options.mode == Mode.ENSEMBLE && options.replicas <= 0) {
+            throw new IllegalArgumentException("Number of replicas must be positive");
+        }
+        if (options.mode == Mode.ENSEMBLE && options.years > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many years for an ensemble: " + options.years);
+        }
+        if (options.mode == Mode.GRID) {
+            if (options.gridWidth <= 0 || options.gridHeight <= 0) {
+                throw new IllegalArgumentException("Grid width and height must be positive");
+            }
+            if ((long) options.gridWidth * options.gridHeight > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many regions: " + options.gridWidth + "x" + options.gridHeight);
+            }
+            if (options.years > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many years for a grid: " + options.years);
+            }
+        }
+        if (options.mode == Mode.SWEEP) {
+            if (options.sweepHumidity == null) {
+                throw new IllegalArgumentException("Temperature, water and humidity ranges are required");
+            }
+            if (options.years > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many years for a sweep: " + options.years);
+            }
+        }
+        return options;
+    }
+
+    private static String requireValue(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    public static long parseSeed(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid seed: " + value);
+        }
+    }
+
+    private static double parseRate(String value, String name) {
+        try {
+            double result = Double.parseDouble(value.trim());
+            if (!(result >= 0 && result <= 1)) {
+                throw new IllegalArgumentException(name + " must be between 0 and 1: " + value);
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + name + ": " + value);
+        }
+    }
+
+    private static double parseTolerance(String value) {
+        try {
+            double result = Double.parseDouble(value.trim());
+            if (!(result >= 0) || Double.isInfinite(result)) {
+                throw new IllegalArgumentException("Tolerance must be a non-negative number: " + value);
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for --tolerance: " + value);
+        }
+    }
+
+    private static long parseNonNegative(String value, String name) {
+        try {
+            long result = Long.parseLong(value.trim());
+            if (result < 0) {
+                throw new IllegalArgumentException(name + " must not be negative: " + value);
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + name + ": " + value);
+        }
+    }
+}
@@ -4,4 +4,6 @@ public class Constants {
     public static final double HUNGER_PERCENT = 0.07;
     public static final double TAKE_PERCENT = 0.01;
     public static final int POPULATION_CALCULATIONS_BORDER = 300;
+    // Делитель произведения коэффициентов условий при расчёте рождаемости
+    public static final double BIRTH_FACTOR_DIVISOR = 1.5;
 }
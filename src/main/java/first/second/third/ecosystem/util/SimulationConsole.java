@@ -1,16 +1,29 @@
 package first.second.third.ecosystem.util;
 
-import first.second.third.ecosystem.entity.parameters.CreatureStatistics;
+import first.second.third.ecosystem.api.ApiServer;
+import first.second.third.ecosystem.entity.parameters.Category;
 import first.second.third.ecosystem.entity.parameters.WorldConditions;
-import first.second.third.ecosystem.entity.animal.CreatureBehavior;
-import first.second.third.ecosystem.entity.animal.DecomposerBehavior;
-import first.second.third.ecosystem.entity.animal.HerbivoreBehavior;
-import first.second.third.ecosystem.entity.animal.PlantBehavior;
-import first.second.third.ecosystem.entity.animal.PredatorBehavior;
+import first.second.third.ecosystem.engine.EnsembleRunner;
+import first.second.third.ecosystem.engine.MeanFieldEngine;
+import first.second.third.ecosystem.engine.SimulationRunner;
+import first.second.third.ecosystem.engine.SweepRunner;
+import first.second.third.ecosystem.engine.TickScheduler;
+import first.second.third.ecosystem.event.ConsoleEventSink;
+import first.second.third.ecosystem.event.EventLevel;
+import first.second.third.ecosystem.event.EventPipeline;
+import first.second.third.ecosystem.event.FileEventSink;
+import first.second.third.ecosystem.event.LogEventSink;
 import first.second.third.ecosystem.exception.UnknownCategoryException;
+import first.second.third.ecosystem.fileprocessor.BinarySnapshotFormat;
 import first.second.third.ecosystem.fileprocessor.EcoSystemFileProcessor;
-
-import java.util.ConcurrentModificationException;
+import first.second.third.ecosystem.fileprocessor.MutationJournal;
+import first.second.third.ecosystem.metrics.FlightRecording;
+import first.second.third.ecosystem.metrics.SimulationMetrics;
+import first.second.third.ecosystem.population.PopulationHistory;
+import first.second.third.ecosystem.population.WorldSnapshot;
+
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Scanner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,36 +35,65 @@ public class SimulationConsole {
     // Logger для записи логов
     private static final Logger logger = LoggerFactory.getLogger(SimulationConsole.class);
     private static final Scanner scanner = new Scanner(System.in);
+    // Каталог журнала; состояние из него восстанавливается при запуске
+    private static final String JOURNAL_DIRECTORY = "ecosystem-journal";
     private final EcoSystemFileProcessor processor; // Процессор для работы с файлами экосистемы
     private final WorldConditions worldConditions; // Условия мира
 
-    private boolean isRunning; // Флаг для проверки состояния симуляции
+    // Фоновый прогон, пошаговый расчёт и снимки мира; общий с HTTP API
+    private final SimulationRunner runner;
+    private final ApiServer api;
+    // Сообщения о действиях существ: в лог и пользователю, по умолчанию все
+    private final EventPipeline events;
+    private FileEventSink fileSink; // Дополнительная запись событий в файл
+    // Численности видов за прошедшие годы
+    private final PopulationHistory history = new PopulationHistory();
+    private MutationJournal journal; // null, если журнал не удалось открыть
 
     public SimulationConsole() {
         processor = EcoSystemFileProcessor.getInstance();
         worldConditions = WorldConditions.getInstance();
-        isRunning = false; // Изначально симуляция не запущена
+        events = new EventPipeline(processor.getStore(), EventLevel.DETAIL);
+        events.addSink(new LogEventSink());
+        events.addSink(new ConsoleEventSink(System.out));
+        runner = new SimulationRunner(processor, worldConditions, events, history);
+        api = new ApiServer(runner);
     }
 
     // Запуск симуляции
     public void start() {
         logger.info("Simulation Console started.");
+        openJournal();
         String input;
 
         while (true) {
             // Вывод доступных команд
-            System.out.println("\nAvailable commands: start, stop, add, change, display, save, load, exit");
+            System.out.println("\nAvailable commands: start, stop, pause, resume, step, speed, add, change, display, forecast, save, load, ensemble, sweep, seed, events, history, journal, stats, record, server, exit");
             System.out.print("Enter command: ");
-            input = scanner.nextLine().trim().toLowerCase();
+            String line = scanner.nextLine().trim();
+            input = line.toLowerCase();
+            String[] parts = input.split("\\s+"); // Команда и её аргументы
 
             // Обработка введенной команды
-            switch (input) {
+            switch (parts[0]) {
                 case "start":
                     startSimulation();
                     break;
                 case "stop":
                     stopSimulation();
                     break;
+                case "pause":
+                    pauseSimulation();
+                    break;
+                case "resume":
+                    resumeSimulation();
+                    break;
+                case "step":
+                    stepSimulation(parts);
+                    break;
+                case "speed":
+                    changeSpeed(parts);
+                    break;
                 case "add":
                     addCreature();
                     break;
@@ -59,16 +101,52 @@ public class SimulationConsole {
                     changeConditions();
                     break;
                 case "display":
-                    displayPopulation();
+                    displayPopulation(parts.length > 1 && parts[1].equals("summary"));
+                    break;
+                case "forecast":
+                    showForecast(parts);
                     break;
                 case "save":
-                    saveToFile(worldConditions);
+                    saveToFile(parts);
                     break;
                 case "load":
-                    loadFromFile();
+                    loadFromFile(parts);
+                    break;
+                case "ensemble":
+                    runEnsemble();
+                    break;
+                case "sweep":
+                    runSweep();
+                    break;
+                case "seed":
+                    changeSeed(parts);
+                    break;
+                case "history":
+                    showHistory(parts);
+                    break;
+                case "journal":
+                    showJournal(parts);
+                    break;
+                case "stats":
+                    showStats(parts);
+                    break;
+                case "record":
+                    controlRecording(parts, line.split("\\s+")); // Путь к файлу - с исходным регистром
+                    break;
+                case "server":
+                    controlServer(parts);
+                    break;
+                case "events":
+                    changeEvents(parts, line.split("\\s+")); // Путь к файлу - с исходным регистром
                     break;
                 case "exit":
                     stopSimulation();
+                    runner.getRecording().stop(); // Незавершённая запись сохраняется
+                    api.close();
+                    events.close();
+                    if (journal != null) {
+                        journal.close();
+                    }
                     logger.info("Exiting the simulation.");
                     return; // Выход из метода
                 default:
@@ -80,59 +158,73 @@ public class SimulationConsole {
 
     // Метод для начала симуляции
     private void startSimulation() {
-        if (isRunning) {
+        if (!runner.start()) {
             System.out.println("Simulation is already running."); // Проверка на повторный запуск
         } else {
-            isRunning = true; // Устанавливаем флаг
-            new Thread(this::runSimulation).start(); // Запускаем симуляцию в отдельном потоке
-            System.out.println("Simulation started.");
+            System.out.println("Simulation started."); // Симуляция идёт в отдельном потоке
         }
     }
 
     // Метод для остановки симуляции
     private void stopSimulation() {
-        if (isRunning) {
-            isRunning = false; // Устанавливаем флаг остановки
+        if (runner.stop()) {
             System.out.println("Simulation stopped.");
-            logger.info("Simulation stopped.");
         } else {
             System.out.println("Simulation is not running."); // Если симуляция не запущена
             logger.warn("Simulation is not running.");
         }
     }
 
-    // Основной метод симуляции
-    private void runSimulation() {
-        PredatorBehavior predator = new PredatorBehavior(); // Создаем поведение хищника
-        HerbivoreBehavior herbivore = new HerbivoreBehavior(); // Создаем поведение травоядного
-        PlantBehavior plant = new PlantBehavior(); // Создаем поведение растения
-        DecomposerBehavior decomposer = new DecomposerBehavior(); // Создаем поведение разлагателя
+    // Пауза фонового прогона после текущего года
+    private void pauseSimulation() {
+        if (runner.pause()) {
+            System.out.println("Simulation paused at year " + runner.getSnapshot().getYear() + ".");
+        } else {
+            System.out.println(runner.isRunning() ? "Simulation is already paused." : "Simulation is not running.");
+        }
+    }
+
+    private void resumeSimulation() {
+        if (runner.resume()) {
+            System.out.println("Simulation resumed.");
+        } else {
+            System.out.println(runner.isRunning() ? "Simulation is not paused." : "Simulation is not running.");
+        }
+    }
+
+    // Расчёт N лет (по умолчанию одного) на паузе или при остановленной симуляции: step [N]
+    private void stepSimulation(String[] parts) {
         try {
-            while (isRunning) {
-                try {
-                    // Вывод текущего года симуляции
-                    System.out.println("--------------------YEARS : " + worldConditions.getYear() + " --------------------------------");
-                    System.out.println("-----------------------------------------------------------------------");
-
-                    // Выполнение действий для всех существ в экосистеме
-                    processor.getPredators().forEach((species, stats) -> animalActions(species, predator, stats, worldConditions));
-                    processor.getHerbivores().forEach((species, stats) -> animalActions(species, herbivore, stats, worldConditions));
-                    processor.getPlants().forEach((species, stats) -> animalActions(species, plant, stats, worldConditions));
-                    processor.getDecomposers().forEach((species, stats) -> animalActions(species, decomposer, stats, worldConditions));
-                    worldConditions.setYear(worldConditions.getYear() + 1); // Увеличение года
-                    logger.info("Simulation year progressed to: {}", worldConditions.getYear());
-                    Thread.sleep(50); // Задержка между циклами
-                } catch (ConcurrentModificationException | InterruptedException e) {
-                    if (!isRunning) break; // Если симуляция остановлена, выходим из цикла
-                    logger.warn("Exception during simulation cycle: {}", e.getMessage());
-                }
+            int years = parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+            int year = runner.step(years);
+            System.out.println("Stepped " + years + " years, current year: " + year);
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid input! Please enter valid numbers.");
+            logger.error("Invalid step count: {}", e.getMessage());
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    // Частота прогона: speed <лет в секунду | max>; без аргумента - статистика планировщика
+    private void changeSpeed(String[] parts) {
+        TickScheduler scheduler = runner.getScheduler();
+        if (parts.length > 1) {
+            try {
+                runner.setRate(parts[1].equals("max") ? 0 : Double.parseDouble(parts[1]));
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid input! Please enter a number of years per second or max.");
+                logger.error("Invalid simulation rate: {}", e.getMessage());
+                return;
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+                return;
             }
-        } catch (Exception e) {
-            System.out.println("Error during simulation: " + e.getMessage()); // Обработка ошибок
-            logger.error("Critical error during simulation: {}", e.getMessage());
-        } finally {
-            logger.info("Simulation fully stopped.");
         }
+        System.out.println("Target rate: " + SimulationRunner.rateName(scheduler.getRate()));
+        System.out.printf("Achieved rate: %.1f years/s, %d years since start%n", scheduler.getAchievedRate(), scheduler.getTicks());
+        System.out.printf("Year time: mean %.2f ms, max %.2f ms%n", scheduler.getMeanTickMillis(), scheduler.getMaxTickMillis());
+        System.out.printf("Overruns: %d (%.1f ms over the period in total)%n", scheduler.getOverruns(), scheduler.getOverrunMillis());
     }
 
     // Метод для добавления существа
@@ -144,7 +236,7 @@ public class SimulationConsole {
             System.out.print("Enter species name: ");
             String species = scanner.nextLine().trim().toUpperCase();
             System.out.print("Enter population count: ");
-            long count = Integer.parseInt(scanner.nextLine().trim());
+            long count = Long.parseLong(scanner.nextLine().trim());
             System.out.print("Enter comfort temperature: ");
             int comfortTemperature = Integer.parseInt(scanner.nextLine().trim());
             System.out.print("Enter consumed water on population: ");
@@ -153,7 +245,7 @@ public class SimulationConsole {
             int comfortHumidityPercentage = Integer.parseInt(scanner.nextLine().trim());
             try {
                 // Добавление существа через процессор
-                processor.addCreature(category, species, count, comfortTemperature, consumedWaterOnPopulation, comfortHumidityPercentage);
+                runner.addSpecies(category, species, count, comfortTemperature, consumedWaterOnPopulation, comfortHumidityPercentage);
                 System.out.println("Creature added successfully.");
                 logger.info("Creature added: {}, species: {}, count: {}", category, species, count);
             } catch (UnknownCategoryException e) {
@@ -180,10 +272,13 @@ public class SimulationConsole {
             System.out.print("Enter comfort humidity percentage: ");
             int newHumidity = Integer.parseInt(scanner.nextLine().trim());
 
-            // Установка новых условий
-            worldConditions.setTemperature(newTemp);
-            worldConditions.setAccessibleWater(newWater);
-            worldConditions.setHumidityPercentage(newHumidity);
+            boolean scheduled = worldConditions.getSchedule() != null;
+            // Установка новых условий (с записью в журнал)
+            runner.changeConditions(newTemp, newWater, newHumidity);
+            if (scheduled) {
+                System.out.println("Climate schedule cleared.");
+                logger.info("Climate schedule cleared by a manual change of conditions");
+            }
 
             System.out.println("World conditions updated.");
             logger.info("World conditions updated: temperature={}, water={}, humidity={}", newTemp, newWater, newHumidity);
@@ -196,87 +291,524 @@ public class SimulationConsole {
         }
     }
 
-    private void displayPopulation() {
+    // Прогноз расчётом средних на N лет вперёд: forecast <лет>; мир не изменяется
+    private void showForecast(String[] parts) {
+        if (parts.length < 2) {
+            System.out.println("Usage: forecast <years>");
+            return;
+        }
+        try {
+            long years = Long.parseLong(parts[1]);
+            WorldSnapshot snapshot = runner.getSnapshot();
+            long started = System.nanoTime();
+            MeanFieldEngine forecast = runner.forecast(years);
+            System.out.printf("Mean-field forecast for %d years ahead (%d steps, %.1f ms):%n",
+                    years, forecast.getSteps(), (System.nanoTime() - started) / 1e6);
+            StringBuilder extinct = new StringBuilder();
+            int extinctCount = 0;
+            for (Category category : Category.values()) {
+                long now = 0;
+                long ahead = 0;
+                for (int i = 0; i < snapshot.getMemberCount(category); i++) {
+                    int id = snapshot.getMember(category, i);
+                    if (id >= forecast.size()) {
+                        continue; // Хранилище перезагружено между снимком и прогнозом
+                    }
+                    long count = Math.round(forecast.getPopulation(id));
+                    now += snapshot.getCount(id);
+                    ahead += count;
+                    if (snapshot.isAlive(id) && count == 0 && extinctCount++ < 10) {
+                        extinct.append(extinct.length() > 0 ? ", " : "").append(snapshot.getName(id));
+                    }
+                }
+                System.out.println("Total " + category + ": " + now + " -> " + ahead);
+            }
+            if (extinctCount > 10) {
+                extinct.append(" and ").append(extinctCount - 10).append(" more");
+            }
+            System.out.println("Species extinct by then: " + (extinctCount > 0 ? extinct : "none"));
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid input! Please enter valid numbers.");
+            logger.error("Invalid number of forecast years: {}", e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Вывод условий и популяции по последнему снимку.
+     *
+     * @param summaryOnly Только условия и итоги категорий: вывод не зависит от количества видов.
+     */
+    private void displayPopulation(boolean summaryOnly) {
+        // Последний опубликованный снимок: согласованный год, расчёт не останавливается
+        WorldSnapshot snapshot = runner.getSnapshot();
         // Вывод текущих условий и популяции
-        System.out.println("Current year: " + worldConditions.getYear());
-        System.out.println("Current temperature: " + worldConditions.getTemperature());
-        System.out.println("Current accessible water: " + worldConditions.getAccessibleWater());
-        System.out.println("Current comfort humidity percentage: " + worldConditions.getHumidityPercentage());
+        System.out.println("Current year: " + snapshot.getYear());
+        System.out.println("Current temperature: " + snapshot.getTemperature());
+        System.out.println("Current accessible water: " + snapshot.getAccessibleWater());
+        System.out.println("Current comfort humidity percentage: " + snapshot.getHumidityPercentage());
         System.out.println("Current ecosystem populations:");
 
         // Подсчитываем общее количество хищников, травоядных, растений и декомпозиторов
-        long totalPredators = processor.getPredators().values().stream()
-                .mapToLong(CreatureStatistics::getCount)
-                .sum();
-        long totalHerbivores = processor.getHerbivores().values().stream()
-                .mapToLong(CreatureStatistics::getCount)
-                .sum();
-        long totalPlants = processor.getPlants().values().stream()
-                .mapToLong(CreatureStatistics::getCount)
-                .sum();
-        long totalDecomposers = processor.getDecomposers().values().stream()
-                .mapToLong(CreatureStatistics::getCount)
-                .sum();
+        long totalPredators = snapshot.total(Category.PREDATOR);
+        long totalHerbivores = snapshot.total(Category.HERBIVORE);
+        long totalPlants = snapshot.total(Category.PLANT);
+        long totalDecomposers = snapshot.total(Category.DECOMPOSER);
 
         // Выводим численности
         System.out.println("Total number of predators: " + totalPredators);
         System.out.println("Total number of herbivores: " + totalHerbivores);
         System.out.println("Total number of plants: " + totalPlants);
         System.out.println("Total number of decomposers: " + totalDecomposers);
+        if (summaryOnly) {
+            return;
+        }
 
         // Вывод информации о каждом виде
-        processor.getPredators().forEach((species, stats) -> {
-            System.out.print("PREDATOR: " + species + " -> " + stats.getCount());
+        for (int i = 0; i < snapshot.getMemberCount(Category.PREDATOR); i++) {
+            int id = snapshot.getMember(Category.PREDATOR, i);
+            if (!snapshot.isAlive(id)) continue;
+            System.out.print("PREDATOR: " + snapshot.getName(id) + " -> " + snapshot.getCount(id));
 
             // Рассчитываем шансы на выживание для хищников
-            double survivalChance = calculatePredatorSurvivalChance(stats, totalHerbivores, totalDecomposers, worldConditions);
+            double survivalChance = calculatePredatorSurvivalChance(snapshot, id, totalHerbivores, totalDecomposers);
             System.out.println("; survival coefficient: " + survivalChance);
-        });
+        }
 
-        processor.getHerbivores().forEach((species, stats) -> {
-            System.out.print("HERBIVORE: " + species + " -> " + stats.getCount());
+        for (int i = 0; i < snapshot.getMemberCount(Category.HERBIVORE); i++) {
+            int id = snapshot.getMember(Category.HERBIVORE, i);
+            if (!snapshot.isAlive(id)) continue;
+            System.out.print("HERBIVORE: " + snapshot.getName(id) + " -> " + snapshot.getCount(id));
 
             // Рассчитываем шансы на выживание для травоядных
-            double survivalChance = calculateHerbivoreSurvivalChance(stats, totalPredators, totalPlants, worldConditions);
+            double survivalChance = calculateHerbivoreSurvivalChance(snapshot, id, totalPredators, totalPlants);
             System.out.println("; survival coefficient: " + survivalChance);
-        });
+        }
 
-        processor.getPlants().forEach((species, stats) -> {
-            System.out.print("PLANT: " + species + " -> " + stats.getCount());
+        for (int i = 0; i < snapshot.getMemberCount(Category.PLANT); i++) {
+            int id = snapshot.getMember(Category.PLANT, i);
+            if (!snapshot.isAlive(id)) continue;
+            System.out.print("PLANT: " + snapshot.getName(id) + " -> " + snapshot.getCount(id));
 
             // Рассчитываем шансы на выживание для растений
-            double survivalChance = calculatePlantSurvivalChance(stats, totalHerbivores, worldConditions);
+            double survivalChance = calculatePlantSurvivalChance(snapshot, id, totalHerbivores);
             System.out.println("; survival coefficient: " + survivalChance);
-        });
+        }
 
-        processor.getDecomposers().forEach((species, stats) -> {
-            System.out.print("DECOMPOSER: " + species + " -> " + stats.getCount());
+        for (int i = 0; i < snapshot.getMemberCount(Category.DECOMPOSER); i++) {
+            int id = snapshot.getMember(Category.DECOMPOSER, i);
+            if (!snapshot.isAlive(id)) continue;
+            System.out.print("DECOMPOSER: " + snapshot.getName(id) + " -> " + snapshot.getCount(id));
 
             // Рассчитываем шансы на выживание для декомпозиторов
-            double survivalChance = calculateDecomposerSurvivalChance(stats, totalPredators, worldConditions);
+            double survivalChance = calculateDecomposerSurvivalChance(snapshot, id, totalPredators);
             System.out.println("; survival coefficient: " + survivalChance);
-        });
+        }
     }
 
 
-    // Метод для сохранения состояния мира в файл
-    private void saveToFile(WorldConditions worldConditions) {
-        processor.saveToFile(worldConditions, SimulationConsole.scanner);
+    // Установка зерна генератора: seed <число> или запрос числа
+    private void changeSeed(String[] parts) {
+        if (runner.isRunning()) {
+            System.out.println("Stop the simulation before changing the seed.");
+            return;
+        }
+        try {
+            String value;
+            if (parts.length > 1) {
+                value = parts[1];
+            } else {
+                System.out.print("Enter seed: ");
+                value = scanner.nextLine().trim();
+            }
+            long seed = CommandLineOptions.parseSeed(value);
+            runner.setSeed(seed);
+            System.out.println("Random seed set to " + seed);
+            logger.info("Random seed set to {}", seed);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            logger.error("Invalid seed: {}", e.getMessage());
+        }
     }
 
-    // Метод для загрузки состояния мира из файла
-    private void loadFromFile() {
+    // Настройка вывода событий: events [уровень | категория уровень | file путь | file off]
+    private void changeEvents(String[] parts, String[] rawParts) {
+        try {
+            if (parts.length == 1) {
+                for (Category category : Category.values()) {
+                    System.out.println(category + ": " + events.getLevel(category));
+                }
+                System.out.println("Events file: " + (fileSink != null ? "on" : "off"));
+                System.out.println("Usage: events <off|summary|species|detail>, events <category> <level>, events file <path|off>");
+            } else if (parts[1].equals("file")) {
+                changeEventsFile(rawParts);
+            } else if (parts.length == 2) {
+                events.setLevel(EventLevel.of(parts[1]));
+                System.out.println("Event level set to " + EventLevel.of(parts[1]) + " for all categories");
+                logger.info("Event level set to {}", parts[1]);
+            } else {
+                Category category = Category.of(parts[1]);
+                events.setLevel(category, EventLevel.of(parts[2]));
+                System.out.println("Event level for " + category + " set to " + events.getLevel(category));
+                logger.info("Event level for {} set to {}", category, parts[2]);
+            }
+        } catch (IllegalArgumentException | UnknownCategoryException e) {
+            System.out.println(e.getMessage());
+            logger.error("Invalid events command: {}", e.getMessage());
+        }
+    }
+
+    private void changeEventsFile(String[] parts) {
+        if (parts.length < 3) {
+            System.out.println("Usage: events file <path|off>");
+            return;
+        }
+        if (fileSink != null) {
+            events.removeSink(fileSink);
+            fileSink = null;
+        }
+        if (parts[2].equalsIgnoreCase("off")) {
+            System.out.println("Events file closed.");
+            return;
+        }
+        try {
+            fileSink = new FileEventSink(parts[2]);
+            events.addSink(fileSink);
+            System.out.println("Events are also written to " + parts[2]);
+            logger.info("Events are written to {}", parts[2]);
+        } catch (IOException e) {
+            System.out.println("Error opening events file: " + e.getMessage());
+            logger.error("Error opening events file {}: {}", parts[2], e.getMessage());
+        }
+    }
+
+    // Восстановление мира из журнала прошлого запуска или начало нового журнала
+    private void openJournal() {
+        MutationJournal opened = new MutationJournal(Path.of(JOURNAL_DIRECTORY), processor.getStore(), worldConditions,
+                MutationJournal.DEFAULT_COMPACTION_INTERVAL);
+        try {
+            if (opened.open()) {
+                System.out.println("Recovered simulation at year " + worldConditions.getYear() + " from " + JOURNAL_DIRECTORY);
+            }
+            journal = opened;
+            processor.setJournal(journal);
+            runner.setJournal(journal);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Journal is disabled: " + e.getMessage());
+            logger.error("Cannot open journal in {}: {}", JOURNAL_DIRECTORY, e.getMessage());
+        }
+    }
+
+    // Метрики расчёта: stats on|off|reset, без аргумента - отчёт
+    private void showStats(String[] parts) {
+        SimulationMetrics metrics = runner.getMetrics();
+        if (parts.length > 1) {
+            switch (parts[1]) {
+                case "on":
+                    metrics.setEnabled(true);
+                    System.out.println("Metrics enabled.");
+                    return;
+                case "off":
+                    metrics.setEnabled(false);
+                    System.out.println("Metrics disabled.");
+                    return;
+                case "reset":
+                    metrics.reset();
+                    System.out.println("Metrics reset.");
+                    return;
+                default:
+                    System.out.println("Usage: stats [on|off|reset]");
+                    return;
+            }
+        }
+        metrics.printReport(System.out);
+    }
+
+    // Запись JFR: record <лет> [файл.jfr] начинает запись, record stop сохраняет досрочно
+    private void controlRecording(String[] parts, String[] rawParts) {
+        FlightRecording recording = runner.getRecording();
+        if (parts.length < 2) {
+            if (recording.isActive()) {
+                System.out.println("Recording to " + recording.getDestination() + ", " + recording.getRemainingYears() + " years left.");
+            } else {
+                System.out.println("No flight recording in progress. Usage: record <years> [file.jfr] | record stop");
+            }
+            return;
+        }
+        if (parts[1].equals("stop")) {
+            if (!recording.stop()) {
+                System.out.println("No flight recording in progress.");
+            }
+            return;
+        }
+        try {
+            long years = Long.parseLong(parts[1]);
+            Path destination = Path.of(rawParts.length > 2 ? rawParts[2] : FlightRecording.DEFAULT_FILE);
+            recording.start(years, destination);
+            System.out.println("Flight recording started for " + years + " years: " + destination);
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid input! Please enter valid numbers.");
+            logger.error("Invalid number of years to record: {}", e.getMessage());
+        } catch (IOException | IllegalArgumentException | IllegalStateException e) {
+            System.out.println("Error starting flight recording: " + e.getMessage());
+            logger.error("Error starting flight recording: {}", e.getMessage());
+        }
+    }
+
+    // HTTP API: server [порт] запускает сервер, server stop останавливает
+    private void controlServer(String[] parts) {
+        if (parts.length > 1 && parts[1].equals("stop")) {
+            if (api.isStarted()) {
+                api.close();
+                System.out.println("API server stopped.");
+            } else {
+                System.out.println("API server is not running.");
+            }
+            return;
+        }
+        if (api.isStarted()) {
+            System.out.println("API server is running at http://localhost:" + api.getPort() + "/api/");
+            return;
+        }
+        try {
+            int port = parts.length > 1 ? Integer.parseInt(parts[1]) : ApiServer.DEFAULT_PORT;
+            api.start(port);
+            System.out.println("API server started at http://localhost:" + api.getPort() + "/api/");
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid input! Please enter valid numbers.");
+            logger.error("Invalid server port: {}", e.getMessage());
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Error starting API server: " + e.getMessage());
+            logger.error("Error starting API server: {}", e.getMessage());
+        }
+    }
+
+    // Состояние журнала: journal или journal compact
+    private void showJournal(String[] parts) {
+        if (journal == null) {
+            System.out.println("Journal is disabled.");
+            return;
+        }
+        if (parts.length > 1 && parts[1].equals("compact")) {
+            try {
+                journal.compact();
+                System.out.println("Journal compacted at year " + journal.getSnapshotYear());
+            } catch (IOException e) {
+                System.out.println("Error compacting journal: " + e.getMessage());
+                logger.error("Error compacting journal: {}", e.getMessage());
+            }
+            return;
+        }
+        System.out.println("Journal: " + JOURNAL_DIRECTORY + ", generation " + journal.getGeneration()
+                + ", snapshot year " + journal.getSnapshotYear() + ", " + journal.getJournalSize() + " bytes since snapshot"
+                + ", compaction every " + journal.getCompactionInterval() + " years");
+    }
+
+    // История численности: history [категория] <вид> [с года] [по год] [step N] или history retention N
+    private void showHistory(String[] parts) {
+        try {
+            if (parts.length == 1) {
+                if (history.isEmpty()) {
+                    System.out.println("History is empty. Usage: history [category] <species> [from] [to] [step N], history retention N");
+                } else {
+                    System.out.println("History: years " + history.getFirstYear() + ".." + history.getLastYear()
+                            + ", retention " + history.getRetention() + " years, " + history.memoryBytes() / 1024 + " KB");
+                }
+                return;
+            }
+            if (parts[1].equals("retention")) {
+                if (parts.length < 3) {
+                    System.out.println("Usage: history retention <years>");
+                    return;
+                }
+                history.setRetention(Integer.parseInt(parts[2]));
+                System.out.println("History retention set to " + history.getRetention() + " years (history cleared)");
+                logger.info("History retention set to {}", history.getRetention());
+                return;
+            }
+            int position = 1;
+            Category category = null;
+            if (parts.length > 2 && isCategory(parts[1])) {
+                category = Category.of(parts[1]);
+                position = 2;
+            }
+            String name = parts[position++].toUpperCase();
+            int id = findSpecies(category, name);
+            if (id < 0 || !history.hasSpecies(id)) {
+                System.out.println("No history for " + name);
+                return;
+            }
+            int from = history.getFirstYear();
+            int to = history.getLastYear();
+            int step = 0;
+            if (position < parts.length && !parts[position].equals("step")) {
+                from = Integer.parseInt(parts[position++]);
+            }
+            if (position < parts.length && !parts[position].equals("step")) {
+                to = Integer.parseInt(parts[position++]);
+            }
+            if (position + 1 < parts.length && parts[position].equals("step")) {
+                step = Integer.parseInt(parts[position + 1]);
+            }
+            if (step == 0) {
+                // По умолчанию не больше сотни строк
+                step = Math.max(1, (int) (((long) Math.min(to, history.getLastYear()) - Math.max(from, history.getFirstYear())) / 100 + 1));
+            }
+            PopulationHistory.Series series = history.query(id, from, to, step);
+            if (series == null) {
+                System.out.println("No recorded years in range " + from + ".." + to
+                        + " (recorded: " + history.getFirstYear() + ".." + history.getLastYear() + ")");
+                return;
+            }
+            System.out.println("History of " + name + ", step " + step + ":");
+            for (int i = 0; i < series.size(); i++) {
+                if (step == 1) {
+                    System.out.println("Year " + series.getYears()[i] + ": " + series.getValues()[i]);
+                } else {
+                    System.out.printf("Year %d: %d (min %d, max %d, mean %.1f)%n", series.getYears()[i], series.getValues()[i],
+                            series.getMin()[i], series.getMax()[i], series.getMean()[i]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid input! Please enter valid numbers.");
+            logger.error("Invalid history query: {}", e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            logger.error("Invalid history query: {}", e.getMessage());
+        }
+    }
+
+    private static boolean isCategory(String name) {
+        try {
+            Category.of(name);
+            return true;
+        } catch (UnknownCategoryException e) {
+            return false;
+        }
+    }
+
+    // Поиск вида по названию в категории или, если она не указана, во всех категориях
+    private int findSpecies(Category category, String name) {
+        WorldSnapshot snapshot = runner.getSnapshot();
+        if (category != null) {
+            return snapshot.find(category, name);
+        }
+        for (Category candidate : Category.values()) {
+            int id = snapshot.find(candidate, name);
+            if (id >= 0) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    // Оценка вероятностей вымирания по ансамблю независимых реплик
+    private void runEnsemble() {
+        if (runner.isRunning()) {
+            System.out.println("Stop the simulation before running an ensemble.");
+            return;
+        }
+        try {
+            System.out.print("Enter number of years: ");
+            int years = Integer.parseInt(scanner.nextLine().trim());
+            System.out.print("Enter number of replicas: ");
+            int replicas = Integer.parseInt(scanner.nextLine().trim());
+            EnsembleRunner ensemble = new EnsembleRunner(processor.getStore(), worldConditions, replicas, years, runner.splitRandom());
+            ensemble.run();
+            ensemble.printReport(System.out);
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid input! Please enter valid numbers.");
+            logger.error("Invalid input for ensemble: {}", e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            logger.error("Invalid ensemble parameters: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Ensemble interrupted.");
+        }
+    }
+
+    // Перебор условий мира: прогон загруженного мира в каждой точке сетки температуры, воды и влажности
+    private void runSweep() {
+        if (runner.isRunning()) {
+            System.out.println("Stop the simulation before running a sweep.");
+            return;
+        }
+        try {
+            System.out.print("Enter temperature range (from:to:points): ");
+            SweepRunner.Axis temperatures = SweepRunner.Axis.parse(scanner.nextLine(), "temperature");
+            System.out.print("Enter accessible water range (from:to:points): ");
+            SweepRunner.Axis water = SweepRunner.Axis.parse(scanner.nextLine(), "water");
+            System.out.print("Enter humidity range (from:to:points): ");
+            SweepRunner.Axis humidity = SweepRunner.Axis.parse(scanner.nextLine(), "humidity");
+            System.out.print("Enter number of years: ");
+            int years = Integer.parseInt(scanner.nextLine().trim());
+            System.out.print("Enter report file (empty to skip): ");
+            String reportFile = scanner.nextLine().trim();
+            SweepRunner sweep = new SweepRunner(processor.getStore(), temperatures, water, humidity, years, runner.splitRandom());
+            long started = System.nanoTime();
+            sweep.run();
+            sweep.printReport(System.out);
+            System.out.printf("Sweep finished in %.3f s%n", (System.nanoTime() - started) / 1e9);
+            if (!reportFile.isEmpty()) {
+                sweep.saveReport(reportFile);
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid input! Please enter valid numbers.");
+            logger.error("Invalid input for sweep: {}", e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            logger.error("Invalid sweep parameters: {}", e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.out.println("Sweep interrupted.");
+        }
+    }
+
+    // Метод для сохранения состояния мира в файл: save [binary|text], без формата - по расширению
+    private void saveToFile(String[] parts) {
+        System.out.print("Enter file path to save: ");
+        String filePath = scanner.nextLine().trim(); // Получаем путь к файлу от пользователя
+        switch (formatOption(parts, filePath)) {
+            case "binary":
+                processor.saveToBinaryFile(runner.getSnapshot(), filePath);
+                break;
+            case "text":
+                processor.saveToFile(runner.getSnapshot(), filePath);
+                break;
+            default:
+                System.out.println("Unknown file format: " + parts[1] + " (expected binary or text)");
+        }
+    }
+
+    // Метод для загрузки состояния мира из файла: load [binary|text], без формата - по расширению
+    private void loadFromFile(String[] parts) {
+        // Загрузка заполняет хранилище частями и не атомарна: работающий прогон увидел бы полузагруженный мир
+        if (runner.isRunning()) {
+            System.out.println("Stop the simulation before loading a world.");
+            return;
+        }
         System.out.print("Enter file path to load: ");
         String filePath = scanner.nextLine().trim();
-        processor.loadFromFile(filePath); // Загрузка из файла
+        switch (formatOption(parts, filePath)) {
+            case "binary":
+                processor.loadFromBinaryFile(filePath); // Загрузка двоичного снимка
+                break;
+            case "text":
+                processor.loadFromFile(filePath); // Загрузка из файла
+                break;
+            default:
+                System.out.println("Unknown file format: " + parts[1] + " (expected binary or text)");
+                return;
+        }
+        runner.publishSnapshot(); // Читатели снимков видят загруженный мир
     }
 
-    // Статический метод для выполнения действий существ
-    static void animalActions(String species, CreatureBehavior creature, CreatureStatistics stats, WorldConditions worldConditions) {
-        creature.die(species, worldConditions); // Умирание существа
-        creature.reproduce(species, worldConditions); // Размножение существа
-        creature.eatRandom(species); // Питание существа
-        System.out.println("ANIMAL: " + species + " population: " + stats.getCount());
-        System.out.println("---------------------------------------------------------------");
+    private String formatOption(String[] parts, String filePath) {
+        if (parts.length > 1) {
+            return parts[1];
+        }
+        return BinarySnapshotFormat.isSnapshot(filePath) ? "binary" : "text";
     }
 }
@@ -0,0 +1,24 @@
+package first.second.third.ecosystem.util;
+
+import java.util.random.RandomGenerator.SplittableGenerator;
+import java.util.random.RandomGeneratorFactory;
+
+// Источник случайности симуляции: один разделяемый генератор на прогон,
+// от которого отщепляются независимые потоки для частей мира и реплик
+public final class SimulationRandom {
+
+    public static final String ALGORITHM = "L64X128MixRandom";
+
+    private SimulationRandom() {
+    }
+
+    // Генератор с заданным зерном: одинаковое зерно даёт одинаковый прогон
+    public static SplittableGenerator create(long seed) {
+        return RandomGeneratorFactory.<SplittableGenerator>of(ALGORITHM).create(seed);
+    }
+
+    // Генератор со случайным зерном
+    public static SplittableGenerator create() {
+        return RandomGeneratorFactory.<SplittableGenerator>of(ALGORITHM).create();
+    }
+}
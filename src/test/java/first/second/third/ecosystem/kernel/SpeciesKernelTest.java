@@ -0,0 +1,243 @@
+package first.second.third.ecosystem.kernel;
+
+import first.second.third.ecosystem.entity.parameters.CreatureStatistics;
+import first.second.third.ecosystem.util.Calculations;
+import first.second.third.ecosystem.util.SimulationRandom;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import static first.second.third.ecosystem.util.Constants.BIRTH_FACTOR_DIVISOR;
+import static first.second.third.ecosystem.util.Constants.POPULATION_CALCULATIONS_BORDER;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Векторное ядро видов должно побитно совпадать со скалярным, а скалярное - с Calculations и CreatureStatistics
+class SpeciesKernelTest {
+
+    private static final int TEMPERATURE = 20;
+    private static final int HUMIDITY = 60;
+    private static final int WATER = 200;
+    // Отклонения условий по обе стороны от каждой ступени коэффициентов
+    private static final int[] TEMPERATURE_DELTAS = {0, 1, -1, 4, 5, -5, 6, 9, 10, -10, 11, 19, 20, -20, 21, 100};
+    private static final int[] HUMIDITY_DELTAS = {0, 1, -1, 5, -5, 6, 19, 20, -20, 21, 49, 50, -50, 51};
+    private static final int[] WATER_DELTAS = {1, 0, -1, -49, -50, -51, -99, -100, -101, -149, -150, -151, -400};
+    // Численности: вымершие, порог размножения, граница POPULATION_CALCULATIONS_BORDER, предел int и long
+    private static final long[] POPULATIONS = {0, -5, 1, 9, 10, 11,
+            POPULATION_CALCULATIONS_BORDER - 1, POPULATION_CALCULATIONS_BORDER, POPULATION_CALCULATIONS_BORDER + 1,
+            Integer.MAX_VALUE, Integer.MAX_VALUE + 1L, 1_000_000_000_000L, Long.MAX_VALUE / 2, Long.MAX_VALUE};
+    // Множители смертности у границы округления 1 и 2 для малых популяций
+    private static final double[] DEATH_ROLLS = {90, 149.99999999, 150, 199.99999999};
+    private static final double[] BIRTH_ROLLS = {0, 0.6, 1.19999999};
+
+    private final SpeciesKernel scalar = new ScalarSpeciesKernel();
+    private SpeciesKernel vector; // null без модуля jdk.incubator.vector: проверяется только скалярное ядро
+
+    @BeforeEach
+    void setUp() {
+        vector = SpeciesKernel.isVectorAvailable() ? SpeciesKernel.createVector() : null;
+    }
+
+    @Test
+    void factorsMatchAtTierBoundaries() {
+        int species = TEMPERATURE_DELTAS.length * HUMIDITY_DELTAS.length * WATER_DELTAS.length;
+        int[] comfortTemperatures = new int[species];
+        int[] comfortHumidity = new int[species];
+        int[] consumedWater = new int[species];
+        int id = 0;
+        for (int temperatureDelta : TEMPERATURE_DELTAS) {
+            for (int humidityDelta : HUMIDITY_DELTAS) {
+                for (int waterDelta : WATER_DELTAS) {
+                    comfortTemperatures[id] = TEMPERATURE - temperatureDelta;
+                    comfortHumidity[id] = HUMIDITY - humidityDelta;
+                    consumedWater[id] = WATER - waterDelta;
+                    id++;
+                }
+            }
+        }
+        double[][] extinctionFactors = new double[2][species];
+        double[][] birthFactors = new double[2][species];
+        scalar.conditionsFactors(TEMPERATURE, WATER, HUMIDITY, comfortTemperatures, consumedWater, comfortHumidity,
+                extinctionFactors[0], birthFactors[0], 0, species);
+        for (id = 0; id < species; id++) {
+            double conditionsFactor = CreatureStatistics.calculateConditionsFactor(TEMPERATURE, WATER, HUMIDITY,
+                    comfortTemperatures[id], consumedWater[id], comfortHumidity[id]);
+            assertEquals(1 / conditionsFactor, extinctionFactors[0][id], "scalar extinction factor of species " + id);
+            assertEquals(conditionsFactor / BIRTH_FACTOR_DIVISOR, birthFactors[0][id], "scalar birth factor of species " + id);
+        }
+        assumeVector();
+        vector.conditionsFactors(TEMPERATURE, WATER, HUMIDITY, comfortTemperatures, consumedWater, comfortHumidity,
+                extinctionFactors[1], birthFactors[1], 0, species);
+        assertBitwiseEquals(extinctionFactors[0], extinctionFactors[1]);
+        assertBitwiseEquals(birthFactors[0], birthFactors[1]);
+    }
+
+    @Test
+    void deathsAndBirthsMatchAtPopulationEdges() {
+        double[] factors = {0.3, 0.8333, 1, 1.2, 3.3333333333333335, 11.11111111111111};
+        int species = POPULATIONS.length * DEATH_ROLLS.length * BIRTH_ROLLS.length * factors.length;
+        Lanes lanes = new Lanes(species);
+        int id = 0;
+        for (long population : POPULATIONS) {
+            for (double deathRoll : DEATH_ROLLS) {
+                for (double birthRoll : BIRTH_ROLLS) {
+                    for (double factor : factors) {
+                        lanes.set(id++, population, factor, 1 / factor, deathRoll, birthRoll);
+                    }
+                }
+            }
+        }
+        lanes.run(scalar, 0, species);
+        for (id = 0; id < species; id++) {
+            long population = lanes.populations[id];
+            long deaths = population <= 0 ? 0
+                    : Math.min(Calculations.calculateDeaths(population, lanes.extinctionFactors[id], lanes.deathRolls[id]), population);
+            long survived = population - deaths;
+            long births = population <= 0 || survived < ScalarSpeciesKernel.REPRODUCTION_THRESHOLD ? 0
+                    : Calculations.calculateBirth(survived, lanes.birthFactors[id], lanes.birthRolls[id]);
+            assertEquals(deaths, lanes.deaths[0][id], "scalar deaths of species " + id);
+            assertEquals(births, lanes.births[0][id], "scalar births of species " + id);
+        }
+        assumeVector();
+        lanes.run(vector, 0, species);
+        lanes.assertKernelsAgree();
+    }
+
+    @Test
+    void deathsAboveIntRangeAreNotCapped() {
+        Lanes lanes = new Lanes(1);
+        lanes.set(0, 1_000_000_000_000L, 1, 1, 100, 1);
+        lanes.run(scalar, 0, 1);
+        long deaths = Calculations.calculateDeaths(1_000_000_000_000L, 1, 100);
+        assertTrue(deaths > Integer.MAX_VALUE);
+        assertEquals(deaths, lanes.deaths[0][0]);
+        assertEquals(Calculations.calculateBirth(1_000_000_000_000L - deaths, 1, 1), lanes.births[0][0]);
+        assumeVector();
+        lanes.run(vector, 0, 1);
+        lanes.assertKernelsAgree();
+    }
+
+    @Test
+    void saturatedLanesMatchScalar() {
+        double[] extremes = {Double.POSITIVE_INFINITY, Double.MAX_VALUE, 1e300, Double.NaN, 0, -1};
+        int species = extremes.length * extremes.length * POPULATIONS.length;
+        Lanes lanes = new Lanes(species);
+        int id = 0;
+        for (double extinctionFactor : extremes) {
+            for (double birthFactor : extremes) {
+                for (long population : POPULATIONS) {
+                    lanes.set(id++, population, extinctionFactor, birthFactor, 150, 1);
+                }
+            }
+        }
+        lanes.run(scalar, 0, species);
+
+        // Бесконечные смерти ограничены численностью, бесконечные рождения - Long.MAX_VALUE, NaN даёт ноль
+        Lanes edges = new Lanes(4);
+        edges.set(0, 1_000, Double.POSITIVE_INFINITY, 1, 150, 1);
+        edges.set(1, 1_000, 0, Double.POSITIVE_INFINITY, 150, 1);
+        edges.set(2, 1_000, Double.NaN, Double.NaN, 150, 1);
+        edges.set(3, Long.MAX_VALUE, 0, Double.MAX_VALUE, 150, 1);
+        edges.run(scalar, 0, 4);
+        assertArrayEquals(new long[]{1_000, 0, 0, 0}, edges.deaths[0]);
+        assertArrayEquals(new long[]{0, Long.MAX_VALUE, 0, Long.MAX_VALUE}, edges.births[0]);
+        assumeVector();
+        lanes.run(vector, 0, species);
+        lanes.assertKernelsAgree();
+        edges.run(vector, 0, 4);
+        edges.assertKernelsAgree();
+    }
+
+    @Test
+    void rangeLeavesOtherSpeciesUntouched() {
+        int species = 37; // Не кратно числу дорожек: часть диапазона считается скалярным хвостом
+        Lanes lanes = new Lanes(species);
+        for (int id = 0; id < species; id++) {
+            lanes.set(id, 100L * id, 1.5, 0.7, 90 + id, 0.03 * id);
+        }
+        for (long[] values : lanes.deaths) {
+            Arrays.fill(values, -1);
+        }
+        for (long[] values : lanes.births) {
+            Arrays.fill(values, -1);
+        }
+        lanes.run(scalar, 3, 30);
+        lanes.assertRangeUntouched(0, 3, 30);
+        assumeVector();
+        lanes.run(vector, 3, 30);
+        lanes.assertRangeUntouched(1, 3, 30);
+        lanes.assertKernelsAgree();
+    }
+
+    @Test
+    void randomWorldsPassKernelCheck() {
+        KernelCheck check = new KernelCheck(1_003, SimulationRandom.create(7));
+        assertTrue(check.run(new PrintStream(OutputStream.nullOutputStream())));
+    }
+
+    // Сравнения с векторным ядром пропускаются, если модуль Vector API не подключён
+    private void assumeVector() {
+        assumeTrue(vector != null, "Vector API is not available");
+    }
+
+    private static void assertBitwiseEquals(double[] expected, double[] actual) {
+        for (int id = 0; id < expected.length; id++) {
+            assertEquals(Double.doubleToRawLongBits(expected[id]), Double.doubleToRawLongBits(actual[id]),
+                    "species " + id + ": scalar " + expected[id] + ", vector " + actual[id]);
+        }
+    }
+
+    // Входы deathsAndBirths и результаты обоих ядер (индекс 0 - скалярное, 1 - векторное)
+    private static final class Lanes {
+        private final long[] populations;
+        private final double[] extinctionFactors;
+        private final double[] birthFactors;
+        private final double[] deathRolls;
+        private final double[] birthRolls;
+        private final long[][] deaths;
+        private final long[][] births;
+
+        private Lanes(int species) {
+            populations = new long[species];
+            extinctionFactors = new double[species];
+            birthFactors = new double[species];
+            deathRolls = new double[species];
+            birthRolls = new double[species];
+            deaths = new long[2][species];
+            births = new long[2][species];
+        }
+
+        private void set(int id, long population, double extinctionFactor, double birthFactor, double deathRoll, double birthRoll) {
+            populations[id] = population;
+            extinctionFactors[id] = extinctionFactor;
+            birthFactors[id] = birthFactor;
+            deathRolls[id] = deathRoll;
+            birthRolls[id] = birthRoll;
+        }
+
+        private void run(SpeciesKernel kernel, int from, int to) {
+            int k = kernel instanceof ScalarSpeciesKernel ? 0 : 1;
+            kernel.deathsAndBirths(populations, extinctionFactors, birthFactors, deathRolls, birthRolls,
+                    deaths[k], births[k], from, to);
+        }
+
+        private void assertRangeUntouched(int k, int from, int to) {
+            for (int id = 0; id < populations.length; id++) {
+                if (id < from || id >= to) {
+                    assertEquals(-1, deaths[k][id], "deaths outside the range, species " + id);
+                    assertEquals(-1, births[k][id], "births outside the range, species " + id);
+                }
+            }
+        }
+
+        private void assertKernelsAgree() {
+            assertArrayEquals(deaths[0], deaths[1], "deaths");
+            assertArrayEquals(births[0], births[1], "births");
+        }
+    }
+}